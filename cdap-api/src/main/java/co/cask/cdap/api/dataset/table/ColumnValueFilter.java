@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.api.dataset.table;
+
+import co.cask.cdap.api.annotation.Beta;
+import co.cask.cdap.api.common.Bytes;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * {@link Filter} on the values of columns, to be applied to {@link Scan}. A row matches an equality, range or
+ * prefix condition if it has the column and the value of the column satisfies the condition. Values are compared
+ * lexicographically, as unsigned bytes. Conditions can be combined with {@link #and} and {@link #or}.
+ * <p>
+ * Table implementations may evaluate the filter in the storage layer, so that rows that do not match are not
+ * transferred to the client.
+ * </p>
+ */
+@Beta
+public final class ColumnValueFilter implements Filter, Serializable {
+
+  private static final long serialVersionUID = -3270521046355307217L;
+
+  /**
+   * Type of a {@link ColumnValueFilter}.
+   */
+  public enum Type {
+    EQUAL,
+    RANGE,
+    PREFIX,
+    AND,
+    OR
+  }
+
+  private final Type type;
+  private final byte[] column;
+  // the value to compare with for EQUAL, the prefix for PREFIX, and the inclusive start for RANGE
+  private final byte[] value;
+  // the exclusive stop for RANGE
+  private final byte[] stopValue;
+  private final List<ColumnValueFilter> filters;
+
+  private ColumnValueFilter(Type type, @Nullable byte[] column, @Nullable byte[] value, @Nullable byte[] stopValue,
+                            List<ColumnValueFilter> filters) {
+    this.type = type;
+    this.column = column;
+    this.value = value;
+    this.stopValue = stopValue;
+    this.filters = filters;
+  }
+
+  /**
+   * Matches rows in which the value of the given column is equal to the given value.
+   */
+  public static ColumnValueFilter equalTo(byte[] column, byte[] value) {
+    return new ColumnValueFilter(Type.EQUAL, checkNotNull(column, "column"), checkNotNull(value, "value"), null,
+                                 Collections.<ColumnValueFilter>emptyList());
+  }
+
+  /**
+   * Matches rows in which the value of the given column is equal to the given value.
+   */
+  public static ColumnValueFilter equalTo(String column, String value) {
+    return equalTo(Bytes.toBytes(column), Bytes.toBytes(value));
+  }
+
+  /**
+   * Matches rows in which the value of the given column is within the given range.
+   *
+   * @param column the column to filter on
+   * @param start the inclusive start of the range; {@code null} means no lower bound
+   * @param stop the exclusive stop of the range; {@code null} means no upper bound
+   */
+  public static ColumnValueFilter range(byte[] column, @Nullable byte[] start, @Nullable byte[] stop) {
+    return new ColumnValueFilter(Type.RANGE, checkNotNull(column, "column"), start, stop,
+                                 Collections.<ColumnValueFilter>emptyList());
+  }
+
+  /**
+   * Matches rows in which the value of the given column is within the given range.
+   *
+   * @param column the column to filter on
+   * @param start the inclusive start of the range; {@code null} means no lower bound
+   * @param stop the exclusive stop of the range; {@code null} means no upper bound
+   */
+  public static ColumnValueFilter range(String column, @Nullable String start, @Nullable String stop) {
+    return range(Bytes.toBytes(column), start == null ? null : Bytes.toBytes(start),
+                 stop == null ? null : Bytes.toBytes(stop));
+  }
+
+  /**
+   * Matches rows in which the value of the given column starts with the given prefix.
+   */
+  public static ColumnValueFilter prefix(byte[] column, byte[] prefix) {
+    return new ColumnValueFilter(Type.PREFIX, checkNotNull(column, "column"), checkNotNull(prefix, "prefix"), null,
+                                 Collections.<ColumnValueFilter>emptyList());
+  }
+
+  /**
+   * Matches rows in which the value of the given column starts with the given prefix.
+   */
+  public static ColumnValueFilter prefix(String column, String prefix) {
+    return prefix(Bytes.toBytes(column), Bytes.toBytes(prefix));
+  }
+
+  /**
+   * Matches rows that match all of the given filters.
+   */
+  public static ColumnValueFilter and(ColumnValueFilter... filters) {
+    return new ColumnValueFilter(Type.AND, null, null, null, copyOf(filters));
+  }
+
+  /**
+   * Matches rows that match at least one of the given filters.
+   */
+  public static ColumnValueFilter or(ColumnValueFilter... filters) {
+    return new ColumnValueFilter(Type.OR, null, null, null, copyOf(filters));
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * @return the column to filter on, or {@code null} for {@link Type#AND} and {@link Type#OR}
+   */
+  @Nullable
+  public byte[] getColumn() {
+    return column;
+  }
+
+  /**
+   * @return the value for {@link Type#EQUAL}, the prefix for {@link Type#PREFIX}, the start of the range for
+   *         {@link Type#RANGE}, or {@code null} otherwise
+   */
+  @Nullable
+  public byte[] getValue() {
+    return value;
+  }
+
+  /**
+   * @return the stop of the range for {@link Type#RANGE}, or {@code null} otherwise
+   */
+  @Nullable
+  public byte[] getStopValue() {
+    return stopValue;
+  }
+
+  /**
+   * @return the filters combined by {@link Type#AND} and {@link Type#OR}; empty for other types
+   */
+  public List<ColumnValueFilter> getFilters() {
+    return filters;
+  }
+
+  /**
+   * @return all columns referenced by this filter
+   */
+  public List<byte[]> getColumns() {
+    List<byte[]> columns = new ArrayList<>();
+    addColumns(columns);
+    return columns;
+  }
+
+  /**
+   * Evaluates this filter on a row.
+   *
+   * @param row the row to evaluate the filter on
+   * @return {@code true} if the row matches this filter
+   */
+  public boolean matches(Row row) {
+    switch (type) {
+      case EQUAL: {
+        byte[] actual = row.get(column);
+        return actual != null && Bytes.equals(actual, value);
+      }
+      case RANGE: {
+        byte[] actual = row.get(column);
+        return actual != null
+          && (value == null || Bytes.compareTo(actual, value) >= 0)
+          && (stopValue == null || Bytes.compareTo(actual, stopValue) < 0);
+      }
+      case PREFIX: {
+        byte[] actual = row.get(column);
+        return actual != null && Bytes.startsWith(actual, value);
+      }
+      case AND: {
+        for (ColumnValueFilter filter : filters) {
+          if (!filter.matches(row)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      case OR: {
+        for (ColumnValueFilter filter : filters) {
+          if (filter.matches(row)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      default:
+        throw new IllegalStateException("Unknown filter type " + type);
+    }
+  }
+
+  private void addColumns(List<byte[]> columns) {
+    if (column != null) {
+      columns.add(column);
+    }
+    for (ColumnValueFilter filter : filters) {
+      filter.addColumns(columns);
+    }
+  }
+
+  private static List<ColumnValueFilter> copyOf(ColumnValueFilter[] filters) {
+    for (ColumnValueFilter filter : filters) {
+      checkNotNull(filter, "filter");
+    }
+    return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(filters)));
+  }
+
+  private static <T> T checkNotNull(T value, String name) {
+    if (value == null) {
+      throw new IllegalArgumentException(name + " must not be null");
+    }
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    switch (type) {
+      case AND:
+      case OR:
+        return type + filters.toString();
+      default:
+        return type + "{" +
+          "column=" + Bytes.toStringBinary(column) +
+          ", value=" + Bytes.toStringBinary(value) +
+          (type == Type.RANGE ? ", stopValue=" + Bytes.toStringBinary(stopValue) : "") +
+          '}';
+    }
+  }
+}
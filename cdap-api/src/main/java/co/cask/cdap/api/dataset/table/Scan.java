@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -32,6 +32,8 @@ public class Scan {
   private final byte[] stopRow;
   @Nullable
   private final Filter filter;
+  @Nullable
+  private final byte[][] columns;
 
   /**
    * Creates {@link Scan} for a given start and stop row keys.
@@ -49,9 +51,23 @@ public class Scan {
    * @param filter filter to be used on scan
    */
   public Scan(@Nullable byte[] startRow, @Nullable byte[] stopRow, @Nullable Filter filter) {
+    this(startRow, stopRow, filter, null);
+  }
+
+  /**
+   * Creates {@link Scan} for a given start and stop row keys, filter and columns to return. Rows that have none
+   * of the given columns are not returned. The filter can refer to columns that are not returned.
+   * @param startRow start row inclusive; {@code null} means start from first row of the table
+   * @param stopRow stop row exclusive; {@code null} means scan all rows to the end of the table
+   * @param filter filter to be used on scan
+   * @param columns columns to return; {@code null} means all columns
+   */
+  public Scan(@Nullable byte[] startRow, @Nullable byte[] stopRow, @Nullable Filter filter,
+              @Nullable byte[][] columns) {
     this.startRow = startRow;
     this.stopRow = stopRow;
     this.filter = filter;
+    this.columns = columns;
   }
 
   @Nullable
@@ -69,12 +85,18 @@ public class Scan {
     return filter;
   }
 
+  @Nullable
+  public byte[][] getColumns() {
+    return columns;
+  }
+
   @Override
   public String toString() {
     return "Scan{" +
       "startRow=" + Bytes.toStringBinary(startRow) +
       ", stopRow=" + Bytes.toStringBinary(stopRow) +
       ", filter=" + filter +
+      ", columns=" + (columns == null ? null : columns.length) +
       '}';
   }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,15 +19,30 @@ package co.cask.cdap.api.dataset.table;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.batch.Split;
 
+import javax.annotation.Nullable;
+
 /**
- * Table splits are simply a start and stop key.
+ * Table splits are simply a start and stop key, with an optional filter on the values of the rows to read.
  */
 public class TableSplit extends Split {
   private final byte[] start, stop;
+  private final ColumnValueFilter filter;
 
   public TableSplit(byte[] start, byte[] stop) {
+    this(start, stop, null);
+  }
+
+  /**
+   * Creates a split that only reads the rows matching the given filter.
+   *
+   * @param start the start key of the split
+   * @param stop the stop key of the split
+   * @param filter the filter to apply to the rows in the split, or {@code null} to read all rows
+   */
+  public TableSplit(byte[] start, byte[] stop, @Nullable ColumnValueFilter filter) {
     this.start = start;
     this.stop = stop;
+    this.filter = filter;
   }
 
   public byte[] getStart() {
@@ -38,11 +53,20 @@ public class TableSplit extends Split {
     return stop;
   }
 
+  /**
+   * @return the filter to apply to the rows in the split, or {@code null} if all rows are read
+   */
+  @Nullable
+  public ColumnValueFilter getFilter() {
+    return filter;
+  }
+
   @Override
   public String toString() {
     return "TableSplit{" +
       "start=" + Bytes.toStringBinary(start) +
       ", stop=" + Bytes.toStringBinary(stop) +
+      (filter == null ? "" : ", filter=" + filter) +
       '}';
   }
 }
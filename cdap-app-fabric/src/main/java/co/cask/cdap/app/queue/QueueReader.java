@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -40,4 +40,27 @@ public interface QueueReader<T> {
    * @throws InterruptedException If dequeue is interrupted.
    */
   InputDatum<T> dequeue(long timeout, TimeUnit timeoutUnit) throws IOException, InterruptedException;
+
+  /**
+   * Reads an input of up to the given number of batches from the queue. Calling this method with {@code batches}
+   * equals to {@code 1} is the same as calling {@link #dequeue(long, TimeUnit)}.
+   *
+   * @param timeout Maximum time for trying to have a non-empty dequeue result.
+   * @param timeoutUnit Unit for the timeout.
+   * @param batches Maximum number of batches to read. Must be > 0.
+   *
+   * @return A {@link InputDatum} which represents the input being read from the queue.
+   * @throws IOException If fails to dequeue.
+   * @throws InterruptedException If dequeue is interrupted.
+   */
+  InputDatum<T> dequeue(long timeout, TimeUnit timeoutUnit, int batches) throws IOException, InterruptedException;
+
+  /**
+   * Checks whether a {@link #dequeue(long, TimeUnit)} may return a non-empty input. This method is called without
+   * a transaction, hence it can only give a hint.
+   *
+   * @return {@code false} if a dequeue is known to return an empty input, {@code true} otherwise.
+   * @throws IOException If fails to check the queue.
+   */
+  boolean mayHaveInput() throws IOException;
 }
@@ -26,8 +26,8 @@ import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
-import co.cask.cdap.common.lang.jar.BundleJarUtil;
 import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.internal.app.program.ForwardingProgram;
 import co.cask.cdap.internal.app.runtime.AbstractListener;
 import co.cask.cdap.internal.app.runtime.BasicArguments;
 import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
@@ -35,6 +35,7 @@ import co.cask.cdap.internal.app.runtime.SimpleProgramOptions;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactDetail;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactRepository;
 import co.cask.cdap.internal.app.runtime.artifact.Artifacts;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.internal.app.runtime.service.SimpleRuntimeInfo;
 import co.cask.cdap.proto.ProgramType;
 import co.cask.cdap.proto.id.ArtifactId;
@@ -48,7 +49,6 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.io.Closeables;
-import com.google.common.io.Files;
 import com.google.common.util.concurrent.AbstractIdleService;
 import org.apache.twill.api.RunId;
 import org.apache.twill.common.Threads;
@@ -141,19 +141,28 @@ public abstract class AbstractProgramRuntimeService extends AbstractIdleService
     final Location programJarLocation = artifactDetail.getDescriptor().getLocation();
 
     // Take a snapshot of the JAR file to avoid program mutation
-    final File unpackedDir = new File(tempDir, "unpacked");
-    unpackedDir.mkdirs();
+    File programJar = Locations.linkOrCopy(programJarLocation, new File(tempDir, "program.jar"));
+
+    // Unpack the JAR file through the shared cache. The unpacked directory is released when the program is closed.
+    final UnpackedArtifactCache.Lease unpacked =
+      UnpackedArtifactCache.getInstance(cConf).acquire(Locations.toLocation(programJar));
     try {
-      File programJar = Locations.linkOrCopy(programJarLocation, new File(tempDir, "program.jar"));
-      // Unpack the JAR file
-      BundleJarUtil.unJar(Files.newInputStreamSupplier(programJar), unpackedDir);
-    } catch (IOException ioe) {
-      throw ioe;
-    } catch (Exception e) {
-      // should not happen
-      throw Throwables.propagate(e);
+      Program program = Programs.create(cConf, programRunner, programDescriptor,
+                                        programJarLocation, unpacked.getDirectory());
+      return new ForwardingProgram(program) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            unpacked.close();
+          }
+        }
+      };
+    } catch (Throwable t) {
+      unpacked.close();
+      throw t;
     }
-    return Programs.create(cConf, programRunner, programDescriptor, programJarLocation, unpackedDir);
   }
 
   private Runnable createCleanupTask(final Object... resources) {
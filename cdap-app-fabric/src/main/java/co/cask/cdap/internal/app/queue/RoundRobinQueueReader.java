@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -36,20 +36,34 @@ import java.util.concurrent.TimeUnit;
 public final class RoundRobinQueueReader<T> extends TimeTrackingQueueReader<T> {
 
   private final InputDatum<T> nullInput = new NullInputDatum<>();
+  private final Iterable<QueueReader<T>> queueReaders;
   private final Iterator<QueueReader<T>> readers;
 
   public RoundRobinQueueReader(Iterable<QueueReader<T>> readers) {
+    this.queueReaders = readers;
     this.readers = Iterables.cycle(readers).iterator();
   }
 
-  public InputDatum<T> tryDequeue(long timeout, TimeUnit timeoutUnit) throws IOException, InterruptedException {
+  @Override
+  public boolean mayHaveInput() throws IOException {
+    for (QueueReader<T> reader : queueReaders) {
+      if (reader.mayHaveInput()) {
+        return true;
+      }
+    }
+    // Without any reader, a dequeue always gives an empty input
+    return false;
+  }
+
+  public InputDatum<T> tryDequeue(long timeout, TimeUnit timeoutUnit,
+                                  int batches) throws IOException, InterruptedException {
     if (!readers.hasNext()) {
       return nullInput;
     }
 
     // Read an input from the underlying QueueReader
     QueueReader<T> begin = readers.next();
-    InputDatum<T> input = begin.dequeue(timeout, timeoutUnit);
+    InputDatum<T> input = begin.dequeue(timeout, timeoutUnit, batches);
 
     // While the input is empty, keep trying to read from subsequent readers,
     // until a non-empty input is read or it loop back to the beginning reader.
@@ -58,7 +72,7 @@ public final class RoundRobinQueueReader<T> extends TimeTrackingQueueReader<T> {
       if (reader == begin) {
         return input;
       }
-      input = reader.dequeue(0, TimeUnit.MILLISECONDS);
+      input = reader.dequeue(0, TimeUnit.MILLISECONDS, batches);
     }
     return input;
   }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -41,4 +41,14 @@ public class SingleItemQueueReader<T> implements QueueReader<T> {
     input.incrementRetry();
     return input;
   }
+
+  @Override
+  public InputDatum<T> dequeue(long timeout, TimeUnit timeoutUnit, int batches) {
+    return dequeue(timeout, timeoutUnit);
+  }
+
+  @Override
+  public boolean mayHaveInput() {
+    return true;
+  }
 }
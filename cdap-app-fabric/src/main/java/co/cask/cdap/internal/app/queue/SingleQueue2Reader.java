@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -49,8 +49,13 @@ public final class SingleQueue2Reader<T> extends TimeTrackingQueueReader<T> {
   }
 
   @Override
-  public InputDatum<T> tryDequeue(long timeout, TimeUnit timeoutUnit) throws IOException {
+  public InputDatum<T> tryDequeue(long timeout, TimeUnit timeoutUnit, int batches) throws IOException {
     QueueConsumer consumer = consumerSupplier.get();
-    return new BasicInputDatum<>(consumer.getQueueName(), consumer.dequeue(batchSize), decoder);
+    return new BasicInputDatum<>(consumer.getQueueName(), consumer.dequeue(batchSize * batches), decoder);
+  }
+
+  @Override
+  public boolean mayHaveInput() throws IOException {
+    return consumerSupplier.get().mayHaveEntries();
   }
 }
@@ -61,6 +61,12 @@ public final class StreamQueueReader<T> implements QueueReader<T> {
 
   @Override
   public InputDatum<T> dequeue(long timeout, TimeUnit timeoutUnit) throws IOException, InterruptedException {
+    return dequeue(timeout, timeoutUnit, 1);
+  }
+
+  @Override
+  public InputDatum<T> dequeue(long timeout, TimeUnit timeoutUnit,
+                               int batches) throws IOException, InterruptedException {
     try {
       // Ensure that the user has READ permission to access the stream
       authorizationEnforcer.enforce(streamId, principal, Action.READ);
@@ -70,6 +76,12 @@ public final class StreamQueueReader<T> implements QueueReader<T> {
     }
     StreamConsumer consumer = consumerSupplier.get();
     return new BasicInputDatum<>(QueueName.fromStream(consumer.getStreamId()),
-                                 consumer.poll(batchSize, timeout, timeoutUnit), eventTransform);
+                                 consumer.poll(batchSize * batches, timeout, timeoutUnit), eventTransform);
+  }
+
+  @Override
+  public boolean mayHaveInput() {
+    // Stream consumers don't support checking for new events without a transaction
+    return true;
   }
 }
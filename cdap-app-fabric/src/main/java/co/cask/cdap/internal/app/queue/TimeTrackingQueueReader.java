@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -35,12 +35,18 @@ public abstract class TimeTrackingQueueReader<T> implements QueueReader<T> {
   @Override
   public final InputDatum<T> dequeue(long timeout,
                                      TimeUnit timeoutUnit) throws IOException, InterruptedException {
+    return dequeue(timeout, timeoutUnit, 1);
+  }
+
+  @Override
+  public final InputDatum<T> dequeue(long timeout, TimeUnit timeoutUnit,
+                                     int batches) throws IOException, InterruptedException {
     Stopwatch stopwatch = new Stopwatch();
     stopwatch.start();
     long sleepNano = computeSleepNano(timeout, timeoutUnit);
     long timeoutNano = timeoutUnit.toNanos(timeout);
 
-    InputDatum<T> result = tryDequeue(timeout, timeoutUnit);
+    InputDatum<T> result = tryDequeue(timeout, timeoutUnit, batches);
     while (!result.needProcess()) {
       if (timeoutNano <= 0) {
         break;
@@ -51,15 +57,23 @@ public abstract class TimeTrackingQueueReader<T> implements QueueReader<T> {
         break;
       }
       TimeUnit.NANOSECONDS.sleep(sleepNano);
-      result = tryDequeue(timeoutNano - elapsedNano, TimeUnit.NANOSECONDS);
+      result = tryDequeue(timeoutNano - elapsedNano, TimeUnit.NANOSECONDS, batches);
     }
     return result;
   }
 
+  /**
+   * Always returns {@code true}. Children class can override it to provide a better hint.
+   */
+  @Override
+  public boolean mayHaveInput() throws IOException {
+    return true;
+  }
+
   /**
    * Children class override it to try to dequeue.
    */
-  protected abstract InputDatum<T> tryDequeue(long timeout, TimeUnit timeoutUnit)
+  protected abstract InputDatum<T> tryDequeue(long timeout, TimeUnit timeoutUnit, int batches)
                                               throws IOException, InterruptedException;
 
   private long computeSleepNano(long timeout, TimeUnit unit) {
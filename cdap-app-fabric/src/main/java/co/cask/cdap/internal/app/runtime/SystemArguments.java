@@ -39,6 +39,7 @@ public final class SystemArguments {
   private static final String CORES_KEY = "system.resources.cores";
   private static final String LOG_LEVEL = "system.log.level";
   public static final String TRANSACTION_TIMEOUT = "system.data.tx.timeout";
+  public static final String FLOWLET_COMMIT_BATCHES = "system.flowlet.commit.batches";
 
   /**
    * Set the log level for the {@link LogAppenderInitializer}.
@@ -88,6 +89,16 @@ public final class SystemArguments {
     return timeout != null ? timeout : cConf.getInt(TxConstants.Manager.CFG_TX_TIMEOUT);
   }
 
+  /**
+   * Returns the maximum number of input batches a flowlet can process in one transaction.
+   *
+   * @returns the integer value of the argument system.flowlet.commit.batches, or {@code 1} if it is not given.
+   */
+  public static int getFlowletCommitBatches(Map<String, String> args) {
+    Integer batches = getPositiveInt(args, FLOWLET_COMMIT_BATCHES, "flowlet commit batches");
+    return batches != null ? batches : 1;
+  }
+
   /**
    * Returns the {@link Resources} based on configurations in the given arguments.
    *
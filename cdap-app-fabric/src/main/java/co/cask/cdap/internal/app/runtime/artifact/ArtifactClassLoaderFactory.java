@@ -20,10 +20,7 @@ import co.cask.cdap.app.runtime.ProgramClassLoaderProvider;
 import co.cask.cdap.app.runtime.ProgramRunner;
 import co.cask.cdap.app.runtime.ProgramRunnerFactory;
 import co.cask.cdap.common.conf.CConfiguration;
-import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.lang.FilterClassLoader;
-import co.cask.cdap.common.lang.jar.BundleJarUtil;
-import co.cask.cdap.common.utils.DirUtils;
 import co.cask.cdap.internal.app.deploy.pipeline.NamespacedImpersonator;
 import co.cask.cdap.internal.app.runtime.ProgramClassLoader;
 import co.cask.cdap.proto.ProgramType;
@@ -39,21 +36,20 @@ import java.io.IOException;
 import java.util.concurrent.Callable;
 
 /**
- * Given an artifact, creates a {@link CloseableClassLoader} from it. Takes care of unpacking the artifact and
- * cleaning up the directory when the classloader is closed.
+ * Given an artifact, creates a {@link CloseableClassLoader} from it. Takes care of unpacking the artifact through
+ * the {@link UnpackedArtifactCache} and releasing the unpacked directory when the classloader is closed.
  */
 final class ArtifactClassLoaderFactory {
   private static final Logger LOG = LoggerFactory.getLogger(ArtifactClassLoaderFactory.class);
 
   private final CConfiguration cConf;
   private final ProgramRunnerFactory programRunnerFactory;
-  private final File tmpDir;
+  private final UnpackedArtifactCache unpackCache;
 
   ArtifactClassLoaderFactory(CConfiguration cConf, ProgramRunnerFactory programRunnerFactory) {
     this.cConf = cConf;
     this.programRunnerFactory = programRunnerFactory;
-    this.tmpDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
-                           cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
+    this.unpackCache = UnpackedArtifactCache.getInstance(cConf);
   }
 
   /**
@@ -102,35 +98,38 @@ final class ArtifactClassLoaderFactory {
   }
 
   /**
-   * Unpack the given {@code artifactLocation} to a temporary directory and call
+   * Unpack the given {@code artifactLocation} with the {@link UnpackedArtifactCache} and call
    * {@link #createClassLoader(File)} to create the {@link ClassLoader}.
    *
    * @param artifactLocation the location of the artifact to create the classloader from
    * @return a closeable classloader based off the specified artifact; on closing the returned {@link ClassLoader},
-   *         all temporary resources created for the classloader will be removed
+   *         the unpacked directory is released back to the cache
    * @throws IOException if there was an error copying or unpacking the artifact
    * @see #createClassLoader(File)
    */
   CloseableClassLoader createClassLoader(final Location artifactLocation,
                                          NamespacedImpersonator namespacedImpersonator) throws IOException {
     try {
-      final File unpackDir = namespacedImpersonator.impersonate(new Callable<File>() {
-        @Override
-        public File call() throws IOException {
-          return BundleJarUtil.unJar(artifactLocation, DirUtils.createTempDir(tmpDir));
-        }
-      });
+      final UnpackedArtifactCache.Lease lease = namespacedImpersonator.impersonate(
+        new Callable<UnpackedArtifactCache.Lease>() {
+          @Override
+          public UnpackedArtifactCache.Lease call() throws IOException {
+            return unpackCache.acquire(artifactLocation);
+          }
+        });
 
-      final CloseableClassLoader classLoader = createClassLoader(unpackDir);
+      final CloseableClassLoader classLoader;
+      try {
+        classLoader = createClassLoader(lease.getDirectory());
+      } catch (Throwable t) {
+        lease.close();
+        throw t;
+      }
       return new CloseableClassLoader(classLoader, new Closeable() {
         @Override
-        public void close() throws IOException {
-          try {
-            Closeables.closeQuietly(classLoader);
-            DirUtils.deleteDirectoryContents(unpackDir);
-          } catch (IOException e) {
-            LOG.warn("Failed to delete directory {}", unpackDir, e);
-          }
+        public void close() {
+          Closeables.closeQuietly(classLoader);
+          lease.close();
         }
       });
     } catch (Exception e) {
@@ -120,11 +120,9 @@ final class ArtifactInspector {
     Location artifactLocation = Locations.toLocation(artifactFile);
 
     Path stageDir = Files.createTempDirectory(tmpDir, artifactFile.getName());
-    try {
-      File unpackedDir = BundleJarUtil.unJar(artifactLocation,
-                                             Files.createTempDirectory(stageDir, "unpacked-").toFile());
-
-      try (CloseableClassLoader artifactClassLoader = artifactClassLoaderFactory.createClassLoader(unpackedDir)) {
+    try (UnpackedArtifactCache.Lease unpacked = UnpackedArtifactCache.getInstance(cConf).acquire(artifactLocation)) {
+      try (CloseableClassLoader artifactClassLoader =
+             artifactClassLoaderFactory.createClassLoader(unpacked.getDirectory())) {
         ArtifactClasses.Builder builder = inspectApplications(artifactId, ArtifactClasses.builder(),
                                                               artifactLocation, artifactClassLoader);
 
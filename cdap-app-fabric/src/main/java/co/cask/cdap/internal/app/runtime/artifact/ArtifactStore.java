@@ -29,9 +29,12 @@ import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.plugin.PluginClass;
 import co.cask.cdap.common.ArtifactAlreadyExistsException;
 import co.cask.cdap.common.ArtifactNotFoundException;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.namespace.NamespacedLocationFactory;
 import co.cask.cdap.common.security.Impersonator;
@@ -55,14 +58,12 @@ import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
-import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.InputSupplier;
 import com.google.gson.Gson;
@@ -80,6 +81,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -88,6 +90,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /**
  * This class manages artifacts as well as metadata for each artifact. Artifacts and their metadata cannot be changed
@@ -141,12 +144,28 @@ import java.util.concurrent.Callable;
  *
  * With this schema we can perform a scan to look up AppClasses, a scan to look up plugins that extend a specific
  * artifact, and a scan to look up artifacts.
+ *
+ * Plugin lookups are answered from an in-memory {@link PluginClassIndex} instead, which is built from the artifact
+ * rows on first use and updated on every change made through this class. Every change also increments a counter
+ * for the changed artifact in the generation row:
+ *
+ * rowkey                            columns
+ * g                                 base -> 3
+ *                                   system:etlbatch:3.1.0 -> 1
+ *                                   default:custom-sources:1.0.0 -> 2
+ *
+ * The generation of the meta table is the sum of the counters, so that changes made by other processes are
+ * detected with a single row read and cause the index to be rebuilt. Having one counter per artifact, rather than
+ * a single counter, keeps changes to different artifacts from conflicting with each other. When an artifact is
+ * deleted, its counter is folded into the base counter, so that the row only has counters for existing artifacts.
  */
 public class ArtifactStore {
   private static final String ARTIFACTS_PATH = "artifacts";
   private static final String ARTIFACT_PREFIX = "r";
   private static final String PLUGIN_PREFIX = "p";
   private static final String APPCLASS_PREFIX = "a";
+  private static final byte[] GENERATION_ROW = Bytes.toBytes("g");
+  private static final byte[] GENERATION_BASE_COLUMN = Bytes.toBytes("base");
   private static final DatasetId META_ID = NamespaceId.SYSTEM.dataset("artifact.meta");
   private static final DatasetProperties META_PROPERTIES =
     DatasetProperties.builder().add(Table.PROPERTY_CONFLICT_LEVEL, ConflictDetection.COLUMN.name()).build();
@@ -161,6 +180,10 @@ public class ArtifactStore {
   private final DatasetFramework datasetFramework;
   private final Transactional transactional;
   private final Impersonator impersonator;
+  private final Object pluginIndexLock = new Object();
+  // guarded by pluginIndexLock
+  private PluginClassIndex pluginIndex;
+  private volatile MetricsContext metricsContext;
 
   @Inject
   ArtifactStore(DatasetFramework datasetFramework,
@@ -180,6 +203,14 @@ public class ArtifactStore {
     this.impersonator = impersonator;
   }
 
+  @SuppressWarnings("unused")
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsContext = metricsCollectionService.getContext(
+      ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+                      Constants.Metrics.Tag.COMPONENT, Constants.Service.APP_FABRIC_HTTP));
+  }
+
   /**
    * Adds datasets and types to the given {@link DatasetFramework} used by artifact store.
    *
@@ -422,20 +453,11 @@ public class ArtifactStore {
       return Transactions.execute(transactional, new TxCallable<SortedMap<ArtifactDescriptor, Set<PluginClass>>>() {
         @Override
         public SortedMap<ArtifactDescriptor, Set<PluginClass>> call(DatasetContext context) throws Exception {
-          Table metaTable = getMetaTable(context);
-
-          SortedMap<ArtifactDescriptor, Set<PluginClass>> plugins = getPluginsInArtifact(metaTable, parentArtifactId);
+          SortedMap<ArtifactDescriptor, Set<PluginClass>> plugins =
+            getPluginIndex(getMetaTable(context)).getPluginClasses(namespace, parentArtifactId, null);
           if (plugins == null) {
             throw new ArtifactNotFoundException(parentArtifactId.toEntityId());
           }
-
-          // should be able to scan by column prefix as well... instead, we have to filter out by namespace
-          try (Scanner scanner = metaTable.scan(scanPlugins(parentArtifactId))) {
-            Row row;
-            while ((row = scanner.next()) != null) {
-              addPluginsToMap(namespace, parentArtifactId, plugins, row);
-            }
-          }
           return Collections.unmodifiableSortedMap(plugins);
         }
       });
@@ -464,26 +486,11 @@ public class ArtifactStore {
       return Transactions.execute(transactional, new TxCallable<SortedMap<ArtifactDescriptor, Set<PluginClass>>>() {
         @Override
         public SortedMap<ArtifactDescriptor, Set<PluginClass>> call(DatasetContext context) throws Exception {
-          Table metaTable = getMetaTable(context);
-          SortedMap<ArtifactDescriptor, Set<PluginClass>> plugins = getPluginsInArtifact(
-            metaTable, parentArtifactId, new Predicate<PluginClass>() {
-              @Override
-              public boolean apply(PluginClass input) {
-                return type.equals(input.getType());
-              }
-            });
-
+          SortedMap<ArtifactDescriptor, Set<PluginClass>> plugins =
+            getPluginIndex(getMetaTable(context)).getPluginClasses(namespace, parentArtifactId, type);
           if (plugins == null) {
             throw new ArtifactNotFoundException(parentArtifactId.toEntityId());
           }
-
-          try (Scanner scanner = metaTable.scan(scanPlugins(parentArtifactId, type))) {
-            Row row;
-            while ((row = scanner.next()) != null) {
-              addPluginsToMap(namespace, parentArtifactId, plugins, row);
-            }
-          }
-
           return Collections.unmodifiableSortedMap(plugins);
         }
       });
@@ -514,44 +521,11 @@ public class ArtifactStore {
         Transactions.execute(transactional, new TxCallable<SortedMap<ArtifactDescriptor, PluginClass>>() {
           @Override
           public SortedMap<ArtifactDescriptor, PluginClass> call(DatasetContext context) throws Exception {
-            Table metaTable = getMetaTable(context);
-
-            // check parent exists
-            ArtifactCell parentCell = new ArtifactCell(parentArtifactId);
-            byte[] parentDataBytes = metaTable.get(parentCell.rowkey, parentCell.column);
-            if (parentDataBytes == null) {
+            SortedMap<ArtifactDescriptor, PluginClass> plugins =
+              getPluginIndex(getMetaTable(context)).getPluginClasses(namespace, parentArtifactId, type, name);
+            if (plugins == null) {
               throw new ArtifactNotFoundException(parentArtifactId.toEntityId());
             }
-
-            SortedMap<ArtifactDescriptor, PluginClass> plugins = new TreeMap<>();
-
-            // check if any plugins of that type and name exist in the parent artifact already
-            ArtifactData parentData = GSON.fromJson(Bytes.toString(parentDataBytes), ArtifactData.class);
-            Set<PluginClass> parentPlugins = parentData.meta.getClasses().getPlugins();
-            for (PluginClass pluginClass : parentPlugins) {
-              if (pluginClass.getName().equals(name) && pluginClass.getType().equals(type)) {
-                ArtifactDescriptor parentDescriptor = new ArtifactDescriptor(
-                  parentArtifactId.toArtifactId(), locationFactory.create(parentData.locationURI));
-                plugins.put(parentDescriptor, pluginClass);
-                break;
-              }
-            }
-
-            PluginKey pluginKey = new PluginKey(parentArtifactId.getNamespace(),
-                                                parentArtifactId.getName(), type, name);
-            Row row = metaTable.get(pluginKey.getRowKey());
-            if (!row.isEmpty()) {
-              // column is the artifact name and version, value is the serialized PluginClass
-              for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
-                ImmutablePair<ArtifactDescriptor, PluginClass> pluginEntry =
-                  getPluginEntry(namespace, parentArtifactId, column);
-
-                if (pluginEntry != null) {
-                  plugins.put(pluginEntry.getFirst(), pluginEntry.getSecond());
-                }
-              }
-            }
-
             return Collections.unmodifiableSortedMap(plugins);
           }
         });
@@ -578,9 +552,10 @@ public class ArtifactStore {
     throws ArtifactNotFoundException, IOException {
 
     try {
-      transactional.execute(new TxRunnable() {
+      ImmutablePair<Long, ArtifactData> updated = Transactions.execute(
+        transactional, new TxCallable<ImmutablePair<Long, ArtifactData>>() {
         @Override
-        public void run(DatasetContext context) throws Exception {
+        public ImmutablePair<Long, ArtifactData> call(DatasetContext context) throws Exception {
           ArtifactCell artifactCell = new ArtifactCell(artifactId);
           Table metaTable = getMetaTable(context);
           byte[] existingMetaBytes = metaTable.get(artifactCell.rowkey, artifactCell.column);
@@ -594,8 +569,11 @@ public class ArtifactStore {
           ArtifactData updatedData = new ArtifactData(locationFactory.create(old.locationURI), updatedMeta);
           // write artifact metadata
           metaTable.put(artifactCell.rowkey, artifactCell.column, Bytes.toBytes(GSON.toJson(updatedData)));
+          return ImmutablePair.of(incrementGeneration(metaTable, new ArtifactColumn(artifactId).getColumn()),
+                                  updatedData);
         }
       });
+      updatePluginIndex(updated.getFirst(), artifactId, updated.getSecond());
     } catch (TransactionFailureException e) {
       throw Transactions.propagate(e, ArtifactNotFoundException.class, IOException.class);
     }
@@ -647,9 +625,10 @@ public class ArtifactStore {
 
     // now try and write the metadata for the artifact
     try {
-      transactional.execute(new TxRunnable() {
+      final ArtifactData data = new ArtifactData(destination, artifactMeta);
+      long generation = Transactions.execute(transactional, new TxCallable<Long>() {
         @Override
-        public void run(DatasetContext context) throws Exception {
+        public Long call(DatasetContext context) throws Exception {
           // we have to check that the metadata doesn't exist again since somebody else may have written
           // the artifact while we were copying the artifact to the filesystem.
           Table metaTable = getMetaTable(context);
@@ -660,7 +639,6 @@ public class ArtifactStore {
             throw new ArtifactAlreadyExistsException(artifactId.toEntityId());
           }
 
-          ArtifactData data = new ArtifactData(destination, artifactMeta);
           // cleanup existing metadata if it exists and this is a snapshot
           // if we are overwriting a previous snapshot, need to clean up the old snapshot data
           // this means cleaning up the old jar, and deleting plugin and app rows.
@@ -669,8 +647,10 @@ public class ArtifactStore {
           }
           // write artifact metadata
           writeMeta(metaTable, artifactId, data);
+          return incrementGeneration(metaTable, new ArtifactColumn(artifactId).getColumn());
         }
       });
+      updatePluginIndex(generation, artifactId, data);
 
       return new ArtifactDetail(new ArtifactDescriptor(artifactId.toArtifactId(), destination), artifactMeta);
     } catch (TransactionConflictException e) {
@@ -717,20 +697,24 @@ public class ArtifactStore {
 
     // delete everything in a transaction
     try {
-      transactional.execute(new TxRunnable() {
+      Long generation = Transactions.execute(transactional, new TxCallable<Long>() {
         @Override
-        public void run(DatasetContext context) throws Exception {
+        public Long call(DatasetContext context) throws Exception {
           // first look up details to get plugins and apps in the artifact
           ArtifactCell artifactCell = new ArtifactCell(artifactId);
           Table metaTable = getMetaTable(context);
           byte[] detailBytes = metaTable.get(artifactCell.rowkey, artifactCell.column);
           if (detailBytes == null) {
             // ok there is nothing to delete, we're done
-            return;
+            return null;
           }
           deleteMeta(metaTable, artifactId, detailBytes);
+          return removeGeneration(metaTable, Collections.singleton(new ArtifactColumn(artifactId).getColumn()));
         }
       });
+      if (generation != null) {
+        updatePluginIndex(generation, artifactId, null);
+      }
     } catch (TransactionFailureException e) {
       throw Transactions.propagate(e, IOException.class);
     }
@@ -753,9 +737,15 @@ public class ArtifactStore {
         public void run(DatasetContext context) throws Exception {
           // delete all rows about artifacts in the namespace
           Table metaTable = getMetaTable(context);
+          List<byte[]> generationColumns = new ArrayList<>();
           Row row;
           try (Scanner scanner = metaTable.scan(scanArtifacts(namespace))) {
             while ((row = scanner.next()) != null) {
+              ArtifactKey artifactKey = ArtifactKey.parse(row.getRow());
+              for (byte[] version : row.getColumns().keySet()) {
+                Id.Artifact artifactId = Id.Artifact.from(namespaceId, artifactKey.name, Bytes.toString(version));
+                generationColumns.add(new ArtifactColumn(artifactId).getColumn());
+              }
               metaTable.delete(row.getRow());
             }
           }
@@ -796,6 +786,7 @@ public class ArtifactStore {
               }
             }
           }
+          removeGeneration(metaTable, generationColumns);
         }
       });
     } catch (TransactionFailureException e) {
@@ -882,92 +873,154 @@ public class ArtifactStore {
   }
 
 
-  private SortedMap<ArtifactDescriptor, Set<PluginClass>> getPluginsInArtifact(Table table, Id.Artifact artifactId) {
-    return getPluginsInArtifact(table, artifactId, Predicates.<PluginClass>alwaysTrue());
-  }
-
-  private SortedMap<ArtifactDescriptor, Set<PluginClass>> getPluginsInArtifact(Table table, Id.Artifact artifactId,
-                                                                               Predicate<PluginClass> filter) {
-    SortedMap<ArtifactDescriptor, Set<PluginClass>> result = new TreeMap<>();
+  /**
+   * Returns the plugin index for the state of the meta table visible to the current transaction. The index is
+   * rebuilt if the meta table was changed by another process since the index was last updated.
+   */
+  private PluginClassIndex getPluginIndex(Table metaTable) {
+    long generation = getGeneration(metaTable);
+    synchronized (pluginIndexLock) {
+      // An index with a newer generation reflects changes committed after the current transaction started
+      if (pluginIndex != null && pluginIndex.getGeneration() >= generation) {
+        return pluginIndex;
+      }
+    }
 
-    // Make sure the artifact exists
-    ArtifactCell parentCell = new ArtifactCell(artifactId);
-    byte[] parentDataBytes = table.get(parentCell.rowkey, parentCell.column);
-    if (parentDataBytes == null) {
-      return null;
+    // Build the index without holding the lock, so that lookups and changes are not blocked by the scan
+    Stopwatch stopwatch = new Stopwatch().start();
+    PluginClassIndex index = new PluginClassIndex(generation);
+    try (Scanner scanner = metaTable.scan(new Scan(Bytes.toBytes(ARTIFACT_PREFIX + ":"),
+                                                   Bytes.toBytes(ARTIFACT_PREFIX + ";")))) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        ArtifactKey artifactKey = ArtifactKey.parse(row.getRow());
+        for (Map.Entry<byte[], byte[]> columnVal : row.getColumns().entrySet()) {
+          Id.Artifact artifactId = Id.Artifact.from(artifactKey.namespace.toId(), artifactKey.name,
+                                                    Bytes.toString(columnVal.getKey()));
+          ArtifactData data = GSON.fromJson(Bytes.toString(columnVal.getValue()), ArtifactData.class);
+          index.add(artifactId, new ArtifactDescriptor(artifactId.toArtifactId(),
+                                                       locationFactory.create(data.locationURI)), data.meta);
+        }
+      }
+    }
+    synchronized (pluginIndexLock) {
+      // Another thread may have installed or updated an index to a newer generation in the meantime
+      if (pluginIndex == null || pluginIndex.getGeneration() < generation) {
+        pluginIndex = index;
+      }
     }
 
-    // include any plugin classes that are inside the artifact itself
-    ArtifactData parentData = GSON.fromJson(Bytes.toString(parentDataBytes), ArtifactData.class);
-    Set<PluginClass> parentPlugins = parentData.meta.getClasses().getPlugins();
+    MetricsContext metricsContext = this.metricsContext;
+    if (metricsContext != null) {
+      metricsContext.gauge(Constants.Metrics.Name.Artifact.PLUGIN_INDEX_BUILD_MS, stopwatch.elapsedMillis());
+      metricsContext.gauge(Constants.Metrics.Name.Artifact.PLUGIN_INDEX_SIZE, index.size());
+    }
+    return index;
+  }
 
-    Set<PluginClass> filteredPlugins = Sets.newLinkedHashSet(Iterables.filter(parentPlugins, filter));
+  /**
+   * Applies a change committed by this instance to the plugin index.
+   *
+   * @param generation the generation of the meta table after the change
+   * @param artifactId the id of the artifact that was changed
+   * @param data the new data of the artifact, or {@code null} if the artifact was deleted
+   */
+  private void updatePluginIndex(long generation, Id.Artifact artifactId, @Nullable ArtifactData data) {
+    synchronized (pluginIndexLock) {
+      if (pluginIndex == null) {
+        return;
+      }
+      // If there were other changes in between, drop the index so that it gets rebuilt on next use
+      if (pluginIndex.getGeneration() != generation - 1) {
+        pluginIndex = null;
+        return;
+      }
+      if (data == null) {
+        pluginIndex.remove(artifactId);
+      } else {
+        pluginIndex.add(artifactId, new ArtifactDescriptor(artifactId.toArtifactId(),
+                                                           locationFactory.create(data.locationURI)), data.meta);
+      }
+      pluginIndex.setGeneration(generation);
 
-    if (!filteredPlugins.isEmpty()) {
-      Location parentLocation = locationFactory.create(parentData.locationURI);
-      ArtifactDescriptor descriptor = new ArtifactDescriptor(artifactId.toArtifactId(), parentLocation);
-      result.put(descriptor, filteredPlugins);
+      MetricsContext metricsContext = this.metricsContext;
+      if (metricsContext != null) {
+        metricsContext.gauge(Constants.Metrics.Name.Artifact.PLUGIN_INDEX_SIZE, pluginIndex.size());
+      }
     }
-    return result;
   }
 
-  private void addArtifactsToList(List<ArtifactDetail> artifactDetails, Row row) throws IOException {
-    ArtifactKey artifactKey = ArtifactKey.parse(row.getRow());
+  private long getGeneration(Table metaTable) {
+    return getGeneration(metaTable.get(GENERATION_ROW));
+  }
 
-    for (Map.Entry<byte[], byte[]> columnVal : row.getColumns().entrySet()) {
-      String version = Bytes.toString(columnVal.getKey());
-      ArtifactData data = GSON.fromJson(Bytes.toString(columnVal.getValue()), ArtifactData.class);
-      Id.Artifact artifactId = Id.Artifact.from(artifactKey.namespace.toId(), artifactKey.name, version);
-      artifactDetails.add(new ArtifactDetail(
-        new ArtifactDescriptor(artifactId.toArtifactId(), locationFactory.create(data.locationURI)),
-        data.meta));
+  private long getGeneration(Row generationRow) {
+    long generation = 0L;
+    for (byte[] count : generationRow.getColumns().values()) {
+      generation += Bytes.toLong(count);
     }
+    return generation;
   }
 
-  // this method examines all plugins in the given row and checks if they extend the given parent artifact
-  // and are from an artifact in the given namespace.
-  // if so, information about the plugin artifact and the plugin details are added to the given map.
-  private void addPluginsToMap(NamespaceId namespace, Id.Artifact parentArtifactId,
-                               SortedMap<ArtifactDescriptor, Set<PluginClass>> map,
-                               Row row) throws IOException {
-    // column is the artifact namespace, name, and version. value is the serialized PluginData
-    for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
-      ImmutablePair<ArtifactDescriptor, PluginClass> pluginEntry = getPluginEntry(namespace, parentArtifactId, column);
-      if (pluginEntry != null) {
-        ArtifactDescriptor artifactDescriptor = pluginEntry.getFirst();
-        if (!map.containsKey(artifactDescriptor)) {
-          map.put(artifactDescriptor, Sets.<PluginClass>newHashSet());
-        }
-        map.get(artifactDescriptor).add(pluginEntry.getSecond());
+  /**
+   * Records a change in the generation row, by incrementing the counter in the given column.
+   *
+   * @param metaTable the meta table
+   * @param column the column of the artifact that was changed, or of the namespace that was cleared
+   * @return the generation of the meta table after the change, as visible to the current transaction
+   */
+  private long incrementGeneration(Table metaTable, byte[] column) {
+    long generation = getGeneration(metaTable);
+    metaTable.increment(GENERATION_ROW, column, 1L);
+    return generation + 1;
+  }
+
+  /**
+   * Records the removal of artifacts in the generation row. The counters of the removed artifacts are deleted and
+   * folded into the base counter, which keeps the generation increasing while bounding the size of the row.
+   *
+   * @param metaTable the meta table
+   * @param columns the columns of the artifacts that were removed
+   * @return the generation of the meta table after the change, as visible to the current transaction
+   */
+  private long removeGeneration(Table metaTable, Collection<byte[]> columns) {
+    Row generationRow = metaTable.get(GENERATION_ROW);
+    long removed = 0L;
+    for (byte[] column : columns) {
+      byte[] count = generationRow.get(column);
+      if (count != null) {
+        removed += Bytes.toLong(count);
+        metaTable.delete(GENERATION_ROW, column);
       }
     }
+    metaTable.increment(GENERATION_ROW, GENERATION_BASE_COLUMN, removed + 1);
+    return getGeneration(generationRow) + 1;
   }
 
   /**
-   * Decode the PluginClass from the table column if it is from an artifact in the given namespace and
-   * extends the given parent artifact. If the plugin's artifact is not in the given namespace, or it does not
-   * extend the given parent artifact, return null.
+   * Returns the number of counters in the generation row. Used only in unit tests.
    */
-  private ImmutablePair<ArtifactDescriptor, PluginClass> getPluginEntry(NamespaceId namespace,
-                                                                        Id.Artifact parentArtifactId,
-                                                                        Map.Entry<byte[], byte[]> column) {
-    // column is the artifact namespace, name, and version. value is the serialized PluginData
-    ArtifactColumn artifactColumn = ArtifactColumn.parse(column.getKey());
-    Id.Namespace artifactNamespace = artifactColumn.artifactId.getNamespace();
-    // filter out plugins whose artifacts are not in the system namespace and not in this namespace
-    if (!Id.Namespace.SYSTEM.equals(artifactNamespace) && !artifactNamespace.equals(namespace.toId())) {
-      return null;
-    }
-    PluginData pluginData = GSON.fromJson(Bytes.toString(column.getValue()), PluginData.class);
+  @VisibleForTesting
+  int getGenerationCounters() throws TransactionFailureException {
+    return Transactions.execute(transactional, new TxCallable<Integer>() {
+      @Override
+      public Integer call(DatasetContext context) throws Exception {
+        return getMetaTable(context).get(GENERATION_ROW).getColumns().size();
+      }
+    });
+  }
 
-    // filter out plugins that don't extend this version of the parent artifact
-    if (pluginData.usableBy.versionIsInRange(parentArtifactId.getVersion())) {
-      ArtifactDescriptor artifactDescriptor = new ArtifactDescriptor(
-        artifactColumn.artifactId.toArtifactId(), locationFactory.create(pluginData.artifactLocationURI));
+  private void addArtifactsToList(List<ArtifactDetail> artifactDetails, Row row) throws IOException {
+    ArtifactKey artifactKey = ArtifactKey.parse(row.getRow());
 
-      return ImmutablePair.of(artifactDescriptor, pluginData.pluginClass);
+    for (Map.Entry<byte[], byte[]> columnVal : row.getColumns().entrySet()) {
+      String version = Bytes.toString(columnVal.getKey());
+      ArtifactData data = GSON.fromJson(Bytes.toString(columnVal.getValue()), ArtifactData.class);
+      Id.Artifact artifactId = Id.Artifact.from(artifactKey.namespace.toId(), artifactKey.name, version);
+      artifactDetails.add(new ArtifactDetail(
+        new ArtifactDescriptor(artifactId.toArtifactId(), locationFactory.create(data.locationURI)),
+        data.meta));
     }
-    return null;
   }
 
   private Scan scanArtifacts(NamespaceId namespace) {
@@ -976,24 +1029,6 @@ public class ArtifactStore {
       Bytes.toBytes(String.format("%s:%s;", ARTIFACT_PREFIX, namespace.getNamespace())));
   }
 
-  private Scan scanPlugins(Id.Artifact parentArtifactId) {
-    return new Scan(
-      Bytes.toBytes(String.format("%s:%s:%s:",
-                                  PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(), parentArtifactId.getName())),
-      Bytes.toBytes(String.format("%s:%s:%s;",
-                                  PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(), parentArtifactId.getName())));
-  }
-
-  private Scan scanPlugins(Id.Artifact parentArtifactId, String type) {
-    return new Scan(
-      Bytes.toBytes(String.format("%s:%s:%s:%s:",
-                                  PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(),
-                                  parentArtifactId.getName(), type)),
-      Bytes.toBytes(String.format("%s:%s:%s:%s;",
-                                  PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(),
-                                  parentArtifactId.getName(), type)));
-  }
-
   private Scan scanAppClasses(NamespaceId namespace) {
     return new Scan(
       Bytes.toBytes(String.format("%s:%s:", APPCLASS_PREFIX, namespace.getNamespace())),
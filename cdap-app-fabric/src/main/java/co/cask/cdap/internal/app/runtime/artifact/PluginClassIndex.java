@@ -0,0 +1,297 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.artifact;
+
+import co.cask.cdap.api.plugin.PluginClass;
+import co.cask.cdap.common.utils.ImmutablePair;
+import co.cask.cdap.proto.Id;
+import co.cask.cdap.proto.artifact.ArtifactRange;
+import co.cask.cdap.proto.id.NamespaceId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * An in-memory index of the artifacts in the {@link ArtifactStore} and the plugin classes they contain, so that
+ * plugin lookups can be answered without scanning and decoding the artifact meta table. Plugins are indexed by
+ * parent artifact (namespace and name), plugin type and plugin name, with the candidate artifacts as values.
+ *
+ * The index is tagged with the generation of the meta table that it reflects. All methods are thread safe.
+ */
+final class PluginClassIndex {
+
+  private final Map<Id.Artifact, IndexedArtifact> artifacts;
+  // (parent namespace, parent name) -> plugin type -> plugin name -> candidates
+  private final Map<ImmutablePair<Id.Namespace, String>, Map<String, Map<String, List<PluginCandidate>>>> plugins;
+  private long generation;
+  private int size;
+
+  PluginClassIndex(long generation) {
+    this.artifacts = new HashMap<>();
+    this.plugins = new HashMap<>();
+    this.generation = generation;
+  }
+
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  synchronized void setGeneration(long generation) {
+    this.generation = generation;
+  }
+
+  /**
+   * Returns the number of plugin entries in the index, which is the number of plugin classes times the number of
+   * parent artifacts they extend.
+   */
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Adds an artifact to the index, replacing the existing entry of the artifact if there is one.
+   */
+  synchronized void add(Id.Artifact artifactId, ArtifactDescriptor descriptor, ArtifactMeta meta) {
+    remove(artifactId);
+    artifacts.put(artifactId, new IndexedArtifact(descriptor, meta));
+
+    for (PluginClass pluginClass : meta.getClasses().getPlugins()) {
+      for (ArtifactRange range : meta.getUsableBy()) {
+        getCandidates(range, pluginClass, true).add(new PluginCandidate(artifactId, descriptor, range, pluginClass));
+        size++;
+      }
+    }
+  }
+
+  /**
+   * Removes an artifact from the index.
+   */
+  synchronized void remove(Id.Artifact artifactId) {
+    IndexedArtifact existing = artifacts.remove(artifactId);
+    if (existing == null) {
+      return;
+    }
+
+    for (PluginClass pluginClass : existing.meta.getClasses().getPlugins()) {
+      for (ArtifactRange range : existing.meta.getUsableBy()) {
+        List<PluginCandidate> candidates = getCandidates(range, pluginClass, false);
+        if (candidates == null) {
+          continue;
+        }
+        Iterator<PluginCandidate> iterator = candidates.iterator();
+        while (iterator.hasNext()) {
+          if (iterator.next().artifactId.equals(artifactId)) {
+            iterator.remove();
+            size--;
+          }
+        }
+        if (candidates.isEmpty()) {
+          removeEmpty(range, pluginClass);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the plugin classes accessible by the given parent artifact, optionally restricted to the given type.
+   *
+   * @return a map from plugin artifact to plugin classes, or {@code null} if the parent artifact does not exist
+   */
+  @Nullable
+  synchronized SortedMap<ArtifactDescriptor, Set<PluginClass>> getPluginClasses(NamespaceId namespace,
+                                                                               Id.Artifact parentArtifactId,
+                                                                               @Nullable String type) {
+    IndexedArtifact parent = artifacts.get(parentArtifactId);
+    if (parent == null) {
+      return null;
+    }
+
+    SortedMap<ArtifactDescriptor, Set<PluginClass>> result = new TreeMap<>();
+
+    // include any plugin classes that are inside the artifact itself
+    Set<PluginClass> parentPlugins = new LinkedHashSet<>();
+    for (PluginClass pluginClass : parent.meta.getClasses().getPlugins()) {
+      if (type == null || type.equals(pluginClass.getType())) {
+        parentPlugins.add(pluginClass);
+      }
+    }
+    if (!parentPlugins.isEmpty()) {
+      result.put(parent.descriptor, parentPlugins);
+    }
+
+    Map<String, Map<String, List<PluginCandidate>>> byType =
+      plugins.get(ImmutablePair.of(parentArtifactId.getNamespace(), parentArtifactId.getName()));
+    if (byType == null) {
+      return result;
+    }
+    Iterable<Map<String, List<PluginCandidate>>> byNames;
+    if (type == null) {
+      byNames = byType.values();
+    } else if (byType.containsKey(type)) {
+      byNames = Collections.singleton(byType.get(type));
+    } else {
+      byNames = Collections.emptySet();
+    }
+
+    for (Map<String, List<PluginCandidate>> byName : byNames) {
+      for (List<PluginCandidate> candidates : byName.values()) {
+        for (PluginCandidate candidate : candidates) {
+          if (candidate.isVisible(namespace, parentArtifactId)) {
+            Set<PluginClass> pluginClasses = result.get(candidate.descriptor);
+            if (pluginClasses == null) {
+              pluginClasses = new HashSet<>();
+              result.put(candidate.descriptor, pluginClasses);
+            }
+            pluginClasses.add(candidate.pluginClass);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the plugin classes of the given type and name accessible by the given parent artifact.
+   *
+   * @return a map from plugin artifact to plugin class, or {@code null} if the parent artifact does not exist
+   */
+  @Nullable
+  synchronized SortedMap<ArtifactDescriptor, PluginClass> getPluginClasses(NamespaceId namespace,
+                                                                          Id.Artifact parentArtifactId,
+                                                                          String type, String name) {
+    IndexedArtifact parent = artifacts.get(parentArtifactId);
+    if (parent == null) {
+      return null;
+    }
+
+    SortedMap<ArtifactDescriptor, PluginClass> result = new TreeMap<>();
+
+    // check if any plugins of that type and name exist in the parent artifact already
+    for (PluginClass pluginClass : parent.meta.getClasses().getPlugins()) {
+      if (pluginClass.getName().equals(name) && pluginClass.getType().equals(type)) {
+        result.put(parent.descriptor, pluginClass);
+        break;
+      }
+    }
+
+    Map<String, Map<String, List<PluginCandidate>>> byType =
+      plugins.get(ImmutablePair.of(parentArtifactId.getNamespace(), parentArtifactId.getName()));
+    Map<String, List<PluginCandidate>> byName = byType == null ? null : byType.get(type);
+    List<PluginCandidate> candidates = byName == null ? null : byName.get(name);
+    if (candidates != null) {
+      for (PluginCandidate candidate : candidates) {
+        if (candidate.isVisible(namespace, parentArtifactId)) {
+          result.put(candidate.descriptor, candidate.pluginClass);
+        }
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  private List<PluginCandidate> getCandidates(ArtifactRange range, PluginClass pluginClass, boolean create) {
+    ImmutablePair<Id.Namespace, String> parentKey = ImmutablePair.of(range.getNamespace(), range.getName());
+    Map<String, Map<String, List<PluginCandidate>>> byType = plugins.get(parentKey);
+    if (byType == null) {
+      if (!create) {
+        return null;
+      }
+      byType = new HashMap<>();
+      plugins.put(parentKey, byType);
+    }
+    Map<String, List<PluginCandidate>> byName = byType.get(pluginClass.getType());
+    if (byName == null) {
+      if (!create) {
+        return null;
+      }
+      byName = new HashMap<>();
+      byType.put(pluginClass.getType(), byName);
+    }
+    List<PluginCandidate> candidates = byName.get(pluginClass.getName());
+    if (candidates == null && create) {
+      candidates = new ArrayList<>();
+      byName.put(pluginClass.getName(), candidates);
+    }
+    return candidates;
+  }
+
+  private void removeEmpty(ArtifactRange range, PluginClass pluginClass) {
+    ImmutablePair<Id.Namespace, String> parentKey = ImmutablePair.of(range.getNamespace(), range.getName());
+    Map<String, Map<String, List<PluginCandidate>>> byType = plugins.get(parentKey);
+    Map<String, List<PluginCandidate>> byName = byType.get(pluginClass.getType());
+    byName.remove(pluginClass.getName());
+    if (byName.isEmpty()) {
+      byType.remove(pluginClass.getType());
+      if (byType.isEmpty()) {
+        plugins.remove(parentKey);
+      }
+    }
+  }
+
+  /**
+   * An artifact in the index.
+   */
+  private static final class IndexedArtifact {
+    private final ArtifactDescriptor descriptor;
+    private final ArtifactMeta meta;
+
+    IndexedArtifact(ArtifactDescriptor descriptor, ArtifactMeta meta) {
+      this.descriptor = descriptor;
+      this.meta = meta;
+    }
+  }
+
+  /**
+   * A plugin class in an artifact that extends a range of parent artifacts.
+   */
+  private static final class PluginCandidate {
+    private final Id.Artifact artifactId;
+    private final ArtifactDescriptor descriptor;
+    private final ArtifactRange usableBy;
+    private final PluginClass pluginClass;
+
+    PluginCandidate(Id.Artifact artifactId, ArtifactDescriptor descriptor,
+                    ArtifactRange usableBy, PluginClass pluginClass) {
+      this.artifactId = artifactId;
+      this.descriptor = descriptor;
+      this.usableBy = usableBy;
+      this.pluginClass = pluginClass;
+    }
+
+    /**
+     * Returns whether the plugin is from an artifact in the system namespace or the given namespace,
+     * and extends the version of the given parent artifact.
+     */
+    boolean isVisible(NamespaceId namespace, Id.Artifact parentArtifactId) {
+      Id.Namespace artifactNamespace = artifactId.getNamespace();
+      if (!Id.Namespace.SYSTEM.equals(artifactNamespace) && !artifactNamespace.equals(namespace.toId())) {
+        return false;
+      }
+      return usableBy.versionIsInRange(parentArtifactId.getVersion());
+    }
+  }
+}
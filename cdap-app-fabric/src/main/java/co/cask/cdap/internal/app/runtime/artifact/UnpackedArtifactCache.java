@@ -0,0 +1,314 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.artifact;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.lang.jar.BundleJarUtil;
+import co.cask.cdap.common.utils.DirUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process-wide cache of unpacked artifact jars, shared by artifact inspection, plugin instantiation and program
+ * runs, so that the same jar is only unpacked once no matter how many classloaders are created from it.
+ *
+ * Entries are keyed by the checksum of the jar content. Callers {@link #acquire(Location) acquire} a {@link Lease}
+ * on an unpacked directory and must close it once the directory is no longer used. Directories that are not
+ * leased are evicted in least recently used order when the total size of the cache exceeds the configured
+ * {@link Constants.AppFabric#ARTIFACT_UNPACK_CACHE_SIZE_MB limit}. The unpacked directories must be treated
+ * as read-only.
+ */
+public final class UnpackedArtifactCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UnpackedArtifactCache.class);
+  private static final ConcurrentMap<File, UnpackedArtifactCache> INSTANCES = new ConcurrentHashMap<>();
+  // Maximum number of jar checksums to remember, so that unchanged jars are not read again
+  private static final int MAX_CHECKSUMS = 1000;
+
+  private final File baseDir;
+  private final long maxSize;
+  // Access ordered map from checksum to entry, guarded by this
+  private final Map<String, Entry> entries;
+  // Map from the file fingerprint (uri, length, last modified time) to checksum, guarded by this
+  private final Map<String, String> checksums;
+  private final AtomicLong unpackCount;
+  private File cacheDir;
+  private long totalSize;
+  private long nextId;
+
+  /**
+   * Returns the cache shared by the current process for the temporary directory in the given configuration.
+   */
+  public static UnpackedArtifactCache getInstance(CConfiguration cConf) {
+    File tmpDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
+                           cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
+    UnpackedArtifactCache cache = INSTANCES.get(tmpDir);
+    if (cache != null) {
+      return cache;
+    }
+    long maxSize = cConf.getLong(Constants.AppFabric.ARTIFACT_UNPACK_CACHE_SIZE_MB,
+                                 Constants.AppFabric.DEFAULT_ARTIFACT_UNPACK_CACHE_SIZE_MB) * 1024 * 1024;
+    cache = new UnpackedArtifactCache(new File(tmpDir, "artifact-cache"), maxSize);
+    UnpackedArtifactCache existing = INSTANCES.putIfAbsent(tmpDir, cache);
+    return existing == null ? cache : existing;
+  }
+
+  @VisibleForTesting
+  UnpackedArtifactCache(File baseDir, long maxSize) {
+    this.baseDir = baseDir;
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    this.checksums = new LinkedHashMap<String, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > MAX_CHECKSUMS;
+      }
+    };
+    this.unpackCount = new AtomicLong();
+  }
+
+  /**
+   * Returns a lease on the unpacked directory of the given jar, unpacking the jar if it is not in the cache.
+   * If the same jar is being unpacked by another thread, this method waits for it to complete.
+   *
+   * @param jarLocation the location of the jar
+   * @return a {@link Lease} that must be closed when the unpacked directory is no longer used
+   * @throws IOException if failed to read or unpack the jar
+   */
+  public Lease acquire(Location jarLocation) throws IOException {
+    String checksum = getChecksum(jarLocation);
+
+    Entry entry;
+    boolean unpack = false;
+    synchronized (this) {
+      entry = entries.get(checksum);
+      if (entry == null) {
+        // Use a unique directory name, since an evicted directory of the same jar may still be in deletion
+        entry = new Entry(new File(getCacheDir(), checksum + "-" + nextId++));
+        entries.put(checksum, entry);
+        unpack = true;
+      }
+      entry.references++;
+    }
+
+    if (unpack) {
+      unpack(checksum, entry, jarLocation);
+    }
+
+    try {
+      Uninterruptibles.getUninterruptibly(entry.directory);
+    } catch (ExecutionException e) {
+      release(entry);
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+    return new Lease(entry);
+  }
+
+  /**
+   * Returns the number of times a jar was unpacked by this cache.
+   */
+  @VisibleForTesting
+  long getUnpackCount() {
+    return unpackCount.get();
+  }
+
+  private void unpack(String checksum, Entry entry, Location jarLocation) {
+    try {
+      BundleJarUtil.unJar(jarLocation, entry.dir);
+      unpackCount.incrementAndGet();
+      long size = getSize(entry.dir.toPath());
+      synchronized (this) {
+        entry.size = size;
+        totalSize += size;
+      }
+      entry.directory.set(entry.dir);
+      LOG.debug("Unpacked {} to {} with size {}", jarLocation, entry.dir, size);
+    } catch (Throwable t) {
+      synchronized (this) {
+        entries.remove(checksum);
+      }
+      deleteQuietly(entry.dir);
+      entry.directory.setException(t);
+    }
+    evict();
+  }
+
+  private void release(Entry entry) {
+    boolean evict;
+    synchronized (this) {
+      entry.references--;
+      evict = entry.references == 0 && totalSize > maxSize;
+    }
+    if (evict) {
+      evict();
+    }
+  }
+
+  /**
+   * Removes the least recently used directories that are not leased until the cache is within its size limit.
+   */
+  private void evict() {
+    List<File> evicted = Lists.newArrayList();
+    synchronized (this) {
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (totalSize > maxSize && iterator.hasNext()) {
+        Entry entry = iterator.next();
+        if (entry.references == 0 && entry.directory.isDone()) {
+          iterator.remove();
+          totalSize -= entry.size;
+          evicted.add(entry.dir);
+        }
+      }
+    }
+    // Delete outside of the lock, since deleting large directories can take a while
+    for (File dir : evicted) {
+      LOG.debug("Evicting unpacked artifact directory {}", dir);
+      deleteQuietly(dir);
+    }
+  }
+
+  private String getChecksum(Location jarLocation) throws IOException {
+    String fingerprint = jarLocation.toURI() + ":" + jarLocation.length() + ":" + jarLocation.lastModified();
+    synchronized (this) {
+      String checksum = checksums.get(fingerprint);
+      if (checksum != null) {
+        return checksum;
+      }
+    }
+    String checksum = ByteStreams.hash(Locations.newInputSupplier(jarLocation), Hashing.sha1()).toString();
+    synchronized (this) {
+      checksums.put(fingerprint, checksum);
+    }
+    return checksum;
+  }
+
+  /**
+   * Returns the directory for storing unpacked jars. It is unique to this process and is removed on exit.
+   */
+  private synchronized File getCacheDir() throws IOException {
+    if (cacheDir == null) {
+      if (!DirUtils.mkdirs(baseDir)) {
+        throw new IOException("Failed to create directory " + baseDir);
+      }
+      final File dir = DirUtils.createTempDir(baseDir);
+      Runtime.getRuntime().addShutdownHook(new Thread("artifact-cache-cleanup") {
+        @Override
+        public void run() {
+          deleteQuietly(dir);
+        }
+      });
+      cacheDir = dir;
+    }
+    return cacheDir;
+  }
+
+  private static long getSize(Path dir) throws IOException {
+    final long[] size = { 0L };
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        size[0] += attrs.size();
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return size[0];
+  }
+
+  private static void deleteQuietly(File dir) {
+    try {
+      if (dir.exists()) {
+        DirUtils.deleteDirectoryContents(dir);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to delete directory {}", dir, e);
+    }
+  }
+
+  /**
+   * A cache entry for an unpacked jar.
+   */
+  private static final class Entry {
+    private final File dir;
+    // Completed with the directory once the jar is unpacked
+    private final SettableFuture<File> directory;
+    // Number of leases and pending acquisitions, guarded by the cache
+    private int references;
+    private long size;
+
+    Entry(File dir) {
+      this.dir = dir;
+      this.directory = SettableFuture.create();
+    }
+  }
+
+  /**
+   * A lease on an unpacked jar directory. The directory will not be evicted before the lease is closed.
+   */
+  public final class Lease implements Closeable {
+
+    private final Entry entry;
+    private final AtomicBoolean closed;
+
+    private Lease(Entry entry) {
+      this.entry = entry;
+      this.closed = new AtomicBoolean();
+    }
+
+    /**
+     * Returns the directory that the jar is unpacked to.
+     */
+    public File getDirectory() {
+      return entry.dir;
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        release(entry);
+      }
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -29,6 +29,8 @@ import co.cask.cdap.common.logging.LoggingContextAccessor;
 import co.cask.cdap.common.queue.QueueName;
 import co.cask.cdap.internal.app.queue.SingleItemQueueReader;
 import co.cask.cdap.internal.app.runtime.DataFabricFacade;
+import co.cask.cdap.internal.app.runtime.SystemArguments;
+import co.cask.cdap.metrics.collect.BoundMetric;
 import co.cask.cdap.security.spi.authorization.UnauthorizedException;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
@@ -67,6 +69,12 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
   private final Callback txCallback;
   private final LoggingContext loggingContext;
   private final PriorityQueue<FlowletProcessEntry<?>> processQueue;
+  private final BoundMetric readAttemptMetric;
+  private final BoundMetric readSkippedMetric;
+  private final BoundMetric commitCountMetric;
+  private final BoundMetric commitTimeMetric;
+  private final BoundMetric commitBatchesMetric;
+  private final int maxCommitBatches;
 
   private Thread runThread;
   private ExecutorService processExecutor;
@@ -79,6 +87,12 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     this.dataFabricFacade = dataFabricFacade;
     this.txCallback = txCallback;
     this.loggingContext = flowletContext.getLoggingContext();
+    this.readAttemptMetric = BoundMetric.bind(flowletContext.getProgramMetrics(), "process.tuples.attempt.read");
+    this.readSkippedMetric = BoundMetric.bind(flowletContext.getProgramMetrics(), "process.tuples.skipped.read");
+    this.commitCountMetric = BoundMetric.bind(flowletContext.getProgramMetrics(), "process.commits");
+    this.commitTimeMetric = BoundMetric.bind(flowletContext.getProgramMetrics(), "process.commit.ms");
+    this.commitBatchesMetric = BoundMetric.bind(flowletContext.getProgramMetrics(), "process.commit.batches");
+    this.maxCommitBatches = SystemArguments.getFlowletCommitBatches(flowletContext.getRuntimeArguments());
 
     processQueue = new PriorityQueue<>(processSpecifications.size());
     for (ProcessSpecification<?> spec : processSpecifications) {
@@ -97,6 +111,12 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     this.dataFabricFacade = other.dataFabricFacade;
     this.txCallback = other.txCallback;
     this.loggingContext = other.loggingContext;
+    this.readAttemptMetric = other.readAttemptMetric;
+    this.readSkippedMetric = other.readSkippedMetric;
+    this.commitCountMetric = other.commitCountMetric;
+    this.commitTimeMetric = other.commitTimeMetric;
+    this.commitBatchesMetric = other.commitBatchesMetric;
+    this.maxCommitBatches = other.maxCommitBatches;
     this.processQueue = new PriorityQueue<>(other.processQueue.size());
     Iterables.addAll(processQueue, other.processQueue);
   }
@@ -221,7 +241,14 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
     ProcessMethod<T> processMethod = entry.getProcessSpec().getProcessMethod();
     if (processMethod.needsInput()) {
-      flowletContext.getProgramMetrics().increment("process.tuples.attempt.read", 1);
+      // Avoid starting a transaction if the queue is known to be empty
+      if (entry.canSkipDequeue() && !mayHaveInput(entry)) {
+        readSkippedMetric.increment(1);
+        entry.backOff();
+        return false;
+      }
+      entry.txDequeued();
+      readAttemptMetric.increment(1);
     }
 
     // Begin transaction and dequeue
@@ -230,7 +257,9 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       startTx(txContext);
 
       try {
-        InputDatum<T> input = entry.getProcessSpec().getQueueReader().dequeue(0, TimeUnit.MILLISECONDS);
+        // Optionally process multiple batches in one transaction to amortize the commit cost
+        int batches = processMethod.needsInput() ? entry.getCommitBatches() : 1;
+        InputDatum<T> input = entry.getProcessSpec().getQueueReader().dequeue(0, TimeUnit.MILLISECONDS, batches);
         if (!input.needProcess()) {
           entry.backOff();
           // End the transaction if nothing in the queue
@@ -244,11 +273,13 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         // Call the process method and commit the transaction. The current process entry will put
         // back to queue in the postProcess method (either a retry copy or itself).
         ProcessMethod.ProcessResult<?> result = processMethod.invoke(input);
+        commitBatchesMetric.gauge(batches);
         postProcess(processMethodCallback(processQueue, entry, input), txContext, input, result);
         return true;
 
       } catch (Throwable t) {
         LOG.error("System failure: {}", flowletContext, t);
+        entry.resetCommitBatches();
         try {
           txContext.abort();
         } catch (Throwable e) {
@@ -268,6 +299,18 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     return false;
   }
 
+  /**
+   * Checks without a transaction if the queue of the given entry may have input to process.
+   */
+  private boolean mayHaveInput(FlowletProcessEntry<?> entry) {
+    try {
+      return entry.getProcessSpec().getQueueReader().mayHaveInput();
+    } catch (Throwable t) {
+      LOG.debug("Failed to check queue for input: {}", flowletContext, t);
+      return true;
+    }
+  }
+
   private void startTx(TransactionContext txContext) throws TransactionFailureException {
     txContext.start(flowletContext.getDefaultTxTimeout());
   }
@@ -286,7 +329,10 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         if (input.getRetry() > 0) {
           input.reclaim();
         }
+        long startTime = System.nanoTime();
         txContext.finish();
+        commitTimeMetric.increment(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        commitCountMetric.increment(1);
       } else {
         failureCause = result.getCause();
         failureType = FailureReason.Type.USER;
@@ -356,6 +402,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         } catch (Throwable t) {
           LOG.error("Exception on onSuccess call: {}", flowletContext, t);
         } finally {
+          processEntry.increaseCommitBatches(maxCommitBatches);
           enqueueEntry();
         }
       }
@@ -399,6 +446,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
           } catch (Throwable t) {
             LOG.error("Fatal problem, fail to ack an input: {}", flowletContext, t);
           } finally {
+            processEntry.resetCommitBatches();
             enqueueEntry();
           }
         }
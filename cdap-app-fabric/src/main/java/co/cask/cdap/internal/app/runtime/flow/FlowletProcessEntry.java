@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -40,6 +40,9 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
   // Doubling back-off time during exponential increase, up to maximum back-off time.
   private static final int BACKOFF_EXP = 2;
 
+  // Maximum time to rely on the queue probe without a transactional dequeue, 5 seconds.
+  private static final long PROBE_MAX_SKIP = TimeUnit.SECONDS.toNanos(5);
+
   private final ProcessSpecification<T> processSpec;
   private final ProcessSpecification<T> retrySpec;
   private final boolean isTick;
@@ -50,6 +53,16 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
   private long nextDeque;
   private long currentBackOff = BACKOFF_MIN;
 
+  /**
+   * Number of input batches to process in the next transaction.
+   */
+  private int commitBatches = 1;
+
+  /**
+   * {@code System.nanoTime} when the last transactional dequeue happened.
+   */
+  private long lastTxDequeue;
+
   static <T> FlowletProcessEntry<T> create(ProcessSpecification<T> processSpec) {
     long nextDeque;
     try {
@@ -71,6 +84,7 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
     this.retrySpec = retrySpec;
     this.nextDeque = nextDeque;
     this.isTick = processSpec.isTick();
+    this.lastTxDequeue = System.nanoTime();
   }
 
   long getNextDeque() {
@@ -111,6 +125,37 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
     }
   }
 
+  /**
+   * Returns whether a negative queue probe can be used to skip the transactional dequeue. It is only allowed if a
+   * transactional dequeue happened recently, so that the probe being wrong can never stall the queue.
+   */
+  public boolean canSkipDequeue() {
+    return retrySpec == null && System.nanoTime() - lastTxDequeue < PROBE_MAX_SKIP;
+  }
+
+  public void txDequeued() {
+    lastTxDequeue = System.nanoTime();
+  }
+
+  public int getCommitBatches() {
+    return commitBatches;
+  }
+
+  /**
+   * Doubles the number of batches to process in one transaction, up to the given maximum. It is called after a
+   * successful commit.
+   */
+  public void increaseCommitBatches(int maxBatches) {
+    commitBatches = Math.min(commitBatches * 2, maxBatches);
+  }
+
+  /**
+   * Goes back to process one batch per transaction. It is called when a transaction failed.
+   */
+  public void resetCommitBatches() {
+    commitBatches = 1;
+  }
+
   public ProcessSpecification<T> getProcessSpec() {
     return retrySpec == null ? processSpec : retrySpec;
   }
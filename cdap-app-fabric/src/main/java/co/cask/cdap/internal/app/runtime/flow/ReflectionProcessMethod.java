@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -21,12 +21,14 @@ import co.cask.cdap.api.flow.flowlet.Flowlet;
 import co.cask.cdap.api.flow.flowlet.InputContext;
 import co.cask.cdap.app.queue.InputDatum;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 import com.google.common.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
 import java.util.Iterator;
+import java.util.List;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -45,15 +47,17 @@ public final class ReflectionProcessMethod<T> implements ProcessMethod<T> {
   private final boolean needsIterator;
   private final boolean needContext;
   private final int maxRetries;
+  private final int batchSize;
 
-  public static <T> ReflectionProcessMethod<T> create(Flowlet flowlet, Method method, int maxRetries) {
-    return new ReflectionProcessMethod<>(flowlet, method, maxRetries);
+  public static <T> ReflectionProcessMethod<T> create(Flowlet flowlet, Method method, int maxRetries, int batchSize) {
+    return new ReflectionProcessMethod<>(flowlet, method, maxRetries, batchSize);
   }
 
-  private ReflectionProcessMethod(Flowlet flowlet, Method method, int maxRetries) {
+  private ReflectionProcessMethod(Flowlet flowlet, Method method, int maxRetries, int batchSize) {
     this.flowlet = flowlet;
     this.method = method;
     this.maxRetries = maxRetries;
+    this.batchSize = batchSize;
 
     this.hasParam = method.getGenericParameterTypes().length > 0;
     this.batch = method.isAnnotationPresent(Batch.class);
@@ -85,7 +89,12 @@ public final class ReflectionProcessMethod<T> implements ProcessMethod<T> {
 
       if (hasParam) {
         if (needsIterator) {
-          invoke(method, input.iterator(), inputContext);
+          // The input can contain multiple batches if more than one batch is processed per transaction.
+          // Each call to the method is limited to one batch.
+          Iterator<List<T>> batches = Iterators.partition(input.iterator(), batchSize);
+          while (batches.hasNext()) {
+            invoke(method, batches.next().iterator(), inputContext);
+          }
         } else {
           for (T event : input) {
             invoke(method, event, inputContext);
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -27,12 +27,10 @@ import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.api.plugin.PluginProperties;
 import co.cask.cdap.api.plugin.PluginPropertyField;
 import co.cask.cdap.common.conf.CConfiguration;
-import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.lang.InstantiatorFactory;
-import co.cask.cdap.common.lang.jar.BundleJarUtil;
-import co.cask.cdap.common.utils.DirUtils;
 import co.cask.cdap.internal.app.runtime.artifact.Artifacts;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.internal.lang.FieldVisitor;
 import co.cask.cdap.internal.lang.Fields;
 import co.cask.cdap.internal.lang.Reflections;
@@ -65,7 +63,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 
@@ -73,7 +73,8 @@ import javax.annotation.Nullable;
  * This class helps creating new instances of plugins. It also contains a ClassLoader cache to
  * save ClassLoader creation.
  *
- * This class implements {@link Closeable} as well for cleanup of temporary directories created for the ClassLoaders.
+ * The plugin jars are unpacked through the {@link UnpackedArtifactCache}, so that the same jar is only unpacked once
+ * in the process. This class implements {@link Closeable} as well for releasing the unpacked directories.
  */
 public class PluginInstantiator implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(PluginInstantiator.class);
@@ -92,17 +93,16 @@ public class PluginInstantiator implements Closeable {
 
   private final LoadingCache<ArtifactId, ClassLoader> classLoaders;
   private final InstantiatorFactory instantiatorFactory;
-  private final File tmpDir;
+  private final UnpackedArtifactCache unpackCache;
+  private final Queue<UnpackedArtifactCache.Lease> unpackedLeases;
   private final File pluginDir;
   private final ClassLoader parentClassLoader;
 
   public PluginInstantiator(CConfiguration cConf, ClassLoader parentClassLoader, File pluginDir) {
     this.instantiatorFactory = new InstantiatorFactory(false);
-    File tmpDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
-                           cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
-
     this.pluginDir = pluginDir;
-    this.tmpDir = DirUtils.createTempDir(tmpDir);
+    this.unpackCache = UnpackedArtifactCache.getInstance(cConf);
+    this.unpackedLeases = new ConcurrentLinkedQueue<>();
     this.classLoaders = CacheBuilder.newBuilder()
       .removalListener(new ClassLoaderRemovalListener())
       .build(new ClassLoaderCacheLoader());
@@ -329,16 +329,15 @@ public class PluginInstantiator implements Closeable {
 
   @Override
   public void close() throws IOException {
-    // Cleanup the ClassLoader cache and the temporary directory for the expanded plugin jar.
+    // Cleanup the ClassLoader cache and release the expanded plugin jars.
     classLoaders.invalidateAll();
     if (parentClassLoader instanceof Closeable) {
       Closeables.closeQuietly((Closeable) parentClassLoader);
     }
-    try {
-      DirUtils.deleteDirectoryContents(tmpDir);
-    } catch (IOException e) {
-      // It's the cleanup step. Nothing much can be done if cleanup failed.
-      LOG.warn("Failed to delete directory {}", tmpDir);
+    UnpackedArtifactCache.Lease lease = unpackedLeases.poll();
+    while (lease != null) {
+      lease.close();
+      lease = unpackedLeases.poll();
     }
   }
 
@@ -349,10 +348,10 @@ public class PluginInstantiator implements Closeable {
 
     @Override
     public ClassLoader load(ArtifactId artifactId) throws Exception {
-      File unpackedDir = DirUtils.createTempDir(tmpDir);
       File artifact = new File(pluginDir, Artifacts.getFileName(artifactId));
-      BundleJarUtil.unJar(Locations.toLocation(artifact), unpackedDir);
-      return new PluginClassLoader(unpackedDir, parentClassLoader);
+      UnpackedArtifactCache.Lease lease = unpackCache.acquire(Locations.toLocation(artifact));
+      unpackedLeases.add(lease);
+      return new PluginClassLoader(lease.getDirectory(), parentClassLoader);
     }
   }
 
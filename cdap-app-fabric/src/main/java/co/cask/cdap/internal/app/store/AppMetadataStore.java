@@ -25,7 +25,11 @@ import co.cask.cdap.app.program.Program;
 import co.cask.cdap.app.runtime.ProgramController;
 import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.data2.dataset2.lib.table.BinaryMDSValueCodec;
+import co.cask.cdap.data2.dataset2.lib.table.JsonMDSValueCodec;
 import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
+import co.cask.cdap.data2.dataset2.lib.table.MDSValueCodec;
 import co.cask.cdap.data2.dataset2.lib.table.MetadataStoreDataset;
 import co.cask.cdap.internal.app.ApplicationSpecificationAdapter;
 import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
@@ -49,6 +53,7 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -82,6 +87,9 @@ import static com.google.common.base.Predicates.and;
 public class AppMetadataStore extends MetadataStoreDataset {
   private static final Logger LOG = LoggerFactory.getLogger(AppMetadataStore.class);
   private static final Gson GSON = ApplicationSpecificationAdapter.addTypeAdapters(new GsonBuilder()).create();
+  private static final MDSValueCodec JSON_CODEC = new JsonMDSValueCodec(GSON);
+  // Run records are listed and scanned in bulk, hence they are stored in binary to make decoding cheap
+  private static final MDSValueCodec BINARY_CODEC = new BinaryMDSValueCodec(GSON, RunRecordMeta.class);
   private static final Type MAP_STRING_STRING_TYPE = new TypeToken<Map<String, String>>() { }.getType();
   private static final String TYPE_APP_META = "appMeta";
   private static final String TYPE_STREAM = "stream";
@@ -91,6 +99,9 @@ public class AppMetadataStore extends MetadataStoreDataset {
   private static final String TYPE_WORKFLOW_NODE_STATE = "wns";
   private static final String TYPE_WORKFLOW_TOKEN = "wft";
   private static final String TYPE_NAMESPACE = "namespace";
+  private static final List<String> RUN_RECORD_TYPES = ImmutableList.of(TYPE_RUN_RECORD_STARTED,
+                                                                        TYPE_RUN_RECORD_SUSPENDED,
+                                                                        TYPE_RUN_RECORD_COMPLETED);
 
   private final CConfiguration cConf;
 
@@ -103,20 +114,12 @@ public class AppMetadataStore extends MetadataStoreDataset {
     };
 
   public AppMetadataStore(Table table, CConfiguration cConf) {
-    super(table);
+    // Both codecs decode values in either encoding, hence the setting only decides how run records are written
+    super(table, cConf.getBoolean(Constants.AppFabric.METADATA_BINARY_ENCODING_ENABLED, true)
+      ? BINARY_CODEC : JSON_CODEC);
     this.cConf = cConf;
   }
 
-  @Override
-  protected <T> byte[] serialize(T value) {
-    return Bytes.toBytes(GSON.toJson(value));
-  }
-
-  @Override
-  protected <T> T deserialize(byte[] serialized, Type typeOfT) {
-    return GSON.fromJson(Bytes.toString(serialized), typeOfT);
-  }
-
   @Nullable
   public ApplicationMeta getApplication(String namespaceId, String appId, String versionId) {
     return getFirst(new MDSKey.Builder().add(TYPE_APP_META, namespaceId, appId, versionId).build(),
@@ -701,6 +704,30 @@ public class AppMetadataStore extends MetadataStoreDataset {
     }
   }
 
+  /**
+   * Rewrites run records that are not in the current value encoding. It processes at most one run record type
+   * per call, and is meant to be called repeatedly, each time in a new transaction, until it returns {@code null}.
+   *
+   * @param startKey the key returned by the previous call, or {@code null} to start from the beginning
+   * @param limit maximum number of run records to scan in this call
+   * @return the key to continue from, or {@code null} if all run records are upgraded
+   */
+  @Nullable
+  public MDSKey upgradeRunRecordEncoding(@Nullable MDSKey startKey, int limit) {
+    int typeIdx = startKey == null ? 0 : RUN_RECORD_TYPES.indexOf(startKey.split().getString());
+    Preconditions.checkArgument(typeIdx >= 0, "Not a run record key: %s", startKey);
+
+    MDSKey typeKey = new MDSKey.Builder().add(RUN_RECORD_TYPES.get(typeIdx)).build();
+    MDSKey stopKey = new MDSKey(Bytes.stopKeyForPrefix(typeKey.getKey()));
+    MDSKey nextKey = upgradeValues(startKey == null ? typeKey : startKey, stopKey, RunRecordMeta.class, limit);
+    if (nextKey != null) {
+      return nextKey;
+    }
+    return typeIdx + 1 < RUN_RECORD_TYPES.size()
+      ? new MDSKey.Builder().add(RUN_RECORD_TYPES.get(typeIdx + 1)).build()
+      : null;
+  }
+
   // Append version only if it doesn't have version at the end
   private static MDSKey appendDefaultVersion(MDSKey oldKey) {
     MDSKey.Splitter splitter = oldKey.split();
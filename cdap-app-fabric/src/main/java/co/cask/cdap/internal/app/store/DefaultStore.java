@@ -45,6 +45,7 @@ import co.cask.cdap.data.dataset.SystemDatasetInstantiator;
 import co.cask.cdap.data2.datafabric.dataset.DatasetsUtil;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.data2.dataset2.MultiThreadDatasetCache;
+import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
 import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.data2.transaction.TxCallable;
 import co.cask.cdap.internal.app.ForwardingApplicationSpecification;
@@ -101,6 +102,7 @@ public class DefaultStore implements Store {
   // mds is specific for metadata, we do not want to add workflow stats related information to the mds,
   // as it is not specifically metadata
   private static final DatasetId WORKFLOW_STATS_INSTANCE_ID = NamespaceId.SYSTEM.dataset("workflow.stats");
+  private static final int RUN_RECORD_UPGRADE_BATCH_SIZE = 1000;
   private static final Gson GSON = new Gson();
   private static final Map<String, String> EMPTY_STRING_MAP = ImmutableMap.of();
   private static final Type STRING_MAP_TYPE = new TypeToken<Map<String, String>>() { }.getType();
@@ -872,6 +874,23 @@ public class DefaultStore implements Store {
     });
   }
 
+  /**
+   * Rewrites run records that are not in the current value encoding of the app metadata store. Each batch of
+   * run records is rewritten in its own transaction, hence this can be done while the store is in use.
+   */
+  public void upgradeRunRecordEncoding() throws Exception {
+    MDSKey key = null;
+    do {
+      final MDSKey startKey = key;
+      key = txExecute(transactional, new TxCallable<MDSKey>() {
+        @Override
+        public MDSKey call(DatasetContext context) throws Exception {
+          return getAppMetadataStore(context).upgradeRunRecordEncoding(startKey, RUN_RECORD_UPGRADE_BATCH_SIZE);
+        }
+      });
+    } while (key != null);
+  }
+
   private void truncate(DatasetAdmin admin) throws Exception {
     if (admin != null) {
       admin.truncate();
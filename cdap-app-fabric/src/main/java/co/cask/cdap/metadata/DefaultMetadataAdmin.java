@@ -24,10 +24,12 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.entity.EntityExistenceVerifier;
 import co.cask.cdap.data2.metadata.dataset.MetadataDataset;
 import co.cask.cdap.data2.metadata.store.MetadataStore;
+import co.cask.cdap.data2.metadata.store.SortInfo;
 import co.cask.cdap.proto.id.EntityId;
 import co.cask.cdap.proto.id.NamespacedEntityId;
 import co.cask.cdap.proto.metadata.MetadataRecord;
 import co.cask.cdap.proto.metadata.MetadataScope;
+import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
 import co.cask.cdap.proto.metadata.MetadataSearchTargetType;
 import co.cask.cdap.proto.security.Principal;
@@ -173,6 +175,21 @@ public class DefaultMetadataAdmin implements MetadataAdmin {
     return filterAuthorizedSearchResult(metadataStore.searchMetadataOnType(scope, namespaceId, searchQuery, types));
   }
 
+  @Override
+  public MetadataSearchResponse searchMetadata(String namespaceId, String searchQuery,
+                                               Set<MetadataSearchTargetType> types, SortInfo sortInfo,
+                                               int offset, int limit) throws Exception {
+    Principal principal = authenticationContext.getPrincipal();
+    final Predicate<EntityId> filter = authorizationEnforcer.createFilter(principal);
+    return metadataStore.search(namespaceId, searchQuery, types, sortInfo, offset, limit,
+                                new com.google.common.base.Predicate<NamespacedEntityId>() {
+                                  @Override
+                                  public boolean apply(NamespacedEntityId entityId) {
+                                    return filter.apply(entityId);
+                                  }
+                                });
+  }
+
   /**
    * Filter a list of {@link MetadataSearchResultRecord} that ensures the logged-in user has a privilege on
    *
@@ -18,9 +18,11 @@ package co.cask.cdap.metadata;
 
 import co.cask.cdap.common.InvalidMetadataException;
 import co.cask.cdap.common.NotFoundException;
+import co.cask.cdap.data2.metadata.store.SortInfo;
 import co.cask.cdap.proto.id.NamespacedEntityId;
 import co.cask.cdap.proto.metadata.MetadataRecord;
 import co.cask.cdap.proto.metadata.MetadataScope;
+import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
 import co.cask.cdap.proto.metadata.MetadataSearchTargetType;
 
@@ -176,4 +178,21 @@ public interface MetadataAdmin {
    */
   Set<MetadataSearchResultRecord> searchMetadata(MetadataScope scope, String namespaceId, String searchQuery,
                                                  Set<MetadataSearchTargetType> types) throws Exception;
+
+  /**
+   * Executes a search for CDAP entities in the specified namespace with the specified search query and
+   * an optional set of {@link MetadataSearchTargetType entity types} in both
+   * {@link MetadataScope#USER} and {@link MetadataScope#SYSTEM}, returning one page of the sorted results.
+   *
+   * @param namespaceId The namespace to filter the search by
+   * @param searchQuery The search query
+   * @param types The types of CDAP entity to be searched. If empty all possible types will be searched
+   * @param sortInfo how the results should be sorted
+   * @param offset the index of the first result to return in the sorted results
+   * @param limit the maximum number of results to return
+   * @return a {@link MetadataSearchResponse} containing the requested page of results and the total number of
+   *         matching entities
+   */
+  MetadataSearchResponse searchMetadata(String namespaceId, String searchQuery, Set<MetadataSearchTargetType> types,
+                                        SortInfo sortInfo, int offset, int limit) throws Exception;
 }
@@ -19,6 +19,7 @@ package co.cask.cdap.metadata;
 import co.cask.cdap.common.BadRequestException;
 import co.cask.cdap.common.NotFoundException;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.data2.metadata.store.SortInfo;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.ProgramType;
 import co.cask.cdap.proto.codec.NamespacedEntityIdCodec;
@@ -26,7 +27,6 @@ import co.cask.cdap.proto.codec.NamespacedIdCodec;
 import co.cask.cdap.proto.id.ApplicationId;
 import co.cask.cdap.proto.id.ArtifactId;
 import co.cask.cdap.proto.id.DatasetId;
-import co.cask.cdap.proto.id.FlowletId;
 import co.cask.cdap.proto.id.NamespacedEntityId;
 import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.id.StreamId;
@@ -34,13 +34,11 @@ import co.cask.cdap.proto.id.StreamViewId;
 import co.cask.cdap.proto.metadata.MetadataRecord;
 import co.cask.cdap.proto.metadata.MetadataScope;
 import co.cask.cdap.proto.metadata.MetadataSearchResponse;
-import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
 import co.cask.cdap.proto.metadata.MetadataSearchTargetType;
 import co.cask.http.AbstractHttpHandler;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.gson.Gson;
@@ -51,8 +49,6 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -60,13 +56,9 @@ import java.io.Reader;
 import java.lang.reflect.Type;
 import java.net.URLDecoder;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
 import java.util.Set;
-import java.util.TreeSet;
 import javax.annotation.Nullable;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
@@ -88,7 +80,6 @@ public class MetadataHttpHandler extends AbstractHttpHandler {
   private static final Type MAP_STRING_STRING_TYPE = new TypeToken<Map<String, String>>() { }.getType();
   private static final Type LIST_STRING_TYPE = new TypeToken<List<String>>() { }.getType();
   private static final Type SET_METADATA_RECORD_TYPE = new TypeToken<Set<MetadataRecord>>() { }.getType();
-  private static final Logger LOG = LoggerFactory.getLogger(MetadataHttpHandler.class);
 
   private static final Function<String, MetadataSearchTargetType> STRING_TO_TARGET_TYPE =
     new Function<String, MetadataSearchTargetType>() {
@@ -97,50 +88,6 @@ public class MetadataHttpHandler extends AbstractHttpHandler {
         return MetadataSearchTargetType.valueOf(input.toUpperCase());
       }
     };
-  private static final Comparator<MetadataSearchResultRecord> NAME_ASCENDING_COMPARATOR =
-    new Comparator<MetadataSearchResultRecord>() {
-      @Override
-      public int compare(MetadataSearchResultRecord o1, MetadataSearchResultRecord o2) {
-        NamespacedEntityId entityId1 = o1.getEntityId();
-        NamespacedEntityId entityId2 = o2.getEntityId();
-        int compareResult = entityId1.getEntityName().compareTo(entityId2.getEntityName());
-        if (compareResult != 0) {
-          return compareResult;
-        }
-        // same name, but different entity types?
-        compareResult = entityId1.getEntityType().compareTo(entityId2.getEntityType());
-        if (compareResult != 0) {
-          return compareResult;
-        }
-        // same name and entity type, but different namespace?
-        compareResult = entityId1.getNamespace().compareTo(entityId2.getNamespace());
-        if (compareResult != 0) {
-          return compareResult;
-        }
-        // same name, entity type and namespace, so dig deeper
-        switch (entityId1.getEntityType()) {
-          case APPLICATION:
-            return ((ApplicationId) entityId1).getVersion().compareTo(((ApplicationId) entityId2).getVersion());
-          case FLOWLET:
-            return ((FlowletId) entityId1).getFlow().compareTo(((FlowletId) entityId2).getFlow());
-          case PROGRAM:
-            ProgramId program1 = (ProgramId) entityId1;
-            ProgramId program2  = (ProgramId) entityId2;
-            compareResult = program1.getApplication().compareTo(program2.getApplication());
-            if (compareResult != 0) {
-              return compareResult;
-            }
-            compareResult = program1.getType().compareTo(program2.getType());
-            return compareResult;
-          case ARTIFACT:
-            return ((ArtifactId) entityId1).getVersion().compareTo(((ArtifactId) entityId2).getVersion());
-          default:
-            LOG.error("Unexpected type {}", entityId1.getEntityType());
-            return compareResult;
-        }
-      }
-    };
-
   private final MetadataAdmin metadataAdmin;
 
   @Inject
@@ -899,26 +846,30 @@ public class MetadataHttpHandler extends AbstractHttpHandler {
     }
 
 
-    String sortBy = "name";
-    String sortOrder = "asc";
+    SortInfo sortInfo = SortInfo.DEFAULT;
     if (!sort.isEmpty()) {
       // TODO: This should perhaps be thrown from the indexer
       String[] sortSplit = sort.split("\\s+");
       if (sortSplit.length != 2) {
         throw new BadRequestException("'sort' parameter should be a space separated string containing the field " +
-                                        "('name') and the sort order ('asc' or 'desc'). Found " +
+                                        "('name' or 'relevance') and the sort order ('asc' or 'desc'). Found " +
                                         sort);
       }
-      sortBy = sortSplit[0];
-      sortOrder = sortSplit[1];
-      if (!"name".equalsIgnoreCase(sortBy)) {
-        throw new BadRequestException("Sort field must be 'name'. Found " + sortBy);
+      String sortBy = sortSplit[0];
+      String sortOrder = sortSplit[1];
+      if (!"name".equalsIgnoreCase(sortBy) && !"relevance".equalsIgnoreCase(sortBy)) {
+        throw new BadRequestException("Sort field must be 'name' or 'relevance'. Found " + sortBy);
       }
       if (!"asc".equalsIgnoreCase(sortOrder) && !"desc".equalsIgnoreCase(sortOrder)) {
         throw new BadRequestException("Sort order must be one of 'asc' or 'desc'. Found " + sortOrder);
       }
+      sortInfo = new SortInfo(SortInfo.SortBy.valueOf(sortBy.toUpperCase()),
+                              SortInfo.SortOrder.valueOf(sortOrder.toUpperCase()));
     }
 
+    if (offset < 0) {
+      throw new BadRequestException(String.format("Parameter 'offset' should not be negative. Found %d.", offset));
+    }
     int size = Integer.MAX_VALUE;
     if (!sizeStr.isEmpty()) {
       try {
@@ -926,16 +877,17 @@ public class MetadataHttpHandler extends AbstractHttpHandler {
       } catch (NumberFormatException e) {
         throw new BadRequestException(String.format("Parameter 'size' should be numeric. Found %s.", sizeStr));
       }
+      if (size < 0) {
+        throw new BadRequestException(String.format("Parameter 'size' should not be negative. Found %d.", size));
+      }
     }
     if (searchQuery == null) {
       throw new BadRequestException("Parameter 'query' should be passed to the search API.");
     }
-    Set<MetadataSearchResultRecord> results =
-      metadataAdmin.searchMetadata(namespaceId, URLDecoder.decode(searchQuery, "UTF-8"), types);
-
-    NavigableSet<MetadataSearchResultRecord> sorted = applySorting(results, sortBy, sortOrder);
-    Set<MetadataSearchResultRecord> paginated = paginate(sorted, offset, size);
-    MetadataSearchResponse response = new MetadataSearchResponse(sort, offset, size, sorted.size(), paginated);
+    MetadataSearchResponse results = metadataAdmin.searchMetadata(namespaceId, URLDecoder.decode(searchQuery, "UTF-8"),
+                                                                  types, sortInfo, offset, size);
+    MetadataSearchResponse response = new MetadataSearchResponse(sort, offset, size, results.getTotal(),
+                                                                 results.getResults());
     responder.sendJson(HttpResponseStatus.OK, response, MetadataSearchResponse.class, GSON);
   }
 
@@ -968,37 +920,4 @@ public class MetadataHttpHandler extends AbstractHttpHandler {
                                                   scope, MetadataScope.USER, MetadataScope.SYSTEM));
     }
   }
-
-  private NavigableSet<MetadataSearchResultRecord> applySorting(Set<MetadataSearchResultRecord> original, String sortBy,
-                                                                String sortOrder) throws BadRequestException {
-    Comparator<MetadataSearchResultRecord> comparator = getComparator(sortBy);
-    TreeSet<MetadataSearchResultRecord> result = new TreeSet<>(comparator);
-    result.addAll(original);
-    if ("desc".equalsIgnoreCase(sortOrder)) {
-      return result.descendingSet();
-    }
-    return result;
-  }
-
-  private Comparator<MetadataSearchResultRecord> getComparator(String sortBy) throws BadRequestException {
-    switch (sortBy) {
-      case "name":
-        return NAME_ASCENDING_COMPARATOR;
-      default:
-        throw new BadRequestException("Unexpected sortBy " + sortBy + ". Expected 'name'.");
-    }
-  }
-
-  private Set<MetadataSearchResultRecord> paginate(NavigableSet<MetadataSearchResultRecord> sorted,
-                                                   int offset, int size) {
-    if (sorted.isEmpty()) {
-      return sorted;
-    }
-    int endIndex = offset + size;
-    if (endIndex >= sorted.size()) {
-      // endIndex is exclusive in ImmutableList.subList
-      endIndex = sorted.size();
-    }
-    return new LinkedHashSet<>(ImmutableList.copyOf(sorted).subList(offset, endIndex));
-  }
 }
@@ -71,4 +71,15 @@ public class SystemArgumentsTest {
     Assert.assertEquals(defaultResources, resources);
 
   }
+
+  @Test
+  public void testFlowletCommitBatches() {
+    Assert.assertEquals(1, SystemArguments.getFlowletCommitBatches(ImmutableMap.<String, String>of()));
+    Assert.assertEquals(8, SystemArguments.getFlowletCommitBatches(
+      ImmutableMap.of("system.flowlet.commit.batches", "8")));
+    Assert.assertEquals(1, SystemArguments.getFlowletCommitBatches(
+      ImmutableMap.of("system.flowlet.commit.batches", "0")));
+    Assert.assertEquals(1, SystemArguments.getFlowletCommitBatches(
+      ImmutableMap.of("system.flowlet.commit.batches", "abc")));
+  }
 }
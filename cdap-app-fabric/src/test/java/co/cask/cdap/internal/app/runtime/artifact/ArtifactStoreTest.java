@@ -17,6 +17,7 @@
 package co.cask.cdap.internal.app.runtime.artifact;
 
 import co.cask.cdap.WordCountApp;
+import co.cask.cdap.api.artifact.ArtifactId;
 import co.cask.cdap.api.artifact.ArtifactScope;
 import co.cask.cdap.api.artifact.ArtifactVersion;
 import co.cask.cdap.api.common.Bytes;
@@ -25,7 +26,10 @@ import co.cask.cdap.api.plugin.PluginPropertyField;
 import co.cask.cdap.common.ArtifactAlreadyExistsException;
 import co.cask.cdap.common.ArtifactNotFoundException;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.namespace.NamespacedLocationFactory;
 import co.cask.cdap.common.security.DefaultImpersonator;
+import co.cask.cdap.common.security.Impersonator;
+import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.internal.AppFabricTestHelper;
 import co.cask.cdap.internal.app.deploy.pipeline.NamespacedImpersonator;
 import co.cask.cdap.internal.app.runtime.artifact.app.inspection.InspectionApp;
@@ -47,7 +51,10 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
+import com.google.inject.Injector;
+import org.apache.tephra.TransactionSystemClient;
 import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -57,6 +64,7 @@ import org.junit.experimental.categories.Category;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -714,6 +722,77 @@ public class ArtifactStoreTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testPluginIndexWithOtherWriter() throws Exception {
+    // another store instance sharing the same meta table, as in another process
+    Injector injector = AppFabricTestHelper.getInjector();
+    ArtifactStore otherStore = new ArtifactStore(injector.getInstance(DatasetFramework.class),
+                                                 injector.getInstance(NamespacedLocationFactory.class),
+                                                 injector.getInstance(LocationFactory.class),
+                                                 injector.getInstance(TransactionSystemClient.class),
+                                                 injector.getInstance(Impersonator.class));
+
+    Id.Artifact parentArtifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "parent", "1.0.0");
+    writeArtifact(parentArtifactId, new ArtifactMeta(ArtifactClasses.builder().build()), "content");
+    ArtifactRange parentArtifacts = new ArtifactRange(
+      Id.Namespace.DEFAULT, "parent", new ArtifactVersion("1.0.0"), new ArtifactVersion("2.0.0"));
+
+    Id.Artifact artifact1 = Id.Artifact.from(Id.Namespace.DEFAULT, "plugins1", "1.0.0");
+    PluginClass plugin1 =
+      new PluginClass("atype", "plugin1", "", "c.c.c.plugin1", "cfg", ImmutableMap.<String, PluginPropertyField>of());
+    writeArtifact(artifactStore, artifact1, new ArtifactMeta(ArtifactClasses.builder().addPlugin(plugin1).build(),
+                                                             ImmutableSet.of(parentArtifacts)), "plugins1");
+    Assert.assertEquals(ImmutableMap.of(artifactStore.getArtifact(artifact1).getDescriptor(), plugin1),
+                        artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype", "plugin1"));
+    Assert.assertEquals(ImmutableMap.of(artifactStore.getArtifact(artifact1).getDescriptor(), plugin1),
+                        otherStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype", "plugin1"));
+
+    // a plugin added by the other store should be visible
+    Id.Artifact artifact2 = Id.Artifact.from(Id.Namespace.DEFAULT, "plugins2", "1.0.0");
+    PluginClass plugin2 =
+      new PluginClass("atype", "plugin2", "", "c.c.c.plugin2", "cfg", ImmutableMap.<String, PluginPropertyField>of());
+    writeArtifact(otherStore, artifact2, new ArtifactMeta(ArtifactClasses.builder().addPlugin(plugin2).build(),
+                                                          ImmutableSet.of(parentArtifacts)), "plugins2");
+    Assert.assertEquals(ImmutableSet.of(artifact1.toArtifactId(), artifact2.toArtifactId()),
+                        getArtifactIds(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId)));
+
+    // a plugin deleted by the other store should no longer be visible
+    otherStore.delete(artifact1);
+    Assert.assertEquals(ImmutableSet.of(artifact2.toArtifactId()),
+                        getArtifactIds(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype")));
+    try {
+      artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype", "plugin1");
+      Assert.fail();
+    } catch (PluginNotExistsException e) {
+      // expected
+    }
+
+    // changes by this store are applied to its index
+    artifactStore.delete(artifact2);
+    Assert.assertTrue(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+    Assert.assertTrue(otherStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+  }
+
+  @Test
+  public void testGenerationCountersRemoved() throws Exception {
+    // clearing the namespace makes sure that the base counter exists
+    artifactStore.clear(NamespaceId.DEFAULT);
+    int counters = artifactStore.getGenerationCounters();
+
+    // every artifact has a counter
+    Id.Artifact artifact1 = Id.Artifact.from(Id.Namespace.DEFAULT, "abc", "1.0.0");
+    Id.Artifact artifact2 = Id.Artifact.from(Id.Namespace.DEFAULT, "abc", "2.0.0");
+    writeArtifact(artifact1, new ArtifactMeta(ArtifactClasses.builder().build()), "content1");
+    writeArtifact(artifact2, new ArtifactMeta(ArtifactClasses.builder().build()), "content2");
+    Assert.assertEquals(counters + 2, artifactStore.getGenerationCounters());
+
+    // counters of deleted artifacts are removed
+    artifactStore.delete(artifact1);
+    Assert.assertEquals(counters + 1, artifactStore.getGenerationCounters());
+    artifactStore.clear(NamespaceId.DEFAULT);
+    Assert.assertEquals(counters, artifactStore.getGenerationCounters());
+  }
+
   @Test
   public void testPluginParentInclusiveExclusiveVersions() throws Exception {
     // write artifacts that extend:
@@ -929,6 +1008,55 @@ public class ArtifactStoreTest {
     assertEqual(artifactId, expectedMeta, successfulWriter, info);
   }
 
+  @Category(SlowTests.class)
+  @Test
+  public void testConcurrentWriteDifferentArtifacts() throws Exception {
+    // writes of different artifacts should not conflict with each other, so all of them should succeed
+    int numThreads = 20;
+    final Id.Artifact parentArtifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "parent", "1.0.0");
+    writeArtifact(parentArtifactId, new ArtifactMeta(ArtifactClasses.builder().build()), "content");
+    final ArtifactRange parentArtifacts = new ArtifactRange(
+      Id.Namespace.DEFAULT, "parent", new ArtifactVersion("1.0.0"), new ArtifactVersion("2.0.0"));
+    // load the plugin index, so that it gets updated by the writes
+    Assert.assertTrue(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+
+    final List<Exception> failures = Collections.synchronizedList(Lists.<Exception>newArrayList());
+    final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+    final CountDownLatch latch = new CountDownLatch(numThreads);
+    ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+    Set<ArtifactId> expected = new HashSet<>();
+    for (int i = 0; i < numThreads; i++) {
+      final Id.Artifact artifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "plugins" + i, "1.0.0");
+      expected.add(artifactId.toArtifactId());
+      executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            barrier.await();
+            ArtifactMeta meta = new ArtifactMeta(
+              ArtifactClasses.builder()
+                .addPlugin(new PluginClass("plugin-type", artifactId.getName(), "", "classname", "cfg",
+                                           ImmutableMap.<String, PluginPropertyField>of()))
+                .build(),
+              ImmutableSet.of(parentArtifacts)
+            );
+            writeArtifact(artifactId, meta, artifactId.getName());
+          } catch (Exception e) {
+            failures.add(e);
+          } finally {
+            latch.countDown();
+          }
+        }
+      });
+    }
+
+    latch.await();
+    executorService.shutdown();
+    Assert.assertEquals(Collections.<Exception>emptyList(), failures);
+    Assert.assertEquals(expected,
+                        getArtifactIds(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId)));
+  }
+
   @Test
   public void testUpdateProperties() throws Exception {
     Id.Artifact artifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "abc", "1.2.3");
@@ -1043,10 +1171,24 @@ public class ArtifactStoreTest {
                         CharStreams.toString(new InputStreamReader(location.getInputStream(), Charsets.UTF_8)));
   }
 
+  private Set<ArtifactId> getArtifactIds(Map<ArtifactDescriptor, ?> plugins) {
+    Set<ArtifactId> artifactIds = new HashSet<>();
+    for (ArtifactDescriptor descriptor : plugins.keySet()) {
+      artifactIds.add(descriptor.getArtifactId());
+    }
+    return artifactIds;
+  }
+
   private void writeArtifact(
     Id.Artifact artifactId, ArtifactMeta meta,
     String contents) throws ArtifactAlreadyExistsException, IOException, WriteConflictException {
-    artifactStore.write(artifactId, meta, ByteStreams.newInputStreamSupplier(Bytes.toBytes(contents)),
+    writeArtifact(artifactStore, artifactId, meta, contents);
+  }
+
+  private void writeArtifact(
+    ArtifactStore store, Id.Artifact artifactId, ArtifactMeta meta,
+    String contents) throws ArtifactAlreadyExistsException, IOException, WriteConflictException {
+    store.write(artifactId, meta, ByteStreams.newInputStreamSupplier(Bytes.toBytes(contents)),
                         new NamespacedImpersonator(artifactId.getNamespace().toEntityId(),
                                                    new DefaultImpersonator(CConfiguration.create(), null, null)));
   }
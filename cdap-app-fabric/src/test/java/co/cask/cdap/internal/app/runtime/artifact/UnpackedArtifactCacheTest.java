@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.artifact;
+
+import co.cask.cdap.common.io.Locations;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Unit test for {@link UnpackedArtifactCache}.
+ */
+public class UnpackedArtifactCacheTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testSharedUnpack() throws IOException {
+    UnpackedArtifactCache cache = new UnpackedArtifactCache(TMP_FOLDER.newFolder(), 1024 * 1024);
+    Location jar1 = createJar("jar1.jar", "content1");
+    // Same content under a different name
+    Location jar2 = createJar("jar2.jar", "content1");
+    Location jar3 = createJar("jar3.jar", "content3");
+
+    try (
+      UnpackedArtifactCache.Lease lease1 = cache.acquire(jar1);
+      UnpackedArtifactCache.Lease lease2 = cache.acquire(jar2);
+      UnpackedArtifactCache.Lease lease3 = cache.acquire(jar3)
+    ) {
+      Assert.assertEquals(lease1.getDirectory(), lease2.getDirectory());
+      Assert.assertNotEquals(lease1.getDirectory(), lease3.getDirectory());
+      Assert.assertEquals("content1", Files.toString(new File(lease1.getDirectory(), "file.txt"), Charsets.UTF_8));
+      Assert.assertEquals("content3", Files.toString(new File(lease3.getDirectory(), "file.txt"), Charsets.UTF_8));
+      Assert.assertEquals(2, cache.getUnpackCount());
+    }
+
+    // Still cached after the leases are released
+    try (UnpackedArtifactCache.Lease lease = cache.acquire(jar1)) {
+      Assert.assertTrue(lease.getDirectory().isDirectory());
+      Assert.assertEquals(2, cache.getUnpackCount());
+    }
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    // The cache can only hold one of the unpacked jars
+    UnpackedArtifactCache cache = new UnpackedArtifactCache(TMP_FOLDER.newFolder(), 10);
+    Location jar1 = createJar("jar1.jar", "content1");
+    Location jar2 = createJar("jar2.jar", "content2");
+
+    UnpackedArtifactCache.Lease lease1 = cache.acquire(jar1);
+    try (UnpackedArtifactCache.Lease lease2 = cache.acquire(jar2)) {
+      // Leased directories are not evicted
+      Assert.assertTrue(lease1.getDirectory().isDirectory());
+      Assert.assertTrue(lease2.getDirectory().isDirectory());
+
+      // Releasing makes the least recently used directory evicted
+      lease1.close();
+      Assert.assertFalse(lease1.getDirectory().exists());
+      Assert.assertTrue(lease2.getDirectory().isDirectory());
+    }
+
+    // Unpacks again after eviction
+    try (UnpackedArtifactCache.Lease lease = cache.acquire(jar1)) {
+      Assert.assertTrue(lease.getDirectory().isDirectory());
+      Assert.assertEquals(3, cache.getUnpackCount());
+    }
+  }
+
+  private Location createJar(String name, String content) throws IOException {
+    File file = new File(TMP_FOLDER.newFolder(), name);
+    try (JarOutputStream output = new JarOutputStream(new FileOutputStream(file))) {
+      JarEntry entry = new JarEntry("file.txt");
+      // Use a fixed time so that jars with the same content are identical
+      entry.setTime(0L);
+      output.putNextEntry(entry);
+      output.write(content.getBytes(Charsets.UTF_8));
+      output.closeEntry();
+    }
+    return Locations.toLocation(file);
+  }
+}
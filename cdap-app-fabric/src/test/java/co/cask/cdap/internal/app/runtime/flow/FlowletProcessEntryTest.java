@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -43,6 +43,28 @@ public class FlowletProcessEntryTest {
     Assert.assertEquals(Long.MAX_VALUE, entry.getNextDeque());
   }
 
+  @Test
+  public void testCommitBatches() {
+    FlowletProcessEntry entry = FlowletProcessEntry.create(new ProcessSpecification<>(null, null, null));
+    Assert.assertEquals(1, entry.getCommitBatches());
+
+    // Grows exponentially up to the maximum
+    entry.increaseCommitBatches(5);
+    Assert.assertEquals(2, entry.getCommitBatches());
+    entry.increaseCommitBatches(5);
+    Assert.assertEquals(4, entry.getCommitBatches());
+    entry.increaseCommitBatches(5);
+    Assert.assertEquals(5, entry.getCommitBatches());
+    entry.increaseCommitBatches(5);
+    Assert.assertEquals(5, entry.getCommitBatches());
+
+    // Falls back to one batch per transaction
+    entry.resetCommitBatches();
+    Assert.assertEquals(1, entry.getCommitBatches());
+    entry.increaseCommitBatches(1);
+    Assert.assertEquals(1, entry.getCommitBatches());
+  }
+
   private long floorNanosToSec(long nanoseconds) {
     return TimeUnit.SECONDS.toNanos(TimeUnit.NANOSECONDS.toSeconds(nanoseconds));
   }
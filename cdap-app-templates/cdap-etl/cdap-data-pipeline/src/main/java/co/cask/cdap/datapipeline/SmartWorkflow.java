@@ -41,6 +41,7 @@ import co.cask.cdap.etl.batch.mapreduce.ETLMapReduce;
 import co.cask.cdap.etl.common.Constants;
 import co.cask.cdap.etl.common.DatasetContextLookupProvider;
 import co.cask.cdap.etl.common.DefaultMacroEvaluator;
+import co.cask.cdap.etl.common.DefaultStageMetrics;
 import co.cask.cdap.etl.common.PipelinePhase;
 import co.cask.cdap.etl.planner.ControlDag;
 import co.cask.cdap.etl.planner.PipelinePlan;
@@ -182,12 +183,13 @@ public class SmartWorkflow extends AbstractWorkflow {
   @Override
   public void destroy() {
     WorkflowContext workflowContext = getContext();
-    LookupProvider lookupProvider = new DatasetContextLookupProvider(workflowContext);
     Map<String, String> runtimeArgs = workflowContext.getRuntimeArguments();
     long logicalStartTime = workflowContext.getLogicalStartTime();
     for (Map.Entry<String, PostAction> endingActionEntry : postActions.entrySet()) {
       String name = endingActionEntry.getKey();
       PostAction action = endingActionEntry.getValue();
+      LookupProvider lookupProvider =
+        new DatasetContextLookupProvider(workflowContext, new DefaultStageMetrics(workflowMetrics, name));
       BatchActionContext context = new WorkflowBackedActionContext(workflowContext, workflowMetrics, lookupProvider,
                                                                    name, logicalStartTime, runtimeArgs);
       try {
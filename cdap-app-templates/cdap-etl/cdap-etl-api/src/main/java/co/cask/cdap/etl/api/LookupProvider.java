@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -24,7 +24,8 @@ import java.util.Map;
 public interface LookupProvider {
   /**
    * @param table the name of the {@link Lookup} table
-   * @param arguments arguments for initializing the {@link Lookup} table
+   * @param arguments arguments for initializing the {@link Lookup} table. The arguments described in
+   *                  {@link co.cask.cdap.etl.api.lookup.CachingLookup} enable caching of the lookup results.
    * @param <T> the type of value returned by the {@link Lookup}
    * @return a {@link Lookup} instance
    */
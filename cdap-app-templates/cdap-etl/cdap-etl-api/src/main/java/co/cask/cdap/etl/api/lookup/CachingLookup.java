@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.api.lookup;
+
+import co.cask.cdap.etl.api.CacheConfig;
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.LookupTableConfig;
+import co.cask.cdap.etl.api.StageMetrics;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * {@link Lookup} that keeps the results of another {@link Lookup} in a bounded, in-memory cache configured by a
+ * {@link CacheConfig}. Keys without a value are cached as well. Batch lookups only go to the underlying
+ * {@link Lookup} for the keys that are not in the cache, with a single batch lookup.
+ *
+ * The cache is local to the instance, so it is usually created once per task when the stage is initialized.
+ * If {@link StageMetrics} are given, the number of cache hits and misses are emitted as
+ * {@code lookup.<table>.cache.hit} and {@code lookup.<table>.cache.miss}.
+ *
+ * A stage enables caching for a lookup table by passing {@link #CACHE_ENABLED} set to {@code true}, and optionally
+ * {@link #CACHE_MAX_SIZE} and {@link #CACHE_EXPIRY_SECONDS}, in the arguments of
+ * {@link co.cask.cdap.etl.api.LookupProvider#provide(String, Map)}. {@link #getArguments(CacheConfig)} creates
+ * such arguments.
+ *
+ * @param <T> the type of object that will be returned for a lookup
+ */
+public class CachingLookup<T> implements Lookup<T> {
+
+  /**
+   * Maximum number of entries in the cache if the {@link CacheConfig} does not specify a positive size.
+   */
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  /**
+   * Lookup argument to enable caching of the lookup table.
+   */
+  public static final String CACHE_ENABLED = "lookup.cache.enabled";
+
+  /**
+   * Lookup argument for the maximum number of entries in the cache.
+   */
+  public static final String CACHE_MAX_SIZE = "lookup.cache.max.size";
+
+  /**
+   * Lookup argument for the number of seconds after which cache entries expire.
+   */
+  public static final String CACHE_EXPIRY_SECONDS = "lookup.cache.expiry.seconds";
+
+  private final Lookup<T> delegate;
+  private final Cache<String, Optional<T>> cache;
+  private final StageMetrics metrics;
+  private final String hitMetric;
+  private final String missMetric;
+
+  /**
+   * Returns a {@link Lookup} that caches the results of the given {@link Lookup} if caching is enabled in the
+   * given {@link LookupTableConfig}, or the given {@link Lookup} otherwise.
+   *
+   * @param table the name of the lookup table
+   * @param lookup the {@link Lookup} to read from
+   * @param config the configuration of the lookup table
+   * @param metrics the {@link StageMetrics} to emit cache hits and misses to, or {@code null} to not emit them
+   */
+  public static <T> Lookup<T> of(String table, Lookup<T> lookup, LookupTableConfig config,
+                                 @Nullable StageMetrics metrics) {
+    if (!config.isCacheEnabled()) {
+      return lookup;
+    }
+    return new CachingLookup<>(table, lookup, config.getCacheConfig(), metrics);
+  }
+
+  /**
+   * Returns a {@link Lookup} that caches the results of the given {@link Lookup} if caching is enabled in the
+   * given lookup arguments, or the given {@link Lookup} otherwise.
+   *
+   * @param table the name of the lookup table
+   * @param lookup the {@link Lookup} to read from
+   * @param arguments the arguments the lookup table was provided with
+   * @param metrics the {@link StageMetrics} to emit cache hits and misses to, or {@code null} to not emit them
+   * @throws IllegalArgumentException if the cache size or expiry in the arguments is not a number
+   */
+  public static <T> Lookup<T> of(String table, Lookup<T> lookup, Map<String, String> arguments,
+                                 @Nullable StageMetrics metrics) {
+    if (!Boolean.parseBoolean(arguments.get(CACHE_ENABLED))) {
+      return lookup;
+    }
+    CacheConfig cacheConfig = new CacheConfig(getLong(arguments, CACHE_EXPIRY_SECONDS),
+                                              (int) getLong(arguments, CACHE_MAX_SIZE));
+    return new CachingLookup<>(table, lookup, cacheConfig, metrics);
+  }
+
+  /**
+   * Returns the lookup arguments that enable caching with the given {@link CacheConfig}.
+   */
+  public static Map<String, String> getArguments(CacheConfig cacheConfig) {
+    Map<String, String> arguments = new HashMap<>();
+    arguments.put(CACHE_ENABLED, Boolean.TRUE.toString());
+    arguments.put(CACHE_MAX_SIZE, Integer.toString(cacheConfig.getMaxSize()));
+    arguments.put(CACHE_EXPIRY_SECONDS, Long.toString(cacheConfig.getExpirySeconds()));
+    return arguments;
+  }
+
+  private static long getLong(Map<String, String> arguments, String key) {
+    String value = arguments.get(key);
+    if (value == null) {
+      return 0L;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(String.format("Invalid value '%s' for lookup argument %s", value, key), e);
+    }
+  }
+
+  /**
+   * @param table the name of the lookup table
+   * @param delegate the {@link Lookup} to read from on cache misses
+   * @param cacheConfig the cache configuration. A non-positive expiry means entries never expire and a non-positive
+   *                    size means the cache holds at most {@link #DEFAULT_MAX_SIZE} entries.
+   * @param metrics the {@link StageMetrics} to emit cache hits and misses to, or {@code null} to not emit them
+   */
+  public CachingLookup(String table, Lookup<T> delegate, CacheConfig cacheConfig, @Nullable StageMetrics metrics) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+      .maximumSize(cacheConfig.getMaxSize() > 0 ? cacheConfig.getMaxSize() : DEFAULT_MAX_SIZE);
+    if (cacheConfig.getExpirySeconds() > 0) {
+      builder.expireAfterWrite(cacheConfig.getExpirySeconds(), TimeUnit.SECONDS);
+    }
+    this.delegate = delegate;
+    this.cache = builder.build();
+    this.metrics = metrics;
+    this.hitMetric = "lookup." + table + ".cache.hit";
+    this.missMetric = "lookup." + table + ".cache.miss";
+  }
+
+  @Override
+  public T lookup(String key) {
+    Optional<T> value = cache.getIfPresent(key);
+    if (value != null) {
+      emitMetrics(1, 0);
+      return value.orNull();
+    }
+    emitMetrics(0, 1);
+    T result = delegate.lookup(key);
+    cache.put(key, Optional.fromNullable(result));
+    return result;
+  }
+
+  @Override
+  public Map<String, T> lookup(String... keys) {
+    return lookup(ImmutableSet.copyOf(keys));
+  }
+
+  @Override
+  public Map<String, T> lookup(Set<String> keys) {
+    Map<String, T> result = new HashMap<>();
+    Set<String> misses = new HashSet<>();
+    for (String key : keys) {
+      Optional<T> value = cache.getIfPresent(key);
+      if (value == null) {
+        misses.add(key);
+      } else if (value.isPresent()) {
+        result.put(key, value.get());
+      }
+    }
+    emitMetrics(keys.size() - misses.size(), misses.size());
+    if (misses.isEmpty()) {
+      return result;
+    }
+
+    Map<String, T> values = delegate.lookup(misses);
+    for (String key : misses) {
+      T value = values.get(key);
+      cache.put(key, Optional.fromNullable(value));
+      if (value != null) {
+        result.put(key, value);
+      }
+    }
+    return result;
+  }
+
+  private void emitMetrics(int hits, int misses) {
+    if (metrics == null) {
+      return;
+    }
+    if (hits > 0) {
+      metrics.count(hitMetric, hits);
+    }
+    if (misses > 0) {
+      metrics.count(missMetric, misses);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.api.lookup;
+
+import co.cask.cdap.etl.api.CacheConfig;
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.LookupTableConfig;
+import co.cask.cdap.etl.api.StageMetrics;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for {@link CachingLookup}.
+ */
+public class CachingLookupTest {
+
+  @Test
+  public void testCaching() {
+    CountingLookup delegate = new CountingLookup(ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"));
+    CountingMetrics metrics = new CountingMetrics();
+    Lookup<String> lookup = new CachingLookup<>("table", delegate, new CacheConfig(0, 10), metrics);
+
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertNull(lookup.lookup("missing"));
+    Assert.assertNull(lookup.lookup("missing"));
+    Assert.assertEquals(2, delegate.keysRead.size());
+
+    // Only k2 and k3 should be read from the delegate, with one batch lookup
+    Assert.assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"),
+                        lookup.lookup("k1", "k2", "k3", "missing"));
+    Assert.assertEquals(3, delegate.lookups);
+    Assert.assertEquals(ImmutableSet.of("k2", "k3"), ImmutableSet.copyOf(delegate.keysRead.subList(2, 4)));
+
+    Assert.assertEquals(ImmutableMap.of("k2", "v2"), lookup.lookup(ImmutableSet.of("k2")));
+    Assert.assertEquals(3, delegate.lookups);
+
+    Assert.assertEquals(ImmutableMap.of("lookup.table.cache.hit", 5, "lookup.table.cache.miss", 4), metrics.counts);
+  }
+
+  @Test
+  public void testMaxSize() {
+    CountingLookup delegate = new CountingLookup(ImmutableMap.<String, String>of());
+    Lookup<String> lookup = new CachingLookup<>("table", delegate, new CacheConfig(0, 10), null);
+    for (int i = 0; i < 100; i++) {
+      lookup.lookup("key" + i);
+    }
+    for (int i = 0; i < 100; i++) {
+      lookup.lookup("key" + i);
+    }
+    // at most 10 of the keys can still be in the cache on the second pass
+    Assert.assertTrue(delegate.lookups >= 190);
+  }
+
+  @Test
+  public void testCacheDisabled() {
+    Lookup<String> delegate = new CountingLookup(ImmutableMap.of("k1", "v1"));
+    LookupTableConfig config = new LookupTableConfig(LookupTableConfig.TableType.DATASET);
+    Assert.assertSame(delegate, CachingLookup.of("table", delegate, config, null));
+
+    config = new LookupTableConfig(LookupTableConfig.TableType.DATASET, new CacheConfig(),
+                                   ImmutableMap.<String, String>of(), true);
+    Assert.assertTrue(CachingLookup.of("table", delegate, config, null) instanceof CachingLookup);
+  }
+
+  /**
+   * A {@link Lookup} backed by a {@link Map} that records the keys read.
+   */
+  private static final class CountingLookup implements Lookup<String> {
+    private final Map<String, String> data;
+    private final List<String> keysRead = new ArrayList<>();
+    private int lookups;
+
+    CountingLookup(Map<String, String> data) {
+      this.data = data;
+    }
+
+    @Override
+    public String lookup(String key) {
+      lookups++;
+      keysRead.add(key);
+      return data.get(key);
+    }
+
+    @Override
+    public Map<String, String> lookup(String... keys) {
+      return lookup(ImmutableSet.copyOf(keys));
+    }
+
+    @Override
+    public Map<String, String> lookup(Set<String> keys) {
+      lookups++;
+      Map<String, String> result = new HashMap<>();
+      for (String key : keys) {
+        keysRead.add(key);
+        if (data.containsKey(key)) {
+          result.put(key, data.get(key));
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * {@link StageMetrics} that keeps the counts in memory.
+   */
+  private static final class CountingMetrics implements StageMetrics {
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    @Override
+    public void count(String metricName, int delta) {
+      Integer count = counts.get(metricName);
+      counts.put(metricName, count == null ? delta : count + delta);
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      // no-op
+    }
+
+    @Override
+    public void pipelineCount(String metricName, int delta) {
+      // no-op
+    }
+
+    @Override
+    public void pipelineGauge(String metricName, long value) {
+      // no-op
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -27,6 +27,7 @@ import co.cask.cdap.etl.api.batch.PostAction;
 import co.cask.cdap.etl.batch.mapreduce.ETLMapReduce;
 import co.cask.cdap.etl.common.DatasetContextLookupProvider;
 import co.cask.cdap.etl.common.DefaultMacroEvaluator;
+import co.cask.cdap.etl.common.DefaultStageMetrics;
 import co.cask.cdap.etl.proto.Engine;
 import co.cask.cdap.etl.spark.batch.ETLSpark;
 import co.cask.cdap.internal.io.SchemaTypeAdapter;
@@ -98,12 +99,13 @@ public class ETLWorkflow extends AbstractWorkflow {
   @Override
   public void destroy() {
     WorkflowContext workflowContext = getContext();
-    LookupProvider lookupProvider = new DatasetContextLookupProvider(workflowContext);
     Map<String, String> runtimeArgs = workflowContext.getRuntimeArguments();
     long logicalStartTime = workflowContext.getLogicalStartTime();
     for (Map.Entry<String, PostAction> endingActionEntry : postActions.entrySet()) {
       String name = endingActionEntry.getKey();
       PostAction action = endingActionEntry.getValue();
+      LookupProvider lookupProvider =
+        new DatasetContextLookupProvider(workflowContext, new DefaultStageMetrics(workflowMetrics, name));
       BatchActionContext context = new WorkflowBackedActionContext(workflowContext, workflowMetrics, lookupProvider,
                                                                    name, logicalStartTime, runtimeArgs);
       try {
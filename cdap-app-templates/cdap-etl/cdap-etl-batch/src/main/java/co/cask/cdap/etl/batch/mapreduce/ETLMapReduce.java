@@ -27,6 +27,7 @@ import co.cask.cdap.api.mapreduce.AbstractMapReduce;
 import co.cask.cdap.api.mapreduce.MapReduceContext;
 import co.cask.cdap.api.mapreduce.MapReduceTaskContext;
 import co.cask.cdap.api.metrics.Metrics;
+import co.cask.cdap.etl.api.LookupProvider;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.batch.BatchAggregator;
 import co.cask.cdap.etl.api.batch.BatchConfigurable;
@@ -43,6 +44,7 @@ import co.cask.cdap.etl.common.CompositeFinisher;
 import co.cask.cdap.etl.common.Constants;
 import co.cask.cdap.etl.common.DatasetContextLookupProvider;
 import co.cask.cdap.etl.common.DefaultMacroEvaluator;
+import co.cask.cdap.etl.common.DefaultStageMetrics;
 import co.cask.cdap.etl.common.Finisher;
 import co.cask.cdap.etl.common.PipelinePhase;
 import co.cask.cdap.etl.common.SetMultimapCodec;
@@ -177,8 +179,9 @@ public class ETLMapReduce extends AbstractMapReduce {
     for (String sourceName : phaseSpec.getPhase().getSources()) {
       BatchConfigurable<BatchSourceContext> batchSource = pluginInstantiator.newPluginInstance(sourceName, evaluator);
       batchSource = new LoggedBatchConfigurable<>(sourceName, batchSource);
-      MapReduceSourceContext sourceContext = new MapReduceSourceContext(context, mrMetrics,
-                                                                        new DatasetContextLookupProvider(context),
+      LookupProvider lookupProvider =
+        new DatasetContextLookupProvider(context, new DefaultStageMetrics(mrMetrics, sourceName));
+      MapReduceSourceContext sourceContext = new MapReduceSourceContext(context, mrMetrics, lookupProvider,
                                                                         sourceName, context.getRuntimeArguments());
       batchSource.prepareRun(sourceContext);
       runtimeArgs.put(sourceName, sourceContext.getRuntimeArguments());
@@ -200,8 +203,9 @@ public class ETLMapReduce extends AbstractMapReduce {
 
       BatchConfigurable<BatchSinkContext> batchSink = pluginInstantiator.newPluginInstance(sinkName, evaluator);
       batchSink = new LoggedBatchConfigurable<>(sinkName, batchSink);
-      MapReduceSinkContext sinkContext = new MapReduceSinkContext(context, mrMetrics,
-                                                                  new DatasetContextLookupProvider(context),
+      LookupProvider lookupProvider =
+        new DatasetContextLookupProvider(context, new DefaultStageMetrics(mrMetrics, sinkName));
+      MapReduceSinkContext sinkContext = new MapReduceSinkContext(context, mrMetrics, lookupProvider,
                                                                   sinkName, context.getRuntimeArguments());
       batchSink.prepareRun(sinkContext);
       runtimeArgs.put(sinkName, sinkContext.getRuntimeArguments());
@@ -230,13 +234,14 @@ public class ETLMapReduce extends AbstractMapReduce {
     if (!reducers.isEmpty()) {
       job.setReducerClass(ETLReducer.class);
       String reducerName = reducers.iterator().next().getName();
+      LookupProvider lookupProvider =
+        new DatasetContextLookupProvider(context, new DefaultStageMetrics(mrMetrics, reducerName));
       Class<?> outputKeyClass;
       Class<?> outputValClass;
       if (!phaseSpec.getPhase().getStagesOfType(BatchAggregator.PLUGIN_TYPE).isEmpty()) {
         BatchAggregator aggregator = pluginInstantiator.newPluginInstance(reducerName, evaluator);
         MapReduceAggregatorContext aggregatorContext =
-          new MapReduceAggregatorContext(context, mrMetrics,
-                                         new DatasetContextLookupProvider(context),
+          new MapReduceAggregatorContext(context, mrMetrics, lookupProvider,
                                          reducerName, context.getRuntimeArguments());
         aggregator.prepareRun(aggregatorContext);
         finishers.add(aggregator, aggregatorContext);
@@ -260,8 +265,7 @@ public class ETLMapReduce extends AbstractMapReduce {
       } else { // reducer type is joiner
         BatchJoiner batchJoiner = pluginInstantiator.newPluginInstance(reducerName, evaluator);
         MapReduceJoinerContext joinerContext =
-          new MapReduceJoinerContext(context, mrMetrics,
-                                     new DatasetContextLookupProvider(context), reducerName,
+          new MapReduceJoinerContext(context, mrMetrics, lookupProvider, reducerName,
                                      context.getRuntimeArguments());
         batchJoiner.prepareRun(joinerContext);
         finishers.add(batchJoiner, joinerContext);
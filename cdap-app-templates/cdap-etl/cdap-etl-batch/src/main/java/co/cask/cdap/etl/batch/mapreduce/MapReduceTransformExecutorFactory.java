@@ -23,6 +23,7 @@ import co.cask.cdap.etl.api.Aggregator;
 import co.cask.cdap.etl.api.Emitter;
 import co.cask.cdap.etl.api.JoinElement;
 import co.cask.cdap.etl.api.Joiner;
+import co.cask.cdap.etl.api.LookupProvider;
 import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transformation;
 import co.cask.cdap.etl.api.batch.BatchAggregator;
@@ -85,8 +86,9 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
     if (stageRuntimeArgs == null) {
       stageRuntimeArgs = new HashMap<>();
     }
-    return new MapReduceRuntimeContext(taskContext, metrics, new DatasetContextLookupProvider(taskContext),
-                                       stageName, stageRuntimeArgs);
+    LookupProvider lookupProvider =
+      new DatasetContextLookupProvider(taskContext, new DefaultStageMetrics(metrics, stageName));
+    return new MapReduceRuntimeContext(taskContext, metrics, lookupProvider, stageName, stageRuntimeArgs);
   }
 
   private BatchJoinerRuntimeContext createJoinerRuntimeContext(String stageName) {
@@ -94,9 +96,10 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
     if (stageRuntimeArgs == null) {
       stageRuntimeArgs = new HashMap<>();
     }
-    return new MapReduceJoinerRuntimeContext(taskContext, metrics, new DatasetContextLookupProvider(taskContext),
-                                             stageName, stageRuntimeArgs, perStageInputSchemas.get(stageName),
-                                             outputSchema);
+    LookupProvider lookupProvider =
+      new DatasetContextLookupProvider(taskContext, new DefaultStageMetrics(metrics, stageName));
+    return new MapReduceJoinerRuntimeContext(taskContext, metrics, lookupProvider, stageName,
+                                             stageRuntimeArgs, perStageInputSchemas.get(stageName), outputSchema);
   }
 
   @SuppressWarnings("unchecked")
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,8 +19,11 @@ import co.cask.cdap.api.dataset.Dataset;
 import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.etl.api.Lookup;
 import co.cask.cdap.etl.api.LookupProvider;
+import co.cask.cdap.etl.api.StageMetrics;
+import co.cask.cdap.etl.api.lookup.CachingLookup;
 import co.cask.cdap.etl.api.lookup.KeyValueTableLookup;
 
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
@@ -28,6 +31,20 @@ import javax.annotation.Nullable;
  */
 public abstract class AbstractLookupProvider implements LookupProvider {
 
+  private final StageMetrics stageMetrics;
+
+  protected AbstractLookupProvider() {
+    this(null);
+  }
+
+  /**
+   * @param stageMetrics the metrics of the stage using the lookups, for emitting cache hits and misses,
+   *                     or {@code null} to not emit them
+   */
+  protected AbstractLookupProvider(@Nullable StageMetrics stageMetrics) {
+    this.stageMetrics = stageMetrics;
+  }
+
   @SuppressWarnings("unchecked")
   protected <T> Lookup<T> getLookup(String table, @Nullable Dataset dataset) {
     if (dataset == null) {
@@ -40,4 +57,12 @@ public abstract class AbstractLookupProvider implements LookupProvider {
       throw new RuntimeException(String.format("Dataset %s does not support lookup", table));
     }
   }
+
+  /**
+   * Returns a {@link CachingLookup} of the given {@link Lookup} if caching is enabled in the given lookup arguments,
+   * or the given {@link Lookup} otherwise.
+   */
+  protected <T> Lookup<T> withCache(String table, Map<String, String> arguments, Lookup<T> lookup) {
+    return CachingLookup.of(table, lookup, arguments, stageMetrics);
+  }
 }
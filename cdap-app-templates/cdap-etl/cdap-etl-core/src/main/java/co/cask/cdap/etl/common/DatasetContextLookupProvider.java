@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -17,24 +17,34 @@ package co.cask.cdap.etl.common;
 
 import co.cask.cdap.api.data.DatasetContext;
 import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.StageMetrics;
+import co.cask.cdap.etl.api.lookup.CachingLookup;
 
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of {@link AbstractLookupProvider} that uses {@link DatasetContext}.
  * This provides the raw {@link Lookup} without doing any transaction-wrapping for you,
  * and therefore should be used when executing lookup functions inside a transaction.
+ * If caching is enabled in the lookup arguments, as described in {@link CachingLookup}, each {@link Lookup}
+ * provided has its own cache.
  */
 public class DatasetContextLookupProvider extends AbstractLookupProvider {
 
   private final DatasetContext context;
 
   public DatasetContextLookupProvider(DatasetContext context) {
+    this(context, null);
+  }
+
+  public DatasetContextLookupProvider(DatasetContext context, @Nullable StageMetrics stageMetrics) {
+    super(stageMetrics);
     this.context = context;
   }
 
   @Override
   public <T> Lookup<T> provide(String table, Map<String, String> arguments) {
-    return getLookup(table, context.getDataset(table, arguments));
+    return withCache(table, arguments, this.<T>getLookup(table, context.getDataset(table, arguments)));
   }
 }
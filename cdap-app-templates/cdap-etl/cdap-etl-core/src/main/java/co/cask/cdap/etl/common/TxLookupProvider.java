@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,6 +19,8 @@ import co.cask.cdap.api.Transactional;
 import co.cask.cdap.api.TxRunnable;
 import co.cask.cdap.api.data.DatasetContext;
 import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.StageMetrics;
+import co.cask.cdap.etl.api.lookup.CachingLookup;
 import com.google.common.base.Function;
 import org.apache.tephra.TransactionFailureException;
 
@@ -31,19 +33,26 @@ import javax.annotation.Nullable;
  * Implementation of {@link AbstractLookupProvider} that uses {@link Transactional}.
  * This class will provide a {@link Lookup} that wraps each call within a transaction
  * using {@link Transactional}, and therefore can be used when executing lookup functions outside a transaction.
+ * If caching is enabled in the lookup arguments, as described in {@link CachingLookup}, lookups of cached keys
+ * do not start a transaction.
  */
 public class TxLookupProvider extends AbstractLookupProvider {
 
   private final Transactional tx;
 
   public TxLookupProvider(Transactional tx) {
+    this(tx, null);
+  }
+
+  public TxLookupProvider(Transactional tx, @Nullable StageMetrics stageMetrics) {
+    super(stageMetrics);
     this.tx = tx;
   }
 
   @Override
   public <T> Lookup<T> provide(final String table, final Map<String, String> arguments) {
     //noinspection unchecked
-    return new Lookup<T>() {
+    return withCache(table, arguments, new Lookup<T>() {
 
       @Override
       public T lookup(final String key) {
@@ -77,7 +86,7 @@ public class TxLookupProvider extends AbstractLookupProvider {
           }
         });
       }
-    };
+    });
   }
 
   @Nullable
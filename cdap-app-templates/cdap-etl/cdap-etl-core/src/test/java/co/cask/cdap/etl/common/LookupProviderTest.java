@@ -0,0 +1,245 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.api.Transactional;
+import co.cask.cdap.api.TxRunnable;
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.DatasetContext;
+import co.cask.cdap.api.data.DatasetInstantiationException;
+import co.cask.cdap.api.dataset.Dataset;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
+import co.cask.cdap.api.dataset.table.Get;
+import co.cask.cdap.api.dataset.table.Result;
+import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.etl.api.CacheConfig;
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.StageMetrics;
+import co.cask.cdap.etl.api.lookup.CachingLookup;
+import com.google.common.collect.ImmutableMap;
+import org.apache.tephra.TransactionFailureException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * Tests for caching of {@link Lookup} provided by {@link AbstractLookupProvider} implementations.
+ */
+public class LookupProviderTest {
+
+  private static final Map<String, String> CACHE_ARGUMENTS = CachingLookup.getArguments(new CacheConfig(0, 10));
+
+  @Test
+  public void testDatasetContextLookupProvider() {
+    CountingDatasetContext context = new CountingDatasetContext(ImmutableMap.of("k1", "v1"));
+    CountingMetrics metrics = new CountingMetrics();
+    DatasetContextLookupProvider provider = new DatasetContextLookupProvider(context, metrics);
+
+    Lookup<String> cached = provider.provide("cached", CACHE_ARGUMENTS);
+    Assert.assertTrue(cached instanceof CachingLookup);
+    Assert.assertEquals("v1", cached.lookup("k1"));
+    Assert.assertEquals("v1", cached.lookup("k1"));
+    Assert.assertNull(cached.lookup("k2"));
+    Assert.assertNull(cached.lookup("k2"));
+    Assert.assertEquals(2, context.reads);
+    Assert.assertEquals(2, metrics.getCount("lookup.cached.cache.hit"));
+    Assert.assertEquals(2, metrics.getCount("lookup.cached.cache.miss"));
+
+    Lookup<String> uncached = provider.provide("uncached", ImmutableMap.<String, String>of());
+    Assert.assertFalse(uncached instanceof CachingLookup);
+    Assert.assertEquals("v1", uncached.lookup("k1"));
+    Assert.assertEquals("v1", uncached.lookup("k1"));
+    Assert.assertEquals(4, context.reads);
+
+    // caching needs to be enabled explicitly
+    Assert.assertFalse(provider.provide("other", ImmutableMap.of(CachingLookup.CACHE_ENABLED, "false"))
+                         instanceof CachingLookup);
+    // without metrics, lookups are still cached
+    Assert.assertTrue(new DatasetContextLookupProvider(context).provide("cached", CACHE_ARGUMENTS)
+                        instanceof CachingLookup);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCacheArguments() {
+    CountingDatasetContext context = new CountingDatasetContext(ImmutableMap.of("k1", "v1"));
+    new DatasetContextLookupProvider(context).provide("cached", ImmutableMap.of(CachingLookup.CACHE_ENABLED, "true",
+                                                                                CachingLookup.CACHE_MAX_SIZE, "many"));
+  }
+
+  @Test
+  public void testTxLookupProvider() {
+    final CountingDatasetContext context = new CountingDatasetContext(ImmutableMap.of("k1", "v1", "k2", "v2"));
+    final int[] transactions = new int[1];
+    Transactional transactional = new Transactional() {
+      @Override
+      public void execute(TxRunnable runnable) throws TransactionFailureException {
+        transactions[0]++;
+        try {
+          runnable.run(context);
+        } catch (Exception e) {
+          throw new TransactionFailureException("Failed", e);
+        }
+      }
+
+      @Override
+      public void execute(int timeoutInSeconds, TxRunnable runnable) throws TransactionFailureException {
+        execute(runnable);
+      }
+    };
+    CountingMetrics metrics = new CountingMetrics();
+    TxLookupProvider provider = new TxLookupProvider(transactional, metrics);
+
+    // cached keys are served without a transaction
+    Lookup<String> cached = provider.provide("cached", CACHE_ARGUMENTS);
+    Assert.assertEquals("v1", cached.lookup("k1"));
+    Assert.assertEquals("v1", cached.lookup("k1"));
+    Assert.assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2"), cached.lookup("k1", "k2"));
+    Assert.assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2"), cached.lookup("k1", "k2"));
+    Assert.assertEquals(2, transactions[0]);
+    Assert.assertEquals(4, metrics.getCount("lookup.cached.cache.hit"));
+    Assert.assertEquals(2, metrics.getCount("lookup.cached.cache.miss"));
+
+    Lookup<String> uncached = provider.provide("uncached", ImmutableMap.<String, String>of());
+    Assert.assertEquals("v1", uncached.lookup("k1"));
+    Assert.assertEquals("v1", uncached.lookup("k1"));
+    Assert.assertEquals(4, transactions[0]);
+  }
+
+  /**
+   * {@link StageMetrics} that keeps the counts in memory.
+   */
+  private static final class CountingMetrics implements StageMetrics {
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    @Override
+    public void count(String metricName, int delta) {
+      counts.put(metricName, getCount(metricName) + delta);
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      // no-op
+    }
+
+    @Override
+    public void pipelineCount(String metricName, int delta) {
+      // no-op
+    }
+
+    @Override
+    public void pipelineGauge(String metricName, long value) {
+      // no-op
+    }
+
+    private int getCount(String metricName) {
+      Integer count = counts.get(metricName);
+      return count == null ? 0 : count;
+    }
+  }
+
+  /**
+   * {@link DatasetContext} that returns {@link KeyValueTable} with the given content for any name,
+   * and counts the number of reads from them.
+   */
+  private static final class CountingDatasetContext implements DatasetContext {
+
+    private final Map<String, String> content;
+    private int reads;
+
+    private CountingDatasetContext(Map<String, String> content) {
+      this.content = content;
+    }
+
+    @Override
+    public <T extends Dataset> T getDataset(String name) throws DatasetInstantiationException {
+      return getDataset(name, ImmutableMap.<String, String>of());
+    }
+
+    @Override
+    public <T extends Dataset> T getDataset(String namespace, String name) throws DatasetInstantiationException {
+      return getDataset(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Dataset> T getDataset(String name,
+                                            Map<String, String> arguments) throws DatasetInstantiationException {
+      Table table = (Table) Proxy.newProxyInstance(Table.class.getClassLoader(), new Class<?>[] { Table.class },
+                                                   new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          // Only the reads done by KeyValueTable.read(String) and KeyValueTable.readAll(byte[][]) are supported
+          if ("get".equals(method.getName()) && args != null && args.length == 2 && args[0] instanceof byte[]) {
+            reads++;
+            return read((byte[]) args[0]);
+          }
+          if ("get".equals(method.getName()) && args != null && args.length == 1 && args[0] instanceof List) {
+            List<Row> rows = new ArrayList<>();
+            for (Object get : (List<?>) args[0]) {
+              reads++;
+              byte[] row = ((Get) get).getRow();
+              byte[] value = read(row);
+              Map<byte[], byte[]> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+              if (value != null) {
+                columns.put(Bytes.toBytes("c"), value);
+              }
+              rows.add(new Result(row, columns));
+            }
+            return rows;
+          }
+          if ("close".equals(method.getName())) {
+            return null;
+          }
+          throw new UnsupportedOperationException(method.toString());
+        }
+      });
+      return (T) new KeyValueTable(name, table);
+    }
+
+    @Nullable
+    private byte[] read(byte[] key) {
+      String value = content.get(Bytes.toString(key));
+      return value == null ? null : Bytes.toBytes(value);
+    }
+
+    @Override
+    public <T extends Dataset> T getDataset(String namespace, String name,
+                                            Map<String, String> arguments) throws DatasetInstantiationException {
+      return getDataset(name, arguments);
+    }
+
+    @Override
+    public void releaseDataset(Dataset dataset) {
+      // no-op
+    }
+
+    @Override
+    public void discardDataset(Dataset dataset) {
+      // no-op
+    }
+  }
+}
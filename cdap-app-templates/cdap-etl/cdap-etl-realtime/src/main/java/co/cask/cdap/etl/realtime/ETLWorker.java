@@ -228,7 +228,7 @@ public class ETLWorker extends AbstractWorker {
     source = context.newPluginInstance(sourceName);
     source = new LoggedRealtimeSource<>(sourceName, source);
     WorkerRealtimeContext sourceContext = new WorkerRealtimeContext(
-      context, metrics, new TxLookupProvider(context), sourceName);
+      context, metrics, new TxLookupProvider(context, new DefaultStageMetrics(metrics, sourceName)), sourceName);
     sourceStageName = sourceName;
     LOG.debug("Source Class : {}", source.getClass().getName());
     source.initialize(sourceContext);
@@ -245,7 +245,7 @@ public class ETLWorker extends AbstractWorker {
       RealtimeSink sink = context.newPluginInstance(sinkName);
       sink = new LoggedRealtimeSink(sinkName, sink);
       WorkerRealtimeContext sinkContext = new WorkerRealtimeContext(
-        context, metrics, new TxLookupProvider(context), sinkName);
+        context, metrics, new TxLookupProvider(context, new DefaultStageMetrics(metrics, sinkName)), sinkName);
       LOG.debug("Sink Class : {}", sink.getClass().getName());
       sink.initialize(sinkContext);
       sink = new TrackedRealtimeSink(sink, new DefaultStageMetrics(metrics, sinkName));
@@ -280,11 +280,11 @@ public class ETLWorker extends AbstractWorker {
       try {
         Transform<?, ?> transform = context.newPluginInstance(transformName);
         transform = new LoggedTransform<>(transformName, transform);
+        StageMetrics stageMetrics = new DefaultStageMetrics(metrics, transformName);
         WorkerRealtimeContext transformContext = new WorkerRealtimeContext(
-          context, metrics, new TxLookupProvider(context), transformName);
+          context, metrics, new TxLookupProvider(context, stageMetrics), transformName);
         LOG.debug("Transform Class : {}", transform.getClass().getName());
         transform.initialize(transformContext);
-        StageMetrics stageMetrics = new DefaultStageMetrics(metrics, transformName);
         transformDetailMap.put(transformName, new TransformDetail(
           new TrackedTransform<>(transform, stageMetrics),
           pipeline.getStageOutputs(transformName)));
@@ -187,6 +187,48 @@ public class ETLWorkerTest extends HydratorTestBase {
     validateMetric(1, appId, "sink.records.in");
   }
 
+  @Test
+  public void testLookupWithCache() throws Exception {
+    addDatasetInstance(KeyValueTable.class.getName(), "cachedLookupTable");
+    DataSetManager<KeyValueTable> lookupTable = getDataset("cachedLookupTable");
+    lookupTable.get().write("Bob".getBytes(Charsets.UTF_8), "123".getBytes(Charsets.UTF_8));
+    lookupTable.flush();
+
+    File outDir = TMP_FOLDER.newFolder();
+    ETLRealtimeConfig etlConfig = ETLRealtimeConfig.builder()
+      .addStage(new ETLStage("source", LookupSource.getPlugin(ImmutableSet.of("Bob", "Bill"),
+                                                              "cachedLookupTable", true)))
+      .addStage(new ETLStage("sink", MockSink.getPlugin(outDir)))
+      .addConnection("source", "sink")
+      .build();
+
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "cachedLookupTestApp");
+    AppRequest<ETLRealtimeConfig> appRequest = new AppRequest<>(APP_ARTIFACT, etlConfig);
+    ApplicationManager appManager = deployApplication(appId, appRequest);
+
+    WorkerManager workerManager = appManager.getWorkerManager(ETLWorker.NAME);
+    workerManager.start();
+    workerManager.waitForStatus(true, 10, 1);
+
+    Schema schema = Schema.recordOf(
+      "bobbill",
+      Schema.Field.of("Bob", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("Bill", Schema.nullableOf(Schema.of(Schema.Type.STRING)))
+    );
+    List<StructuredRecord> expected = new ArrayList<>();
+    expected.add(StructuredRecord.builder(schema).set("Bob", "123").build());
+    try {
+      List<StructuredRecord> actual = MockSink.getRecords(outDir, 0, 10, TimeUnit.SECONDS);
+      Assert.assertEquals(expected, actual);
+    } finally {
+      stopWorker(workerManager);
+    }
+    // the source looks up both fields twice, the second time from the cache
+    validateMetric(2, appId, "source.lookup.cachedLookupTable.cache.miss");
+    validateMetric(2, appId, "source.lookup.cachedLookupTable.cache.hit");
+    validateMetric(1, appId, "source.records.out");
+  }
+
   @Test
   public void testDAG() throws Exception {
     Schema schema = Schema.recordOf("testRecord", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
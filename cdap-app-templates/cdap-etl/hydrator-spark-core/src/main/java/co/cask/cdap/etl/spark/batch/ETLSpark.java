@@ -24,6 +24,7 @@ import co.cask.cdap.api.data.stream.StreamBatchReadable;
 import co.cask.cdap.api.macro.MacroEvaluator;
 import co.cask.cdap.api.spark.AbstractSpark;
 import co.cask.cdap.api.spark.SparkClientContext;
+import co.cask.cdap.etl.api.LookupProvider;
 import co.cask.cdap.etl.api.batch.BatchAggregator;
 import co.cask.cdap.etl.api.batch.BatchConfigurable;
 import co.cask.cdap.etl.api.batch.BatchJoiner;
@@ -39,6 +40,7 @@ import co.cask.cdap.etl.common.CompositeFinisher;
 import co.cask.cdap.etl.common.Constants;
 import co.cask.cdap.etl.common.DatasetContextLookupProvider;
 import co.cask.cdap.etl.common.DefaultMacroEvaluator;
+import co.cask.cdap.etl.common.DefaultStageMetrics;
 import co.cask.cdap.etl.common.Finisher;
 import co.cask.cdap.etl.common.SetMultimapCodec;
 import co.cask.cdap.etl.planner.StageInfo;
@@ -110,7 +112,6 @@ public class ETLSpark extends AbstractSpark {
 
     Map<String, String> properties = context.getSpecification().getProperties();
     BatchPhaseSpec phaseSpec = GSON.fromJson(properties.get(Constants.PIPELINEID), BatchPhaseSpec.class);
-    DatasetContextLookupProvider lookProvider = new DatasetContextLookupProvider(context);
     MacroEvaluator evaluator = new DefaultMacroEvaluator(context.getWorkflowToken(), context.getRuntimeArguments(),
                                                          context.getLogicalStartTime(), context,
                                                          context.getNamespace());
@@ -121,10 +122,13 @@ public class ETLSpark extends AbstractSpark {
     for (StageInfo stageInfo : phaseSpec.getPhase()) {
       String stageName = stageInfo.getName();
       String pluginType = stageInfo.getPluginType();
+      LookupProvider lookupProvider =
+        new DatasetContextLookupProvider(context, new DefaultStageMetrics(context.getMetrics(), stageName));
 
       if (BatchSource.PLUGIN_TYPE.equals(pluginType)) {
         BatchConfigurable<BatchSourceContext> batchSource = context.newPluginInstance(stageName, evaluator);
-        BatchSourceContext sourceContext = new SparkBatchSourceContext(sourceFactory, context, lookProvider, stageName);
+        BatchSourceContext sourceContext =
+          new SparkBatchSourceContext(sourceFactory, context, lookupProvider, stageName);
         batchSource.prepareRun(sourceContext);
         finishers.add(batchSource, sourceContext);
       } else if (BatchSink.PLUGIN_TYPE.equals(pluginType)) {
@@ -134,13 +138,13 @@ public class ETLSpark extends AbstractSpark {
         finishers.add(batchSink, sinkContext);
       } else if (SparkSink.PLUGIN_TYPE.equals(pluginType)) {
         BatchConfigurable<SparkPluginContext> sparkSink = context.newPluginInstance(stageName, evaluator);
-        SparkPluginContext sparkPluginContext = new BasicSparkPluginContext(context, lookProvider, stageName);
+        SparkPluginContext sparkPluginContext = new BasicSparkPluginContext(context, lookupProvider, stageName);
         sparkSink.prepareRun(sparkPluginContext);
         finishers.add(sparkSink, sparkPluginContext);
       } else if (BatchAggregator.PLUGIN_TYPE.equals(pluginType)) {
         BatchAggregator aggregator = context.newPluginInstance(stageName, evaluator);
         AbstractAggregatorContext aggregatorContext =
-          new SparkAggregatorContext(context, new DatasetContextLookupProvider(context), stageName);
+          new SparkAggregatorContext(context, lookupProvider, stageName);
         aggregator.prepareRun(aggregatorContext);
         finishers.add(aggregator, aggregatorContext);
         stagePartitions.put(stageName, aggregatorContext.getNumPartitions());
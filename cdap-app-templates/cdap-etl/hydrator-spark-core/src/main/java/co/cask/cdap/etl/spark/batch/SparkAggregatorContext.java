@@ -22,6 +22,7 @@ import co.cask.cdap.api.spark.SparkClientContext;
 import co.cask.cdap.etl.api.LookupProvider;
 import co.cask.cdap.etl.batch.AbstractAggregatorContext;
 import co.cask.cdap.etl.common.DatasetContextLookupProvider;
+import co.cask.cdap.etl.common.DefaultStageMetrics;
 
 /**
  * Spark Aggregator Context.
@@ -36,7 +37,8 @@ public class SparkAggregatorContext extends AbstractAggregatorContext {
   public SparkAggregatorContext(JavaSparkExecutionContext sec, DatasetContext datasetContext,
                                 String stageName, long logicalStartTime) {
     super(sec.getPluginContext(), datasetContext, sec.getMetrics(),
-          new DatasetContextLookupProvider(datasetContext), stageName,
+          new DatasetContextLookupProvider(datasetContext, new DefaultStageMetrics(sec.getMetrics(), stageName)),
+          stageName,
           logicalStartTime, sec.getRuntimeArguments(), sec.getAdmin());
   }
 
@@ -19,6 +19,7 @@ package co.cask.cdap.etl.spark.batch;
 import co.cask.cdap.api.spark.SparkClientContext;
 import co.cask.cdap.etl.batch.AbstractJoinerContext;
 import co.cask.cdap.etl.common.DatasetContextLookupProvider;
+import co.cask.cdap.etl.common.DefaultStageMetrics;
 
 /**
  * Spark joiner context for preparing jobs.
@@ -26,7 +27,8 @@ import co.cask.cdap.etl.common.DatasetContextLookupProvider;
 public class SparkJoinerContext extends AbstractJoinerContext {
 
   protected SparkJoinerContext(String stageName, SparkClientContext scc) {
-    super(scc, scc, scc.getMetrics(), new DatasetContextLookupProvider(scc), stageName,
+    super(scc, scc, scc.getMetrics(),
+          new DatasetContextLookupProvider(scc, new DefaultStageMetrics(scc.getMetrics(), stageName)), stageName,
           scc.getLogicalStartTime(), scc.getRuntimeArguments(), scc.getAdmin());
   }
 
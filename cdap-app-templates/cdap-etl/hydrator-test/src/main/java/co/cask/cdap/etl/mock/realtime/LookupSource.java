@@ -23,8 +23,10 @@ import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.plugin.PluginClass;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.api.plugin.PluginPropertyField;
+import co.cask.cdap.etl.api.CacheConfig;
 import co.cask.cdap.etl.api.Emitter;
 import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.lookup.CachingLookup;
 import co.cask.cdap.etl.api.realtime.RealtimeContext;
 import co.cask.cdap.etl.api.realtime.RealtimeSource;
 import co.cask.cdap.etl.api.realtime.SourceState;
@@ -33,6 +35,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -42,7 +45,8 @@ import javax.annotation.Nullable;
 
 /**
  * Source used to test lookup functionality. Takes a set of fields as config and emits a single record with
- * each field value being the result of lookup for that field.
+ * each field value being the result of lookup for that field. If caching is enabled, the fields are looked up
+ * twice, so that the second lookup is served from the cache.
  */
 @Plugin(type = RealtimeSource.PLUGIN_TYPE)
 @Name("Lookup")
@@ -67,7 +71,9 @@ public class LookupSource extends RealtimeSource<StructuredRecord> {
       schemaFields.add(Schema.Field.of(fieldName, Schema.nullableOf(Schema.of(Schema.Type.STRING))));
     }
     schema = Schema.recordOf("lookupRecord", schemaFields);
-    lookup = context.provide(config.lookupName, new HashMap<String, String>());
+    Map<String, String> lookupArguments = config.cacheEnabled != null && config.cacheEnabled
+      ? CachingLookup.getArguments(new CacheConfig()) : Collections.<String, String>emptyMap();
+    lookup = context.provide(config.lookupName, lookupArguments);
   }
 
   @Nullable
@@ -75,6 +81,9 @@ public class LookupSource extends RealtimeSource<StructuredRecord> {
   public SourceState poll(Emitter<StructuredRecord> writer, SourceState currentState) throws Exception {
     if (currentState.getState("done") == null) {
       Map<String, String> fieldValues = lookup.lookup(fields);
+      if (config.cacheEnabled != null && config.cacheEnabled) {
+        fieldValues = lookup.lookup(fields);
+      }
       StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
       for (Map.Entry<String, String> entry : fieldValues.entrySet()) {
         recordBuilder.set(entry.getKey(), entry.getValue());
@@ -91,12 +100,19 @@ public class LookupSource extends RealtimeSource<StructuredRecord> {
   public static class Config extends PluginConfig {
     private String fields;
     private String lookupName;
+    @Nullable
+    private Boolean cacheEnabled;
   }
 
   public static ETLPlugin getPlugin(Set<String> fields, String lookupName) {
+    return getPlugin(fields, lookupName, false);
+  }
+
+  public static ETLPlugin getPlugin(Set<String> fields, String lookupName, boolean cacheEnabled) {
     Map<String, String> properties = new HashMap<>();
     properties.put("fields", Joiner.on(',').join(fields));
     properties.put("lookupName", lookupName);
+    properties.put("cacheEnabled", Boolean.toString(cacheEnabled));
     return new ETLPlugin("Lookup", RealtimeSource.PLUGIN_TYPE, properties, null);
   }
 
@@ -104,6 +120,7 @@ public class LookupSource extends RealtimeSource<StructuredRecord> {
     Map<String, PluginPropertyField> properties = new HashMap<>();
     properties.put("fields", new PluginPropertyField("fields", "", "string", true, false));
     properties.put("lookupName", new PluginPropertyField("lookupName", "", "string", true, false));
+    properties.put("cacheEnabled", new PluginPropertyField("cacheEnabled", "", "boolean", false, false));
     return new PluginClass(RealtimeSource.PLUGIN_TYPE, "Lookup", "", LookupSource.class.getName(),
                            "config", properties);
   }
@@ -144,6 +144,8 @@ public final class Constants {
     public static final String RUNTIME_EXT_DIR = "app.program.runtime.extensions.dir";
     public static final String PROGRAM_MAX_START_SECONDS = "app.program.max.start.seconds";
     public static final String PROGRAM_MAX_STOP_SECONDS = "app.program.max.stop.seconds";
+    public static final String METADATA_BINARY_ENCODING_ENABLED = "app.metadata.binary.encoding.enabled";
+    public static final String ARTIFACT_UNPACK_CACHE_SIZE_MB = "app.artifact.unpack.cache.size.mb";
 
     /**
      * Guice named bindings.
@@ -157,6 +159,7 @@ public final class Constants {
     public static final int DEFAULT_EXEC_THREADS = 20;
     public static final int DEFAULT_BOSS_THREADS = 1;
     public static final int DEFAULT_WORKER_THREADS = 10;
+    public static final long DEFAULT_ARTIFACT_UNPACK_CACHE_SIZE_MB = 2048;
 
     /**
      * Query parameter to indicate start time.
@@ -288,6 +291,10 @@ public final class Constants {
 
     public static final String DATASET_UNCHECKED_UPGRADE = "dataset.unchecked.upgrade";
 
+    // Target size of the splits computed for batch reads of tables
+    public static final String TABLE_SPLIT_SIZE_MB = "dataset.table.split.size.mb";
+    public static final long DEFAULT_TABLE_SPLIT_SIZE_MB = 256;
+
     /**
      * Constants for PartitionedFileSet's DynamicPartitioner
      */
@@ -371,9 +378,12 @@ public final class Constants {
     public static final String FILE_PREFIX = "stream.file.prefix";
     public static final String INSTANCE_FILE_PREFIX = "stream.instance.file.prefix";
     public static final String CONSUMER_TABLE_PRESPLITS = "stream.consumer.table.presplits";
+    public static final String CONSUMER_FIFO_LEASE_SIZE = "stream.consumer.fifo.lease.size";
+    public static final String CONSUMER_FIFO_LEASE_TIMEOUT = "stream.consumer.fifo.lease.timeout.seconds";
     public static final String FILE_CLEANUP_PERIOD = "stream.file.cleanup.period";
     public static final String BATCH_BUFFER_THRESHOLD = "stream.batch.buffer.threshold";
     public static final String NOTIFICATION_THRESHOLD = "stream.notification.threshold";
+    public static final String COMPRESSION_CODEC = "stream.compression.codec";
 
     // Stream http service configurations.
     public static final String STREAM_HANDLER = "stream.handler";
@@ -461,6 +471,11 @@ public final class Constants {
     public static final String CLIENT_BOSS_THREADS = "router.client.boss.threads";
     public static final String CLIENT_WORKER_THREADS = "router.client.worker.threads";
     public static final String CONNECTION_TIMEOUT_SECS = "router.connection.idle.timeout.secs";
+    public static final String POOL_MAX_IDLE_PER_DESTINATION = "router.connection.pool.max.idle.per.destination";
+    public static final String POOL_MAX_CONNECTIONS_PER_DESTINATION =
+      "router.connection.pool.max.connections.per.destination";
+    public static final String POOL_ACQUIRE_TIMEOUT_MS = "router.connection.pool.acquire.timeout.ms";
+    public static final String METRICS_ENABLED = "router.metrics.enabled";
     public static final String ROUTER_USERSERVICE_FALLBACK_STRAGEY = "router.userservice.fallback.strategy";
 
     /**
@@ -505,6 +520,10 @@ public final class Constants {
 
     public static final String SERVER_ADDRESS = "metrics.query.bind.address";
     public static final String SERVER_PORT = "metrics.query.bind.port";
+    /** Number of threads for executing the queries of a batch metrics query request. */
+    public static final String QUERY_BATCH_THREADS = "metrics.query.batch.threads";
+    /** Time in milliseconds after which the unfinished queries of a batch metrics query request are cancelled. */
+    public static final String QUERY_BATCH_TIMEOUT_MS = "metrics.query.batch.timeout.ms";
 
     public static final String KAFKA_TOPIC_PREFIX = "metrics.kafka.topic.prefix";
     public static final String KAFKA_PARTITION_SIZE = "metrics.kafka.partition.size";
@@ -611,6 +630,30 @@ public final class Constants {
         public static final String OP_COUNT = "dataset.store.ops";
         public static final String WRITE_COUNT = "dataset.store.writes";
         public static final String WRITE_BYTES = "dataset.store.bytes";
+        public static final String FLUSH_COUNT = "dataset.store.flushes";
+        public static final String FLUSH_MS = "dataset.store.flush.ms";
+      }
+
+      /**
+       * Artifact metrics
+       */
+      public static final class Artifact {
+        public static final String PLUGIN_INDEX_BUILD_MS = "artifact.plugin.index.build.ms";
+        public static final String PLUGIN_INDEX_SIZE = "artifact.plugin.index.size";
+      }
+
+      /**
+       * Router metrics
+       */
+      public static final class Router {
+        public static final String POOL_CONNECTIONS_IDLE = "router.pool.connections.idle";
+        public static final String POOL_CONNECTIONS_LEASED = "router.pool.connections.leased";
+        public static final String POOL_CONNECTIONS_OPENED = "router.pool.connections.opened";
+        public static final String POOL_CONNECTIONS_REUSED = "router.pool.connections.reused";
+        public static final String POOL_REQUESTS_WAITING = "router.pool.requests.waiting";
+        public static final String AUTH_TOKEN_CACHE_HITS = "router.auth.token.cache.hits";
+        public static final String AUTH_TOKEN_CACHE_MISSES = "router.auth.token.cache.misses";
+        public static final String AUTH_TOKEN_VALIDATION_TIME_US = "router.auth.token.validation.time.us";
       }
 
       /**
@@ -710,6 +753,10 @@ public final class Constants {
     public static final String TOKEN_DIGEST_KEY_EXPIRATION = "security.token.digest.key.expiration.ms";
     /** Parent znode used for secret key distribution in ZooKeeper. */
     public static final String DIST_KEY_PARENT_ZNODE = "security.token.distributed.parent.znode";
+    /** Maximum number of verified access tokens cached by the token validator. Zero disables the cache. */
+    public static final String TOKEN_CACHE_MAX_SIZE = "security.token.cache.max.size";
+    /** Time duration in milliseconds after which a verified access token is validated again. */
+    public static final String TOKEN_CACHE_EXPIRATION = "security.token.cache.expiration.ms";
     /** Deprecated. Use AUTH_SERVER_BIND_ADDRESS instead. **/
     @Deprecated
     public static final String AUTH_SERVER_ADDRESS = "security.auth.server.address";
@@ -16,12 +16,12 @@
 
 package co.cask.cdap.common.guice;
 
+import co.cask.cdap.internal.io.ASMDatumReaderFactory;
 import co.cask.cdap.internal.io.ASMDatumWriterFactory;
 import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
 import co.cask.cdap.internal.io.DatumReaderFactory;
 import co.cask.cdap.internal.io.DatumWriterFactory;
 import co.cask.cdap.internal.io.FieldAccessorFactory;
-import co.cask.cdap.internal.io.ReflectionDatumReaderFactory;
 import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
 import co.cask.cdap.internal.io.SchemaGenerator;
 import com.google.inject.PrivateModule;
@@ -42,8 +42,7 @@ public class IOModule extends PrivateModule {
 
     expose(DatumWriterFactory.class);
 
-    // Note: Need to add the DatumReader counter parts when those are refactored to use ASM as well.
-    bind(DatumReaderFactory.class).to(ReflectionDatumReaderFactory.class).in(Scopes.SINGLETON);
+    bind(DatumReaderFactory.class).to(ASMDatumReaderFactory.class).in(Scopes.SINGLETON);
     expose(DatumReaderFactory.class);
   }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.lang.InstantiatorFactory;
+import co.cask.cdap.internal.asm.ByteCodeClassLoader;
+import co.cask.cdap.internal.asm.ClassDefinition;
+import co.cask.cdap.internal.lang.Fields;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
+import com.google.common.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import javax.inject.Inject;
+
+/**
+ * A factory class for creating {@link DatumReader} instance for different data type and schema.
+ * It serves as an in memory cache for generated {@link DatumReader} {@link Class} using ASM.
+ * For data type and schema combinations that cannot be generated, {@link ReflectionDatumReader} is used instead.
+ * Each generated {@link DatumReader} also falls back to {@link ReflectionDatumReader} when reading data written
+ * with a schema different from the one it was created with.
+ */
+public final class ASMDatumReaderFactory implements DatumReaderFactory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ASMDatumReaderFactory.class);
+
+  private final LoadingCache<CacheKey, Optional<Class<DatumReader<?>>>> datumReaderClasses;
+  private final FieldAccessorFactory fieldAccessorFactory;
+  private final InstantiatorFactory instantiatorFactory;
+
+  @Inject
+  public ASMDatumReaderFactory(FieldAccessorFactory fieldAccessorFactory) {
+    this.fieldAccessorFactory = new FinalFieldAccessorFactory(fieldAccessorFactory);
+    this.instantiatorFactory = new InstantiatorFactory(true);
+    this.datumReaderClasses = CacheBuilder.newBuilder().build(new ASMCacheLoader());
+  }
+
+  /**
+   * Creates a {@link DatumReader} that is able to decode given data type with the given {@link Schema}.
+   * The instance created is reusable, but is not thread safe since it may fallback to {@link ReflectionDatumReader}.
+   *
+   * @param type Type information of the data type to be decoded.
+   * @param schema Schema of the data type.
+   * @param <T> Type of the data type.
+   * @return A {@link DatumReader} instance.
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> DatumReader<T> create(TypeToken<T> type, Schema schema) {
+    DatumReader<T> fallback = new ReflectionDatumReader<>(schema, type);
+    Optional<Class<DatumReader<?>>> readerClass = datumReaderClasses.getUnchecked(new CacheKey(schema, type));
+    if (!readerClass.isPresent()) {
+      return fallback;
+    }
+    try {
+      return (DatumReader<T>) readerClass.get()
+        .getConstructor(Schema.class, FieldAccessorFactory.class, InstantiatorFactory.class, DatumReader.class)
+        .newInstance(schema, fieldAccessorFactory, instantiatorFactory, fallback);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Converts the given {@link ByteBuffer} to byte array, without copying if the buffer is backed by an array
+   * of the exact size. Called by the generated {@link DatumReader}.
+   */
+  public static byte[] toByteArray(ByteBuffer buffer) {
+    if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+      && buffer.array().length == buffer.remaining()) {
+      return buffer.array();
+    }
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Converts the given {@link Collection} to a Java array of the given array class.
+   * Called by the generated {@link DatumReader}.
+   */
+  public static Object toArray(Collection<?> collection, Class<?> arrayClass) {
+    Object array = Array.newInstance(arrayClass.getComponentType(), collection.size());
+    Iterator<?> iterator = collection.iterator();
+    for (int i = 0; iterator.hasNext(); i++) {
+      Array.set(array, i, iterator.next());
+    }
+    return array;
+  }
+
+  /**
+   * A private {@link CacheLoader} for generating different {@link DatumReader} {@link Class}.
+   */
+  private static final class ASMCacheLoader extends CacheLoader<CacheKey, Optional<Class<DatumReader<?>>>> {
+
+    private final Map<TypeToken<?>, ByteCodeClassLoader> classloaders = Maps.newIdentityHashMap();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Optional<Class<DatumReader<?>>> load(CacheKey key) throws Exception {
+      ClassDefinition classDef;
+      try {
+        classDef = new DatumReaderGenerator().generate(key.getType(), key.getSchema());
+      } catch (IllegalArgumentException e) {
+        LOG.debug("Using reflection based DatumReader for type {} with schema {}: {}",
+                  key.getType(), key.getSchema(), e.getMessage());
+        return Optional.absent();
+      }
+
+      ByteCodeClassLoader classloader = classloaders.get(key.getType());
+      if (classloader == null) {
+        // The ClassLoader of the generated DatumReader has CDAP system ClassLoader as parent.
+        // The ClassDefinition contains list of classes that should not be loaded by the generated class ClassLoader
+        classloader = new ByteCodeClassLoader(ASMDatumReaderFactory.class.getClassLoader());
+        classloaders.put(key.getType(), classloader);
+      }
+
+      return Optional.of((Class<DatumReader<?>>) classloader.addClass(classDef).loadClass(classDef.getClassName()));
+    }
+  }
+
+  /**
+   * A {@link FieldAccessorFactory} that uses {@link ReflectionFieldAccessorFactory} for final fields, since
+   * they cannot be set through generated bytecode, and delegates to another factory for all other fields.
+   */
+  private static final class FinalFieldAccessorFactory implements FieldAccessorFactory {
+
+    private final FieldAccessorFactory delegate;
+    private final FieldAccessorFactory reflectionFactory;
+
+    private FinalFieldAccessorFactory(FieldAccessorFactory delegate) {
+      this.delegate = delegate;
+      this.reflectionFactory = new ReflectionFieldAccessorFactory();
+    }
+
+    @Override
+    public FieldAccessor getFieldAccessor(TypeToken<?> type, String fieldName) {
+      try {
+        if (Modifier.isFinal(Fields.findField(type.getType(), fieldName).getModifiers())) {
+          return reflectionFactory.getFieldAccessor(type, fieldName);
+        }
+      } catch (NoSuchFieldException e) {
+        throw Throwables.propagate(e);
+      }
+      return delegate.getFieldAccessor(type, fieldName);
+    }
+  }
+
+  private static final class CacheKey {
+    private final Schema schema;
+    private final TypeToken<?> type;
+
+    private CacheKey(Schema schema, TypeToken<?> type) {
+      this.schema = schema;
+      this.type = type;
+    }
+
+    public Schema getSchema() {
+      return schema;
+    }
+
+    public TypeToken<?> getType() {
+      return type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      CacheKey cacheKey = (CacheKey) o;
+      return schema.equals(cacheKey.schema) && type.equals(cacheKey.type);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(schema, type);
+    }
+  }
+}
@@ -0,0 +1,840 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.SchemaHash;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.lang.Instantiator;
+import co.cask.cdap.common.lang.InstantiatorFactory;
+import co.cask.cdap.internal.asm.ClassDefinition;
+import co.cask.cdap.internal.asm.Methods;
+import co.cask.cdap.internal.asm.Signatures;
+import co.cask.cdap.internal.lang.Fields;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.primitives.Primitives;
+import com.google.common.reflect.TypeParameter;
+import com.google.common.reflect.TypeToken;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Class for generating {@link DatumReader} bytecodes using ASM. The generated reader decodes data written with
+ * the same schema as the one it is generated for, and delegates to a fallback {@link DatumReader} for data
+ * written with any other schema. The class generated will have a skeleton looks like the following:
+ * <pre>
+ * {@code
+ *
+ *  public final class generatedClassName implements DatumReader<InputType> {
+ *    private static final String SCHEMA_HASH = "schema_hash_as_hex_string";
+ *    private final Schema schema;
+ *    private final DatumReader<InputType> fallback;
+ *
+ *    public generatedClassName(Schema schema, FieldAccessorFactory accessorFactory,
+ *                              InstantiatorFactory instantiatorFactory, DatumReader<InputType> fallback) {
+ *      if (!SCHEMA_HASH.equals(schema.getSchemaHash().toString())) {
+ *        throw new IllegalArgumentException("Schema not match.");
+ *      }
+ *      this.schema = schema;
+ *      this.fallback = fallback;
+ *      // Initialize field accessors, instantiators and classes used by the generated read methods
+ *    }
+ *
+ *    @Override
+ *    public InputType read(Decoder decoder, Schema sourceSchema) throws IOException {
+ *      if (sourceSchema != schema && !schema.equals(sourceSchema)) {
+ *        return fallback.read(decoder, sourceSchema);
+ *      }
+ *      return generatedReadMethod(decoder, schema);
+ *    }
+ *
+ *    private InputType generatedReadMethod(Decoder decoder, Schema schema) {
+ *      // Do actual decoding by calling methods on decoder based on the type.
+ *    }
+ *
+ *    // Could have more generatedReadMethods...
+ *  }
+ * }
+ * </pre>
+ *
+ * Generation fails with {@link IllegalArgumentException} for type and schema combinations that it doesn't
+ * specialize, such as types that need conversion from the decoded value.
+ */
+@NotThreadSafe
+final class DatumReaderGenerator {
+
+  private final Map<String, Method> readMethods = Maps.newHashMap();
+  private final Multimap<TypeToken<?>, String> fieldAccessorRequests = LinkedHashMultimap.create();
+  private final Map<Class<?>, String> instantiatorRequests = Maps.newLinkedHashMap();
+  private final Map<Class<?>, String> classRequests = Maps.newLinkedHashMap();
+  private ClassWriter classWriter;
+  private Type classType;
+  private List<Class<?>> preservedClasses;
+
+  /**
+   * Generates a {@link DatumReader} class for decoding data of the given input type with the given schema.
+   *
+   * @param inputType Type information of the input data type.
+   * @param schema Schema of the input data type.
+   * @return A {@link ClassDefinition} that contains generated class information.
+   * @throws IllegalArgumentException if the given type and schema cannot be specialized
+   */
+  ClassDefinition generate(TypeToken<?> inputType, Schema schema) {
+    classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+    preservedClasses = Lists.newArrayList();
+
+    TypeToken<?> interfaceType = getInterfaceType(inputType);
+
+    // Generate the class
+    String className = getClassName(interfaceType, schema);
+    classType = Type.getObjectType(className);
+    classWriter.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL,
+                      className, Signatures.getClassSignature(interfaceType),
+                      Type.getInternalName(Object.class),
+                      new String[]{Type.getInternalName(interfaceType.getRawType())});
+
+    // Static schema hash field, for verification
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_STATIC + Opcodes.ACC_FINAL, "SCHEMA_HASH",
+                           Type.getDescriptor(String.class), null, schema.getSchemaHash().toString()).visitEnd();
+
+    // Schema and fallback reader fields
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, "schema",
+                           Type.getDescriptor(Schema.class), null, null).visitEnd();
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, "fallback",
+                           Type.getDescriptor(DatumReader.class), null, null).visitEnd();
+
+    // Read method
+    generateRead(inputType, schema);
+
+    // Constructor
+    generateConstructor();
+
+    ClassDefinition classDefinition = new ClassDefinition(classWriter.toByteArray(), className, preservedClasses);
+    // DEBUG block. Uncomment for debug
+//    co.cask.cdap.internal.asm.Debugs.debugByteCode(classDefinition, new java.io.PrintWriter(System.out));
+    // End DEBUG block
+    return classDefinition;
+  }
+
+  /**
+   * Generates the constructor. The constructor generated has signature
+   * {@code (Schema, FieldAccessorFactory, InstantiatorFactory, DatumReader)}.
+   */
+  private void generateConstructor() {
+    Method constructor = getMethod(void.class, "<init>", Schema.class, FieldAccessorFactory.class,
+                                   InstantiatorFactory.class, DatumReader.class);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, constructor, null, null, classWriter);
+
+    // super(); // Calling Object constructor
+    mg.loadThis();
+    mg.invokeConstructor(Type.getType(Object.class), getMethod(void.class, "<init>"));
+
+    // if (!SCHEMA_HASH.equals(schema.getSchemaHash().toString())) { throw IllegalArgumentException }
+    mg.getStatic(classType, "SCHEMA_HASH", Type.getType(String.class));
+    mg.loadArg(0);
+    mg.invokeVirtual(Type.getType(Schema.class), getMethod(SchemaHash.class, "getSchemaHash"));
+    mg.invokeVirtual(Type.getType(SchemaHash.class), getMethod(String.class, "toString"));
+    mg.invokeVirtual(Type.getType(String.class), getMethod(boolean.class, "equals", Object.class));
+    Label hashEquals = mg.newLabel();
+    mg.ifZCmp(GeneratorAdapter.NE, hashEquals);
+    mg.throwException(Type.getType(IllegalArgumentException.class), "Schema not match.");
+    mg.mark(hashEquals);
+
+    // this.schema = schema;
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.putField(classType, "schema", Type.getType(Schema.class));
+
+    // this.fallback = fallback;
+    mg.loadThis();
+    mg.loadArg(3);
+    mg.putField(classType, "fallback", Type.getType(DatumReader.class));
+
+    // For each record field, get the accessor and store it in field.
+    for (Map.Entry<TypeToken<?>, String> entry : fieldAccessorRequests.entries()) {
+      String fieldAccessorName = getFieldAccessorName(entry.getKey(), entry.getValue());
+
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, fieldAccessorName,
+                             Type.getDescriptor(FieldAccessor.class), null, null).visitEnd();
+      // this.fieldAccessorName
+      //  = accessorFactory.getFieldAccessor(TypeToken.of(Class.forName("className")), "fieldName");
+      mg.loadThis();
+      mg.loadArg(1);
+      loadClass(mg, entry.getKey().getRawType());
+      mg.invokeStatic(Type.getType(TypeToken.class), getMethod(TypeToken.class, "of", Class.class));
+      mg.push(entry.getValue());
+      mg.invokeInterface(Type.getType(FieldAccessorFactory.class),
+                         getMethod(FieldAccessor.class, "getFieldAccessor", TypeToken.class, String.class));
+      mg.putField(classType, fieldAccessorName, Type.getType(FieldAccessor.class));
+    }
+
+    // For each record, collection and map type, get the instantiator and store it in field.
+    for (Map.Entry<Class<?>, String> entry : instantiatorRequests.entrySet()) {
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, entry.getValue(),
+                             Type.getDescriptor(Instantiator.class), null, null).visitEnd();
+      // this.instantiatorName = instantiatorFactory.get(TypeToken.of(Class.forName("className")));
+      mg.loadThis();
+      mg.loadArg(2);
+      loadClass(mg, entry.getKey());
+      mg.invokeStatic(Type.getType(TypeToken.class), getMethod(TypeToken.class, "of", Class.class));
+      mg.invokeVirtual(Type.getType(InstantiatorFactory.class),
+                       getMethod(Instantiator.class, "get", TypeToken.class));
+      mg.putField(classType, entry.getValue(), Type.getType(Instantiator.class));
+    }
+
+    // For each enum and array type, store the Class in field.
+    for (Map.Entry<Class<?>, String> entry : classRequests.entrySet()) {
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, entry.getValue(),
+                             Type.getDescriptor(Class.class), null, null).visitEnd();
+      // this.className = Class.forName("className");
+      mg.loadThis();
+      loadClass(mg, entry.getKey());
+      mg.putField(classType, entry.getValue(), Type.getType(Class.class));
+    }
+
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Generates the {@link DatumReader#read(Decoder, Schema)} method.
+   *
+   * @param inputType Type information of the data type to read
+   * @param schema Schema of the data
+   */
+  private void generateRead(TypeToken<?> inputType, Schema schema) {
+    Method readMethod = getMethod(Object.class, "read", Decoder.class, Schema.class);
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, readMethod, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+    Method generatedReadMethod = getReadMethod(inputType, schema);
+
+    // if (sourceSchema != this.schema && !this.schema.equals(sourceSchema)) {
+    //   return fallback.read(decoder, sourceSchema);
+    // }
+    Label useGenerated = mg.newLabel();
+    mg.loadArg(1);
+    mg.loadThis();
+    mg.getField(classType, "schema", Type.getType(Schema.class));
+    mg.ifCmp(Type.getType(Object.class), GeneratorAdapter.EQ, useGenerated);
+    mg.loadThis();
+    mg.getField(classType, "schema", Type.getType(Schema.class));
+    mg.loadArg(1);
+    mg.invokeVirtual(Type.getType(Schema.class), getMethod(boolean.class, "equals", Object.class));
+    mg.ifZCmp(GeneratorAdapter.NE, useGenerated);
+
+    mg.loadThis();
+    mg.getField(classType, "fallback", Type.getType(DatumReader.class));
+    mg.loadArg(0);
+    mg.loadArg(1);
+    mg.invokeInterface(Type.getType(DatumReader.class), getMethod(Object.class, "read", Decoder.class, Schema.class));
+    mg.returnValue();
+
+    // return generatedReadMethod(decoder, this.schema);
+    mg.mark(useGenerated);
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.loadThis();
+    mg.getField(classType, "schema", Type.getType(Schema.class));
+    mg.invokeVirtual(classType, generatedReadMethod);
+    boxIfPrimitive(mg, generatedReadMethod.getReturnType());
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Returns the read method for the given type and schema. The same method will be returned if the same
+   * type and schema has been passed to the method before. The method returns the primitive value for primitive
+   * types, and {@link Object} for all other types, so that it works with classes that the generated
+   * reader doesn't have access to.
+   */
+  private Method getReadMethod(TypeToken<?> inputType, Schema schema) {
+    String key = String.format("%s%s", normalizeTypeName(inputType), schema.getSchemaHash());
+
+    Method method = readMethods.get(key);
+    if (method != null) {
+      return method;
+    }
+
+    // Generate the read method (decoder, schema)
+    Class<?> rawType = inputType.getRawType();
+    Class<?> returnType = rawType.isPrimitive() ? rawType : Object.class;
+    method = getMethod(returnType, "read" + key, Decoder.class, Schema.class);
+
+    // Put the method into map first before generating the body in order to support recursive data type.
+    readMethods.put(key, method);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null,
+                                               new Type[]{Type.getType(IOException.class)}, classWriter);
+    generateReadBody(mg, inputType, schema);
+    mg.endMethod();
+
+    return method;
+  }
+
+  /**
+   * Generates the read method body, with the decoder as argument 0 and the schema as argument 1.
+   */
+  private void generateReadBody(GeneratorAdapter mg, TypeToken<?> inputType, Schema schema) {
+    Class<?> rawType = inputType.getRawType();
+
+    switch (schema.getType()) {
+      case NULL:
+        checkType(!rawType.isPrimitive(), inputType, schema);
+        mg.loadArg(0);
+        mg.invokeInterface(Type.getType(Decoder.class), getMethod(Object.class, "readNull"));
+        break;
+      case BOOLEAN:
+        readSimple(mg, inputType, schema, "readBool", boolean.class);
+        break;
+      case INT:
+        readSimple(mg, inputType, schema, "readInt", int.class);
+        break;
+      case LONG:
+        readSimple(mg, inputType, schema, "readLong", long.class);
+        break;
+      case FLOAT:
+        readSimple(mg, inputType, schema, "readFloat", float.class);
+        break;
+      case DOUBLE:
+        readSimple(mg, inputType, schema, "readDouble", double.class);
+        break;
+      case STRING:
+        checkType(rawType.isAssignableFrom(String.class), inputType, schema);
+        mg.loadArg(0);
+        mg.invokeInterface(Type.getType(Decoder.class), getMethod(String.class, "readString"));
+        break;
+      case BYTES:
+        readBytes(mg, inputType, schema);
+        break;
+      case ENUM:
+        readEnum(mg, inputType, schema);
+        break;
+      case ARRAY:
+        readArray(mg, inputType, schema);
+        break;
+      case MAP:
+        readMap(mg, inputType, schema);
+        break;
+      case RECORD:
+        readRecord(mg, inputType, schema);
+        break;
+      case UNION:
+        readUnion(mg, inputType, schema);
+        break;
+    }
+    mg.returnValue();
+  }
+
+  /**
+   * Generates code for reading a primitive value by calling the corresponding read method in Decoder.
+   * The value is converted to the narrower primitive type for byte, char and short, and boxed for non-primitive
+   * target types.
+   */
+  private void readSimple(GeneratorAdapter mg, TypeToken<?> inputType, Schema schema,
+                          String readMethod, Class<?> decodedType) {
+    Class<?> rawType = inputType.getRawType();
+    Class<?> primitiveType = Primitives.unwrap(rawType);
+    boolean isNarrowInt = decodedType == int.class
+      && (primitiveType == byte.class || primitiveType == char.class || primitiveType == short.class);
+    checkType(primitiveType == decodedType || isNarrowInt || rawType == Object.class, inputType, schema);
+
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(decodedType, readMethod));
+    Type valueType = Type.getType(decodedType);
+    if (isNarrowInt) {
+      valueType = Type.getType(primitiveType);
+      mg.cast(Type.INT_TYPE, valueType);
+    }
+    if (!rawType.isPrimitive()) {
+      mg.valueOf(valueType);
+    }
+  }
+
+  /**
+   * Generates code for reading bytes as either {@link ByteBuffer} or byte array.
+   */
+  private void readBytes(GeneratorAdapter mg, TypeToken<?> inputType, Schema schema) {
+    Class<?> rawType = inputType.getRawType();
+    checkType(rawType == byte[].class || rawType.isAssignableFrom(ByteBuffer.class), inputType, schema);
+
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(ByteBuffer.class, "readBytes"));
+    if (rawType == byte[].class) {
+      mg.invokeStatic(Type.getType(ASMDatumReaderFactory.class),
+                      getMethod(byte[].class, "toByteArray", ByteBuffer.class));
+    }
+  }
+
+  /**
+   * Generates code for reading an enum value. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * return Enum.valueOf(enumClass, schema.getEnumValue(decoder.readInt()));
+   * }
+   * </pre>
+   */
+  private void readEnum(GeneratorAdapter mg, TypeToken<?> inputType, Schema schema) {
+    Class<?> rawType = inputType.getRawType();
+    checkType(rawType.isEnum(), inputType, schema);
+
+    loadRequestedClass(mg, rawType);
+    mg.loadArg(1);
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(int.class, "readInt"));
+    mg.invokeVirtual(Type.getType(Schema.class), getMethod(String.class, "getEnumValue", int.class));
+    mg.invokeStatic(Type.getType(Enum.class), getMethod(Enum.class, "valueOf", Class.class, String.class));
+  }
+
+  /**
+   * Generates code for reading array value into a Collection or Java array. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * Collection collection = (Collection) collectionInstantiator.create();
+   * Schema componentSchema = schema.getComponentSchema();
+   * int len = decoder.readInt();
+   * while (len != 0) {
+   *   for (int i = 0; i < len; i++) {
+   *     collection.add(readComponent(decoder, componentSchema));
+   *   }
+   *   len = decoder.readInt();
+   * }
+   * return collection; // or ASMDatumReaderFactory.toArray(collection, arrayClass) for Java array
+   * }
+   * </pre>
+   */
+  private void readArray(GeneratorAdapter mg, TypeToken<?> inputType, Schema schema) {
+    Class<?> rawType = inputType.getRawType();
+    TypeToken<?> componentType;
+    if (rawType.isArray()) {
+      componentType = inputType.getComponentType();
+    } else {
+      checkType(Collection.class.isAssignableFrom(rawType)
+                  && inputType.getType() instanceof ParameterizedType, inputType, schema);
+      componentType = TypeToken.of(((ParameterizedType) inputType.getType()).getActualTypeArguments()[0]);
+    }
+    Schema componentSchema = schema.getComponentSchema();
+    final Method componentReadMethod = getReadMethod(componentType, componentSchema);
+
+    int collection = mg.newLocal(Type.getType(Collection.class));
+    if (rawType.isArray()) {
+      mg.newInstance(Type.getType(ArrayList.class));
+      mg.dup();
+      mg.invokeConstructor(Type.getType(ArrayList.class), getMethod(void.class, "<init>"));
+    } else {
+      createInstance(mg, rawType);
+      mg.checkCast(Type.getType(Collection.class));
+    }
+    mg.storeLocal(collection);
+
+    int componentSchemaLocal = mg.newLocal(Type.getType(Schema.class));
+    mg.loadArg(1);
+    mg.invokeVirtual(Type.getType(Schema.class), getMethod(Schema.class, "getComponentSchema"));
+    mg.storeLocal(componentSchemaLocal);
+
+    readBlocks(mg, new BlockReader() {
+      @Override
+      public void readEntry(GeneratorAdapter mg, int collection, int keySchema, int valueSchema) {
+        mg.loadLocal(collection);
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.loadLocal(keySchema);
+        mg.invokeVirtual(classType, componentReadMethod);
+        boxIfPrimitive(mg, componentReadMethod.getReturnType());
+        mg.invokeInterface(Type.getType(Collection.class), getMethod(boolean.class, "add", Object.class));
+        mg.pop();
+      }
+    }, collection, componentSchemaLocal, -1);
+
+    mg.loadLocal(collection);
+    if (rawType.isArray()) {
+      loadRequestedClass(mg, rawType);
+      mg.invokeStatic(Type.getType(ASMDatumReaderFactory.class),
+                      getMethod(Object.class, "toArray", Collection.class, Class.class));
+    }
+  }
+
+  /**
+   * Generates code for reading map value. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * Map map = (Map) mapInstantiator.create();
+   * Map.Entry mapSchema = schema.getMapSchema();
+   * Schema keySchema = (Schema) mapSchema.getKey();
+   * Schema valueSchema = (Schema) mapSchema.getValue();
+   * int len = decoder.readInt();
+   * while (len != 0) {
+   *   for (int i = 0; i < len; i++) {
+   *     map.put(readKey(decoder, keySchema), readValue(decoder, valueSchema));
+   *   }
+   *   len = decoder.readInt();
+   * }
+   * return map;
+   * }
+   * </pre>
+   */
+  private void readMap(GeneratorAdapter mg, TypeToken<?> inputType, Schema schema) {
+    Class<?> rawType = inputType.getRawType();
+    checkType(Map.class.isAssignableFrom(rawType) && inputType.getType() instanceof ParameterizedType,
+              inputType, schema);
+    java.lang.reflect.Type[] mapArgs = ((ParameterizedType) inputType.getType()).getActualTypeArguments();
+    Map.Entry<Schema, Schema> mapSchema = schema.getMapSchema();
+    final Method keyReadMethod = getReadMethod(TypeToken.of(mapArgs[0]), mapSchema.getKey());
+    final Method valueReadMethod = getReadMethod(TypeToken.of(mapArgs[1]), mapSchema.getValue());
+
+    int map = mg.newLocal(Type.getType(Map.class));
+    createInstance(mg, rawType);
+    mg.checkCast(Type.getType(Map.class));
+    mg.storeLocal(map);
+
+    // Stores the key and value schema
+    mg.loadArg(1);
+    mg.invokeVirtual(Type.getType(Schema.class), getMethod(Map.Entry.class, "getMapSchema"));
+    mg.dup();
+
+    int keySchemaLocal = mg.newLocal(Type.getType(Schema.class));
+    mg.invokeInterface(Type.getType(Map.Entry.class), getMethod(Object.class, "getKey"));
+    mg.checkCast(Type.getType(Schema.class));
+    mg.storeLocal(keySchemaLocal);
+
+    int valueSchemaLocal = mg.newLocal(Type.getType(Schema.class));
+    mg.invokeInterface(Type.getType(Map.Entry.class), getMethod(Object.class, "getValue"));
+    mg.checkCast(Type.getType(Schema.class));
+    mg.storeLocal(valueSchemaLocal);
+
+    readBlocks(mg, new BlockReader() {
+      @Override
+      public void readEntry(GeneratorAdapter mg, int map, int keySchema, int valueSchema) {
+        mg.loadLocal(map);
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.loadLocal(keySchema);
+        mg.invokeVirtual(classType, keyReadMethod);
+        boxIfPrimitive(mg, keyReadMethod.getReturnType());
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.loadLocal(valueSchema);
+        mg.invokeVirtual(classType, valueReadMethod);
+        boxIfPrimitive(mg, valueReadMethod.getReturnType());
+        mg.invokeInterface(Type.getType(Map.class), getMethod(Object.class, "put", Object.class, Object.class));
+        mg.pop();
+      }
+    }, map, keySchemaLocal, valueSchemaLocal);
+
+    mg.loadLocal(map);
+  }
+
+  /**
+   * Generates the block reading loop shared by array and map.
+   */
+  private void readBlocks(GeneratorAdapter mg, BlockReader blockReader, int container, int keySchema, int valueSchema) {
+    // int len = decoder.readInt();
+    int len = mg.newLocal(Type.INT_TYPE);
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(int.class, "readInt"));
+    mg.storeLocal(len);
+
+    // while (len != 0)
+    Label beginWhile = mg.mark();
+    Label endWhile = mg.newLabel();
+    mg.loadLocal(len);
+    mg.ifZCmp(GeneratorAdapter.EQ, endWhile);
+
+    // for (int i = 0; i < len; i++)
+    int idx = mg.newLocal(Type.INT_TYPE);
+    mg.push(0);
+    mg.storeLocal(idx);
+    Label beginFor = mg.mark();
+    Label endFor = mg.newLabel();
+    mg.loadLocal(idx);
+    mg.loadLocal(len);
+    mg.ifICmp(GeneratorAdapter.GE, endFor);
+
+    blockReader.readEntry(mg, container, keySchema, valueSchema);
+
+    mg.iinc(idx, 1);
+    mg.goTo(beginFor);
+    mg.mark(endFor);
+
+    // len = decoder.readInt();
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(int.class, "readInt"));
+    mg.storeLocal(len);
+    mg.goTo(beginWhile);
+    mg.mark(endWhile);
+  }
+
+  /**
+   * Generates code for reading a record into a java class. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * Object record = recordInstantiator.create();
+   * List fields = schema.getFields();
+   * recordField1Accessor.set(record, readField1(decoder, ((Schema.Field) fields.get(0)).getSchema());
+   * recordField2Accessor.setInt(record, readField2(decoder, ((Schema.Field) fields.get(1)).getSchema());
+   * ...
+   * return record;
+   * }
+   * </pre>
+   */
+  private void readRecord(GeneratorAdapter mg, TypeToken<?> inputType, Schema schema) {
+    Class<?> rawType = inputType.getRawType();
+    checkType(!rawType.isInterface() && !rawType.isPrimitive(), inputType, schema);
+
+    int record = mg.newLocal(Type.getType(Object.class));
+    createInstance(mg, rawType);
+    mg.storeLocal(record);
+
+    // Store the list of schema fields.
+    int fieldSchemas = mg.newLocal(Type.getType(List.class));
+    mg.loadArg(1);
+    mg.invokeVirtual(Type.getType(Schema.class), getMethod(List.class, "getFields"));
+    mg.storeLocal(fieldSchemas);
+
+    List<Schema.Field> fields = schema.getFields();
+    for (int i = 0; i < fields.size(); i++) {
+      Schema.Field field = fields.get(i);
+      TypeToken<?> fieldType;
+      try {
+        fieldType = inputType.resolveType(Fields.findField(inputType.getType(), field.getName()).getGenericType());
+      } catch (NoSuchFieldException e) {
+        throw new IllegalArgumentException("No field " + field.getName() + " in type " + inputType, e);
+      }
+      Method fieldReadMethod = getReadMethod(fieldType, field.getSchema());
+      fieldAccessorRequests.put(inputType, field.getName());
+
+      // this.fieldAccessor.setXXX(record, this.readField(decoder, ((Schema.Field) fields.get(i)).getSchema()));
+      mg.loadThis();
+      mg.getField(classType, getFieldAccessorName(inputType, field.getName()), Type.getType(FieldAccessor.class));
+      mg.loadLocal(record);
+      mg.loadThis();
+      mg.loadArg(0);
+      mg.loadLocal(fieldSchemas);
+      mg.push(i);
+      mg.invokeInterface(Type.getType(List.class), getMethod(Object.class, "get", int.class));
+      mg.checkCast(Type.getType(Schema.Field.class));
+      mg.invokeVirtual(Type.getType(Schema.Field.class), getMethod(Schema.class, "getSchema"));
+      mg.invokeVirtual(classType, fieldReadMethod);
+      mg.invokeInterface(Type.getType(FieldAccessor.class), getSetterMethod(fieldType));
+    }
+
+    mg.loadLocal(record);
+  }
+
+  /**
+   * Generates code for reading union value. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * int idx = decoder.readInt();
+   * Schema valueSchema = schema.getUnionSchema(idx);
+   * if (idx == 0) {
+   *   return readUnionType0(decoder, valueSchema);
+   * }
+   * if (idx == 1) {
+   *   return readUnionType1(decoder, valueSchema);
+   * }
+   * ...
+   * throw new IOException("Invalid union index.");
+   * }
+   * </pre>
+   */
+  private void readUnion(GeneratorAdapter mg, TypeToken<?> inputType, Schema schema) {
+    checkType(!inputType.getRawType().isPrimitive(), inputType, schema);
+
+    int idx = mg.newLocal(Type.INT_TYPE);
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(int.class, "readInt"));
+    mg.storeLocal(idx);
+
+    int valueSchema = mg.newLocal(Type.getType(Schema.class));
+    mg.loadArg(1);
+    mg.loadLocal(idx);
+    mg.invokeVirtual(Type.getType(Schema.class), getMethod(Schema.class, "getUnionSchema", int.class));
+    mg.storeLocal(valueSchema);
+
+    List<Schema> unionSchemas = schema.getUnionSchemas();
+    for (int i = 0; i < unionSchemas.size(); i++) {
+      Method valueReadMethod = getReadMethod(inputType, unionSchemas.get(i));
+
+      Label nextIdx = mg.newLabel();
+      mg.loadLocal(idx);
+      mg.push(i);
+      mg.ifICmp(GeneratorAdapter.NE, nextIdx);
+      mg.loadThis();
+      mg.loadArg(0);
+      mg.loadLocal(valueSchema);
+      mg.invokeVirtual(classType, valueReadMethod);
+      mg.returnValue();
+      mg.mark(nextIdx);
+    }
+    mg.throwException(Type.getType(IOException.class), "Invalid union index.");
+    // Unreachable, but the returnValue() in generateReadBody requires a value on the stack
+    mg.visitInsn(Opcodes.ACONST_NULL);
+  }
+
+  /**
+   * Generates code to create an instance of the given class with an {@link Instantiator}.
+   */
+  private void createInstance(GeneratorAdapter mg, Class<?> rawType) {
+    String instantiatorName = instantiatorRequests.get(rawType);
+    if (instantiatorName == null) {
+      instantiatorName = "instantiator" + instantiatorRequests.size();
+      instantiatorRequests.put(rawType, instantiatorName);
+      preservedClasses.add(rawType);
+    }
+    mg.loadThis();
+    mg.getField(classType, instantiatorName, Type.getType(Instantiator.class));
+    mg.invokeInterface(Type.getType(Instantiator.class), getMethod(Object.class, "create"));
+  }
+
+  /**
+   * Generates code to load the {@link Class} object of the given class from a field.
+   */
+  private void loadRequestedClass(GeneratorAdapter mg, Class<?> rawType) {
+    String className = classRequests.get(rawType);
+    if (className == null) {
+      className = "class" + classRequests.size();
+      classRequests.put(rawType, className);
+      Class<?> componentType = rawType;
+      while (componentType.isArray()) {
+        componentType = componentType.getComponentType();
+      }
+      if (!componentType.isPrimitive()) {
+        preservedClasses.add(componentType);
+      }
+    }
+    mg.loadThis();
+    mg.getField(classType, className, Type.getType(Class.class));
+  }
+
+  /**
+   * Generates code for {@code Class.forName(className)}. The type might be defined by the user and not accessible
+   * from the generated class, hence it has to be loaded by name.
+   */
+  private void loadClass(GeneratorAdapter mg, Class<?> rawType) {
+    mg.push(rawType.getName());
+    mg.invokeStatic(Type.getType(Class.class), getMethod(Class.class, "forName", String.class));
+  }
+
+  private void boxIfPrimitive(GeneratorAdapter mg, Type type) {
+    if (type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY) {
+      mg.valueOf(type);
+    }
+  }
+
+  private void checkType(boolean condition, TypeToken<?> type, Schema schema) {
+    if (!condition) {
+      throw new IllegalArgumentException("Reading type " + type + " with schema " + schema + " is not supported.");
+    }
+  }
+
+  private <T> TypeToken<DatumReader<T>> getInterfaceType(TypeToken<T> type) {
+    return new TypeToken<DatumReader<T>>() {
+    }.where(new TypeParameter<T>() {
+    }, type);
+  }
+
+  private String getClassName(TypeToken<?> interfaceType, Schema schema) {
+    return String.format("%s/%s%s%s",
+                         interfaceType.getRawType().getPackage().getName().replace('.', '/'),
+                         normalizeTypeName(TypeToken.of(((ParameterizedType) interfaceType.getType())
+                                                          .getActualTypeArguments()[0])),
+                         interfaceType.getRawType().getSimpleName(), schema.getSchemaHash());
+  }
+
+  private String normalizeTypeName(TypeToken<?> type) {
+    String typeName = type.toString();
+    int dimension = 0;
+    while (type.isArray()) {
+      type = type.getComponentType();
+      typeName = type.toString();
+      dimension++;
+    }
+
+    typeName = typeName.replace(".", "")
+                        .replace("<", "Of")
+                        .replace(">", "")
+                        .replace(",", "To")
+                        .replace(" ", "")
+                        .replace("$", "")
+                        .replace("?", "");
+    if (dimension > 0) {
+      typeName = "Array" + dimension + typeName;
+    }
+    return typeName;
+  }
+
+  private Method getMethod(Class<?> returnType, String name, Class<?>...args) {
+    return Methods.getMethod(returnType, name, args);
+  }
+
+  /**
+   * Returns the method for setting value through {@link FieldAccessor} based on the data type.
+   */
+  private Method getSetterMethod(TypeToken<?> type) {
+    Class<?> rawType = type.getRawType();
+    if (rawType.isPrimitive()) {
+      return getMethod(void.class,
+                       String.format("set%c%s",
+                                     Character.toUpperCase(rawType.getName().charAt(0)),
+                                     rawType.getName().substring(1)),
+                       Object.class, rawType);
+    } else {
+      return getMethod(void.class, "set", Object.class, Object.class);
+    }
+  }
+
+  /**
+   * Generates the name of the class field for storing {@link FieldAccessor} for the given record field.
+   */
+  private String getFieldAccessorName(TypeToken<?> recordType, String fieldName) {
+    return String.format("%s$%s", normalizeTypeName(recordType), fieldName);
+  }
+
+  /**
+   * Generates code for reading one entry inside the block reading loop.
+   */
+  private interface BlockReader {
+    void readEntry(GeneratorAdapter mg, int container, int keySchema, int valueSchema);
+  }
+}
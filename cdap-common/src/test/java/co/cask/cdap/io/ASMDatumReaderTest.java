@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.UnsupportedTypeException;
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.internal.io.ASMDatumReaderFactory;
+import co.cask.cdap.internal.io.ASMDatumWriterFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.DatumReader;
+import co.cask.cdap.internal.io.DatumWriter;
+import co.cask.cdap.internal.io.ReflectionDatumReader;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link DatumReader} generated by {@link ASMDatumReaderFactory}.
+ */
+public class ASMDatumReaderTest {
+
+  private static final ASMDatumWriterFactory DATUM_WRITER_FACTORY
+    = new ASMDatumWriterFactory(new ASMFieldAccessorFactory());
+  private static final ASMDatumReaderFactory DATUM_READER_FACTORY
+    = new ASMDatumReaderFactory(new ASMFieldAccessorFactory());
+
+  /**
+   *
+   */
+  public enum TestEnum {
+    VALUE1, VALUE2, VALUE3, VALUE4
+  }
+
+  /**
+   *
+   */
+  public static final class Record {
+    private final int i;
+    private final String s;
+    private final List<String> list;
+    private final TestEnum e;
+    public long l;
+    public Double d;
+    public char c;
+    public boolean b;
+    public byte[] bytes;
+    public ByteBuffer buffer;
+    public Map<String, List<Long>> map;
+    public float[] floats;
+
+    public Record(int i, String s, List<String> list, TestEnum e) {
+      this.i = i;
+      this.s = s;
+      this.list = list;
+      this.e = e;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      Record record = (Record) o;
+      return i == record.i && Objects.equal(s, record.s) && Objects.equal(list, record.list) && e == record.e
+        && l == record.l && Objects.equal(d, record.d) && c == record.c && b == record.b
+        && Arrays.equals(bytes, record.bytes) && Objects.equal(buffer, record.buffer)
+        && Objects.equal(map, record.map) && Arrays.equals(floats, record.floats);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(i, s, list, e);
+    }
+  }
+
+  /**
+   *
+   */
+  public static final class Node {
+    public short data;
+    public Short boxedData;
+    public Node left;
+    public Node right;
+
+    public Node(short data, Node left, Node right) {
+      this.data = data;
+      this.boxedData = data;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      Node node = (Node) o;
+      return data == node.data && Objects.equal(boxedData, node.boxedData)
+        && Objects.equal(left, node.left) && Objects.equal(right, node.right);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(data, left, right);
+    }
+  }
+
+  /**
+   * A newer version of {@link Node} with an extra field, for testing schema evolution.
+   */
+  public static final class NodeV2 {
+    public short data;
+    public String name;
+  }
+
+  private <T> Schema getSchema(TypeToken<T> type) throws UnsupportedTypeException {
+    return new ReflectionSchemaGenerator().generate(type.getType());
+  }
+
+  private <T> byte[] encode(TypeToken<T> type, T value) throws UnsupportedTypeException, IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    DatumWriter<T> writer = DATUM_WRITER_FACTORY.create(type, getSchema(type));
+    writer.encode(value, new BinaryEncoder(os));
+    return os.toByteArray();
+  }
+
+  private <T> T decode(DatumReader<T> reader, Schema sourceSchema, byte[] bytes) throws IOException {
+    return reader.read(new BinaryDecoder(new ByteArrayInputStream(bytes)), sourceSchema);
+  }
+
+  @Test
+  public void testRecord() throws IOException, UnsupportedTypeException {
+    TypeToken<Record> type = new TypeToken<Record>() { };
+    Record record = new Record(10, "testing", ImmutableList.of("a", "b", "c"), TestEnum.VALUE2);
+    record.l = Long.MAX_VALUE;
+    record.d = 1.5d;
+    record.c = 'x';
+    record.b = true;
+    record.bytes = "bytes".getBytes(Charsets.UTF_8);
+    record.buffer = ByteBuffer.wrap("buffer".getBytes(Charsets.UTF_8));
+    record.map = ImmutableMap.<String, List<Long>>of("k1", ImmutableList.of(1L, 2L), "k2", ImmutableList.<Long>of());
+    record.floats = new float[] { 1.0f, 2.0f };
+
+    DatumReader<Record> reader = DATUM_READER_FACTORY.create(type, getSchema(type));
+    Assert.assertFalse(reader instanceof ReflectionDatumReader);
+    Assert.assertEquals(record, decode(reader, getSchema(type), encode(type, record)));
+
+    // Null values for nullable fields
+    record = new Record(1, null, null, null);
+    Assert.assertEquals(record, decode(reader, getSchema(type), encode(type, record)));
+  }
+
+  @Test
+  public void testRecordArray() throws IOException, UnsupportedTypeException {
+    TypeToken<Record[][]> type = new TypeToken<Record[][]>() { };
+    Record[][] value = new Record[][] {{ new Record(10, "testing", ImmutableList.of("a", "b", "c"), TestEnum.VALUE2)}};
+
+    DatumReader<Record[][]> reader = DATUM_READER_FACTORY.create(type, getSchema(type));
+    Assert.assertArrayEquals(value, decode(reader, getSchema(type), encode(type, value)));
+  }
+
+  @Test
+  public void testTree() throws IOException, UnsupportedTypeException {
+    TypeToken<Node> type = new TypeToken<Node>() { };
+    Node root = new Node((short) 1, new Node((short) 2, null, new Node((short) 3, null, null)),
+                         new Node((short) 4, new Node((short) 5, null, null), null));
+
+    DatumReader<Node> reader = DATUM_READER_FACTORY.create(type, getSchema(type));
+    Assert.assertFalse(reader instanceof ReflectionDatumReader);
+    Assert.assertEquals(root, decode(reader, getSchema(type), encode(type, root)));
+  }
+
+  @Test
+  public void testSchemaEvolution() throws IOException, UnsupportedTypeException {
+    TypeToken<Node> type = new TypeToken<Node>() { };
+    Node root = new Node((short) 1, null, new Node((short) 2, null, null));
+    byte[] bytes = encode(type, root);
+
+    // Reading with a different target schema should fallback to reflection based reading
+    TypeToken<NodeV2> typeV2 = new TypeToken<NodeV2>() { };
+    DatumReader<NodeV2> reader = DATUM_READER_FACTORY.create(typeV2, getSchema(typeV2));
+    NodeV2 value = decode(reader, getSchema(type), bytes);
+    Assert.assertEquals(1, value.data);
+    Assert.assertNull(value.name);
+  }
+
+  @Test
+  public void testStreamEvent() throws IOException, UnsupportedTypeException {
+    TypeToken<StreamEvent> type = new TypeToken<StreamEvent>() { };
+    StreamEvent event = new StreamEvent(ImmutableMap.of("key", "value"),
+                                        ByteBuffer.wrap("Testing message".getBytes(Charsets.UTF_8)));
+
+    DatumReader<StreamEvent> reader = DATUM_READER_FACTORY.create(type, getSchema(type));
+    StreamEvent value = decode(reader, getSchema(type), encode(type, event));
+    Assert.assertEquals(event.getHeaders(), value.getHeaders());
+    Assert.assertEquals(event.getBody(), value.getBody());
+  }
+
+  @Ignore
+  @Test
+  public void testSpeed() throws IOException, UnsupportedTypeException {
+    TypeToken<Node> type = new TypeToken<Node>() { };
+    Schema schema = getSchema(type);
+    Node root = new Node((short) 1, new Node((short) 2, null, new Node((short) 3, null, null)),
+                         new Node((short) 4, new Node((short) 5, null, null), null));
+    byte[] bytes = encode(type, root);
+
+    DatumReader<Node> asmReader = DATUM_READER_FACTORY.create(type, schema);
+    DatumReader<Node> reflectionReader = new ReflectionDatumReader<>(schema, type);
+
+    // Run twice to have both readers warmed up
+    for (int round = 0; round < 2; round++) {
+      for (DatumReader<Node> reader : ImmutableList.of(asmReader, reflectionReader)) {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < 100000; i++) {
+          decode(reader, schema, bytes);
+        }
+        long endTime = System.nanoTime();
+        System.out.println(reader.getClass().getSimpleName() + " time spent: "
+                             + TimeUnit.MILLISECONDS.convert(endTime - startTime, TimeUnit.NANOSECONDS));
+      }
+    }
+  }
+}
@@ -994,6 +994,102 @@ public abstract class StreamDataFileTestBase {
     reader.close();
   }
 
+  /**
+   * Test for reading and writing stream file with compressed data blocks.
+   */
+  @Test
+  public void testCompressedReadWrite() throws Exception {
+    for (StreamDataBlockCodec codec : StreamDataBlockCodec.values()) {
+      Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+      Location eventFile = dir.getTempFile(".dat");
+      Location indexFile = dir.getTempFile(".idx");
+
+      // Write 1000 events with 10 events per timestamp
+      try (StreamDataFileWriter writer = new StreamDataFileWriter(
+        Locations.newOutputSupplier(eventFile), Locations.newOutputSupplier(indexFile), 10L,
+        ImmutableMap.of(StreamDataFileConstants.Property.Key.CODEC, codec.getName()))) {
+        for (int i = 0; i < 1000; i++) {
+          writer.append(StreamFileTestUtils.createEvent(i / 10, "Compressed " + codec + " " + i));
+        }
+      }
+
+      // Read all events and verify the content and the event positions are increasing
+      List<PositionStreamEvent> events = Lists.newArrayList();
+      try (StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile))) {
+        Assert.assertEquals(1000, reader.read(events, 1000, 0, TimeUnit.SECONDS));
+        Assert.assertEquals(-1, reader.read(events, 1, 0, TimeUnit.SECONDS));
+      }
+      for (int i = 0; i < 1000; i++) {
+        PositionStreamEvent event = events.get(i);
+        Assert.assertEquals((long) (i / 10), event.getTimestamp());
+        Assert.assertEquals("Compressed " + codec + " " + i,
+                            Charsets.UTF_8.decode(event.getBody().duplicate()).toString());
+        if (i > 0) {
+          Assert.assertTrue(event.getStart() > events.get(i - 1).getStart());
+        }
+      }
+
+      // Read from each event position, using the index, should get back the same event
+      for (PositionStreamEvent event : ImmutableList.copyOf(events)) {
+        try (StreamDataFileReader reader = StreamDataFileReader.createWithOffset(
+          Locations.newInputSupplier(eventFile), Locations.newInputSupplier(indexFile), event.getStart())) {
+          List<PositionStreamEvent> result = Lists.newArrayList();
+          Assert.assertEquals(1, reader.read(result, 1, 0, TimeUnit.SECONDS));
+          Assert.assertEquals(event.getStart(), result.get(0).getStart());
+          Assert.assertEquals(event.getBody(), result.get(0).getBody());
+        }
+      }
+
+      // Read by time, using the index
+      try (StreamDataFileReader reader = StreamDataFileReader.createByStartTime(
+        Locations.newInputSupplier(eventFile), Locations.newInputSupplier(indexFile), 50L)) {
+        List<PositionStreamEvent> result = Lists.newArrayList();
+        Assert.assertEquals(500, reader.read(result, 1000, 0, TimeUnit.SECONDS));
+        Assert.assertEquals(events.get(500).getStart(), result.get(0).getStart());
+      }
+    }
+  }
+
+  /**
+   * Test for compressed data block that is smaller than the number of events in it.
+   */
+  @Test
+  public void testCompressedSmallBlock() throws Exception {
+    for (StreamDataBlockCodec codec : StreamDataBlockCodec.values()) {
+      Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+      Location eventFile = dir.getTempFile(".dat");
+      Location indexFile = dir.getTempFile(".idx");
+
+      // Write 5000 empty events in one block, which compress to fewer bytes than the number of events.
+      try (StreamDataFileWriter writer = new StreamDataFileWriter(
+        Locations.newOutputSupplier(eventFile), Locations.newOutputSupplier(indexFile), 10000L,
+        ImmutableMap.of(StreamDataFileConstants.Property.Key.CODEC, codec.getName()))) {
+        for (int i = 0; i < 5000; i++) {
+          writer.append(new StreamEvent(ImmutableMap.<String, String>of(), ByteBuffer.allocate(0), 1L));
+        }
+        writer.append(StreamFileTestUtils.createEvent(2L, "Last"));
+      }
+
+      List<PositionStreamEvent> events = Lists.newArrayList();
+      try (StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile))) {
+        Assert.assertEquals(5001, reader.read(events, 6000, 0, TimeUnit.SECONDS));
+      }
+
+      // All event positions must be unique and increasing
+      for (int i = 1; i < events.size(); i++) {
+        Assert.assertTrue(events.get(i).getStart() > events.get(i - 1).getStart());
+      }
+
+      // Reading from the position of the last event should only return the last event
+      try (StreamDataFileReader reader = StreamDataFileReader.createWithOffset(
+        Locations.newInputSupplier(eventFile), Locations.newInputSupplier(indexFile), events.get(5000).getStart())) {
+        List<PositionStreamEvent> result = Lists.newArrayList();
+        Assert.assertEquals(1, reader.read(result, 10, 0, TimeUnit.SECONDS));
+        Assert.assertEquals("Last", Charsets.UTF_8.decode(result.get(0).getBody()).toString());
+      }
+    }
+  }
+
   private FileWriter<StreamEvent> createWriter(StreamConfig config, String prefix) {
     return new TimePartitionedStreamFileWriter(config.getLocation(), config.getPartitionDuration(),
                                                prefix, config.getIndexInterval(), config.getStreamId(),
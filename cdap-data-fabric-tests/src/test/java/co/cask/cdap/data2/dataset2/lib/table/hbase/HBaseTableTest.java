@@ -17,6 +17,7 @@
 package co.cask.cdap.data2.dataset2.lib.table.hbase;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.batch.Split;
 import co.cask.cdap.api.dataset.DatasetAdmin;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetProperties;
@@ -25,6 +26,7 @@ import co.cask.cdap.api.dataset.table.ConflictDetection;
 import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.api.dataset.table.TableSplit;
 import co.cask.cdap.api.dataset.table.Tables;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.namespace.SimpleNamespaceQueryAdmin;
@@ -40,6 +42,7 @@ import co.cask.cdap.data2.util.hbase.HBaseTableUtilFactory;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.test.SlowTests;
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 import org.apache.hadoop.hbase.Cell;
@@ -217,6 +220,38 @@ public class HBaseTableTest extends BufferingTableTest<BufferingTable> {
     }
   }
 
+  @Test
+  public void testRegionSplits() throws Exception {
+    byte[][] splits = new byte[][] {Bytes.toBytes("b"), Bytes.toBytes("d")};
+    DatasetProperties props = DatasetProperties.builder().add("hbase.splits", new Gson().toJson(splits)).build();
+    String tableName = "regionSplits";
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, tableName, props);
+    admin.create();
+    try {
+      BufferingTable table = getTable(CONTEXT1, tableName, props);
+      table.startTx(new DetachedTxSystemClient().startShort());
+
+      // one split per region
+      Assert.assertEquals(ImmutableList.of(new TableSplit(null, b("b")),
+                                           new TableSplit(b("b"), b("d")),
+                                           new TableSplit(b("d"), null)).toString(),
+                          table.getSplits().toString());
+
+      // splits are limited to the given range
+      Assert.assertEquals(ImmutableList.of(new TableSplit(b("a"), b("b")),
+                                           new TableSplit(b("b"), b("c"))).toString(),
+                          table.getSplits(-1, b("a"), b("c")).toString());
+
+      // regions are combined to return at most the given number of splits
+      List<Split> limited = table.getSplits(2, null, null);
+      Assert.assertEquals(2, limited.size());
+      Assert.assertNull(((TableSplit) limited.get(0)).getStart());
+      Assert.assertNull(((TableSplit) limited.get(1)).getStop());
+    } finally {
+      admin.drop();
+    }
+  }
+
   @Test
   public void testEnableIncrements() throws Exception {
     // setup a table with increments disabled and with it enabled
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -30,6 +30,7 @@ import co.cask.cdap.proto.id.StreamId;
 import co.cask.cdap.test.SlowTests;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -45,6 +46,7 @@ import org.junit.experimental.categories.Category;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -312,6 +314,158 @@ public abstract class StreamConsumerTestBase {
     }
   }
 
+  @Test
+  public void testFIFOLease() throws Exception {
+    String stream = "testFIFOLease";
+    StreamId streamId = TEST_NAMESPACE.stream(stream);
+    StreamAdmin streamAdmin = getStreamAdmin();
+    streamAdmin.create(streamId);
+    StreamConfig streamConfig = streamAdmin.getConfig(streamId);
+
+    // Writes 5 events, which all fall into the same leased range
+    writeEvents(streamConfig, "Testing ", 5);
+
+    streamAdmin.configureInstances(streamId, 0L, 2);
+
+    cConf.setLong(Constants.Stream.CONSUMER_FIFO_LEASE_SIZE, 1024 * 1024);
+    try {
+      StreamConsumerFactory consumerFactory = getConsumerFactory();
+      StreamConsumer consumer0 = consumerFactory.create(streamId, "fifo.lease",
+                                                        new ConsumerConfig(0L, 0, 2, DequeueStrategy.FIFO, null));
+      StreamConsumer consumer1 = consumerFactory.create(streamId, "fifo.lease",
+                                                        new ConsumerConfig(0L, 1, 2, DequeueStrategy.FIFO, null));
+
+      TransactionContext context0 = createTxContext(consumer0);
+      TransactionContext context1 = createTxContext(consumer1);
+
+      // The first consumer leases the range, hence the second consumer gets nothing from the range
+      context0.start();
+      context1.start();
+
+      DequeueResult<StreamEvent> result0 = consumer0.poll(2, 1, TimeUnit.SECONDS);
+      DequeueResult<StreamEvent> result1 = consumer1.poll(2, 1, TimeUnit.SECONDS);
+
+      Assert.assertEquals(2, result0.size());
+      Assert.assertTrue(result1.isEmpty());
+
+      // Rollback the first consumer, it should get the same events again
+      context0.abort();
+      context1.finish();
+
+      context0.start();
+      result0 = consumer0.poll(2, 1, TimeUnit.SECONDS);
+      Iterator<StreamEvent> iterator = result0.iterator();
+      Assert.assertEquals("Testing 0", Charsets.UTF_8.decode(iterator.next().getBody()).toString());
+      Assert.assertEquals("Testing 1", Charsets.UTF_8.decode(iterator.next().getBody()).toString());
+      context0.finish();
+
+      consumer0.close();
+      consumer1.close();
+
+      // A new consumer of the same instance should continue after the processed offset of the range
+      consumer0 = consumerFactory.create(streamId, "fifo.lease",
+                                         new ConsumerConfig(0L, 0, 2, DequeueStrategy.FIFO, null));
+      context0 = createTxContext(consumer0);
+      context0.start();
+      result0 = consumer0.poll(10, 1, TimeUnit.SECONDS);
+      iterator = result0.iterator();
+      for (int i = 2; i < 5; i++) {
+        Assert.assertEquals("Testing " + i, Charsets.UTF_8.decode(iterator.next().getBody()).toString());
+      }
+      Assert.assertFalse(iterator.hasNext());
+      context0.finish();
+      consumer0.close();
+    } finally {
+      cConf.unset(Constants.Stream.CONSUMER_FIFO_LEASE_SIZE);
+    }
+  }
+
+  @Category(SlowTests.class)
+  @Test
+  public void testFIFOLeaseTakeover() throws Exception {
+    String stream = "testFIFOLeaseTakeover";
+    StreamId streamId = TEST_NAMESPACE.stream(stream);
+    StreamAdmin streamAdmin = getStreamAdmin();
+    streamAdmin.create(streamId);
+    StreamConfig streamConfig = streamAdmin.getConfig(streamId);
+    streamAdmin.configureInstances(streamId, 0L, 2);
+
+    cConf.setLong(Constants.Stream.CONSUMER_FIFO_LEASE_SIZE, 1024 * 1024);
+    cConf.setLong(Constants.Stream.CONSUMER_FIFO_LEASE_TIMEOUT, 3L);
+    // Use a single writer, so that all events are in the same file, hence in the same leased range
+    FileWriter<StreamEvent> writer = getFileWriterFactory().create(streamConfig, 0);
+    try {
+      writeEvents(writer, "Testing ", 5, new Clock());
+      writer.flush();
+
+      StreamConsumerFactory consumerFactory = getConsumerFactory();
+      StreamConsumer consumer0 = consumerFactory.create(streamId, "fifo.lease",
+                                                        new ConsumerConfig(0L, 0, 2, DequeueStrategy.FIFO, null));
+      StreamConsumer consumer1 = consumerFactory.create(streamId, "fifo.lease",
+                                                        new ConsumerConfig(0L, 1, 2, DequeueStrategy.FIFO, null));
+      TransactionContext context0 = createTxContext(consumer0);
+      TransactionContext context1 = createTxContext(consumer1);
+
+      // The first consumer leases the range and processes two events
+      context0.start();
+      Assert.assertEquals(ImmutableList.of("Testing 0", "Testing 1"),
+                          getMessages(consumer0.poll(2, 1, TimeUnit.SECONDS)));
+      context0.finish();
+
+      // The second consumer skips all the events in the range
+      context1.start();
+      Assert.assertTrue(consumer1.poll(10, 1, TimeUnit.SECONDS).isEmpty());
+      context1.finish();
+
+      // The first consumer polls the remaining events, but the transaction fails after the lease is updated
+      context0.start();
+      Assert.assertEquals(ImmutableList.of("Testing 2", "Testing 3", "Testing 4"),
+                          getMessages(consumer0.poll(10, 1, TimeUnit.SECONDS)));
+      Assert.assertTrue(consumer0.commitTx());
+      context0.abort();
+
+      // After the lease expired, the second consumer still cannot take over the range, since the events that it
+      // skipped are not processed after the rollback
+      TimeUnit.SECONDS.sleep(4);
+      writeEvents(writer, "More ", 2, new Clock());
+      writer.flush();
+      context1.start();
+      Assert.assertTrue(consumer1.poll(10, 1, TimeUnit.SECONDS).isEmpty());
+      context1.finish();
+
+      // The first consumer renews the expired lease and gets the rolled back events as well as the new ones
+      context0.start();
+      Assert.assertEquals(ImmutableList.of("Testing 2", "Testing 3", "Testing 4", "More 0", "More 1"),
+                          getMessages(consumer0.poll(10, 1, TimeUnit.SECONDS)));
+      context0.finish();
+
+      // Once the lease expired with all the events skipped by the second consumer processed, it takes over the range
+      TimeUnit.SECONDS.sleep(4);
+      writeEvents(writer, "Last ", 2, new Clock());
+      writer.flush();
+      context1.start();
+      Assert.assertEquals(ImmutableList.of("Last 0", "Last 1"), getMessages(consumer1.poll(10, 1, TimeUnit.SECONDS)));
+      context1.finish();
+
+      // The first consumer no longer gets events from the range
+      writeEvents(writer, "Final ", 2, new Clock());
+      writer.flush();
+      context0.start();
+      Assert.assertTrue(consumer0.poll(10, 1, TimeUnit.SECONDS).isEmpty());
+      context0.finish();
+      context1.start();
+      Assert.assertEquals(ImmutableList.of("Final 0", "Final 1"), getMessages(consumer1.poll(10, 1, TimeUnit.SECONDS)));
+      context1.finish();
+
+      consumer0.close();
+      consumer1.close();
+    } finally {
+      writer.close();
+      cConf.unset(Constants.Stream.CONSUMER_FIFO_LEASE_SIZE);
+      cConf.unset(Constants.Stream.CONSUMER_FIFO_LEASE_TIMEOUT);
+    }
+  }
+
   @Test
   public void testTTL() throws Exception {
     String stream = "testTTL";
@@ -579,6 +733,14 @@ public abstract class StreamConsumerTestBase {
     }
   }
 
+  private List<String> getMessages(Iterable<StreamEvent> events) {
+    List<String> messages = Lists.newArrayList();
+    for (StreamEvent event : events) {
+      messages.add(Charsets.UTF_8.decode(event.getBody()).toString());
+    }
+    return messages;
+  }
+
   private TransactionContext createTxContext(TransactionAware... txAwares) {
     return new TransactionContext(getTransactionClient(), txAwares);
   }
@@ -21,6 +21,7 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.security.Impersonator;
 import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.stream.StreamDataFileConstants;
 import co.cask.cdap.data.stream.StreamFileWriterFactory;
 import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.TimePartitionedStreamFileWriter;
@@ -32,6 +33,8 @@ import com.google.inject.Inject;
 import org.apache.twill.filesystem.Location;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
@@ -69,9 +72,14 @@ public final class LocationStreamFileWriterFactory implements StreamFileWriterFa
         }
       });
 
+      Map<String, String> fileProperties = new HashMap<>();
+      if (config.getCompressionCodec() != null) {
+        fileProperties.put(StreamDataFileConstants.Property.Key.CODEC, config.getCompressionCodec());
+      }
+
       return new TimePartitionedStreamFileWriter(baseLocation, config.getPartitionDuration(),
                                                  filePrefix, config.getIndexInterval(),
-                                                 config.getStreamId(), impersonator);
+                                                 config.getStreamId(), impersonator, fileProperties);
     } catch (Exception e) {
       Throwables.propagateIfPossible(e, IOException.class);
       throw new IOException(e);
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+
+/**
+ * Compression codecs for the data blocks in stream data file. The codec used by a file is recorded in the
+ * file header property {@link StreamDataFileConstants.Property.Key#CODEC}.
+ */
+public enum StreamDataBlockCodec {
+
+  DEFLATE("deflate") {
+    @Override
+    byte[] compress(byte[] input, int off, int len) throws IOException {
+      Deflater deflater = new Deflater();
+      try {
+        deflater.setInput(input, off, len);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(len / 2, 64));
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+          int size = deflater.deflate(buffer);
+          output.write(buffer, 0, size);
+        }
+        return output.toByteArray();
+      } finally {
+        deflater.end();
+      }
+    }
+
+    @Override
+    void decompress(byte[] input, int off, int len, byte[] output, int outputLen) throws IOException {
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(input, off, len);
+        int size = 0;
+        while (size < outputLen && !inflater.finished()) {
+          int inflated = inflater.inflate(output, size, outputLen - size);
+          if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          size += inflated;
+        }
+        if (size != outputLen) {
+          throw new IOException("Expected to decompress " + outputLen + " bytes, but only got " + size + " bytes");
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Failed to decompress stream data block", e);
+      } finally {
+        inflater.end();
+      }
+    }
+  },
+
+  SNAPPY("snappy") {
+    @Override
+    byte[] compress(byte[] input, int off, int len) throws IOException {
+      byte[] output = new byte[Snappy.maxCompressedLength(len)];
+      int size = Snappy.compress(input, off, len, output, 0);
+      byte[] result = new byte[size];
+      System.arraycopy(output, 0, result, 0, size);
+      return result;
+    }
+
+    @Override
+    void decompress(byte[] input, int off, int len, byte[] output, int outputLen) throws IOException {
+      if (Snappy.uncompressedLength(input, off, len) != outputLen) {
+        throw new IOException("Uncompressed length of the stream data block is not " + outputLen);
+      }
+      Snappy.uncompress(input, off, len, output, 0);
+    }
+  };
+
+  /**
+   * Name for indicating data blocks are not compressed.
+   */
+  public static final String NONE = "none";
+
+  private final String name;
+
+  StreamDataBlockCodec(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the name of this codec as recorded in the stream file header.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Compresses the given bytes.
+   *
+   * @param input the bytes to compress
+   * @param off offset in the input to start from
+   * @param len number of bytes to compress
+   * @return a new byte array containing the compressed bytes
+   * @throws IOException if failed to compress
+   */
+  abstract byte[] compress(byte[] input, int off, int len) throws IOException;
+
+  /**
+   * Decompresses the given bytes into the given output array.
+   *
+   * @param input the compressed bytes
+   * @param off offset in the input to start from
+   * @param len number of compressed bytes
+   * @param output the array to write the decompressed bytes to, starting at offset {@code 0}
+   * @param outputLen expected number of decompressed bytes
+   * @throws IOException if failed to decompress or the decompressed size is not the same as {@code outputLen}
+   */
+  abstract void decompress(byte[] input, int off, int len, byte[] output, int outputLen) throws IOException;
+
+  /**
+   * Returns the {@link StreamDataBlockCodec} of the given name.
+   *
+   * @param name name of the codec
+   * @return the codec or {@code null} if the name is {@code null}, empty or {@link #NONE}
+   * @throws IllegalArgumentException if there is no codec with the given name
+   */
+  @Nullable
+  public static StreamDataBlockCodec fromName(@Nullable String name) {
+    if (name == null || name.isEmpty() || NONE.equalsIgnoreCase(name)) {
+      return null;
+    }
+    for (StreamDataBlockCodec codec : values()) {
+      if (codec.getName().equalsIgnoreCase(name)) {
+        return codec;
+      }
+    }
+    throw new IllegalArgumentException("Unsupported stream data block codec '" + name + "'");
+  }
+}
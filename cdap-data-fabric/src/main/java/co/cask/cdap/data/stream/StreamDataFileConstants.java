@@ -45,6 +45,9 @@ public final class StreamDataFileConstants {
 
       // Key prefix for properties that will be defaulted to all events' header
       public static final String EVENT_HEADER_PREFIX = "event.";
+
+      // Key for the codec used to compress data blocks. Absent if data blocks are not compressed.
+      public static final String CODEC = "stream.codec";
     }
 
     /**
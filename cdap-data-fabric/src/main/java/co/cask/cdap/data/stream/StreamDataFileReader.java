@@ -299,6 +299,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     Map<String, String> properties = StreamUtils.decodeMap(new BinaryDecoder(eventInput));
 
     verifySchema(properties);
+    streamEventBuffer.setCodec(getCodec(properties));
 
     // Create event template
     if (fileVersion >= 2) {
@@ -464,6 +465,18 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     }
   }
 
+  /**
+   * Returns the {@link StreamDataBlockCodec} used by the file or {@code null} if data blocks are not compressed.
+   */
+  @Nullable
+  private StreamDataBlockCodec getCodec(Map<String, String> properties) throws IOException {
+    try {
+      return StreamDataBlockCodec.fromName(properties.get(StreamDataFileConstants.Property.Key.CODEC));
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
   private long readTimestamp() throws IOException {
     ByteStreams.readFully(eventInput, timestampBuffer);
     return Bytes.toLong(timestampBuffer);
@@ -32,6 +32,7 @@ import com.google.common.io.OutputSupplier;
 import com.google.common.primitives.Longs;
 import org.apache.hadoop.fs.Syncable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -50,15 +51,24 @@ import javax.annotation.concurrent.NotThreadSafe;
  * event_file = <header> <data>* <end_marker>
  * header = "E" "1" <properties>
  * properties = Avro encoded with the properties schema
- * data = <timestamp> <length> <stream_event>+
+ * data = <timestamp> <length> (<stream_event>+ | <compressed_events>)
  * timestamp = 8 bytes int64 for timestamp in milliseconds
- * length = Avro encoded int32 for size in bytes for all <stream_event>s
+ * length = Avro encoded int32 for size in bytes for all <stream_event>s or the <compressed_events>
  * stream_event = Avro encoded bytes according to the StreamData schema
+ * compressed_events = <raw_length> <compressed_length> <compressed_bytes> <padding>
+ * raw_length = Avro encoded int32 for size in bytes for all <stream_event>s before compression
+ * compressed_length = Avro encoded int32 for size in bytes of the <compressed_bytes>
+ * compressed_bytes = <stream_event>+ compressed with the codec specified in the "stream.codec" property
+ * padding = zero or more bytes to make <length> at least the number of <stream_event>s in the block
  * end_marker = 8 bytes int64 with value == -(close_timestamp)
  *
  * }
  * </pre>
  *
+ * When data blocks are compressed, the position of a stream event is the position right after the block
+ * {@code <length>} plus the index of the event inside the block, which is why the block has to be at least as
+ * long as the number of events in it.
+ *
  * Stream index file:
  *
  * <pre>
@@ -84,6 +94,8 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private final long indexInterval;
   private final BufferedEncoder encoder;
   private final BufferedEncoder lengthEncoder;
+  private final StreamDataBlockCodec codec;
+  private final ByteArrayOutputStream rawBlockOutput;
 
   // Timestamp for the current block
   private long currentTimestamp;
@@ -92,6 +104,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private boolean synced;
   private boolean closed;
   private long closeTimestamp;
+  private int blockEventCount;
 
   /**
    * Constructs a new instance that writes to given outputs. Same as calling
@@ -110,12 +123,16 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
    * @param eventOutputSupplier the provider of the {@link OutputStream} for writing events
    * @param indexOutputSupplier the provider of the {@link OutputStream} for writing the index
    * @param indexInterval the time interval in milliseconds for emitting a new index entry
-   * @param properties the property set that will be stored as file properties
+   * @param properties the property set that will be stored as file properties. If it contains the
+   *                   {@link StreamDataFileConstants.Property.Key#CODEC} property, data blocks will be compressed
+   *                   with the given {@link StreamDataBlockCodec}
    * @throws IOException if there is an error in preparing the output streams
    */
   public StreamDataFileWriter(OutputSupplier<? extends OutputStream> eventOutputSupplier,
                               OutputSupplier<? extends OutputStream> indexOutputSupplier,
                               long indexInterval, Map<String, String> properties) throws IOException {
+    this.codec = StreamDataBlockCodec.fromName(properties.get(StreamDataFileConstants.Property.Key.CODEC));
+    this.rawBlockOutput = codec == null ? null : new ByteArrayOutputStream(BUFFER_SIZE);
     this.eventOutput = eventOutputSupplier.getOutput();
     try {
       this.indexOutput = indexOutputSupplier.getOutput();
@@ -222,6 +239,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
       // Encodes the event data into buffer.
       StreamEventDataCodec.encode(event, encoder);
+      blockEventCount++;
 
       // Optionally flush if already filled up the buffer.
       if (encoder.size() >= flushLimit) {
@@ -239,6 +257,11 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
     Map<String, String> headers = Maps.newHashMap(properties);
     headers.put(StreamDataFileConstants.Property.Key.SCHEMA, StreamEventDataCodec.STREAM_DATA_SCHEMA.toString());
+    if (codec == null) {
+      headers.remove(StreamDataFileConstants.Property.Key.CODEC);
+    } else {
+      headers.put(StreamDataFileConstants.Property.Key.CODEC, codec.getName());
+    }
     StreamUtils.encodeMap(headers, encoder);
 
     long headerSize = encoder.size();
@@ -278,6 +301,10 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       indexOffset = position - Bytes.SIZEOF_LONG;
     }
 
+    if (codec != null) {
+      compressBlock();
+    }
+
     // Writes the size of the encoded event
     lengthEncoder.writeInt(encoder.size());
     int size = lengthEncoder.size();
@@ -307,9 +334,30 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
     // Reset the current timestamp so that a data block will start.
     currentTimestamp = -1L;
+    blockEventCount = 0;
     synced = sync;
   }
 
+  /**
+   * Replaces the encoded events in the buffer with the compressed form of them.
+   */
+  private void compressBlock() throws IOException {
+    rawBlockOutput.reset();
+    encoder.writeTo(rawBlockOutput);
+    byte[] rawBlock = rawBlockOutput.toByteArray();
+    byte[] compressed = codec.compress(rawBlock, 0, rawBlock.length);
+
+    encoder.writeInt(rawBlock.length);
+    encoder.writeInt(compressed.length);
+    encoder.writeRaw(compressed);
+
+    // Each event in a compressed block takes one position, hence the block needs to be padded if it is too small.
+    int padding = blockEventCount - encoder.size();
+    if (padding > 0) {
+      encoder.writeRaw(new byte[padding]);
+    }
+  }
+
   private void sync(OutputStream output) throws IOException {
     if (output instanceof Syncable) {
       ((Syncable) output).hsync();
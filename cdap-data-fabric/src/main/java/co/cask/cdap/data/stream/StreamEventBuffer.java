@@ -24,15 +24,18 @@ import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.common.io.ByteBufferInputStream;
 
+import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Map;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A buffer for holding encoded stream events. It is used by {@link StreamDataFileReader} for holding
- * encoded stream events in each data block.
+ * encoded stream events in each data block. If the data block is compressed, the events are decompressed
+ * into the buffer and each event is positioned by its index within the block.
  */
 @NotThreadSafe
 final class StreamEventBuffer {
@@ -42,12 +45,26 @@ final class StreamEventBuffer {
 
   private ByteBuffer buffer;
   private long basePosition;
+  private int blockSize;
+  private int eventIndex;
+  private StreamDataBlockCodec codec;
+  private byte[] compressedBlock;
 
   StreamEventBuffer() {
     this.buffer = ByteBuffers.EMPTY_BUFFER;
     this.bufferInput = new ByteBufferInputStream(buffer);
     this.decoder = new BinaryDecoder(bufferInput);
     this.basePosition = -1L;
+    this.compressedBlock = new byte[0];
+  }
+
+  /**
+   * Sets the codec for decompressing data blocks.
+   *
+   * @param codec the codec or {@code null} if data blocks are not compressed
+   */
+  void setCodec(@Nullable StreamDataBlockCodec codec) {
+    this.codec = codec;
   }
 
   /**
@@ -60,19 +77,36 @@ final class StreamEventBuffer {
    */
   void fillBuffer(SeekableInputStream input, int size) throws IOException {
     buffer.clear();
-    buffer = ensureCapacity(buffer, size);
 
     try {
       basePosition = input.getPos();
-      int bytesRead = 0;
-      while (bytesRead != size) {
-        int len = input.read(buffer.array(), bytesRead, size - bytesRead);
-        if (len < 0) {
-          throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
+      blockSize = size;
+      eventIndex = 0;
+
+      if (codec == null) {
+        buffer = ensureCapacity(buffer, size);
+        readFully(input, buffer.array(), size);
+        buffer.limit(size);
+      } else {
+        if (compressedBlock.length < size) {
+          compressedBlock = new byte[size];
+        }
+        readFully(input, compressedBlock, size);
+
+        // Compressed block is <raw_length> <compressed_length> <compressed_bytes> <padding>
+        ByteArrayInputStream blockInput = new ByteArrayInputStream(compressedBlock, 0, size);
+        Decoder blockDecoder = new BinaryDecoder(blockInput);
+        int rawSize = blockDecoder.readInt();
+        int compressedSize = blockDecoder.readInt();
+        int offset = size - blockInput.available();
+        if (rawSize < 0 || compressedSize < 0 || offset + compressedSize > size) {
+          throw new IOException("Invalid compressed data block at position " + basePosition);
         }
-        bytesRead += len;
+
+        buffer = ensureCapacity(buffer, rawSize);
+        codec.decompress(compressedBlock, offset, compressedSize, buffer.array(), rawSize);
+        buffer.limit(rawSize);
       }
-      buffer.limit(size);
       bufferInput.reset(buffer);
     } catch (IOException e) {
       // Make the buffer has nothing to read
@@ -94,7 +128,14 @@ final class StreamEventBuffer {
    * read from the stream.
    */
   long getPosition() {
-    return basePosition >= 0 ? basePosition + buffer.position() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    if (codec == null) {
+      return basePosition + buffer.position();
+    }
+    // For compressed block, event position is the index of the event in the block.
+    return hasEvent() ? basePosition + eventIndex : basePosition + blockSize;
   }
 
   /**
@@ -102,7 +143,7 @@ final class StreamEventBuffer {
    * been read from the stream.
    */
   long getEndPosition() {
-    return basePosition >= 0 ? basePosition + buffer.limit() : -1L;
+    return basePosition >= 0 ? basePosition + blockSize : -1L;
   }
 
   /**
@@ -120,7 +161,8 @@ final class StreamEventBuffer {
       throw new IOException("No more event in the buffer");
     }
 
-    long eventPos = basePosition + buffer.position();
+    long eventPos = getPosition();
+    eventIndex++;
     if (filter.acceptOffset(eventPos)) {
       return new PositionStreamEvent(StreamEventDataCodec.decode(decoder, defaultHeaders), timestamp, eventPos);
     }
@@ -128,6 +170,20 @@ final class StreamEventBuffer {
     return null;
   }
 
+  /**
+   * Reads exactly the given number of bytes from the input into the given array.
+   */
+  private void readFully(SeekableInputStream input, byte[] bytes, int size) throws IOException {
+    int bytesRead = 0;
+    while (bytesRead != size) {
+      int len = input.read(bytes, bytesRead, size - bytesRead);
+      if (len < 0) {
+        throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
+      }
+      bytesRead += len;
+    }
+  }
+
   /**
    * Ensures that the given {@link ByteBuffer} is of sufficient size.
    *
@@ -22,6 +22,7 @@ import co.cask.cdap.data.file.FileWriter;
 import co.cask.cdap.data.file.PartitionedFileWriter;
 import co.cask.cdap.data.stream.TimePartitionedStreamFileWriter.TimePartition;
 import co.cask.cdap.proto.id.StreamId;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.OutputSupplier;
 import com.google.common.primitives.Longs;
 import org.apache.twill.filesystem.Location;
@@ -30,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Map;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -69,7 +71,19 @@ public class TimePartitionedStreamFileWriter extends PartitionedFileWriter<Strea
   public TimePartitionedStreamFileWriter(Location streamLocation, long partitionDuration,
                                          String fileNamePrefix, long indexInterval, StreamId streamId,
                                          Impersonator impersonator) {
-    super(new StreamWriterFactory(streamLocation, partitionDuration, fileNamePrefix, indexInterval),
+    this(streamLocation, partitionDuration, fileNamePrefix, indexInterval, streamId, impersonator,
+         ImmutableMap.<String, String>of());
+  }
+
+  /**
+   * Creates a new instance that writes stream files with the given set of file properties.
+   *
+   * @see StreamDataFileWriter#StreamDataFileWriter(OutputSupplier, OutputSupplier, long, Map)
+   */
+  public TimePartitionedStreamFileWriter(Location streamLocation, long partitionDuration,
+                                         String fileNamePrefix, long indexInterval, StreamId streamId,
+                                         Impersonator impersonator, Map<String, String> fileProperties) {
+    super(new StreamWriterFactory(streamLocation, partitionDuration, fileNamePrefix, indexInterval, fileProperties),
           streamId, impersonator);
     this.partitionDuration = partitionDuration;
   }
@@ -149,12 +163,15 @@ public class TimePartitionedStreamFileWriter extends PartitionedFileWriter<Strea
     private final long partitionDuration;
     private final String fileNamePrefix;
     private final long indexInterval;
+    private final Map<String, String> fileProperties;
 
-    StreamWriterFactory(Location streamLocation, long partitionDuration, String fileNamePrefix, long indexInterval) {
+    StreamWriterFactory(Location streamLocation, long partitionDuration, String fileNamePrefix, long indexInterval,
+                        Map<String, String> fileProperties) {
       this.streamLocation = streamLocation;
       this.partitionDuration = partitionDuration;
       this.fileNamePrefix = fileNamePrefix;
       this.indexInterval = indexInterval;
+      this.fileProperties = ImmutableMap.copyOf(fileProperties);
     }
 
     @Override
@@ -182,7 +199,8 @@ public class TimePartitionedStreamFileWriter extends PartitionedFileWriter<Strea
       }
 
       LOG.debug("New stream file created at {}", eventFile);
-      return new StreamDataFileWriter(createOutputSupplier(eventFile), createOutputSupplier(indexFile), indexInterval);
+      return new StreamDataFileWriter(createOutputSupplier(eventFile), createOutputSupplier(indexFile),
+                                      indexInterval, fileProperties);
     }
 
     private OutputSupplier<OutputStream> createOutputSupplier(final Location location) {
@@ -19,7 +19,10 @@ package co.cask.cdap.data.stream.service;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.Encoder;
 import co.cask.cdap.common.security.Impersonator;
+import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.TimeMathParser;
 import co.cask.cdap.data.file.FileReader;
@@ -43,11 +46,17 @@ import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.stream.JsonWriter;
 import com.google.inject.Inject;
+import org.apache.commons.codec.binary.Base64;
 import org.apache.twill.filesystem.Location;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferOutputStream;
@@ -55,13 +64,23 @@ import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.QueryStringDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.net.URI;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -74,9 +93,20 @@ import javax.ws.rs.QueryParam;
 @Path(Constants.Gateway.API_VERSION_3 + "/namespaces/{namespace-id}/streams")
 public final class StreamFetchHandler extends AbstractHttpHandler {
 
+  private static final Logger LOG = LoggerFactory.getLogger(StreamFetchHandler.class);
   private static final Gson GSON = StreamEventTypeAdapter.register(new GsonBuilder()).create();
-  private static final int MAX_EVENTS_PER_READ = 100;
+  private static final int INITIAL_EVENTS_PER_READ = 100;
+  private static final int MAX_EVENTS_PER_READ = 2000;
   private static final int CHUNK_SIZE = 8192;
+  private static final String AVRO_BINARY_CONTENT_TYPE = "avro/binary";
+  private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+  // Maximum number of events in a JSON response that carries the cursor, as such response is buffered in memory
+  private static final int MAX_BUFFERED_EVENTS = 10000;
+
+  /**
+   * Response header that carries the cursor of a JSON fetch response.
+   */
+  public static final String CURSOR_HEADER = "CDAP-Stream-Cursor";
 
   private final CConfiguration cConf;
   private final StreamAdmin streamAdmin;
@@ -98,17 +128,33 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
   }
 
   /**
-   * Handler for the HTTP API {@code /streams/[stream_name]/events?start=[start_ts]&end=[end_ts]&limit=[event_limit]}
+   * Handler for the HTTP API
+   * {@code /streams/[stream_name]/events?start=[start_ts]&end=[end_ts]&limit=[event_limit]&cursor=[cursor]}
    * <p>
    * Responds with:
    * <ul>
+   * <li>400 if the cursor is invalid</li>
    * <li>404 if stream does not exist</li>
    * <li>204 if no event in the given start/end time range exists</li>
    * <li>200 if there is are one or more events</li>
    * </ul>
    * </p>
    * <p>
-   * Response body is a JSON array of the StreamEvent object.
+   * Response body is a JSON array of the StreamEvent object. If the request accepts {@code avro/binary}, the
+   * response body is a sequence of StreamEvent records, each encoded with Avro binary encoding as
+   * {@link StreamEventDataCodec} followed by the timestamp and prefixed by its length as an Avro long.
+   * The sequence ends with a zero length, followed by the cursor for resuming the fetch as an Avro string.
+   * </p>
+   * <p>
+   * If a cursor is given, events are read from the stream position recorded in the cursor instead of from the
+   * start time. The start and end time still apply to the events being returned. For a JSON response, the
+   * presence of the {@code cursor} query parameter, which can be empty for the first fetch, requests the cursor
+   * to be returned in the {@link #CURSOR_HEADER} header. Such response is not chunked and returns at most
+   * {@value #MAX_BUFFERED_EVENTS} events.
+   * </p>
+   * <p>
+   * The cursor points right after the last event returned from each stream file, hence resuming never skips
+   * events that were read but not returned, such as events past the end time.
    * </p>
    *
    * @see StreamEventTypeAdapter StreamEventTypeAdapter for the format of the StreamEvent object
@@ -120,7 +166,10 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
                     @PathParam("stream") String stream,
                     @QueryParam("start") @DefaultValue("0") String start,
                     @QueryParam("end") @DefaultValue("9223372036854775807") String end,
-                    @QueryParam("limit") @DefaultValue("2147483647") final int limitEvents) throws Exception {
+                    @QueryParam("limit") @DefaultValue("2147483647") final int limitEvents,
+                    @QueryParam("cursor") @DefaultValue("") String cursor) throws Exception {
+    // The cursor parameter is present, but empty, on the first fetch of a JSON client that pages with cursor
+    final boolean cursorRequested = new QueryStringDecoder(request.getUri()).getParameters().containsKey("cursor");
     long startTime = TimeMathParser.parseTime(start, TimeUnit.MILLISECONDS);
     long endTime = TimeMathParser.parseTime(end, TimeUnit.MILLISECONDS);
 
@@ -137,18 +186,38 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
     endTime = Math.min(endTime, now);
     final long streamStartTime = startTime;
     final long streamEndTime = endTime;
+
+    final List<StreamFileOffset> cursorOffsets;
+    if (cursor.isEmpty()) {
+      cursorOffsets = null;
+    } else {
+      cursorOffsets = decodeCursor(streamConfig, cursor);
+      if (cursorOffsets == null) {
+        responder.sendString(HttpResponseStatus.BAD_REQUEST, "Invalid cursor " + cursor);
+        return;
+      }
+    }
+
+    String accept = request.getHeader(HttpHeaders.Names.ACCEPT);
+    final boolean binary = accept != null && accept.contains(AVRO_BINARY_CONTENT_TYPE);
+
     impersonator.doAs(new NamespaceId(namespaceId), new Callable<Void>() {
       @Override
       public Void call() throws Exception {
-        int limit = limitEvents;
+        // A JSON response with cursor has to be buffered for the cursor to be sent as header
+        boolean buffered = !binary && cursorRequested;
+        int limit = buffered ? Math.min(limitEvents, MAX_BUFFERED_EVENTS) : limitEvents;
+        List<StreamFileOffset> startOffsets = getStartOffsets(streamConfig, streamStartTime, cursorOffsets);
+
         // Create the stream event reader
         try (FileReader<StreamEventOffset, Iterable<StreamFileOffset>> reader = createReader(streamConfig,
-                                                                                             streamStartTime)) {
+                                                                                            startOffsets)) {
           TimeRangeReadFilter readFilter = new TimeRangeReadFilter(streamStartTime, streamEndTime);
-          List<StreamEvent> events = Lists.newArrayListWithCapacity(100);
+          int batchSize = INITIAL_EVENTS_PER_READ;
+          List<StreamEventOffset> events = Lists.newArrayListWithCapacity(batchSize);
 
           // Reads the first batch of events from the stream.
-          int eventsRead = readEvents(reader, events, limit, readFilter);
+          int eventsRead = readEvents(reader, events, Math.min(limit, batchSize), readFilter);
 
           // If empty already, return 204 no content
           if (eventsRead <= 0) {
@@ -156,24 +225,31 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
             return null;
           }
 
-          // Send with chunk response, as we don't want to buffer all events in memory to determine the content-length.
-          ChunkResponder chunkResponder = responder.sendChunkStart(
-            HttpResponseStatus.OK, ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE,
-                                                        "application/json; charset=utf-8"));
+          // The position right after the last event returned from each stream file, keyed by the file name prefix.
+          // It cannot be taken from the reader, which also moves past events that are read but not returned.
+          Map<String, StreamFileOffset> cursorPosition = Maps.newLinkedHashMap();
+          for (StreamFileOffset offset : startOffsets) {
+            cursorPosition.put(offset.getNamePrefix(), offset);
+          }
+
+          // Unless buffered, send with chunk response, as we don't want to buffer all events in memory to determine
+          // the content-length.
+          String contentType = binary ? AVRO_BINARY_CONTENT_TYPE : JSON_CONTENT_TYPE;
+          ChunkResponder chunkResponder = buffered ? null : responder.sendChunkStart(
+            HttpResponseStatus.OK, ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, contentType));
           ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
-          JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(new ChannelBufferOutputStream(buffer),
-                                                                        Charsets.UTF_8));
-          // Response is an array of stream event
-          jsonWriter.beginArray();
+          ChannelBufferOutputStream output = new ChannelBufferOutputStream(buffer);
+          EventWriter eventWriter = binary ? new BinaryEventWriter(output) : new JsonEventWriter(output);
           while (limit > 0 && eventsRead > 0) {
             limit -= eventsRead;
 
-            for (StreamEvent event : events) {
-              GSON.toJson(event, StreamEvent.class, jsonWriter);
-              jsonWriter.flush();
+            for (StreamEventOffset event : events) {
+              eventWriter.write(event);
+              StreamFileOffset offset = event.getOffset();
+              cursorPosition.put(offset.getNamePrefix(), new StreamFileOffset(offset, offset.getOffset() + 1));
 
               // If exceeded chunk size limit, send a new chunk.
-              if (buffer.readableBytes() >= CHUNK_SIZE) {
+              if (chunkResponder != null && buffer.readableBytes() >= CHUNK_SIZE) {
                 // If the connect is closed, sendChunk will throw IOException.
                 // No need to handle the exception as it will just propagated back to the netty-http library
                 // and it will handle it.
@@ -185,11 +261,21 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
             events.clear();
 
             if (limit > 0) {
-              eventsRead = readEvents(reader, events, limit, readFilter);
+              // Grows the batch size while reads fill the batch, to reduce the per read overhead on large fetches
+              if (eventsRead >= batchSize) {
+                batchSize = Math.min(batchSize * 2, MAX_EVENTS_PER_READ);
+              }
+              eventsRead = readEvents(reader, events, Math.min(limit, batchSize), readFilter);
             }
           }
-          jsonWriter.endArray();
-          jsonWriter.close();
+          String nextCursor = encodeCursor(cursorPosition.values());
+          eventWriter.finish(nextCursor);
+
+          if (chunkResponder == null) {
+            responder.sendContent(HttpResponseStatus.OK, buffer, contentType,
+                                  ImmutableMultimap.of(CURSOR_HEADER, nextCursor));
+            return null;
+          }
 
           // Send the last chunk that still has data
           if (buffer.readable()) {
@@ -208,14 +294,14 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
    * Reads events from the given reader.
    */
   private int readEvents(FileReader<StreamEventOffset, Iterable<StreamFileOffset>> reader,
-                         List<StreamEvent> events, int limit,
+                         List<StreamEventOffset> events, int limit,
                          TimeRangeReadFilter readFilter) throws IOException, InterruptedException {
     // Keeps reading as long as the filter is active.
     // This mean there are events in the stream, just that they are rejected by the filter.
-    int eventsRead = reader.read(events, getReadLimit(limit), 0, TimeUnit.SECONDS, readFilter);
+    int eventsRead = reader.read(events, limit, 0, TimeUnit.SECONDS, readFilter);
     while (eventsRead == 0 && readFilter.isActive()) {
       readFilter.reset();
-      eventsRead = reader.read(events, getReadLimit(limit), 0, TimeUnit.SECONDS, readFilter);
+      eventsRead = reader.read(events, limit, 0, TimeUnit.SECONDS, readFilter);
     }
     return eventsRead;
   }
@@ -287,14 +373,30 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
   }
 
   /**
-   * Creates a {@link FileReader} that starts reading stream event from the given partition.
+   * Returns the offsets to start reading stream events from. They are the given cursor offsets if provided and of
+   * the current stream generation, or otherwise the beginning of the stream files in the partition of the given
+   * start time.
+   *
+   * @return the list of offsets, which is empty if there is no partition to read from
    */
-  private FileReader<StreamEventOffset, Iterable<StreamFileOffset>> createReader(StreamConfig streamConfig,
-                                                                                 long startTime) throws IOException {
+  private List<StreamFileOffset> getStartOffsets(StreamConfig streamConfig, long startTime,
+                                                 @Nullable List<StreamFileOffset> cursorOffsets) throws IOException {
+
     int generation = StreamUtils.getGeneration(streamConfig);
+    if (cursorOffsets != null && !cursorOffsets.isEmpty()) {
+      boolean currentGeneration = true;
+      for (StreamFileOffset offset : cursorOffsets) {
+        currentGeneration = currentGeneration && offset.getGeneration() == generation;
+      }
+      // If the stream was truncated after the cursor was created, read from the start time
+      if (currentGeneration) {
+        return cursorOffsets;
+      }
+    }
+
     Location startPartition = getStartPartitionLocation(streamConfig, startTime, generation);
     if (startPartition == null) {
-      return createEmptyReader();
+      return Collections.emptyList();
     }
 
     List<StreamFileOffset> fileOffsets = Lists.newArrayList();
@@ -307,8 +409,18 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
                                                                 0, StreamFileType.EVENT);
       fileOffsets.add(new StreamFileOffset(eventLocation, 0, generation));
     }
+    return fileOffsets;
+  }
 
-    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, fileOffsets);
+  /**
+   * Creates a {@link FileReader} that starts reading stream events from the given offsets.
+   */
+  private FileReader<StreamEventOffset, Iterable<StreamFileOffset>> createReader(
+    StreamConfig streamConfig, List<StreamFileOffset> startOffsets) throws IOException {
+    if (startOffsets.isEmpty()) {
+      return createEmptyReader();
+    }
+    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, startOffsets);
     reader.initialize();
     return reader;
   }
@@ -348,12 +460,127 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
   }
 
   /**
-   * Returns the events limit for each round of read from the stream reader.
+   * Encodes the given stream file offsets as a cursor that can be used to resume fetching.
+   */
+  private static String encodeCursor(Iterable<StreamFileOffset> position) throws IOException {
+    List<StreamFileOffset> offsets = Lists.newArrayList(position);
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    output.writeInt(offsets.size());
+    for (StreamFileOffset offset : offsets) {
+      StreamUtils.encodeOffset(output, offset);
+    }
+    return Base64.encodeBase64URLSafeString(output.toByteArray());
+  }
+
+  /**
+   * Decodes a cursor created by {@link #encodeCursor(Iterable)}.
    *
-   * @param count Number of events wanted to read.
-   * @return The actual number of events to read.
+   * @return the list of {@link StreamFileOffset} in the cursor or {@code null} if the cursor is invalid.
    */
-  private int getReadLimit(int count) {
-    return (count > MAX_EVENTS_PER_READ) ? MAX_EVENTS_PER_READ : count;
+  @Nullable
+  private List<StreamFileOffset> decodeCursor(StreamConfig streamConfig, String cursor) {
+    // Only offsets of files written by the stream writers are valid
+    Set<String> filePrefixes = Sets.newHashSet();
+    int instances = cConf.getInt(Constants.Stream.CONTAINER_INSTANCES);
+    String filePrefix = cConf.get(Constants.Stream.FILE_PREFIX);
+    for (int i = 0; i < instances; i++) {
+      filePrefixes.add(filePrefix + '.' + i);
+    }
+
+    try {
+      ByteArrayDataInput input = ByteStreams.newDataInput(Base64.decodeBase64(cursor));
+      int size = input.readInt();
+      if (size < 0) {
+        return null;
+      }
+      List<StreamFileOffset> offsets = Lists.newArrayList();
+      for (int i = 0; i < size; i++) {
+        StreamFileOffset offset = StreamUtils.decodeOffset(streamConfig, input);
+        URI uri = offset.getEventLocation().toURI();
+        if (!filePrefixes.contains(offset.getNamePrefix()) || !uri.equals(uri.normalize()) || offset.getOffset() < 0) {
+          return null;
+        }
+        offsets.add(offset);
+      }
+      return offsets;
+    } catch (Exception e) {
+      LOG.debug("Failed to decode cursor {}", cursor, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes stream events in the format of the fetch response.
+   */
+  private interface EventWriter {
+
+    /**
+     * Writes a stream event.
+     */
+    void write(StreamEvent event) throws IOException;
+
+    /**
+     * Writes the end of the response and flushes all the data.
+     *
+     * @param cursor the cursor for resuming the fetch after the last event written
+     */
+    void finish(String cursor) throws IOException;
+  }
+
+  /**
+   * {@link EventWriter} that writes a JSON array of stream events.
+   */
+  private static final class JsonEventWriter implements EventWriter {
+
+    private final JsonWriter jsonWriter;
+
+    JsonEventWriter(OutputStream output) throws IOException {
+      this.jsonWriter = new JsonWriter(new OutputStreamWriter(output, Charsets.UTF_8));
+      // Response is an array of stream event
+      jsonWriter.beginArray();
+    }
+
+    @Override
+    public void write(StreamEvent event) throws IOException {
+      GSON.toJson(event, StreamEvent.class, jsonWriter);
+      jsonWriter.flush();
+    }
+
+    @Override
+    public void finish(String cursor) throws IOException {
+      // The cursor of a JSON response is sent as header
+      jsonWriter.endArray();
+      jsonWriter.close();
+    }
+  }
+
+  /**
+   * {@link EventWriter} that writes length prefixed Avro binary encoded stream events, followed by the cursor.
+   */
+  private static final class BinaryEventWriter implements EventWriter {
+
+    private final Encoder encoder;
+    private final ByteArrayOutputStream eventOutput;
+    private final Encoder eventEncoder;
+
+    BinaryEventWriter(OutputStream output) {
+      this.encoder = new BinaryEncoder(output);
+      this.eventOutput = new ByteArrayOutputStream();
+      this.eventEncoder = new BinaryEncoder(eventOutput);
+    }
+
+    @Override
+    public void write(StreamEvent event) throws IOException {
+      eventOutput.reset();
+      StreamEventDataCodec.encode(event, eventEncoder);
+      eventEncoder.writeLong(event.getTimestamp());
+      encoder.writeBytes(eventOutput.toByteArray());
+    }
+
+    @Override
+    public void finish(String cursor) throws IOException {
+      encoder.writeInt(0);
+      encoder.writeString(cursor);
+    }
   }
 }
@@ -62,6 +62,9 @@ final class FileContentWriter implements ContentWriter {
     Map<String, String> properties = createStreamFileProperties(headers);
     properties.put(StreamDataFileConstants.Property.Key.UNI_TIMESTAMP,
                    StreamDataFileConstants.Property.Value.CLOSE_TIMESTAMP);
+    if (streamConfig.getCompressionCodec() != null) {
+      properties.put(StreamDataFileConstants.Property.Key.CODEC, streamConfig.getCompressionCodec());
+    }
     this.writer = new StreamDataFileWriter(Locations.newOutputSupplier(eventFile),
                                            Locations.newOutputSupplier(indexFile),
                                            streamConfig.getIndexInterval(),
@@ -58,6 +58,12 @@ import javax.annotation.Nullable;
  */
 public abstract class DynamicDatasetCache implements DatasetContext, Supplier<TransactionContext>, AutoCloseable {
 
+  /**
+   * Runtime argument for committing and rolling back the datasets of a transaction in parallel,
+   * instead of one after another. Default is {@code false}.
+   */
+  public static final String PARALLEL_COMMIT = "system.dataset.commit.parallel";
+
   protected final SystemDatasetInstantiator instantiator;
   protected final TransactionSystemClient txClient;
   protected final NamespaceId namespace;
@@ -23,6 +23,7 @@ import co.cask.cdap.api.dataset.metrics.MeteredDataset;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data.dataset.SystemDatasetInstantiator;
+import co.cask.cdap.data2.transaction.ParallelCommitTransactionAware;
 import co.cask.cdap.proto.id.DatasetId;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.base.Preconditions;
@@ -70,6 +71,8 @@ public class SingleThreadDatasetCache extends DynamicDatasetCache {
   private final Map<DatasetCacheKey, Dataset> staticDatasets = new HashMap<>();
   private final Set<TransactionAware> extraTxAwares = Sets.newIdentityHashSet();
 
+  private final boolean parallelCommit;
+
   private DelayedDiscardingTransactionContext txContext = null;
 
   /**
@@ -86,6 +89,7 @@ public class SingleThreadDatasetCache extends DynamicDatasetCache {
                                   @Nullable final MetricsContext metricsContext,
                                   @Nullable Map<String, Map<String, String>> staticDatasets) {
     super(instantiator, txClient, namespace, runtimeArguments);
+    this.parallelCommit = runtimeArguments != null && Boolean.parseBoolean(runtimeArguments.get(PARALLEL_COMMIT));
     this.datasetLoader = new CacheLoader<DatasetCacheKey, Dataset>() {
       @Override
       @ParametersAreNonnullByDefault
@@ -412,7 +416,11 @@ public class SingleThreadDatasetCache extends DynamicDatasetCache {
         throw new TransactionFailureException("Attempted to start a transaction within active transaction " +
                                                 getCurrentTransaction().getTransactionId());
       }
-      txContext = new TransactionContext(SingleThreadDatasetCache.this.txClient, txAwares);
+      Collection<TransactionAware> contextTxAwares = txAwares;
+      if (parallelCommit && txAwares.size() > 1) {
+        contextTxAwares = ImmutableList.<TransactionAware>of(new ParallelCommitTransactionAware(txAwares));
+      }
+      txContext = new TransactionContext(SingleThreadDatasetCache.this.txClient, contextTxAwares);
     }
 
     @Override
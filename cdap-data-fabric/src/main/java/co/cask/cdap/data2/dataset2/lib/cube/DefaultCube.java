@@ -38,6 +38,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
@@ -113,8 +114,19 @@ public class DefaultCube implements Cube, MeteredDataset {
       }
     }
 
-    for (FactTable table : resolutionToFactTable.values()) {
-      table.add(toWrite);
+    // Merge facts written to the same cell for each resolution, starting from the finest one, so that coarser
+    // resolutions that are multiples of a finer one can merge the already merged facts.
+    int measurementsCount = FactAggregator.countMeasurements(toWrite);
+    int collapsedCount = 0;
+    List<Fact> previous = toWrite;
+    int previousResolution = 1;
+    for (int resolution : Ordering.natural().sortedCopy(resolutionToFactTable.keySet())) {
+      List<Fact> aggregated = FactAggregator.aggregate(resolution % previousResolution == 0 ? previous : toWrite,
+                                                       resolution);
+      resolutionToFactTable.get(resolution).add(aggregated);
+      collapsedCount += measurementsCount - FactAggregator.countMeasurements(aggregated);
+      previous = aggregated;
+      previousResolution = resolution;
     }
 
     incrementMetric("cube.cubeFact.add.request.count", 1);
@@ -122,6 +134,7 @@ public class DefaultCube implements Cube, MeteredDataset {
     incrementMetric("cube.tsFact.created.count", toWrite.size());
     incrementMetric("cube.tsFact.created.dimValues.count", dimValuesCount);
     incrementMetric("cube.tsFact.added.count", toWrite.size() * resolutionToFactTable.size());
+    incrementMetric("cube.tsFact.measurement.collapsed.count", collapsedCount);
   }
 
   @Override
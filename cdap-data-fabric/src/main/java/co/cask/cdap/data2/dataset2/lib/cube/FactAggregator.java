@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.cube;
+
+import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.Measurement;
+import co.cask.cdap.data2.dataset2.lib.timeseries.Fact;
+import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges {@link Fact}s that are written to the same cell of a {@link FactTable} of a given resolution, that is,
+ * the same dimension values, measure and time bucket. Counters are summed and gauges keep the last value,
+ * which is the same result as writing the facts one by one.
+ */
+final class FactAggregator {
+
+  private FactAggregator() {
+  }
+
+  /**
+   * Returns the merged facts for the given resolution. Timestamps of the returned facts are rounded down to
+   * the resolution.
+   */
+  static List<Fact> aggregate(Collection<Fact> facts, int resolution) {
+    Map<FactKey, Measurements> merged = new LinkedHashMap<>();
+    for (Fact fact : facts) {
+      FactKey key = new FactKey(fact.getTimestamp() / resolution * resolution, fact.getDimensionValues());
+      Measurements measurements = merged.get(key);
+      if (measurements == null) {
+        measurements = new Measurements();
+        merged.put(key, measurements);
+      }
+      for (Measurement measurement : fact.getMeasurements()) {
+        measurements.add(measurement);
+      }
+    }
+
+    List<Fact> result = Lists.newArrayListWithCapacity(merged.size());
+    for (Map.Entry<FactKey, Measurements> entry : merged.entrySet()) {
+      result.add(new Fact(entry.getKey().timestamp, entry.getKey().dimensionValues,
+                          entry.getValue().toMeasurements()));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the total number of measurements in the given facts.
+   */
+  static int countMeasurements(Collection<Fact> facts) {
+    int count = 0;
+    for (Fact fact : facts) {
+      count += fact.getMeasurements().size();
+    }
+    return count;
+  }
+
+  /**
+   * Merged values of measurements by name, with counters and gauges kept apart, as they are written separately.
+   */
+  private static final class Measurements {
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final Map<String, Long> gauges = new LinkedHashMap<>();
+
+    void add(Measurement measurement) {
+      if (measurement.getType() == MeasureType.COUNTER) {
+        Long value = counters.get(measurement.getName());
+        counters.put(measurement.getName(), value == null ? measurement.getValue() : value + measurement.getValue());
+      } else {
+        gauges.put(measurement.getName(), measurement.getValue());
+      }
+    }
+
+    List<Measurement> toMeasurements() {
+      List<Measurement> measurements = Lists.newArrayListWithCapacity(counters.size() + gauges.size());
+      for (Map.Entry<String, Long> entry : counters.entrySet()) {
+        measurements.add(new Measurement(entry.getKey(), MeasureType.COUNTER, entry.getValue()));
+      }
+      for (Map.Entry<String, Long> entry : gauges.entrySet()) {
+        measurements.add(new Measurement(entry.getKey(), MeasureType.GAUGE, entry.getValue()));
+      }
+      return measurements;
+    }
+  }
+
+  private static final class FactKey {
+    private final long timestamp;
+    private final List<DimensionValue> dimensionValues;
+
+    private FactKey(long timestamp, List<DimensionValue> dimensionValues) {
+      this.timestamp = timestamp;
+      this.dimensionValues = dimensionValues;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      FactKey other = (FactKey) o;
+      return timestamp == other.timestamp && dimensionValues.equals(other.dimensionValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(timestamp, dimensionValues);
+    }
+  }
+}
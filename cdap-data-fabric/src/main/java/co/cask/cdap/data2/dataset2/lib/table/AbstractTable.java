@@ -32,6 +32,7 @@ import co.cask.cdap.api.dataset.table.Increment;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Result;
 import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.api.dataset.table.TableSplit;
@@ -277,7 +278,7 @@ public abstract class AbstractTable implements Table, TransactionAware {
     public void initialize(Split split) throws InterruptedException {
       TableSplit tableSplit = (TableSplit) split;
       try {
-        this.scanner = scan(tableSplit.getStart(), tableSplit.getStop());
+        this.scanner = scan(new Scan(tableSplit.getStart(), tableSplit.getStop(), tableSplit.getFilter()));
       } catch (Exception e) {
         LOG.debug("scan failed for table: " + getTransactionAwareName(), e);
         throw new DataSetException("scan failed", e);
@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.SchemaHash;
+import co.cask.cdap.api.data.schema.UnsupportedTypeException;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.internal.io.ASMDatumReaderFactory;
+import co.cask.cdap.internal.io.ASMDatumWriterFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.DatumReader;
+import co.cask.cdap.internal.io.DatumReaderFactory;
+import co.cask.cdap.internal.io.DatumWriter;
+import co.cask.cdap.internal.io.DatumWriterFactory;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import co.cask.cdap.internal.io.SchemaGenerator;
+import com.google.common.base.Throwables;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link MDSValueCodec} that stores values of a given set of classes in a compact schema-driven binary format,
+ * and all other values as JSON.
+ * <p>
+ * A binary encoded value has the layout {@code <marker><version><schema hash><binary datum>}, where the marker is a
+ * byte that JSON text never starts with. Values without the marker are decoded as JSON, so rows written before
+ * a class was switched to binary encoding remain readable and can be rewritten by an upgrade. Likewise, binary
+ * values of classes that are no longer encoded in binary are still decoded, and are reported as outdated.
+ * <p>
+ * The schema hash is of the schema the value was written with. Values written with a schema different from the
+ * current schema of the class are resolved against it, provided the old schema is known to the codec,
+ * either because it is the current schema of the class or it was added with {@link #addSchema(Schema)}.
+ */
+public final class BinaryMDSValueCodec implements MDSValueCodec {
+
+  private static final byte MARKER = 0;
+  private static final byte VERSION = 1;
+  private static final int SCHEMA_HASH_SIZE = 16;
+  private static final int HEADER_SIZE = 2 + SCHEMA_HASH_SIZE;
+
+  private static final SchemaGenerator SCHEMA_GENERATOR = new ReflectionSchemaGenerator();
+  private static final DatumWriterFactory WRITER_FACTORY = new ASMDatumWriterFactory(new ASMFieldAccessorFactory());
+  private static final DatumReaderFactory READER_FACTORY = new ASMDatumReaderFactory(new ASMFieldAccessorFactory());
+
+  private final JsonMDSValueCodec jsonCodec;
+  private final Map<Class<?>, TypeCodec<?>> binaryClasses;
+  private final ConcurrentMap<Type, TypeCodec<?>> readCodecs;
+  private final ConcurrentMap<SchemaHash, Schema> schemas;
+
+  /**
+   * Creates a codec.
+   *
+   * @param gson the {@link Gson} for encoding and decoding values as JSON
+   * @param binaryClasses classes of values to be encoded in binary
+   * @throws IllegalArgumentException if schema cannot be generated for any of the binary classes
+   */
+  public BinaryMDSValueCodec(Gson gson, Class<?>... binaryClasses) {
+    this.jsonCodec = new JsonMDSValueCodec(gson);
+    this.readCodecs = new ConcurrentHashMap<>();
+    this.schemas = new ConcurrentHashMap<>();
+
+    Map<Class<?>, TypeCodec<?>> codecs = new HashMap<>();
+    for (Class<?> cls : binaryClasses) {
+      TypeCodec<?> codec = createTypeCodec(cls, true);
+      codecs.put(cls, codec);
+      readCodecs.put(cls, codec);
+    }
+    this.binaryClasses = codecs;
+  }
+
+  /**
+   * Adds a schema that binary values were written with, such as the schema of an earlier version of a class.
+   *
+   * @return this codec
+   */
+  public BinaryMDSValueCodec addSchema(Schema schema) {
+    schemas.put(schema.getSchemaHash(), schema);
+    return this;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> byte[] encode(T value) {
+    TypeCodec<T> codec = value == null ? null : (TypeCodec<T>) binaryClasses.get(value.getClass());
+    if (codec == null) {
+      return jsonCodec.encode(value);
+    }
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream(128);
+    os.write(MARKER);
+    os.write(VERSION);
+    os.write(codec.schemaHash, 0, codec.schemaHash.length);
+    try {
+      codec.writer.encode(value, new BinaryEncoder(os));
+    } catch (IOException e) {
+      // Shouldn't happen since writing to memory
+      throw Throwables.propagate(e);
+    }
+    return os.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> T decode(byte[] encoded, Type typeOfT) {
+    if (!isBinary(encoded)) {
+      return jsonCodec.decode(encoded, typeOfT);
+    }
+    if (encoded.length < HEADER_SIZE || encoded[1] != VERSION) {
+      throw new IllegalArgumentException("Unsupported binary encoding of value of type " + typeOfT);
+    }
+
+    TypeCodec<T> codec = (TypeCodec<T>) getReadCodec(typeOfT);
+    SchemaHash writerHash = new SchemaHash(ByteBuffer.wrap(encoded, 2, SCHEMA_HASH_SIZE));
+    Schema writerSchema = schemas.get(writerHash);
+    if (writerSchema == null) {
+      throw new IllegalStateException("Unknown schema " + writerHash + " of binary encoded value of type " + typeOfT);
+    }
+
+    try {
+      BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(encoded, HEADER_SIZE,
+                                                                         encoded.length - HEADER_SIZE));
+      return codec.reader.get().read(decoder, writerSchema);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  public boolean isOutdated(byte[] encoded, Type typeOfT) {
+    TypeCodec<?> codec = binaryClasses.get(TypeToken.of(typeOfT).getRawType());
+    if (codec == null) {
+      return isBinary(encoded);
+    }
+    if (!isBinary(encoded) || encoded.length < HEADER_SIZE || encoded[1] != VERSION) {
+      return true;
+    }
+    return !ByteBuffer.wrap(encoded, 2, SCHEMA_HASH_SIZE).equals(ByteBuffer.wrap(codec.schemaHash));
+  }
+
+  /**
+   * Returns {@code true} if the given value is encoded in binary by this class.
+   */
+  static boolean isBinary(byte[] encoded) {
+    return encoded.length > 0 && encoded[0] == MARKER;
+  }
+
+  private TypeCodec<?> getReadCodec(Type type) {
+    TypeCodec<?> codec = readCodecs.get(type);
+    if (codec != null) {
+      return codec;
+    }
+    codec = createTypeCodec(type, false);
+    TypeCodec<?> existing = readCodecs.putIfAbsent(type, codec);
+    return existing == null ? codec : existing;
+  }
+
+  private <T> TypeCodec<T> createTypeCodec(Type type, boolean createWriter) {
+    try {
+      @SuppressWarnings("unchecked")
+      TypeToken<T> typeToken = (TypeToken<T>) TypeToken.of(type);
+      Schema schema = SCHEMA_GENERATOR.generate(type);
+      schemas.put(schema.getSchemaHash(), schema);
+      return new TypeCodec<>(typeToken, schema, createWriter ? WRITER_FACTORY.create(typeToken, schema) : null);
+    } catch (UnsupportedTypeException e) {
+      throw new IllegalArgumentException("Cannot generate schema for type " + type, e);
+    }
+  }
+
+  /**
+   * Holds the schema, writer and readers of a type.
+   */
+  private static final class TypeCodec<T> {
+    private final byte[] schemaHash;
+    private final DatumWriter<T> writer;
+    // DatumReader is not thread safe
+    private final ThreadLocal<DatumReader<T>> reader;
+
+    TypeCodec(final TypeToken<T> type, final Schema schema, DatumWriter<T> writer) {
+      this.schemaHash = schema.getSchemaHash().toByteArray();
+      this.writer = writer;
+      this.reader = new ThreadLocal<DatumReader<T>>() {
+        @Override
+        protected DatumReader<T> initialValue() {
+          return READER_FACTORY.create(type, schema);
+        }
+      };
+    }
+  }
+}
@@ -23,6 +23,7 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.batch.Split;
 import co.cask.cdap.api.dataset.DataSetException;
 import co.cask.cdap.api.dataset.metrics.MeteredDataset;
+import co.cask.cdap.api.dataset.table.ColumnValueFilter;
 import co.cask.cdap.api.dataset.table.ConflictDetection;
 import co.cask.cdap.api.dataset.table.Filter;
 import co.cask.cdap.api.dataset.table.Get;
@@ -53,7 +54,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -95,9 +96,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // Whether read-less increments should be used when increment() is called
   private final boolean enableReadlessIncrements;
 
-  // In-memory buffer that keeps not yet persisted data. It is row->(column->value) map. Value can be null which means
-  // that the corresponded column was removed.
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> buff;
+  // In-memory buffer that keeps not yet persisted data. It records row->(column->value) updates, where value can be
+  // null which means that the corresponded column was removed.
+  private TableWriteBuffer buff;
 
   // Keeps track of what was persisted so far
   private NavigableMap<byte[], NavigableMap<byte[], Update>> toUndo;
@@ -150,7 +151,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // we want it to be of format length+value to avoid conflicts like table="ab", row="cd" vs table="abc", row="d"
     // Default uses the above scheme. Subclasses can change it by overriding the #getNameAsTxChangePrefix method
     this.nameAsTxChangePrefix = Bytes.add(new byte[]{(byte) name.length()}, Bytes.toBytes(name));
-    this.buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    this.buff = new TableWriteBuffer();
   }
 
   /**
@@ -227,6 +228,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   /**
    * Scans range of rows from persistent store for a given {@link Scan}.
    * NOTE: persisted store can also be in-memory, it is called "persisted" to distinguish from in-memory buffer.
+   * NOTE: a {@link ColumnValueFilter} and the columns of the scan should be applied in the persistent store where
+   *       possible, to avoid reading rows and columns that are not needed. Implementations may also ignore them,
+   *       because they are applied again after merging with the in-memory buffer. If the scan has both, the columns
+   *       include the columns that the filter refers to.
    * @param scan scan configuration
    * @return instance of {@link Scanner}, never null
    * @throws Exception
@@ -308,32 +313,17 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   private Collection<byte[]> getRowChanges() {
     // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (byte[] changedRow : buff.keySet()) {
+    List<byte[]> rows = buff.getRows();
+    List<byte[]> changes = new ArrayList<>(rows.size());
+    for (byte[] changedRow : rows) {
       changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
     }
     return changes;
   }
 
   private Collection<byte[]> getColumnChanges() {
-    // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : buff.entrySet()) {
-      if (rowChange.getValue() == null) {
-        // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
-        //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but this
-        //       will change in future, so we will have to address the issue.
-        continue;
-      }
-
-      // using length + value format to prevent conflicts like row="ab", column="cd" vs row="abc", column="d"
-      byte[] rowTxChange = Bytes.add(Bytes.toBytes(rowChange.getKey().length), rowChange.getKey());
-
-      for (byte[] column : rowChange.getValue().keySet()) {
-        changes.add(Bytes.add(getNameAsTxChangePrefix(), rowTxChange, column));
-      }
-    }
-    return changes;
+    // using length + value format to prevent conflicts like row="ab", column="cd" vs row="abc", column="d"
+    return buff.getCells(getNameAsTxChangePrefix());
   }
 
   @Override
@@ -341,14 +331,15 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     if (!buff.isEmpty()) {
       // We first assume that all data will be persisted. So that if exception happen during persist we try to
       // rollback everything we had in in-memory buffer.
-      toUndo = buff;
-      // clearing up in-memory buffer by initializing new map.
-      // NOTE: we want to init map here so that if no changes are made we re-use same instance of the map in next tx
-      // NOTE: we could cache two maps and swap them to avoid creation of map instances, but code would be ugly
-      buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      // NOTE: the sorted row->(column->value) map is only built here, writes during the tx only go to the buffer
+      toUndo = buff.toMap();
+      // clearing up in-memory buffer, the buffer memory is reused in next tx
+      buff.clear();
       // TODO: tracking of persisted items can be optimized by returning a pair {succeededOrNot, persisted} which
       //       tells if persisting succeeded and what was persisted (i.e. what we will have to undo in case of rollback)
+      long startTime = System.nanoTime();
       persist(toUndo);
+      reportFlush(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
     }
     return true;
   }
@@ -414,8 +405,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public Row get(byte[] row, byte[] startColumn, byte[] stopColumn, int limit) {
     ensureTransactionIsStarted();
     reportRead(1);
-    // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
     // NOTE: since we cannot tell the exact column set, we always have to go to persisted store.
     //       potential improvement: do not fetch columns available in in-mem buffer (we know them at this point)
@@ -467,7 +457,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         rowColumns.putAll(persistedRow);
 
         byte[] row = get.getRow();
-        NavigableMap<byte[], Update> buffCols = buff.get(row);
+        NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
         // merge what was in the buffer and what was persisted
         if (buffCols != null) {
@@ -500,24 +490,14 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   }
 
   private void putInternal(byte[] row, byte[][] columns, byte[][] values) {
-    NavigableMap<byte[], Update> colVals = buff.get(row);
-    boolean newRow = false;
-    if (colVals == null) {
-      colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      newRow = true;
-    }
     for (int i = 0; i < columns.length; i++) {
-      // NOTE: we copy passed column's and value's byte arrays to protect buffer against possible changes of these
-      // arrays on client
       if (values[i] != null && values[i].length == 0) {
         warnAboutEmptyValue(columns[i]);
       }
-      colVals.put(copy(columns[i]), new PutValue(copy(values[i])));
-    }
-    if (newRow) {
-      // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
-      buff.put(copy(row), colVals);
     }
+    // NOTE: the buffer copies passed row's, column's and value's bytes, which protects it against possible changes of
+    // these arrays on client
+    buff.put(row, columns, values);
   }
 
   /**
@@ -620,14 +600,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public void increment(byte[] row, byte[][] columns, long[] amounts) {
     ensureTransactionIsStarted();
     if (enableReadlessIncrements) {
-      NavigableMap<byte[], Update> colVals = buff.get(row);
-      if (colVals == null) {
-        colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        buff.put(row, colVals);
-      }
       for (int i = 0; i < columns.length; i++) {
-        colVals.put(columns[i], Updates.mergeUpdates(colVals.get(columns[i]), new IncrementValue(amounts[i])));
+        // fails with NumberFormatException if there is a buffered value that is not convertible to long
+        Updates.mergeUpdates(buff.getUpdate(row, columns[i]), new IncrementValue(amounts[i]));
       }
+      buff.increment(row, columns, amounts);
       reportWrite(1, getSize(row) + getSize(columns) + getSize(amounts));
     } else {
       internalIncrementAndGet(row, columns, amounts);
@@ -674,7 +651,13 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public List<Split> getSplits(int numSplits, byte[] start, byte[] stop) {
     ensureTransactionIsStarted();
-    List<KeyRange> keyRanges = SplitsUtil.primitiveGetSplits(numSplits, start, stop);
+    return toSplits(SplitsUtil.primitiveGetSplits(numSplits, start, stop));
+  }
+
+  /**
+   * Converts a list of {@link KeyRange} to a list of {@link Split}.
+   */
+  protected static List<Split> toSplits(List<KeyRange> keyRanges) {
     return Lists.transform(keyRanges, new Function<KeyRange, Split>() {
       @Nullable
       @Override
@@ -695,9 +678,12 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public Scanner scan(Scan scan) {
     ensureTransactionIsStarted();
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan);
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferRows = scanBuffer(scan);
     try {
-      return new BufferingScanner(bufferMap, scanPersisted(scan));
+      if (scan.getFilter() instanceof ColumnValueFilter || scan.getColumns() != null) {
+        return new FilteringBufferingScanner(bufferRows, scan);
+      }
+      return new BufferingScanner(bufferRows, scanPersisted(scan));
     } catch (Exception e) {
       LOG.debug("scan failed for table: " + getTransactionAwareName() +
           ", scan: " + scan.toString(), e);
@@ -705,52 +691,21 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> scanBuffer(Scan scan) {
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap;
-    byte[] startRow = scan.getStartRow();
-    byte[] stopRow = scan.getStopRow();
-    if (startRow == null && stopRow == null) {
-      bufferMap = buff;
-    } else if (startRow == null) {
-      bufferMap = buff.headMap(stopRow, false);
-    } else if (stopRow == null) {
-      bufferMap = buff.tailMap(startRow, true);
-    } else {
-      bufferMap = buff.subMap(startRow, true, stopRow, false);
-    }
-    bufferMap = applyFilter(bufferMap, scan.getFilter());
-    return bufferMap;
-  }
-
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> applyFilter(
-                                                        NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap,
-                                                        @Nullable Filter filter) {
-    if (filter == null) {
-      return bufferMap;
-    }
-
-    // todo: currently we support only FuzzyRowFilter as an experimental feature
-    if (filter instanceof FuzzyRowFilter) {
-      NavigableMap<byte[], NavigableMap<byte[], Update>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      for (Map.Entry<byte[], NavigableMap<byte[], Update>> entry : bufferMap.entrySet()) {
-        if (FuzzyRowFilter.ReturnCode.INCLUDE == ((FuzzyRowFilter) filter).filterRow(entry.getKey())) {
-          result.put(entry.getKey(), entry.getValue());
-        }
-      }
-      return result;
-    } else {
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> scanBuffer(Scan scan) {
+    Filter filter = scan.getFilter();
+    // todo: currently we support only FuzzyRowFilter and ColumnValueFilter as an experimental feature
+    if (filter instanceof ColumnValueFilter) {
+      // applied to the merged rows
+      filter = null;
+    } else if (filter != null && !(filter instanceof FuzzyRowFilter)) {
       throw new DataSetException("Unknown filter type: " + filter);
     }
+    return buff.scan(scan.getStartRow(), scan.getStopRow(), (FuzzyRowFilter) filter);
   }
 
   private Map<byte[], byte[]> getRowMap(byte[] row) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
-    boolean rowDeleted = buffCols == null && buff.containsKey(row);
-    if (rowDeleted) {
-      return Collections.emptyMap();
-    }
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
     Map<byte[], byte[]> persisted = getPersisted(row, null);
 
@@ -766,8 +721,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   private Map<byte[], byte[]> getRowMap(byte[] row, byte[][] columns) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
     // if nothing locally, return all from server
     if (buffCols == null) {
@@ -929,6 +883,13 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
+  private void reportFlush(long timeMillis) {
+    if (metricsCollector != null) {
+      metricsCollector.increment(Constants.Metrics.Name.Dataset.FLUSH_COUNT, 1);
+      metricsCollector.increment(Constants.Metrics.Name.Dataset.FLUSH_MS, timeMillis);
+    }
+  }
+
   private void reportRead(int numOps) {
     if (metricsCollector != null) {
       // todo: report amount of data being read
@@ -962,11 +923,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // they get annotated
 
   @ReadOnly
-  private Iterator<byte[]> getBufferKeyIterator(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer) {
-    final Iterator<byte[]> iterator = buffer.keySet().iterator();
-    return new AbstractIterator<byte[]>() {
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getBufferRowIterator(
+    final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator) {
+    return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
       @Override
-      protected byte[] computeNext() {
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
         return BufferingTable.this.hasNext(iterator) ? BufferingTable.this.next(iterator) : endOfData();
       }
     };
@@ -982,32 +943,46 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return iterator.next();
   }
 
-  @ReadOnly
-  private NavigableMap<byte[], Update> getFromBuffer(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer,
-                                                     byte[] key) {
-    return buffer.get(key);
-  }
-
   /**
    * Scanner implementation that overlays buffered data on top of already persisted data.
    */
   private class BufferingScanner implements Scanner {
-    private final NavigableMap<byte[], NavigableMap<byte[], Update>> buffer;
     private final Scanner persistedScanner;
-    private final Iterator<byte[]> keyIter;
+    private final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIter;
+    // columns to merge from the buffer, or null for all columns
+    private final byte[][] columns;
+    // whether the persisted scanner may skip rows, so that buffered rows must be merged with the persisted row
+    private final boolean persistedFiltered;
     private byte[] currentKey;
+    private NavigableMap<byte[], Update> currentBuffered;
     private Row currentRow;
 
-    private BufferingScanner(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer, Scanner persistedScanner) {
-      this.buffer = buffer;
-      this.keyIter = getBufferKeyIterator(buffer);
-      if (this.keyIter.hasNext()) {
-        currentKey = keyIter.next();
-      }
+    private BufferingScanner(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferRows,
+                             Scanner persistedScanner) {
+      this(bufferRows, persistedScanner, null, false);
+    }
+
+    private BufferingScanner(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferRows,
+                             Scanner persistedScanner, @Nullable byte[][] columns, boolean persistedFiltered) {
+      this.bufferIter = getBufferRowIterator(bufferRows);
+      advanceBuffer();
       this.persistedScanner = persistedScanner;
+      this.columns = columns;
+      this.persistedFiltered = persistedFiltered;
       this.currentRow = this.persistedScanner.next();
     }
 
+    private void advanceBuffer() {
+      if (bufferIter.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = bufferIter.next();
+        currentKey = entry.getKey();
+        currentBuffered = entry.getValue();
+      } else {
+        currentKey = null;
+        currentBuffered = null;
+      }
+    }
+
     @Nullable
     @Override
     public Row next() {
@@ -1035,18 +1010,22 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       } else if (order < 0) {
         // buffer row comes first or persisted scanner is empty
         Map<byte[], byte[]> persistedRow = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        mergeToPersisted(persistedRow, getFromBuffer(buffer, currentKey), null);
-        result = new Result(copy(currentKey), persistedRow);
+        if (persistedFiltered) {
+          // the persisted row may have been skipped by the persisted scanner, but match after merging
+          persistedRow.putAll(getPersistedRow(currentKey, columns));
+        }
+        mergeToPersisted(persistedRow, currentBuffered, columns);
+        result = new Result(currentKey, persistedRow);
 
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        advanceBuffer();
       } else {
         // if currentKey and currentRow are equal, merge and advance both
         Map<byte[], byte[]> persisted = currentRow.getColumns();
-        mergeToPersisted(persisted, getFromBuffer(buffer, currentKey), null);
+        mergeToPersisted(persisted, currentBuffered, columns);
         result = new Result(currentRow.getRow(), persisted);
 
         currentRow = persistedScanner.next();
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        advanceBuffer();
       }
       return result;
     }
@@ -1055,6 +1034,109 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     public void close() {
       this.persistedScanner.close();
     }
+
+    private Map<byte[], byte[]> getPersistedRow(byte[] row, @Nullable byte[][] columns) {
+      try {
+        return unwrapDeletes(getPersisted(row, columns));
+      } catch (Exception e) {
+        LOG.debug("getPersisted failed for table: " + getTransactionAwareName() + ", row: " + Bytes.toStringBinary(row),
+                  e);
+        throw new DataSetException("scan failed", e);
+      }
+    }
+  }
+
+  /**
+   * A {@link Scanner} for scans with a {@link ColumnValueFilter} or columns. The filter and columns are pushed down
+   * to the persisted store, and applied again to the rows after merging with the buffer, because buffered writes
+   * can change whether a row matches.
+   */
+  private class FilteringBufferingScanner implements Scanner {
+    private final BufferingScanner scanner;
+    @Nullable
+    private final ColumnValueFilter filter;
+    // columns to return, or null for all columns
+    @Nullable
+    private final byte[][] columns;
+    // columns to read from the persisted store, or null for all columns
+    @Nullable
+    private final byte[][] readColumns;
+
+    private FilteringBufferingScanner(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferRows,
+                                      Scan scan) throws Exception {
+      this.filter = scan.getFilter() instanceof ColumnValueFilter ? (ColumnValueFilter) scan.getFilter() : null;
+      this.columns = scan.getColumns();
+      this.readColumns = getReadColumns(columns, filter);
+
+      Scan persistedScan = new Scan(scan.getStartRow(), scan.getStopRow(), scan.getFilter(), readColumns);
+      Scanner persistedScanner = readColumns != null && readColumns.length == 0
+        ? new EmptyScanner() : scanPersisted(persistedScan);
+      this.scanner = new BufferingScanner(bufferRows, persistedScanner, readColumns, filter != null);
+    }
+
+    @Nullable
+    @Override
+    public Row next() {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        if (filter != null && !filter.matches(row)) {
+          continue;
+        }
+        Map<byte[], byte[]> result = row.getColumns();
+        if (columns != null) {
+          result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+          for (byte[] column : columns) {
+            byte[] value = row.get(column);
+            if (value != null) {
+              result.put(column, value);
+            }
+          }
+        }
+        if (!result.isEmpty()) {
+          return new Result(row.getRow(), result);
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public void close() {
+      scanner.close();
+    }
+  }
+
+  /**
+   * Returns the columns that need to be read to evaluate the given filter and return the given columns.
+   */
+  @Nullable
+  private static byte[][] getReadColumns(@Nullable byte[][] columns, @Nullable ColumnValueFilter filter) {
+    if (columns == null || filter == null) {
+      return columns;
+    }
+    NavigableMap<byte[], Boolean> readColumns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (byte[] column : columns) {
+      readColumns.put(column, true);
+    }
+    for (byte[] column : filter.getColumns()) {
+      readColumns.put(column, true);
+    }
+    return readColumns.keySet().toArray(new byte[readColumns.size()][]);
+  }
+
+  /**
+   * A {@link Scanner} that returns no rows.
+   */
+  private static final class EmptyScanner implements Scanner {
+    @Nullable
+    @Override
+    public Row next() {
+      return null;
+    }
+
+    @Override
+    public void close() {
+      // no-op
+    }
   }
 
   private long warnedCount = 0L;
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.gson.Gson;
+
+import java.lang.reflect.Type;
+
+/**
+ * {@link MDSValueCodec} that stores values as UTF-8 encoded JSON.
+ * <p>
+ * Values that were written in binary by {@link BinaryMDSValueCodec} are still decoded, so that turning binary
+ * encoding off does not make existing rows unreadable. Such values are reported as outdated.
+ */
+public final class JsonMDSValueCodec implements MDSValueCodec {
+
+  private final Gson gson;
+  private volatile BinaryMDSValueCodec binaryCodec;
+
+  public JsonMDSValueCodec(Gson gson) {
+    this.gson = gson;
+  }
+
+  @Override
+  public <T> byte[] encode(T value) {
+    return Bytes.toBytes(gson.toJson(value));
+  }
+
+  @Override
+  public <T> T decode(byte[] encoded, Type typeOfT) {
+    if (BinaryMDSValueCodec.isBinary(encoded)) {
+      return getBinaryCodec().decode(encoded, typeOfT);
+    }
+    return gson.fromJson(Bytes.toString(encoded), typeOfT);
+  }
+
+  @Override
+  public boolean isOutdated(byte[] encoded, Type typeOfT) {
+    return BinaryMDSValueCodec.isBinary(encoded);
+  }
+
+  private BinaryMDSValueCodec getBinaryCodec() {
+    BinaryMDSValueCodec codec = binaryCodec;
+    if (codec == null) {
+      // No binary classes, hence it only reads binary values and never writes them
+      codec = new BinaryMDSValueCodec(gson);
+      binaryCodec = codec;
+    }
+    return codec;
+  }
+}
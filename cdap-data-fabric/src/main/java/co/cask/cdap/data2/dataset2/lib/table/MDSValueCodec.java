@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import java.lang.reflect.Type;
+
+/**
+ * Encodes and decodes the values stored by {@link MetadataStoreDataset}.
+ */
+public interface MDSValueCodec {
+
+  /**
+   * Encodes the given value.
+   *
+   * @param value the value to encode
+   * @param <T> type of the value
+   * @return the encoded bytes
+   */
+  <T> byte[] encode(T value);
+
+  /**
+   * Decodes the given bytes.
+   *
+   * @param encoded the bytes as returned by {@link #encode(Object)} of this or an earlier codec
+   * @param typeOfT type of the value
+   * @param <T> type of the value
+   * @return the decoded value
+   */
+  <T> T decode(byte[] encoded, Type typeOfT);
+
+  /**
+   * Returns {@code true} if the given bytes are not in the format that this codec would use to encode a value of
+   * the given type, hence should be rewritten by an upgrade.
+   */
+  boolean isOutdated(byte[] encoded, Type typeOfT);
+}
@@ -57,25 +57,31 @@ import javax.annotation.Nullable;
  * Handy dataset to be used for managing metadata
  */
 public class MetadataStoreDataset extends AbstractDataset {
-  private static final Gson GSON = new Gson();
+  private static final MDSValueCodec JSON_CODEC = new JsonMDSValueCodec(new Gson());
   /**
    * All rows we store use single column of this name.
    */
   private static final byte[] COLUMN = Bytes.toBytes("c");
 
   private final Table table;
+  private final MDSValueCodec codec;
 
   public MetadataStoreDataset(Table table) {
+    this(table, JSON_CODEC);
+  }
+
+  public MetadataStoreDataset(Table table, MDSValueCodec codec) {
     super("ignored", table);
     this.table = table;
+    this.codec = codec;
   }
 
   protected <T> byte[] serialize(T value) {
-    return Bytes.toBytes(GSON.toJson(value));
+    return codec.encode(value);
   }
 
   protected <T> T deserialize(byte[] serialized, Type typeOfT) {
-    return GSON.fromJson(Bytes.toString(serialized), typeOfT);
+    return codec.decode(serialized, typeOfT);
   }
 
   public boolean exists(MDSKey id) {
@@ -320,6 +326,41 @@ public class MetadataStoreDataset extends AbstractDataset {
     }
   }
 
+  /**
+   * Rewrites values in the given key range that are not in the current encoding of the {@link MDSValueCodec} of
+   * this dataset. This is meant to be called repeatedly, each time in a new transaction, until it returns
+   * {@code null}, so that the upgrade can be done in the background in small batches.
+   *
+   * @param startId scan start key
+   * @param stopId scan stop key, or {@code null} to scan all keys with the same prefix as the start key
+   * @param typeOfT type of the values
+   * @param limit maximum number of rows to scan in this call
+   * @return the key to continue the upgrade from, or {@code null} if all rows in the range were scanned
+   */
+  @Nullable
+  public MDSKey upgradeValues(MDSKey startId, @Nullable MDSKey stopId, Type typeOfT, int limit) {
+    byte[] startKey = startId.getKey();
+    byte[] stopKey = stopId == null ? Bytes.stopKeyForPrefix(startKey) : stopId.getKey();
+
+    Scanner scan = table.scan(startKey, stopKey);
+    try {
+      Row next;
+      while ((next = scan.next()) != null) {
+        if (limit-- <= 0) {
+          return new MDSKey(next.getRow());
+        }
+        byte[] columnValue = next.get(COLUMN);
+        if (columnValue == null || !codec.isOutdated(columnValue, typeOfT)) {
+          continue;
+        }
+        table.put(next.getRow(), COLUMN, serialize(deserialize(columnValue, typeOfT)));
+      }
+      return null;
+    } finally {
+      scan.close();
+    }
+  }
+
   protected MDSKey.Builder getProgramKeyBuilder(String recordType, @Nullable ProgramId programId) {
     MDSKey.Builder builder = new MDSKey.Builder().add(recordType);
     if (programId != null) {
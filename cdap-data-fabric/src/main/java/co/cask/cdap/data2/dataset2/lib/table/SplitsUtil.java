@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -17,6 +17,7 @@
 package co.cask.cdap.data2.dataset2.lib.table;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.common.utils.ImmutablePair;
 import com.google.common.collect.Lists;
 
 import java.util.Collections;
@@ -44,7 +45,7 @@ public class SplitsUtil {
    * Simplest possible implementation of getSplits. Takes the given start and end and divides the key space in
    * between into (almost) even partitions, using a long integer approximation of the keys.
    */
-  static List<KeyRange> primitiveGetSplits(int numSplits, byte[] start, byte[] stop) {
+  public static List<KeyRange> primitiveGetSplits(int numSplits, byte[] start, byte[] stop) {
     // if the range is empty, return no splits
     if (start != null && stop != null && Bytes.compareTo(start, stop) >= 0) {
       return Collections.emptyList();
@@ -79,6 +80,79 @@ public class SplitsUtil {
     return ranges;
   }
 
+  /**
+   * Subdivides the key ranges that are larger than the given maximum size, using {@link #primitiveGetSplits}.
+   * The size of a range is assumed to be evenly distributed among its sub-ranges.
+   *
+   * @param sizedRanges consecutive key ranges in ascending order, paired with their estimated size in bytes
+   * @param maxSize the maximum size of a range in bytes; if less or equal to zero, no range is subdivided
+   * @return list of consecutive key ranges paired with their estimated size, covering the same keys as the given ranges
+   */
+  public static List<ImmutablePair<KeyRange, Long>> subdivideRanges(List<ImmutablePair<KeyRange, Long>> sizedRanges,
+                                                                    long maxSize) {
+    List<ImmutablePair<KeyRange, Long>> result = Lists.newArrayList();
+    for (ImmutablePair<KeyRange, Long> sizedRange : sizedRanges) {
+      KeyRange range = sizedRange.getFirst();
+      long size = sizedRange.getSecond();
+      if (maxSize <= 0 || size <= maxSize) {
+        result.add(sizedRange);
+        continue;
+      }
+      int numPieces = (int) Math.min(Integer.MAX_VALUE, (size + maxSize - 1) / maxSize);
+      List<KeyRange> subRanges = primitiveGetSplits(numPieces, range.getStart(), range.getStop());
+      for (int i = 0; i < subRanges.size(); i++) {
+        KeyRange subRange = subRanges.get(i);
+        // primitiveGetSplits turns an open start into the least non-empty key, keep it open instead
+        if (i == 0 && range.getStart() == null) {
+          subRange = new KeyRange(null, subRange.getStop());
+        }
+        result.add(ImmutablePair.of(subRange, size / subRanges.size()));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Combines consecutive key ranges into splits of about the target size. If the number of splits is given, the
+   * target size is chosen such that at most that many splits are returned.
+   *
+   * @param numSplits desired number of splits; if less or equal to zero, the number is determined by the target size
+   * @param sizedRanges consecutive key ranges in ascending order, paired with their estimated size in bytes
+   * @param targetSize the desired size of a split in bytes
+   * @return list of consecutive key ranges covering the same keys as the given ranges
+   */
+  public static List<KeyRange> combineRanges(int numSplits, List<ImmutablePair<KeyRange, Long>> sizedRanges,
+                                             long targetSize) {
+    long totalSize = 0;
+    for (ImmutablePair<KeyRange, Long> sizedRange : sizedRanges) {
+      totalSize += sizedRange.getSecond();
+    }
+    long splitSize = numSplits > 0 ? totalSize / numSplits : targetSize;
+    int splitsLeft = numSplits > 0 ? numSplits : Integer.MAX_VALUE;
+
+    List<KeyRange> splits = Lists.newArrayList();
+    byte[] splitStart = null;
+    long currentSize = 0;
+    boolean hasPending = false;
+    for (ImmutablePair<KeyRange, Long> sizedRange : sizedRanges) {
+      if (!hasPending) {
+        splitStart = sizedRange.getFirst().getStart();
+        hasPending = true;
+      }
+      currentSize += sizedRange.getSecond();
+      if (currentSize >= splitSize && splitsLeft > 1) {
+        splits.add(new KeyRange(splitStart, sizedRange.getFirst().getStop()));
+        splitsLeft--;
+        currentSize = 0;
+        hasPending = false;
+      }
+    }
+    if (hasPending) {
+      splits.add(new KeyRange(splitStart, sizedRanges.get(sizedRanges.size() - 1).getFirst().getStop()));
+    }
+    return splits;
+  }
+
   // helper method to approximate a row key as a long value. Takes the first 7 bytes from the key and prepends a 0x0;
   // if the key is less than 7 bytes, pads it with zeros to the right.
   static long longForKey(byte[] key, boolean isStop) {
@@ -0,0 +1,597 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * In-memory buffer of uncommitted writes used by {@link BufferingTable}.
+ * <p>
+ * Rows, columns and values are copied into a single growing byte arena and each cell is recorded as an entry of
+ * offsets and lengths in primitive arrays, hence a write doesn't create any per-cell object. There is at most one
+ * entry per cell: an open addressing hash index over the entries finds the entry of a cell that was written before,
+ * and the new write is merged into it. Entries are only sorted by (row, column) when the buffer needs to be read.
+ * Cells that are added after the last sort are kept in an unsorted tail, which is searched linearly by row reads
+ * until it grows large enough to be merged into the sorted index.
+ * <p>
+ * The {@link Update} representation that the persisting layer and read merging work with is materialized from
+ * the arena on demand.
+ */
+@NotThreadSafe
+final class TableWriteBuffer {
+
+  private static final byte TYPE_PUT = 0;
+  private static final byte TYPE_INCREMENT = 1;
+
+  // Number of ints per entry in the entries array: row offset, row length, column offset, column length,
+  // value offset and value length. A value length of -1 means delete.
+  private static final int ENTRY_INTS = 6;
+  private static final int INITIAL_ARENA_SIZE = 4096;
+  private static final int INITIAL_ENTRIES = 64;
+  private static final int MIN_TAIL_THRESHOLD = 64;
+  private static final int INITIAL_INDEX_SIZE = INITIAL_ENTRIES * 2;
+
+  private byte[] arena;
+  private int arenaSize;
+  private int[] entries;
+  private byte[] types;
+  private long[] amounts;
+  private int[] hashes;
+  private int size;
+
+  // Open addressing hash index of cells to entries. A slot holds the entry index plus one, zero means empty.
+  private int[] cellIndex;
+
+  // Offset and length of the row last written, for sharing the row bytes between consecutive writes
+  private int lastRowOffset;
+  private int lastRowLength;
+
+  // Indices of the entries [0, sortedSize) sorted by (row, column, entry index).
+  // A new array is created on every sort so that iterators created earlier are not affected.
+  private int[] sorted;
+  private int sortedSize;
+
+  TableWriteBuffer() {
+    this.arena = new byte[INITIAL_ARENA_SIZE];
+    this.entries = new int[INITIAL_ENTRIES * ENTRY_INTS];
+    this.types = new byte[INITIAL_ENTRIES];
+    this.hashes = new int[INITIAL_ENTRIES];
+    this.cellIndex = new int[INITIAL_INDEX_SIZE];
+    this.sorted = new int[0];
+    this.lastRowOffset = -1;
+  }
+
+  /**
+   * Returns {@code true} if there is no write in this buffer.
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns number of distinct cells written in this buffer.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Removes all writes from this buffer. Memory allocated is retained for reuse.
+   */
+  void clear() {
+    arenaSize = 0;
+    size = 0;
+    sortedSize = 0;
+    sorted = new int[0];
+    lastRowOffset = -1;
+    lastRowLength = 0;
+    Arrays.fill(cellIndex, 0);
+  }
+
+  /**
+   * Records puts to the given columns of a row. A {@code null} value means deletion of the column.
+   * A put replaces any earlier write to the same cell.
+   */
+  void put(byte[] row, byte[][] columns, byte[][] values) {
+    for (int i = 0; i < columns.length; i++) {
+      int hash = cellHash(row, columns[i]);
+      int entry = findEntry(row, columns[i], hash);
+      if (entry < 0) {
+        entry = newEntry(row, columns[i], hash);
+      }
+      setValue(entry, values[i]);
+    }
+  }
+
+  /**
+   * Records increments to the given columns of a row. An increment is merged into an earlier write to the same cell.
+   *
+   * @throws NumberFormatException if a column has a buffered value that is not convertible to long. Columns before
+   *                               that column are incremented.
+   */
+  void increment(byte[] row, byte[][] columns, long[] amounts) {
+    for (int i = 0; i < columns.length; i++) {
+      int hash = cellHash(row, columns[i]);
+      int entry = findEntry(row, columns[i], hash);
+      if (entry < 0) {
+        entry = newEntry(row, columns[i], hash);
+        types[entry] = TYPE_INCREMENT;
+        ensureAmounts();
+        this.amounts[entry] = amounts[i];
+      } else if (types[entry] == TYPE_INCREMENT) {
+        this.amounts[entry] += amounts[i];
+      } else {
+        // Increment on top of a put becomes a put
+        setValue(entry, Updates.mergeUpdates(toUpdate(entry), new IncrementValue(amounts[i])).getBytes());
+      }
+    }
+  }
+
+  /**
+   * Returns the buffered update of the given cell, or {@code null} if the cell is not in the buffer.
+   */
+  @Nullable
+  Update getUpdate(byte[] row, byte[] column) {
+    int entry = findEntry(row, column, cellHash(row, column));
+    return entry < 0 ? null : toUpdate(entry);
+  }
+
+  /**
+   * Returns {@code true} if there are buffered writes for the given row.
+   */
+  boolean containsRow(byte[] row) {
+    prepareRead();
+    int idx = lowerBound(row, null);
+    if (idx < sortedSize && compareRow(sorted[idx], row) == 0) {
+      return true;
+    }
+    for (int entry = sortedSize; entry < size; entry++) {
+      if (compareRow(entry, row) == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns all buffered updates of the given row as column to {@link Update} map,
+   * or {@code null} if there is no buffered write for the row.
+   */
+  @Nullable
+  NavigableMap<byte[], Update> getRow(byte[] row) {
+    prepareRead();
+    NavigableMap<byte[], Update> result = null;
+    int idx = lowerBound(row, null);
+    if (idx < sortedSize && compareRow(sorted[idx], row) == 0) {
+      result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      idx = collectRow(sorted, idx, sortedSize, result);
+    }
+    for (int entry = sortedSize; entry < size; entry++) {
+      if (compareRow(entry, row) == 0) {
+        if (result == null) {
+          result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        }
+        result.put(copyColumn(entry), toUpdate(entry));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns an {@link Iterator} of buffered rows in sorted order, where each row is a pair of row key
+   * and column to {@link Update} map. Rows are materialized as the iterator advances.
+   *
+   * @param startRow the first row to return, inclusive; {@code null} means from the first row
+   * @param stopRow the last row to return, exclusive; {@code null} means to the end
+   * @param filter optional filter for rows to return
+   */
+  Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> scan(@Nullable final byte[] startRow,
+                                                                  @Nullable final byte[] stopRow,
+                                                                  @Nullable final FuzzyRowFilter filter) {
+    sortAll();
+    final int[] index = sorted;
+    final int indexSize = sortedSize;
+    final int startIdx = startRow == null ? 0 : lowerBound(startRow, null);
+
+    return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+      private int idx = startIdx;
+
+      @Override
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+        while (idx < indexSize) {
+          int entry = index[idx];
+          if (stopRow != null && compareRow(entry, stopRow) >= 0) {
+            break;
+          }
+          byte[] row = copyRow(entry);
+          if (filter != null && filter.filterRow(row) != FuzzyRowFilter.ReturnCode.INCLUDE) {
+            idx = skipRow(index, idx, indexSize);
+            continue;
+          }
+          NavigableMap<byte[], Update> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+          idx = collectRow(index, idx, indexSize, columns);
+          return Maps.immutableEntry(row, columns);
+        }
+        return endOfData();
+      }
+    };
+  }
+
+  /**
+   * Returns all buffered writes as row to (column to {@link Update}) map.
+   */
+  NavigableMap<byte[], NavigableMap<byte[], Update>> toMap() {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = scan(null, null, null);
+    while (iterator.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> entry = iterator.next();
+      result.put(entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the distinct rows that have buffered writes, in sorted order.
+   */
+  List<byte[]> getRows() {
+    sortAll();
+    if (sortedSize == 0) {
+      return Collections.emptyList();
+    }
+    List<byte[]> rows = new ArrayList<>();
+    int idx = 0;
+    while (idx < sortedSize) {
+      rows.add(copyRow(sorted[idx]));
+      idx = skipRow(sorted, idx, sortedSize);
+    }
+    return rows;
+  }
+
+  /**
+   * Returns the distinct cells that have buffered writes, in sorted order. Each cell is represented as
+   * {@code rowLength(4 bytes) + row + column}, which is the form used for column level conflict detection.
+   *
+   * @param prefix prefix to prepend to each cell
+   */
+  List<byte[]> getCells(byte[] prefix) {
+    sortAll();
+    if (sortedSize == 0) {
+      return Collections.emptyList();
+    }
+    List<byte[]> cells = new ArrayList<>();
+    int idx = 0;
+    while (idx < sortedSize) {
+      int entry = sorted[idx];
+      int base = entry * ENTRY_INTS;
+      int rowLength = entries[base + 1];
+      int columnLength = entries[base + 3];
+
+      byte[] cell = new byte[prefix.length + Bytes.SIZEOF_INT + rowLength + columnLength];
+      System.arraycopy(prefix, 0, cell, 0, prefix.length);
+      Bytes.putInt(cell, prefix.length, rowLength);
+      System.arraycopy(arena, entries[base], cell, prefix.length + Bytes.SIZEOF_INT, rowLength);
+      System.arraycopy(arena, entries[base + 2], cell, prefix.length + Bytes.SIZEOF_INT + rowLength, columnLength);
+      cells.add(cell);
+      idx++;
+    }
+    return cells;
+  }
+
+  /**
+   * Collects all updates of the row that the given index position points at into the given map.
+   *
+   * @return the index position of the next row
+   */
+  private int collectRow(int[] index, int idx, int indexSize, NavigableMap<byte[], Update> columns) {
+    int rowEntry = index[idx];
+    while (idx < indexSize && compareRow(index[idx], rowEntry) == 0) {
+      int entry = index[idx++];
+      columns.put(copyColumn(entry), toUpdate(entry));
+    }
+    return idx;
+  }
+
+  /**
+   * Returns the index position of the next row after the row that the given index position points at.
+   */
+  private int skipRow(int[] index, int idx, int indexSize) {
+    int rowEntry = index[idx];
+    do {
+      idx++;
+    } while (idx < indexSize && compareRow(index[idx], rowEntry) == 0);
+    return idx;
+  }
+
+  private Update toUpdate(int entry) {
+    if (types[entry] == TYPE_INCREMENT) {
+      return new IncrementValue(amounts[entry]);
+    }
+    int base = entry * ENTRY_INTS;
+    int valueLength = entries[base + 5];
+    return new PutValue(valueLength < 0 ? null : Arrays.copyOfRange(arena, entries[base + 4],
+                                                                    entries[base + 4] + valueLength));
+  }
+
+  private byte[] copyRow(int entry) {
+    int base = entry * ENTRY_INTS;
+    return Arrays.copyOfRange(arena, entries[base], entries[base] + entries[base + 1]);
+  }
+
+  private byte[] copyColumn(int entry) {
+    int base = entry * ENTRY_INTS;
+    return Arrays.copyOfRange(arena, entries[base + 2], entries[base + 2] + entries[base + 3]);
+  }
+
+  /**
+   * Appends the row to the arena, unless it is the same as the last row written.
+   *
+   * @return the offset of the row in the arena
+   */
+  private int appendRow(byte[] row) {
+    if (lastRowOffset >= 0
+      && Bytes.equals(row, 0, row.length, arena, lastRowOffset, lastRowLength)) {
+      return lastRowOffset;
+    }
+    lastRowOffset = append(row);
+    lastRowLength = row.length;
+    return lastRowOffset;
+  }
+
+  /**
+   * Adds an entry for a cell that is not in the buffer yet. The value of the entry is not set.
+   */
+  private int newEntry(byte[] row, byte[] column, int hash) {
+    if (size == types.length) {
+      int capacity = types.length * 2;
+      types = Arrays.copyOf(types, capacity);
+      hashes = Arrays.copyOf(hashes, capacity);
+      entries = Arrays.copyOf(entries, capacity * ENTRY_INTS);
+      if (amounts != null) {
+        amounts = Arrays.copyOf(amounts, capacity);
+      }
+    }
+    int rowOffset = appendRow(row);
+    int entry = size++;
+    int base = entry * ENTRY_INTS;
+    types[entry] = TYPE_PUT;
+    hashes[entry] = hash;
+    entries[base] = rowOffset;
+    entries[base + 1] = row.length;
+    entries[base + 2] = append(column);
+    entries[base + 3] = column.length;
+    entries[base + 4] = -1;
+    entries[base + 5] = -1;
+
+    if (size * 2 > cellIndex.length) {
+      // Keep the load factor of the index at most one half
+      cellIndex = new int[cellIndex.length * 2];
+      for (int i = 0; i < size; i++) {
+        indexEntry(i);
+      }
+    } else {
+      indexEntry(entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Sets the entry to a put of the given value. The value overwrites the previous value of the entry in the arena
+   * if it fits, so that repeated puts to a cell don't grow the arena.
+   */
+  private void setValue(int entry, @Nullable byte[] value) {
+    int base = entry * ENTRY_INTS;
+    types[entry] = TYPE_PUT;
+    if (value == null) {
+      entries[base + 5] = -1;
+    } else if (entries[base + 4] >= 0 && entries[base + 5] >= value.length) {
+      System.arraycopy(value, 0, arena, entries[base + 4], value.length);
+      entries[base + 5] = value.length;
+    } else {
+      entries[base + 4] = append(value);
+      entries[base + 5] = value.length;
+    }
+  }
+
+  private void ensureAmounts() {
+    if (amounts == null || amounts.length < types.length) {
+      amounts = amounts == null ? new long[types.length] : Arrays.copyOf(amounts, types.length);
+    }
+  }
+
+  /**
+   * Returns the entry of the given cell, or {@code -1} if the cell is not in the buffer.
+   */
+  private int findEntry(byte[] row, byte[] column, int hash) {
+    int mask = cellIndex.length - 1;
+    int slot = hash & mask;
+    while (cellIndex[slot] != 0) {
+      int entry = cellIndex[slot] - 1;
+      if (hashes[entry] == hash && compareCell(entry, row, column) == 0) {
+        return entry;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void indexEntry(int entry) {
+    int mask = cellIndex.length - 1;
+    int slot = hashes[entry] & mask;
+    while (cellIndex[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    cellIndex[slot] = entry + 1;
+  }
+
+  private static int cellHash(byte[] row, byte[] column) {
+    int hash = 31 * Bytes.hashCode(row) + Bytes.hashCode(column);
+    // Spread the high bits, as the index only uses the low bits
+    return hash ^ (hash >>> 16);
+  }
+
+  private int append(byte[] bytes) {
+    if (arenaSize + bytes.length > arena.length) {
+      int capacity = arena.length;
+      while (capacity < arenaSize + bytes.length) {
+        capacity *= 2;
+      }
+      arena = Arrays.copyOf(arena, capacity);
+    }
+    int offset = arenaSize;
+    System.arraycopy(bytes, 0, arena, offset, bytes.length);
+    arenaSize += bytes.length;
+    return offset;
+  }
+
+  /**
+   * Merges the unsorted tail into the sorted index if the tail is too large for linear search.
+   */
+  private void prepareRead() {
+    int threshold = Math.max(MIN_TAIL_THRESHOLD, (int) Math.sqrt(sortedSize));
+    if (size - sortedSize > threshold) {
+      sortAll();
+    }
+  }
+
+  /**
+   * Merges all unsorted entries into the sorted index.
+   */
+  private void sortAll() {
+    if (sortedSize == size) {
+      return;
+    }
+    int tailSize = size - sortedSize;
+    int[] tail = new int[tailSize];
+    for (int i = 0; i < tailSize; i++) {
+      tail[i] = sortedSize + i;
+    }
+    mergeSort(tail, new int[tailSize], 0, tailSize);
+
+    // Merge the sorted tail with the existing sorted index into a new index array
+    int[] result = new int[size];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < sortedSize && j < tailSize) {
+      result[k++] = compareEntries(sorted[i], tail[j]) <= 0 ? sorted[i++] : tail[j++];
+    }
+    while (i < sortedSize) {
+      result[k++] = sorted[i++];
+    }
+    while (j < tailSize) {
+      result[k++] = tail[j++];
+    }
+    sorted = result;
+    sortedSize = size;
+  }
+
+  /**
+   * Stable merge sort of the given entry indices in the range [from, to).
+   */
+  private void mergeSort(int[] index, int[] scratch, int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(index, scratch, from, mid);
+    mergeSort(index, scratch, mid, to);
+    if (compareEntries(index[mid - 1], index[mid]) <= 0) {
+      return;
+    }
+    System.arraycopy(index, from, scratch, from, to - from);
+    int i = from;
+    int j = mid;
+    for (int k = from; k < to; k++) {
+      if (j >= to || (i < mid && compareEntries(scratch[i], scratch[j]) <= 0)) {
+        index[k] = scratch[i++];
+      } else {
+        index[k] = scratch[j++];
+      }
+    }
+  }
+
+  /**
+   * Returns the smallest position in the sorted index with entry not less than the given row and column.
+   * A {@code null} column means the smallest column in the row.
+   */
+  private int lowerBound(byte[] row, @Nullable byte[] column) {
+    int low = 0;
+    int high = sortedSize;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int cmp = column == null ? compareRow(sorted[mid], row) : compareCell(sorted[mid], row, column);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int compareEntries(int entry1, int entry2) {
+    int cmp = compareCell(entry1, entry2);
+    return cmp == 0 ? Integer.compare(entry1, entry2) : cmp;
+  }
+
+  private int compareCell(int entry1, int entry2) {
+    int cmp = compareRow(entry1, entry2);
+    if (cmp != 0) {
+      return cmp;
+    }
+    int base1 = entry1 * ENTRY_INTS;
+    int base2 = entry2 * ENTRY_INTS;
+    return Bytes.compareTo(arena, entries[base1 + 2], entries[base1 + 3],
+                           arena, entries[base2 + 2], entries[base2 + 3]);
+  }
+
+  private int compareCell(int entry, byte[] row, byte[] column) {
+    int cmp = compareRow(entry, row);
+    if (cmp != 0) {
+      return cmp;
+    }
+    int base = entry * ENTRY_INTS;
+    return Bytes.compareTo(arena, entries[base + 2], entries[base + 3], column, 0, column.length);
+  }
+
+  private int compareRow(int entry1, int entry2) {
+    int base1 = entry1 * ENTRY_INTS;
+    int base2 = entry2 * ENTRY_INTS;
+    if (entries[base1] == entries[base2] && entries[base1 + 1] == entries[base2 + 1]) {
+      // Shared row bytes
+      return 0;
+    }
+    return Bytes.compareTo(arena, entries[base1], entries[base1 + 1], arena, entries[base2], entries[base2 + 1]);
+  }
+
+  private int compareRow(int entry, byte[] row) {
+    int base = entry * ENTRY_INTS;
+    return Bytes.compareTo(arena, entries[base], entries[base + 1], row, 0, row.length);
+  }
+}
@@ -19,17 +19,22 @@ package co.cask.cdap.data2.dataset2.lib.table.hbase;
 import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.annotation.WriteOnly;
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.batch.Split;
 import co.cask.cdap.api.dataset.DataSetException;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.table.ColumnValueFilter;
 import co.cask.cdap.api.dataset.table.Filter;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTable;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.data2.dataset2.lib.table.IncrementValue;
+import co.cask.cdap.data2.dataset2.lib.table.KeyRange;
 import co.cask.cdap.data2.dataset2.lib.table.PutValue;
+import co.cask.cdap.data2.dataset2.lib.table.SplitsUtil;
 import co.cask.cdap.data2.dataset2.lib.table.TableProperties;
 import co.cask.cdap.data2.dataset2.lib.table.Update;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.PrefixedNamespaces;
@@ -48,13 +53,21 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.ByteArrayComparable;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Pair;
 import org.apache.tephra.TransactionCodec;
 import org.apache.tephra.TxConstants;
@@ -83,10 +96,14 @@ public class HBaseTable extends BufferingTable {
   public static final String DELTA_WRITE = "d";
 
   private final HBaseTableUtil tableUtil;
+  private final Configuration hConf;
+  private final TableId hBaseTableId;
   private final HTable hTable;
   private final String hTableName;
   private final byte[] columnFamily;
   private final TransactionCodec txCodec;
+  private final long targetSplitSize;
+  private final boolean readlessIncrements;
   // name length + name of the table: handy to have one cached
   private final byte[] nameAsTxChangePrefix;
 
@@ -100,10 +117,15 @@ public class HBaseTable extends BufferingTable {
     hTable.setWriteBufferSize(HBaseTableUtil.DEFAULT_WRITE_BUFFER_SIZE);
     hTable.setAutoFlush(false);
     this.tableUtil = tableUtil;
+    this.hConf = hConf;
+    this.hBaseTableId = hBaseTableId;
     this.hTable = hTable;
     this.hTableName = Bytes.toStringBinary(hTable.getTableName());
     this.columnFamily = TableProperties.getColumnFamily(spec.getProperties());
     this.txCodec = new TransactionCodec();
+    this.readlessIncrements = TableProperties.supportsReadlessIncrements(spec.getProperties());
+    this.targetSplitSize = cConf.getLong(Constants.Dataset.TABLE_SPLIT_SIZE_MB,
+                                         Constants.Dataset.DEFAULT_TABLE_SPLIT_SIZE_MB) * 1024 * 1024;
     // Overriding the hbase tx change prefix so it resembles the hbase table name more closely, since the HBase
     // table name is not the same as the dataset name anymore
     this.nameAsTxChangePrefix = Bytes.add(new byte[]{(byte) this.hTableName.length()}, Bytes.toBytes(this.hTableName));
@@ -166,6 +188,71 @@ public class HBaseTable extends BufferingTable {
     }
   }
 
+  /**
+   * Computes the splits from the regions of the HBase table. Regions larger than the target split size are
+   * subdivided based on the region sizes reported by the region servers. Consecutive regions are only combined if
+   * that is needed to return at most the desired number of splits. Falls back to
+   * {@link BufferingTable#getSplits(int, byte[], byte[])} if the regions cannot be determined.
+   */
+  @Override
+  public List<Split> getSplits(int numSplits, byte[] start, byte[] stop) {
+    ensureTransactionIsStarted();
+    if (start != null && stop != null && Bytes.compareTo(start, stop) >= 0) {
+      return Collections.emptyList();
+    }
+    List<ImmutablePair<KeyRange, Long>> regionRanges;
+    try {
+      regionRanges = getRegionRanges(start, stop);
+    } catch (IOException e) {
+      LOG.warn("Failed to get regions of table {}. Using default splits.", hTableName, e);
+      return super.getSplits(numSplits, start, stop);
+    }
+    if (regionRanges.isEmpty()) {
+      return super.getSplits(numSplits, start, stop);
+    }
+    List<ImmutablePair<KeyRange, Long>> ranges = SplitsUtil.subdivideRanges(regionRanges, targetSplitSize);
+    if (numSplits > 0) {
+      return toSplits(SplitsUtil.combineRanges(numSplits, ranges, targetSplitSize));
+    }
+    // without a desired number of splits, use at least one split per region
+    List<KeyRange> splits = new ArrayList<>(ranges.size());
+    for (ImmutablePair<KeyRange, Long> range : ranges) {
+      splits.add(range.getFirst());
+    }
+    return toSplits(splits);
+  }
+
+  /**
+   * Returns the key ranges of the regions that overlap with the given range, limited to the given range, and paired
+   * with the size of the region.
+   */
+  private List<ImmutablePair<KeyRange, Long>> getRegionRanges(@Nullable byte[] start,
+                                                              @Nullable byte[] stop) throws IOException {
+    Map<byte[], Long> regionSizes;
+    try (HBaseAdmin admin = new HBaseAdmin(hConf)) {
+      regionSizes = tableUtil.getRegionSizes(admin, hBaseTableId);
+    }
+
+    List<ImmutablePair<KeyRange, Long>> regionRanges = new ArrayList<>();
+    for (HRegionInfo region : hTable.getRegionLocations().keySet()) {
+      byte[] regionStart = region.getStartKey().length == 0 ? null : region.getStartKey();
+      byte[] regionStop = region.getEndKey().length == 0 ? null : region.getEndKey();
+      if ((stop != null && regionStart != null && Bytes.compareTo(regionStart, stop) >= 0)
+        || (start != null && regionStop != null && Bytes.compareTo(regionStop, start) <= 0)) {
+        continue;
+      }
+      if (start != null && (regionStart == null || Bytes.compareTo(start, regionStart) > 0)) {
+        regionStart = start;
+      }
+      if (stop != null && (regionStop == null || Bytes.compareTo(stop, regionStop) < 0)) {
+        regionStop = stop;
+      }
+      Long regionSize = regionSizes.get(region.getRegionName());
+      regionRanges.add(ImmutablePair.of(new KeyRange(regionStart, regionStop), regionSize == null ? 0L : regionSize));
+    }
+    return regionRanges;
+  }
+
   @Override
   public byte[] getNameAsTxChangePrefix() {
     return nameAsTxChangePrefix;
@@ -186,8 +273,19 @@ public class HBaseTable extends BufferingTable {
       return;
     }
 
+    // Puts are handed to the HTable write buffer in batches bounded by the buffer size while they are being built,
+    // so that the buffer can be flushed to the region servers without holding all puts of a large transaction
+    long writeBufferSize = hTable.getWriteBufferSize();
+    long batchSize = 0;
+    boolean hasWrites = false;
     List<Put> puts = Lists.newArrayList();
     for (Map.Entry<byte[], NavigableMap<byte[], Update>> row : updates.entrySet()) {
+      if (batchSize >= writeBufferSize) {
+        hbaseBufferPut(puts);
+        puts.clear();
+        batchSize = 0;
+        hasWrites = true;
+      }
       PutBuilder put = tableUtil.buildPut(row.getKey());
       Put incrementPut = null;
       for (Map.Entry<byte[], Update> column : row.getValue().entrySet()) {
@@ -216,18 +314,26 @@ public class HBaseTable extends BufferingTable {
       }
       if (incrementPut != null) {
         puts.add(incrementPut);
+        batchSize += incrementPut.heapSize();
       }
       if (!put.isEmpty()) {
-        puts.add(put.build());
+        Put builtPut = put.build();
+        puts.add(builtPut);
+        batchSize += builtPut.heapSize();
       }
     }
-    if (!puts.isEmpty()) {
+    if (!puts.isEmpty() || hasWrites) {
       hbasePut(puts);
     } else {
       LOG.info("No writes to persist!");
     }
   }
 
+  @WriteOnly
+  private void hbaseBufferPut(List<Put> puts) throws InterruptedIOException, RetriesExhaustedWithDetailsException {
+    hTable.put(puts);
+  }
+
   @WriteOnly
   private void hbasePut(List<Put> puts) throws InterruptedIOException, RetriesExhaustedWithDetailsException {
     hTable.put(puts);
@@ -294,7 +400,14 @@ public class HBaseTable extends BufferingTable {
   @Override
   protected Scanner scanPersisted(co.cask.cdap.api.dataset.table.Scan scan) throws Exception {
     ScanBuilder hScan = tableUtil.buildScan();
-    hScan.addFamily(columnFamily);
+    byte[][] columns = scan.getColumns();
+    if (columns == null) {
+      hScan.addFamily(columnFamily);
+    } else {
+      for (byte[] column : columns) {
+        hScan.addColumn(columnFamily, column);
+      }
+    }
     // todo: should be configurable
     // NOTE: by default we assume scanner is used in mapreduce job, hence no cache blocks
     hScan.setCacheBlocks(false);
@@ -329,11 +442,64 @@ public class HBaseTable extends BufferingTable {
         fuzzyPairs.add(Pair.newPair(pair.getFirst(), pair.getSecond()));
       }
       scan.setFilter(new org.apache.hadoop.hbase.filter.FuzzyRowFilter(fuzzyPairs));
+    } else if (filter instanceof ColumnValueFilter) {
+      // with readless increments, the value of a column can be spread over multiple cells, which is only resolved
+      // after filtering. The filter is then evaluated on the client only.
+      if (!readlessIncrements) {
+        scan.setFilter(createValueFilter((ColumnValueFilter) filter));
+      }
     } else {
       throw new IllegalArgumentException("Unsupported filter: " + filter);
     }
   }
 
+  /**
+   * Creates an HBase {@link org.apache.hadoop.hbase.filter.Filter} that is equivalent to the given
+   * {@link ColumnValueFilter}.
+   */
+  private org.apache.hadoop.hbase.filter.Filter createValueFilter(ColumnValueFilter filter) {
+    switch (filter.getType()) {
+      case EQUAL:
+        return createColumnValueFilter(filter.getColumn(), CompareFilter.CompareOp.EQUAL,
+                                       new BinaryComparator(filter.getValue()));
+      case PREFIX:
+        return createColumnValueFilter(filter.getColumn(), CompareFilter.CompareOp.EQUAL,
+                                       new BinaryPrefixComparator(filter.getValue()));
+      case RANGE: {
+        // every value is greater or equal to the empty value, which also requires that the column exists
+        byte[] start = filter.getValue() == null ? Bytes.EMPTY_BYTE_ARRAY : filter.getValue();
+        FilterList filterList = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+        filterList.addFilter(createColumnValueFilter(filter.getColumn(), CompareFilter.CompareOp.GREATER_OR_EQUAL,
+                                                     new BinaryComparator(start)));
+        if (filter.getStopValue() != null) {
+          filterList.addFilter(createColumnValueFilter(filter.getColumn(), CompareFilter.CompareOp.LESS,
+                                                       new BinaryComparator(filter.getStopValue())));
+        }
+        return filterList;
+      }
+      case AND:
+      case OR: {
+        FilterList filterList = new FilterList(filter.getType() == ColumnValueFilter.Type.AND
+                                                 ? FilterList.Operator.MUST_PASS_ALL
+                                                 : FilterList.Operator.MUST_PASS_ONE);
+        for (ColumnValueFilter subFilter : filter.getFilters()) {
+          filterList.addFilter(createValueFilter(subFilter));
+        }
+        return filterList;
+      }
+      default:
+        throw new IllegalArgumentException("Unsupported filter: " + filter);
+    }
+  }
+
+  private SingleColumnValueFilter createColumnValueFilter(byte[] column, CompareFilter.CompareOp compareOp,
+                                                          ByteArrayComparable comparator) {
+    SingleColumnValueFilter filter = new SingleColumnValueFilter(columnFamily, column, compareOp, comparator);
+    // rows without the column don't match
+    filter.setFilterIfMissing(true);
+    return filter;
+  }
+
   /**
    * Creates an {@link Get} for the specified row and columns.
    *
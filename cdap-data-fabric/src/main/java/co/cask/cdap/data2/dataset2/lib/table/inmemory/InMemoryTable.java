@@ -22,8 +22,10 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DataSetException;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.table.ColumnValueFilter;
 import co.cask.cdap.api.dataset.table.ConflictDetection;
 import co.cask.cdap.api.dataset.table.Filter;
+import co.cask.cdap.api.dataset.table.Result;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.CConfiguration;
@@ -143,6 +145,7 @@ public class InMemoryTable extends BufferingTable {
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> rows = unwrapDeletesForRows(visibleRowRange);
 
     rows = applyFilter(rows, scan.getFilter());
+    rows = applyColumns(rows, scan.getColumns());
 
     return new InMemoryScanner(wrapIterator(rows.entrySet().iterator()));
   }
@@ -164,11 +167,43 @@ public class InMemoryTable extends BufferingTable {
         }
       }
       return result;
+    } else if (filter instanceof ColumnValueFilter) {
+      NavigableMap<byte[], NavigableMap<byte[], byte[]>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      for (Map.Entry<byte[], NavigableMap<byte[], byte[]>> entry : map.entrySet()) {
+        if (((ColumnValueFilter) filter).matches(new Result(entry.getKey(), entry.getValue()))) {
+          result.put(entry.getKey(), entry.getValue());
+        }
+      }
+      return result;
     } else {
       throw new DataSetException("Unknown filter type: " + filter);
     }
   }
 
+  private NavigableMap<byte[], NavigableMap<byte[], byte[]>> applyColumns(
+                                                    NavigableMap<byte[], NavigableMap<byte[], byte[]>> map,
+                                                    @Nullable byte[][] columns) {
+    if (columns == null) {
+      return map;
+    }
+
+    NavigableMap<byte[], NavigableMap<byte[], byte[]>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (Map.Entry<byte[], NavigableMap<byte[], byte[]>> entry : map.entrySet()) {
+      NavigableMap<byte[], byte[]> rowColumns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      for (byte[] column : columns) {
+        byte[] value = entry.getValue().get(column);
+        if (value != null) {
+          rowColumns.put(column, value);
+        }
+      }
+      // rows without any of the columns are not returned
+      if (!rowColumns.isEmpty()) {
+        result.put(entry.getKey(), rowColumns);
+      }
+    }
+    return result;
+  }
+
   @ReadOnly
   private NavigableMap<byte[], byte[]> getInternal(byte[] row, @Nullable byte[][] columns) throws IOException {
     // no tx logic needed
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -27,78 +27,91 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.Striped;
 import org.apache.tephra.Transaction;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 
 /**
  * Holds all in-memory tables for {@link InMemoryTable}.
+ *
+ * Rows and columns are kept in {@link ConcurrentSkipListMap}s, so that reads don't need any locking.
+ * Writes are serialized per row, using a striped lock of the table.
  */
-// todo: use locks instead of synchronize
 // todo: consider using SortedMap instead of NavigableMap in APIs
 public class InMemoryTableService {
-  private static Map<String, ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>>> tables =
-    Maps.newHashMap();
 
-  public static synchronized boolean exists(String tableName) {
+  // Number of locks per table for serializing writes to rows
+  private static final int ROW_LOCK_STRIPES = 64;
+
+  private static final ConcurrentMap<String,
+    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>>> tables =
+    Maps.newConcurrentMap();
+  private static final ConcurrentMap<String, Striped<Lock>> rowLocks = Maps.newConcurrentMap();
+
+  public static boolean exists(String tableName) {
     return tables.containsKey(tableName);
   }
 
   public static synchronized void create(String tableName) {
     if (!tables.containsKey(tableName)) {
+      rowLocks.put(tableName, Striped.lock(ROW_LOCK_STRIPES));
       tables.put(tableName, new ConcurrentSkipListMap<byte[],
         NavigableMap<byte[], NavigableMap<Long, Update>>>(Bytes.BYTES_COMPARATOR));
     }
   }
 
-  public static synchronized void truncate(String tableName) {
+  public static void truncate(String tableName) {
     tables.get(tableName).clear();
   }
 
   public static synchronized void drop(String tableName) {
     tables.remove(tableName);
+    rowLocks.remove(tableName);
   }
 
   public static synchronized void reset() {
     tables.clear();
+    rowLocks.clear();
   }
 
   // no nulls
-  public static synchronized void merge(String tableName,
-                                        SortedMap<byte[], ? extends SortedMap<byte[], ? extends Update>> changes,
-                                        long version) {
+  public static void merge(String tableName,
+                           SortedMap<byte[], ? extends SortedMap<byte[], ? extends Update>> changes,
+                           long version) {
     // todo: handle nulls
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
     SortedMap<byte[], ? extends SortedMap<byte[], Update>> changesCopy = deepCopyUpdates(changes);
     for (Map.Entry<byte[], ? extends SortedMap<byte[], Update>> change : changesCopy.entrySet()) {
-      merge(table, change.getKey(), change.getValue(), version);
+      Lock lock = getRowLock(tableName, change.getKey());
+      lock.lock();
+      try {
+        merge(table, change.getKey(), change.getValue(), version);
+      } finally {
+        lock.unlock();
+      }
     }
   }
 
   private static void merge(ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table,
                             byte[] row, Map<byte[], Update> changes, long version) {
     // get the correct row from the table, create it if it doesn't exist
-    NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
-    if (rowMap == null) {
-      rowMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      table.put(row, rowMap);
-    }
+    NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = getOrCreateRow(table, row);
     // now merge the changes into the row, one by one
     for (Map.Entry<byte[], Update> keyVal : changes.entrySet()) {
       // create the column in the row if it does not exist
-      NavigableMap<Long, Update> colMap = rowMap.get(keyVal.getKey());
-      if (colMap == null) {
-        colMap = Maps.newTreeMap();
-        rowMap.put(keyVal.getKey(), colMap);
-      }
+      NavigableMap<Long, Update> colMap = getOrCreateColumn(rowMap, keyVal.getKey());
       // put into the column with given version
       Update merged = Updates.mergeUpdates(colMap.get(version), keyVal.getValue());
       colMap.put(version, merged);
@@ -107,40 +120,45 @@ public class InMemoryTableService {
 
   // todo: remove it from here: only used by "system" metrics table, which should be revised
   @Deprecated
-  public static synchronized Map<byte[], Long> increment(String tableName, byte[] row, Map<byte[], Long> increments) {
+  public static Map<byte[], Long> increment(String tableName, byte[] row, Map<byte[], Long> increments) {
     Map<byte[], Long> resultMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
-    // get the correct row from the table, create it if it doesn't exist
-    NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
-    if (rowMap == null) {
-      rowMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      table.put(row, rowMap);
-    }
-    // now increment each column, one by one
-    long versionForWrite = System.currentTimeMillis();
-    for (Map.Entry<byte[], Long> inc : increments.entrySet()) {
-      IncrementValue increment = new IncrementValue(inc.getValue());
-      // create the column in the row if it does not exist
-      NavigableMap<Long, Update> colMap = rowMap.get(inc.getKey());
-      Update last = null;
-      if (colMap == null) {
-        colMap = Maps.newTreeMap();
-        rowMap.put(inc.getKey(), colMap);
-      } else {
-        last = colMap.lastEntry().getValue();
+    Lock lock = getRowLock(tableName, row);
+    lock.lock();
+    try {
+      // get the correct row from the table, create it if it doesn't exist
+      NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = getOrCreateRow(table, row);
+      // now increment each column, one by one
+      long versionForWrite = System.currentTimeMillis();
+      for (Map.Entry<byte[], Long> inc : increments.entrySet()) {
+        IncrementValue increment = new IncrementValue(inc.getValue());
+        // create the column in the row if it does not exist
+        NavigableMap<Long, Update> colMap = getOrCreateColumn(rowMap, inc.getKey());
+        Map.Entry<Long, Update> last = colMap.lastEntry();
+        Update merged = Updates.mergeUpdates(last == null ? null : last.getValue(), increment);
+        // put into the column with given version
+        long newValue = Bytes.toLong(merged.getBytes());
+        resultMap.put(inc.getKey(), newValue);
+        colMap.put(versionForWrite, merged);
       }
-      Update merged = Updates.mergeUpdates(last, increment);
-      // put into the column with given version
-      long newValue = Bytes.toLong(merged.getBytes());
-      resultMap.put(inc.getKey(), newValue);
-      colMap.put(versionForWrite, merged);
+      return resultMap;
+    } finally {
+      lock.unlock();
     }
-    return resultMap;
   }
 
-  public static synchronized boolean swap(String tableName, byte[] row, byte[] column,
-                                          byte[] oldValue, byte[] newValue) {
-    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
+  public static boolean swap(String tableName, byte[] row, byte[] column, byte[] oldValue, byte[] newValue) {
+    Lock lock = getRowLock(tableName, row);
+    lock.lock();
+    try {
+      return swap(tables.get(tableName), row, column, oldValue, newValue);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static boolean swap(ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table,
+                              byte[] row, byte[] column, byte[] oldValue, byte[] newValue) {
     // get the correct row from the table, create it if it doesn't exist
     NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
     Update existingValue = null;
@@ -164,51 +182,64 @@ public class InMemoryTableService {
       }
     } else {
       if (rowMap == null) {
-        rowMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        table.put(row, rowMap);
-      }
-      NavigableMap<Long, Update> columnMap = rowMap.get(column);
-      if (columnMap == null) {
-        columnMap = Maps.newTreeMap();
-        rowMap.put(column, columnMap);
+        rowMap = getOrCreateRow(table, row);
       }
+      NavigableMap<Long, Update> columnMap = getOrCreateColumn(rowMap, column);
       PutValue newPut = new PutValue(newValue);
       columnMap.put(System.currentTimeMillis(), newPut);
     }
     return true;
   }
 
-  public static synchronized void undo(String tableName,
-                                       NavigableMap<byte[], NavigableMap<byte[], Update>> changes,
-                                       long version) {
+  public static void undo(String tableName,
+                          NavigableMap<byte[], NavigableMap<byte[], Update>> changes,
+                          long version) {
     // todo: handle nulls
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
     for (Map.Entry<byte[], NavigableMap<byte[], Update>> change : changes.entrySet()) {
       byte[] row = change.getKey();
-      NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
-      if (rowMap != null) {
-        for (byte[] column : change.getValue().keySet()) {
-          NavigableMap<Long, Update> values = rowMap.get(column);
-          values.remove(version);
+      Lock lock = getRowLock(tableName, row);
+      lock.lock();
+      try {
+        NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
+        if (rowMap != null) {
+          for (byte[] column : change.getValue().keySet()) {
+            NavigableMap<Long, Update> values = rowMap.get(column);
+            values.remove(version);
+          }
         }
+      } finally {
+        lock.unlock();
       }
     }
   }
 
-  public static synchronized void delete(String tableName, Iterable<byte[]> rows) {
+  public static void delete(String tableName, Iterable<byte[]> rows) {
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
     for (byte[] row : rows) {
-      table.remove(row);
+      Lock lock = getRowLock(tableName, row);
+      lock.lock();
+      try {
+        table.remove(row);
+      } finally {
+        lock.unlock();
+      }
     }
   }
 
-  public static synchronized void deleteColumns(String tableName, byte[] row, byte[] column) {
+  public static void deleteColumns(String tableName, byte[] row, byte[] column) {
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
-    NavigableMap<byte[], NavigableMap<Long, Update>> columnValues = table.get(row);
-    columnValues.remove(column);
+    Lock lock = getRowLock(tableName, row);
+    lock.lock();
+    try {
+      NavigableMap<byte[], NavigableMap<Long, Update>> columnValues = table.get(row);
+      columnValues.remove(column);
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public static synchronized void delete(String tableName, byte[] rowPrefix) {
+  public static void delete(String tableName, byte[] rowPrefix) {
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
     if (rowPrefix.length == 0) {
       table.clear();
@@ -239,9 +270,9 @@ public class InMemoryTableService {
     return null;
   }
 
-  public static synchronized NavigableMap<byte[], NavigableMap<Long, byte[]>> get(String tableName,
-                                                                                  byte[] row,
-                                                                                  @Nullable Transaction tx) {
+  public static NavigableMap<byte[], NavigableMap<Long, byte[]>> get(String tableName,
+                                                                     byte[] row,
+                                                                     @Nullable Transaction tx) {
     // todo: handle nulls
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
     Preconditions.checkArgument(table != null, "table not found: " + tableName);
@@ -249,7 +280,7 @@ public class InMemoryTableService {
     return deepCopy(Updates.rowToBytes(getVisible(rowMap, tx)));
   }
 
-  public static synchronized NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>>
+  public static NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>>
                              getRowRange(String tableName,
                                          byte[] startRow,
                                          byte[] stopRow,
@@ -278,10 +309,48 @@ public class InMemoryTableService {
     return result;
   }
 
-  public static synchronized Collection<String> list() {
+  public static Collection<String> list() {
     return ImmutableList.copyOf(tables.keySet());
   }
 
+  /**
+   * Returns the lock for writing to the given row of the given table.
+   */
+  private static Lock getRowLock(String tableName, byte[] row) {
+    Striped<Lock> locks = rowLocks.get(tableName);
+    Preconditions.checkArgument(locks != null, "table not found: " + tableName);
+    return locks.get(ByteBuffer.wrap(row));
+  }
+
+  /**
+   * Returns the columns map of the given row, which is created if it doesn't exist.
+   * Must be called with the row lock held.
+   */
+  private static NavigableMap<byte[], NavigableMap<Long, Update>> getOrCreateRow(
+    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table, byte[] row) {
+
+    NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
+    if (rowMap == null) {
+      rowMap = new ConcurrentSkipListMap<byte[], NavigableMap<Long, Update>>(Bytes.BYTES_COMPARATOR);
+      table.put(row, rowMap);
+    }
+    return rowMap;
+  }
+
+  /**
+   * Returns the versions map of the given column, which is created if it doesn't exist.
+   * Must be called with the row lock held.
+   */
+  private static NavigableMap<Long, Update> getOrCreateColumn(NavigableMap<byte[], NavigableMap<Long, Update>> rowMap,
+                                                              byte[] column) {
+    NavigableMap<Long, Update> colMap = rowMap.get(column);
+    if (colMap == null) {
+      colMap = new ConcurrentSkipListMap<Long, Update>();
+      rowMap.put(column, colMap);
+    }
+    return colMap;
+  }
+
   private static NavigableMap<byte[], NavigableMap<Long, Update>> getVisible(
     NavigableMap<byte[], NavigableMap<Long, Update>> rowMap, final Transaction tx) {
 
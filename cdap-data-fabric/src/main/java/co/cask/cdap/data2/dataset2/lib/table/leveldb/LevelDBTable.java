@@ -19,22 +19,33 @@ package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.annotation.WriteOnly;
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.batch.Split;
 import co.cask.cdap.api.dataset.DataSetException;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.table.ColumnValueFilter;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTable;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.data2.dataset2.lib.table.IncrementValue;
+import co.cask.cdap.data2.dataset2.lib.table.KeyRange;
 import co.cask.cdap.data2.dataset2.lib.table.PutValue;
+import co.cask.cdap.data2.dataset2.lib.table.SplitsUtil;
 import co.cask.cdap.data2.dataset2.lib.table.Update;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.PrefixedNamespaces;
 import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import javax.annotation.Nullable;
@@ -44,7 +55,15 @@ import javax.annotation.Nullable;
  */
 public class LevelDBTable extends BufferingTable {
 
+  private static final Logger LOG = LoggerFactory.getLogger(LevelDBTable.class);
+
+  // number of sub-ranges to estimate the size of when computing splits. Each level of sampling narrows down
+  // the key space by about one byte, hence the key bytes used by SplitsUtil limit the sampling depth.
+  private static final int SIZE_SAMPLES = 256;
+  private static final int MAX_SAMPLE_DEPTH = Bytes.SIZEOF_LONG - 1;
+
   private final LevelDBTableCore core;
+  private final long targetSplitSize;
   private long persistedVersion;
 
   public LevelDBTable(DatasetContext datasetContext, String tableName,
@@ -53,6 +72,60 @@ public class LevelDBTable extends BufferingTable {
     super(PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), tableName),
           false, spec.getProperties());
     this.core = new LevelDBTableCore(getTableName(), service);
+    this.targetSplitSize = cConf.getLong(Constants.Dataset.TABLE_SPLIT_SIZE_MB,
+                                         Constants.Dataset.DEFAULT_TABLE_SPLIT_SIZE_MB) * 1024 * 1024;
+  }
+
+  /**
+   * Computes the splits based on the sizes of sampled sub-ranges, as estimated by LevelDB. Falls back to
+   * {@link BufferingTable#getSplits(int, byte[], byte[])} if no size estimate is available, for example because
+   * all data is still held in memory.
+   */
+  @Override
+  public List<Split> getSplits(int numSplits, byte[] start, byte[] stop) {
+    ensureTransactionIsStarted();
+    if (start != null && stop != null && Bytes.compareTo(start, stop) >= 0) {
+      return Collections.emptyList();
+    }
+    List<ImmutablePair<KeyRange, Long>> sampledRanges = new ArrayList<>();
+    long totalSize;
+    try {
+      totalSize = sampleSizes(start, stop, MAX_SAMPLE_DEPTH, sampledRanges);
+    } catch (IOException e) {
+      LOG.warn("Failed to estimate sizes of table {}. Using default splits.", getTableName(), e);
+      return super.getSplits(numSplits, start, stop);
+    }
+    if (totalSize <= 0) {
+      return super.getSplits(numSplits, start, stop);
+    }
+    return toSplits(SplitsUtil.combineRanges(numSplits, SplitsUtil.subdivideRanges(sampledRanges, targetSplitSize),
+                                             targetSplitSize));
+  }
+
+  /**
+   * Divides the given range into sub-ranges and estimates their sizes. Sub-ranges larger than the target split size
+   * are sampled again, up to the given depth, so that data with skewed or common key prefixes is located precisely.
+   *
+   * @return the total size of the sampled ranges
+   */
+  private long sampleSizes(@Nullable byte[] start, @Nullable byte[] stop, int depth,
+                           List<ImmutablePair<KeyRange, Long>> sampledRanges) throws IOException {
+    List<KeyRange> ranges = SplitsUtil.primitiveGetSplits(SIZE_SAMPLES, start, stop);
+    // keep the start of the first range as given, so that an open start stays open
+    ranges.set(0, new KeyRange(start, ranges.get(0).getStop()));
+    long[] sizes = core.getApproximateSizes(ranges);
+
+    long totalSize = 0;
+    for (int i = 0; i < sizes.length; i++) {
+      KeyRange range = ranges.get(i);
+      if (depth > 0 && ranges.size() > 1 && sizes[i] > targetSplitSize) {
+        totalSize += sampleSizes(range.getStart(), range.getStop(), depth - 1, sampledRanges);
+      } else {
+        sampledRanges.add(ImmutablePair.of(range, sizes[i]));
+        totalSize += sizes[i];
+      }
+    }
+    return totalSize;
   }
 
   @WriteOnly
@@ -133,15 +206,19 @@ public class LevelDBTable extends BufferingTable {
   protected Scanner scanPersisted(Scan scan) throws Exception {
 
     FuzzyRowFilter filter = null;
+    ColumnValueFilter valueFilter = null;
     if (scan.getFilter() != null) {
-      // todo: currently we support only FuzzyRowFilter as an experimental feature
+      // todo: currently we support only FuzzyRowFilter and ColumnValueFilter as an experimental feature
       if (scan.getFilter() instanceof FuzzyRowFilter) {
         filter = (FuzzyRowFilter) scan.getFilter();
+      } else if (scan.getFilter() instanceof ColumnValueFilter) {
+        valueFilter = (ColumnValueFilter) scan.getFilter();
       } else {
         throw new DataSetException("Unknown filter type: " + scan.getFilter());
       }
     }
-    final Scanner scanner = core.scan(scan.getStartRow(), scan.getStopRow(), filter, null, tx);
+    final Scanner scanner = core.scan(scan.getStartRow(), scan.getStopRow(), filter, valueFilter,
+                                      scan.getColumns(), tx);
     return new Scanner() {
       @Nullable
       @Override
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -17,31 +17,39 @@
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.table.ColumnValueFilter;
 import co.cask.cdap.api.dataset.table.Result;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
+import co.cask.cdap.data2.dataset2.lib.table.KeyRange;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
 import org.apache.tephra.Transaction;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.Range;
 import org.iq80.leveldb.WriteBatch;
 import org.iq80.leveldb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 
 /**
@@ -65,6 +73,9 @@ public class LevelDBTableCore {
   // used for obtaining the next row/column for upper bound
   private static final byte[] ONE_ZERO = { 0x00 };
 
+  // used as the upper bound of size estimates for ranges without stop row
+  private static final byte[] LAST_ROW = createLastRow();
+
   private static byte[] upperBound(byte[] column) {
     return Bytes.add(column, ONE_ZERO);
   }
@@ -77,10 +88,12 @@ public class LevelDBTableCore {
 
   private final String tableName;
   private final LevelDBTableService service;
+  private final Striped<Lock> rowLocks;
 
   public LevelDBTableCore(String tableName, LevelDBTableService service) throws IOException {
     this.tableName = tableName;
     this.service = service;
+    this.rowLocks = service.getRowLocks(tableName);
   }
 
   private DB getDB() throws IOException {
@@ -92,48 +105,75 @@ public class LevelDBTableCore {
   }
 
 
-  public synchronized boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
-    byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
-    // verify
-    if (oldValue == null && existing != null) {
-      return false;
-    }
-    if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
-      return false;
-    }
-    // write
-    if (newValue == null) {
-      // to-do
-      deleteColumn(row, column);
-    } else {
-      persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), System.currentTimeMillis());
+  public boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
+    Lock lock = rowLocks.get(ByteBuffer.wrap(row));
+    lock.lock();
+    try {
+      byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
+      // verify
+      if (oldValue == null && existing != null) {
+        return false;
+      }
+      if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
+        return false;
+      }
+      // write
+      if (newValue == null) {
+        // to-do
+        deleteColumn(row, column);
+      } else {
+        persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), System.currentTimeMillis());
+      }
+      return true;
+    } finally {
+      lock.unlock();
     }
-    return true;
   }
 
-  public synchronized Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
-    Map<byte[], Long> result = getResultMap(row, increments);
-    Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    for (Map.Entry<byte[], Long> entry : result.entrySet()) {
-      replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+  public Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
+    Lock lock = rowLocks.get(ByteBuffer.wrap(row));
+    lock.lock();
+    try {
+      Map<byte[], Long> result = getResultMap(row, increments);
+      Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      for (Map.Entry<byte[], Long> entry : result.entrySet()) {
+        replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+      }
+      persist(ImmutableMap.of(row, replacing), System.currentTimeMillis());
+      return result;
+    } finally {
+      lock.unlock();
     }
-    persist(ImmutableMap.of(row, replacing), System.currentTimeMillis());
-    return result;
   }
 
 
-  public synchronized void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
-    Map<byte[], Map<byte[], byte[]>> resultMap = Maps.newHashMap();
-    for (NavigableMap.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
-      NavigableMap<byte[], Long> increments = row.getValue();
-      Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      Map<byte[], Long> result = getResultMap(row.getKey(), increments);
-      for (Map.Entry<byte[], Long> entry : result.entrySet()) {
-        replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+  public void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
+    // Acquire the row locks in the order given by Striped to avoid deadlock
+    List<ByteBuffer> rows = Lists.newArrayListWithCapacity(updates.size());
+    for (byte[] row : updates.keySet()) {
+      rows.add(ByteBuffer.wrap(row));
+    }
+    List<Lock> locks = Lists.newArrayList(rowLocks.bulkGet(rows));
+    for (Lock lock : locks) {
+      lock.lock();
+    }
+    try {
+      Map<byte[], Map<byte[], byte[]>> resultMap = Maps.newHashMap();
+      for (NavigableMap.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
+        NavigableMap<byte[], Long> increments = row.getValue();
+        Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        Map<byte[], Long> result = getResultMap(row.getKey(), increments);
+        for (Map.Entry<byte[], Long> entry : result.entrySet()) {
+          replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+        }
+        resultMap.put(row.getKey(), replacing);
+      }
+      persist(resultMap, System.currentTimeMillis());
+    } finally {
+      for (Lock lock : Lists.reverse(locks)) {
+        lock.unlock();
       }
-      resultMap.put(row.getKey(), replacing);
     }
-    persist(resultMap, System.currentTimeMillis());
   }
 
   private Map<byte[], Long> getResultMap(byte[] row, Map<byte[], Long> increments) throws IOException {
@@ -157,6 +197,21 @@ public class LevelDBTableCore {
     return result;
   }
 
+  /**
+   * Returns the approximate sizes in bytes of the given row ranges. The estimate is based on the files written by
+   * LevelDB, hence data that was recently written and is still held in memory is not accounted for.
+   */
+  public long[] getApproximateSizes(List<KeyRange> ranges) throws IOException {
+    Range[] keyRanges = new Range[ranges.size()];
+    for (int i = 0; i < keyRanges.length; i++) {
+      KeyRange range = ranges.get(i);
+      byte[] startKey = createStartKey(range.getStart() == null ? Bytes.EMPTY_BYTE_ARRAY : range.getStart());
+      byte[] endKey = createEndKey(range.getStop() == null ? LAST_ROW : range.getStop());
+      keyRanges[i] = new Range(startKey, endKey);
+    }
+    return getDB().getApproximateSizes(keyRanges);
+  }
+
   public void persist(Map<byte[], ? extends Map<byte[], byte[]>> changes, long version) throws IOException {
     DB db = getDB();
     // todo support writing null when no transaction
@@ -192,6 +247,15 @@ public class LevelDBTableCore {
   public Scanner scan(byte[] startRow, byte[] stopRow,
                       @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns, @Nullable Transaction tx)
     throws IOException {
+    return scan(startRow, stopRow, filter, null, columns, tx);
+  }
+
+  /**
+   * Scans a range of rows, returning only the rows that match the given row key filter and value filter.
+   */
+  public Scanner scan(byte[] startRow, byte[] stopRow, @Nullable FuzzyRowFilter filter,
+                      @Nullable ColumnValueFilter valueFilter, @Nullable byte[][] columns, @Nullable Transaction tx)
+    throws IOException {
     if (columns != null) {
       if (columns.length == 0) {
         return EMPTY_SCANNER;
@@ -203,7 +267,7 @@ public class LevelDBTableCore {
     DBIterator iterator = getDB().iterator();
     seekToStart(iterator, startRow);
     byte[] endKey = stopRow == null ? null : createEndKey(stopRow);
-    return new LevelDBScanner(iterator, endKey, filter, columns, tx);
+    return new LevelDBScanner(iterator, endKey, filter, valueFilter, columns, tx);
   }
 
   /**
@@ -405,7 +469,7 @@ public class LevelDBTableCore {
     DBIterator deleteIterator = db.iterator();
     seekToStart(deleteIterator, startRow);
     final int deletesPerRound = 1024; // todo make configurable
-    try (Scanner scanner = new LevelDBScanner(iterator, endKey, filter, columns, null)) {
+    try (Scanner scanner = new LevelDBScanner(iterator, endKey, filter, null, columns, null)) {
       Row rowValues;
       WriteBatch batch = db.createWriteBatch();
       int deletesInBatch = 0;
@@ -490,13 +554,15 @@ public class LevelDBTableCore {
     private final DBIterator iterator;
     private final byte[][] columns;
     private final FuzzyRowFilter filter;
+    private final ColumnValueFilter valueFilter;
 
-    LevelDBScanner(DBIterator iterator, byte[] endKey,
-                   @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns, @Nullable Transaction tx) {
+    LevelDBScanner(DBIterator iterator, byte[] endKey, @Nullable FuzzyRowFilter filter,
+                   @Nullable ColumnValueFilter valueFilter, @Nullable byte[][] columns, @Nullable Transaction tx) {
       this.tx = tx;
       this.endKey = endKey;
       this.iterator = iterator;
       this.filter = filter;
+      this.valueFilter = valueFilter;
       this.columns = columns;
     }
 
@@ -526,7 +592,12 @@ public class LevelDBTableCore {
               }
             }
           }
-          return new Result(result.getFirst(), result.getSecond());
+          Result row = new Result(result.getFirst(), result.getSecond());
+          // apply value filter if any
+          if (valueFilter != null && !valueFilter.matches(row)) {
+            continue;
+          }
+          return row;
         }
       } catch (Exception e) {
         throw Throwables.propagate(e);
@@ -546,6 +617,12 @@ public class LevelDBTableCore {
 
   // ------- helpers to create the keys for writes and scans ----------
 
+  private static byte[] createLastRow() {
+    byte[] row = new byte[Bytes.SIZEOF_LONG * 2];
+    Arrays.fill(row, (byte) 0xff);
+    return row;
+  }
+
   private static byte[] createPutKey(byte[] rowKey, byte[] columnKey, long version) {
     return new KeyValue(rowKey, DATA_COLFAM, columnKey, version, KeyValue.Type.Put).getKey();
   }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -26,6 +26,7 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.iq80.leveldb.DB;
@@ -43,6 +44,7 @@ import java.net.URLEncoder;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 
 import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
 
@@ -59,7 +61,11 @@ public class LevelDBTableService {
   private String basePath;
   private WriteOptions writeOptions;
 
+  // Number of locks per table for serializing read-modify-write operations on rows
+  private static final int ROW_LOCK_STRIPES = 64;
+
   private final ConcurrentMap<String, DB> tables = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Striped<Lock>> rowLocks = Maps.newConcurrentMap();
 
   private static final LevelDBTableService SINGLETON = new LevelDBTableService();
 
@@ -167,6 +173,22 @@ public class LevelDBTableService {
     return db;
   }
 
+  /**
+   * Returns the striped locks for serializing read-modify-write operations on rows of the given table. The locks
+   * are shared by all {@link LevelDBTableCore} instances of the table.
+   */
+  public Striped<Lock> getRowLocks(String tableName) {
+    Striped<Lock> locks = rowLocks.get(tableName);
+    if (locks == null) {
+      locks = Striped.lock(ROW_LOCK_STRIPES);
+      Striped<Lock> existing = rowLocks.putIfAbsent(tableName, locks);
+      if (existing != null) {
+        locks = existing;
+      }
+    }
+    return locks;
+  }
+
   public void ensureTableExists(String tableName) throws IOException {
     DB db = tables.get(tableName);
     if (db == null) {
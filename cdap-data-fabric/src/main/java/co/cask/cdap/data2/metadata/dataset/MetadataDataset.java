@@ -20,6 +20,7 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.AbstractDataset;
 import co.cask.cdap.api.dataset.lib.IndexedTable;
 import co.cask.cdap.api.dataset.table.Delete;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
@@ -60,6 +61,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -82,6 +85,7 @@ public class MetadataDataset extends AbstractDataset {
   private static final String HISTORY_COLUMN = "h"; // column for metadata history
   private static final String VALUE_COLUMN = "v";  // column for metadata value
   private static final String TAGS_SEPARATOR = ",";
+  private static final int MULTI_GET_BATCH_SIZE = 1000;
 
   // Fuzzy key is of form <row key, key mask>. We want to compare row keys.
   private static final Comparator<ImmutablePair<byte[], byte[]>> FUZZY_KEY_COMPARATOR =
@@ -514,7 +518,8 @@ public class MetadataDataset extends AbstractDataset {
    */
   public List<MetadataEntry> search(String namespaceId, String searchQuery, Set<MetadataSearchTargetType> types) {
     boolean includeAllTypes = types.isEmpty() || types.contains(MetadataSearchTargetType.ALL);
-    List<MetadataEntry> results = new ArrayList<>();
+    // (target, key) pairs matched by the search terms, one for each match of each term
+    List<ImmutablePair<NamespacedEntityId, String>> matches = new ArrayList<>();
     for (String searchTerm : getSearchTerms(namespaceId, searchQuery)) {
       Scanner scanner;
       if (searchTerm.endsWith("*")) {
@@ -545,16 +550,55 @@ public class MetadataDataset extends AbstractDataset {
 
           NamespacedEntityId targetId = MdsKey.getNamespacedIdFromKey(targetType, rowKey);
           String key = MdsKey.getMetadataKey(targetType, rowKey);
-          MetadataEntry entry = getMetadata(targetId, key);
-          results.add(entry);
+          matches.add(ImmutablePair.of(targetId, key));
         }
       } finally {
         scanner.close();
       }
     }
+
+    // Fetch the values with multi-gets, reading each value only once even if it is matched by multiple terms
+    Map<ImmutablePair<NamespacedEntityId, String>, MetadataEntry> entries =
+      getMetadata(new LinkedHashSet<>(matches));
+    List<MetadataEntry> results = new ArrayList<>(matches.size());
+    for (ImmutablePair<NamespacedEntityId, String> match : matches) {
+      MetadataEntry entry = entries.get(match);
+      // The value can be missing if all tags were removed, in which case the index row is stale
+      if (entry != null) {
+        results.add(entry);
+      }
+    }
     return results;
   }
 
+  /**
+   * Returns the {@link MetadataEntry} for each of the given (target, key) pairs that has a value. Values are read
+   * with multi-gets of at most {@link #MULTI_GET_BATCH_SIZE} rows.
+   */
+  private Map<ImmutablePair<NamespacedEntityId, String>, MetadataEntry> getMetadata(
+    Collection<ImmutablePair<NamespacedEntityId, String>> targetKeys) {
+    Map<ImmutablePair<NamespacedEntityId, String>, MetadataEntry> entries = new HashMap<>();
+    Iterable<List<ImmutablePair<NamespacedEntityId, String>>> batches =
+      Iterables.partition(targetKeys, MULTI_GET_BATCH_SIZE);
+    for (List<ImmutablePair<NamespacedEntityId, String>> batch : batches) {
+      List<Get> gets = new ArrayList<>(batch.size());
+      for (ImmutablePair<NamespacedEntityId, String> targetKey : batch) {
+        gets.add(new Get(MdsKey.getMDSValueKey(targetKey.getFirst(), targetKey.getSecond()).getKey(),
+                         Bytes.toBytes(VALUE_COLUMN)));
+      }
+      // Rows are returned in the same order as the gets
+      Iterator<Row> rows = indexedTable.get(gets).iterator();
+      for (ImmutablePair<NamespacedEntityId, String> targetKey : batch) {
+        byte[] value = rows.next().get(VALUE_COLUMN);
+        if (value != null) {
+          entries.put(targetKey,
+                      new MetadataEntry(targetKey.getFirst(), targetKey.getSecond(), Bytes.toString(value)));
+        }
+      }
+    }
+    return entries;
+  }
+
   /**
    * Prepares search terms from the specified search query by
    * <ol>
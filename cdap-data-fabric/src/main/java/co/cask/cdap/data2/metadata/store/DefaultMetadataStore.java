@@ -30,16 +30,24 @@ import co.cask.cdap.data2.metadata.dataset.MetadataEntry;
 import co.cask.cdap.data2.metadata.indexer.Indexer;
 import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.proto.audit.AuditType;
+import co.cask.cdap.proto.id.ApplicationId;
+import co.cask.cdap.proto.id.ArtifactId;
 import co.cask.cdap.proto.id.DatasetId;
+import co.cask.cdap.proto.id.FlowletId;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.NamespacedEntityId;
+import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.metadata.MetadataRecord;
 import co.cask.cdap.proto.metadata.MetadataScope;
+import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
 import co.cask.cdap.proto.metadata.MetadataSearchTargetType;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import org.apache.tephra.TransactionExecutor;
@@ -80,6 +88,48 @@ public class DefaultMetadataStore implements MetadataStore {
       }
     };
 
+  private static final Comparator<NamespacedEntityId> NAME_ASCENDING_COMPARATOR =
+    new Comparator<NamespacedEntityId>() {
+      @Override
+      public int compare(NamespacedEntityId entityId1, NamespacedEntityId entityId2) {
+        int compareResult = entityId1.getEntityName().compareTo(entityId2.getEntityName());
+        if (compareResult != 0) {
+          return compareResult;
+        }
+        // same name, but different entity types?
+        compareResult = entityId1.getEntityType().compareTo(entityId2.getEntityType());
+        if (compareResult != 0) {
+          return compareResult;
+        }
+        // same name, entity type, but different namespace?
+        compareResult = entityId1.getNamespace().compareTo(entityId2.getNamespace());
+        if (compareResult != 0) {
+          return compareResult;
+        }
+        // same name, entity type and namespace, so dig deeper
+        switch (entityId1.getEntityType()) {
+          case APPLICATION:
+            return ((ApplicationId) entityId1).getVersion().compareTo(((ApplicationId) entityId2).getVersion());
+          case FLOWLET:
+            return ((FlowletId) entityId1).getFlow().compareTo(((FlowletId) entityId2).getFlow());
+          case PROGRAM:
+            ProgramId program1 = (ProgramId) entityId1;
+            ProgramId program2  = (ProgramId) entityId2;
+            compareResult = program1.getApplication().compareTo(program2.getApplication());
+            if (compareResult != 0) {
+              return compareResult;
+            }
+            compareResult = program1.getType().compareTo(program2.getType());
+            return compareResult;
+          case ARTIFACT:
+            return ((ArtifactId) entityId1).getVersion().compareTo(((ArtifactId) entityId2).getVersion());
+          default:
+            LOG.error("Unexpected type {}", entityId1.getEntityType());
+            return compareResult;
+        }
+      }
+    };
+
   private final TransactionExecutorFactory txExecutorFactory;
   private final DatasetFramework dsFramework;
   private AuditPublisher auditPublisher;
@@ -379,13 +429,7 @@ public class DefaultMetadataStore implements MetadataStore {
                                                               final String searchQuery,
                                                               final Set<MetadataSearchTargetType> types) {
     // Execute search query
-    Iterable<MetadataEntry> results = execute(new TransactionExecutor.Function<MetadataDataset,
-      Iterable<MetadataEntry>>() {
-      @Override
-      public Iterable<MetadataEntry> apply(MetadataDataset input) throws Exception {
-        return input.search(namespaceId, searchQuery, types);
-      }
-    }, scope);
+    Iterable<MetadataEntry> results = search(scope, namespaceId, searchQuery, types);
 
     // Score results
     final Map<NamespacedEntityId, Integer> weightedResults = new HashMap<>();
@@ -411,6 +455,78 @@ public class DefaultMetadataStore implements MetadataStore {
     return addMetadataToResults(resultList, systemMetadata, userMetadata);
   }
 
+  @Override
+  public MetadataSearchResponse search(String namespaceId, String searchQuery, Set<MetadataSearchTargetType> types,
+                                       SortInfo sortInfo, int offset, int limit,
+                                       Predicate<NamespacedEntityId> filter) {
+    // Score the matched entities in both scopes. Each entity appears only once in the results.
+    Map<NamespacedEntityId, Integer> weightedResults = new HashMap<>();
+    for (MetadataScope scope : MetadataScope.values()) {
+      for (MetadataEntry metadataEntry : search(scope, namespaceId, searchQuery, types)) {
+        if (filter.apply(metadataEntry.getTargetId())) {
+          Integer score = weightedResults.get(metadataEntry.getTargetId());
+          weightedResults.put(metadataEntry.getTargetId(), score == null ? 1 : score + 1);
+        }
+      }
+    }
+
+    List<Map.Entry<NamespacedEntityId, Integer>> resultList = new ArrayList<>(weightedResults.entrySet());
+    Collections.sort(resultList, getSearchResultComparator(sortInfo));
+
+    // Only fetch the metadata of the entities in the requested page
+    int total = resultList.size();
+    List<Map.Entry<NamespacedEntityId, Integer>> page =
+      resultList.subList(Math.min(offset, total), (int) Math.min((long) offset + limit, total));
+    Set<NamespacedEntityId> pageEntities = new HashSet<>();
+    for (Map.Entry<NamespacedEntityId, Integer> entry : page) {
+      pageEntities.add(entry.getKey());
+    }
+    Map<NamespacedEntityId, Metadata> systemMetadata = fetchMetadata(pageEntities, MetadataScope.SYSTEM);
+    Map<NamespacedEntityId, Metadata> userMetadata = fetchMetadata(pageEntities, MetadataScope.USER);
+
+    return new MetadataSearchResponse(sortInfo.toString(), offset, limit, total,
+                                      addMetadataToResults(page, systemMetadata, userMetadata));
+  }
+
+  private Iterable<MetadataEntry> search(MetadataScope scope, final String namespaceId, final String searchQuery,
+                                         final Set<MetadataSearchTargetType> types) {
+    return execute(new TransactionExecutor.Function<MetadataDataset, Iterable<MetadataEntry>>() {
+      @Override
+      public Iterable<MetadataEntry> apply(MetadataDataset input) throws Exception {
+        return input.search(namespaceId, searchQuery, types);
+      }
+    }, scope);
+  }
+
+  private Comparator<Map.Entry<NamespacedEntityId, Integer>> getSearchResultComparator(SortInfo sortInfo) {
+    Ordering<NamespacedEntityId> byName = Ordering.from(NAME_ASCENDING_COMPARATOR);
+    Ordering<Map.Entry<NamespacedEntityId, Integer>> ordering;
+    switch (sortInfo.getSortBy()) {
+      case NAME:
+        ordering = byName.onResultOf(new Function<Map.Entry<NamespacedEntityId, Integer>, NamespacedEntityId>() {
+          @Override
+          public NamespacedEntityId apply(Map.Entry<NamespacedEntityId, Integer> entry) {
+            return entry.getKey();
+          }
+        });
+        return sortInfo.getSortOrder() == SortInfo.SortOrder.DESC ? ordering.reverse() : ordering;
+      case RELEVANCE:
+        ordering = Ordering.from(SEARCH_RESULT_DESC_SCORE_COMPARATOR);
+        if (sortInfo.getSortOrder() == SortInfo.SortOrder.ASC) {
+          ordering = ordering.reverse();
+        }
+        // entities with the same score are always sorted by name in ascending order
+        return ordering.compound(new Comparator<Map.Entry<NamespacedEntityId, Integer>>() {
+          @Override
+          public int compare(Map.Entry<NamespacedEntityId, Integer> o1, Map.Entry<NamespacedEntityId, Integer> o2) {
+            return NAME_ASCENDING_COMPARATOR.compare(o1.getKey(), o2.getKey());
+          }
+        });
+      default:
+        throw new IllegalArgumentException("Unsupported sort field " + sortInfo.getSortBy());
+    }
+  }
+
   private Map<NamespacedEntityId, Metadata> fetchMetadata(final Set<NamespacedEntityId> namespacedEntityIds,
                                                           MetadataScope scope) {
     Set<Metadata> metadataSet =
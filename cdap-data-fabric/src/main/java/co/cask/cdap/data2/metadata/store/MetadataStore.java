@@ -21,8 +21,10 @@ import co.cask.cdap.data2.metadata.indexer.Indexer;
 import co.cask.cdap.proto.id.NamespacedEntityId;
 import co.cask.cdap.proto.metadata.MetadataRecord;
 import co.cask.cdap.proto.metadata.MetadataScope;
+import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
 import co.cask.cdap.proto.metadata.MetadataSearchTargetType;
+import com.google.common.base.Predicate;
 
 import java.util.Map;
 import java.util.Set;
@@ -197,6 +199,23 @@ public interface MetadataStore {
   Set<MetadataSearchResultRecord> searchMetadataOnType(MetadataScope scope, String namespaceId, String searchQuery,
                                                        Set<MetadataSearchTargetType> types);
 
+  /**
+   * Search the Metadata Dataset for the specified target types in both {@link MetadataScope#USER} and
+   * {@link MetadataScope#SYSTEM}, returning one page of the sorted results. Metadata is only fetched for the
+   * entities in the returned page.
+   *
+   * @param namespaceId the namespace to search in
+   * @param searchQuery the search query, which could be of two forms: [key]:[value] or just [value]
+   * @param types the {@link MetadataSearchTargetType} to restrict the search to, if empty all types are searched
+   * @param sortInfo how the results should be sorted
+   * @param offset the index of the first result to return in the sorted results
+   * @param limit the maximum number of results to return
+   * @param filter the entities to include in the results, applied before sorting and pagination
+   * @return the {@link MetadataSearchResponse} containing the requested page and the total number of results
+   */
+  MetadataSearchResponse search(String namespaceId, String searchQuery, Set<MetadataSearchTargetType> types,
+                                SortInfo sortInfo, int offset, int limit, Predicate<NamespacedEntityId> filter);
+
   /**
    * Returns the snapshot of the metadata for entities on or before the given time in both {@link MetadataScope#USER}
    * and {@link MetadataScope#SYSTEM}.
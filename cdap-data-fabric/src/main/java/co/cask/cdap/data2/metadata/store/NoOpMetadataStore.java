@@ -19,8 +19,10 @@ import co.cask.cdap.data2.metadata.indexer.Indexer;
 import co.cask.cdap.proto.id.NamespacedEntityId;
 import co.cask.cdap.proto.metadata.MetadataRecord;
 import co.cask.cdap.proto.metadata.MetadataScope;
+import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
 import co.cask.cdap.proto.metadata.MetadataSearchTargetType;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 
 import java.util.Collections;
@@ -137,6 +139,14 @@ public class NoOpMetadataStore implements MetadataStore {
     return Collections.emptySet();
   }
 
+  @Override
+  public MetadataSearchResponse search(String namespaceId, String searchQuery, Set<MetadataSearchTargetType> types,
+                                       SortInfo sortInfo, int offset, int limit,
+                                       Predicate<NamespacedEntityId> filter) {
+    return new MetadataSearchResponse(sortInfo.toString(), offset, limit, 0,
+                                      Collections.<MetadataSearchResultRecord>emptySet());
+  }
+
   @Override
   public Set<MetadataRecord> getSnapshotBeforeTime(Set<NamespacedEntityId> namespacedEntityIds, long timeMillis) {
     return ImmutableSet.<MetadataRecord>builder()
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.metadata.store;
+
+import com.google.common.base.Objects;
+
+/**
+ * Describes how metadata search results should be ordered.
+ */
+public final class SortInfo {
+
+  /**
+   * The field to sort the search results on.
+   */
+  public enum SortBy {
+    /**
+     * Sort on the entity name.
+     */
+    NAME,
+
+    /**
+     * Sort on the number of search terms matched by the entity.
+     */
+    RELEVANCE
+  }
+
+  /**
+   * The sort order.
+   */
+  public enum SortOrder {
+    ASC,
+    DESC
+  }
+
+  public static final SortInfo DEFAULT = new SortInfo(SortBy.NAME, SortOrder.ASC);
+
+  private final SortBy sortBy;
+  private final SortOrder sortOrder;
+
+  public SortInfo(SortBy sortBy, SortOrder sortOrder) {
+    this.sortBy = sortBy;
+    this.sortOrder = sortOrder;
+  }
+
+  public SortBy getSortBy() {
+    return sortBy;
+  }
+
+  public SortOrder getSortOrder() {
+    return sortOrder;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SortInfo that = (SortInfo) o;
+    return sortBy == that.sortBy && sortOrder == that.sortOrder;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(sortBy, sortOrder);
+  }
+
+  @Override
+  public String toString() {
+    return sortBy.name().toLowerCase() + " " + sortOrder.name().toLowerCase();
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -67,6 +67,11 @@ public abstract class ForwardingQueueConsumer implements QueueConsumer, Transact
     return consumer.dequeue(maxBatchSize);
   }
 
+  @Override
+  public boolean mayHaveEntries() throws IOException {
+    return consumer.mayHaveEntries();
+  }
+
   @Override
   public void startTx(Transaction tx) {
     if (txAware != null) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -48,4 +48,12 @@ public interface QueueConsumer extends Closeable {
    * @return A {@link DequeueResult}.
    */
   DequeueResult<byte[]> dequeue(int maxBatchSize) throws IOException;
+
+  /**
+   * Checks whether a dequeue may return entries, without requiring a transaction. It is a cheap hint that can be
+   * used to avoid starting a transaction just to find out that the queue is empty.
+   *
+   * @return {@code false} if a dequeue is known to return an empty result, {@code true} otherwise
+   */
+  boolean mayHaveEntries() throws IOException;
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.transaction;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.tephra.Transaction;
+import org.apache.tephra.TransactionAware;
+import org.apache.twill.common.Threads;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link TransactionAware} that groups a collection of {@link TransactionAware}s and calls
+ * {@link TransactionAware#commitTx()} and {@link TransactionAware#rollbackTx()} on all of them in parallel,
+ * so that the time for persisting the changes of a transaction is bounded by the slowest member instead of
+ * the sum of all members. All other methods are called on the members sequentially.
+ *
+ * The members are committed using an executor shared by all instances of this class. If the executor is
+ * saturated, the remaining members are committed in the calling thread.
+ */
+public final class ParallelCommitTransactionAware implements TransactionAware {
+
+  private static final int MAX_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+  private static final ExecutorService EXECUTOR = createExecutor();
+
+  private final List<TransactionAware> txAwares;
+
+  public ParallelCommitTransactionAware(Collection<? extends TransactionAware> txAwares) {
+    this.txAwares = ImmutableList.copyOf(txAwares);
+  }
+
+  @Override
+  public void startTx(Transaction tx) {
+    for (TransactionAware txAware : txAwares) {
+      txAware.startTx(tx);
+    }
+  }
+
+  @Override
+  public void updateTx(Transaction tx) {
+    for (TransactionAware txAware : txAwares) {
+      txAware.updateTx(tx);
+    }
+  }
+
+  @Override
+  public Collection<byte[]> getTxChanges() {
+    List<byte[]> changes = Lists.newArrayList();
+    for (TransactionAware txAware : txAwares) {
+      changes.addAll(txAware.getTxChanges());
+    }
+    return changes;
+  }
+
+  @Override
+  public boolean commitTx() throws Exception {
+    return invokeAll(new TxOperation() {
+      @Override
+      public boolean invoke(TransactionAware txAware) throws Exception {
+        return txAware.commitTx();
+      }
+    });
+  }
+
+  @Override
+  public void postTxCommit() {
+    for (TransactionAware txAware : txAwares) {
+      txAware.postTxCommit();
+    }
+  }
+
+  @Override
+  public boolean rollbackTx() throws Exception {
+    return invokeAll(new TxOperation() {
+      @Override
+      public boolean invoke(TransactionAware txAware) throws Exception {
+        return txAware.rollbackTx();
+      }
+    });
+  }
+
+  @Override
+  public String getTransactionAwareName() {
+    List<String> names = Lists.newArrayListWithCapacity(txAwares.size());
+    for (TransactionAware txAware : txAwares) {
+      names.add(txAware.getTransactionAwareName());
+    }
+    return "ParallelCommit(" + Joiner.on(',').join(names) + ")";
+  }
+
+  /**
+   * Invokes the given operation on all members in parallel and waits for all of them to complete, so that the
+   * members are in a known state even if some of them failed.
+   *
+   * @return {@code true} if the operation returned {@code true} for all members
+   * @throws Exception the first failure of the operation if any of them failed
+   */
+  private boolean invokeAll(final TxOperation operation) throws Exception {
+    if (txAwares.isEmpty()) {
+      return true;
+    }
+
+    // Submits all but the first one to the executor, and invoke the first one in the current thread.
+    List<Future<Boolean>> futures = Lists.newArrayListWithCapacity(txAwares.size() - 1);
+    for (final TransactionAware txAware : txAwares.subList(1, txAwares.size())) {
+      futures.add(EXECUTOR.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return operation.invoke(txAware);
+        }
+      }));
+    }
+
+    boolean result = true;
+    Throwable failure = null;
+    try {
+      result = operation.invoke(txAwares.get(0));
+    } catch (Throwable t) {
+      failure = t;
+    }
+
+    // Always wait for all members, even if interrupted, so that none of them is still running when returning
+    for (Future<Boolean> future : futures) {
+      try {
+        result = Uninterruptibles.getUninterruptibly(future) && result;
+      } catch (ExecutionException e) {
+        failure = failure == null ? e.getCause() : failure;
+      }
+    }
+
+    if (failure != null) {
+      Throwables.propagateIfPossible(failure, Exception.class);
+      throw Throwables.propagate(failure);
+    }
+    return result;
+  }
+
+  private static ExecutorService createExecutor() {
+    return new ThreadPoolExecutor(0, MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                                  Threads.createDaemonThreadFactory("tx-parallel-commit-%d"),
+                                  new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /**
+   * An operation on a {@link TransactionAware}.
+   */
+  private interface TxOperation {
+    boolean invoke(TransactionAware txAware) throws Exception;
+  }
+}
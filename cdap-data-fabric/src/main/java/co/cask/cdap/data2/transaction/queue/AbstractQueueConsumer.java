@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -84,6 +84,11 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
   private final long maxDequeueMillis;
 
   private byte[] scanStartRow;
+  // Row from which entries not yet seen by this consumer can appear. It is only set after a dequeue that scanned to
+  // the end of the queue without finding anything. Null if unknown.
+  private byte[] probeStartRow;
+  // Whether the last scan went through all the rows visible to the transaction
+  private boolean scanCompleted;
   private boolean committed;
   protected Transaction transaction;
   protected int commitCount;
@@ -136,15 +141,32 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
   @Override
   public DequeueResult<byte[]> dequeue(int maxBatchSize) throws IOException {
+    scanCompleted = false;
     DequeueResult<byte[]> result = performDequeue(maxBatchSize);
     // Start row can be updated to the largest rowKey in the consumingEntries
     // that is smaller than or equal to scanStartRow. If no such key exists, update start row to scanStartRow
     byte[] floorKey = consumingEntries.floorKey(scanStartRow);
     updateStartRow(floorKey == null ? scanStartRow : floorKey);
 
+    // If nothing can be dequeued after looking at all visible rows, new entries can only come from transactions that
+    // were not yet committed when this transaction started.
+    if (result.isEmpty() && scanCompleted && entryCache.isEmpty()) {
+      long writePointer = Math.min(transaction.getFirstInProgress(), transaction.getReadPointer() + 1);
+      probeStartRow = QueueEntryRow.getQueueEntryRowKey(queueName, writePointer, 0);
+    } else {
+      probeStartRow = null;
+    }
     return result;
   }
 
+  @Override
+  public boolean mayHaveEntries() throws IOException {
+    if (probeStartRow == null || !entryCache.isEmpty()) {
+      return true;
+    }
+    return hasRows(probeStartRow, Bytes.stopKeyForPrefix(queueRowPrefix));
+  }
+
   @Override
   public void startTx(Transaction tx) {
     consumingEntries.clear();
@@ -202,6 +224,15 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     return true;
   }
 
+  /**
+   * Returns whether there is any queue row in the given range that this consumer has not processed, without using a
+   * transaction. It is used by {@link #mayHaveEntries()} and may return {@code true} for rows that turn out to be
+   * not consumable. By default it always returns {@code true}.
+   */
+  protected boolean hasRows(byte[] startRow, byte[] stopRow) throws IOException {
+    return true;
+  }
+
   /**
    * Called when the start row is updated.
    */
@@ -320,6 +351,7 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     QueueScanner scanner = getScanner(scanStartRow,
                                       QueueEntryRow.getStopRowForTransaction(queueRowPrefix, transaction),
                                       numRows);
+    scanCompleted = false;
     try {
       // Try fill up the cache
       boolean firstScannedRow = true;
@@ -327,6 +359,7 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
         ImmutablePair<byte[], Map<byte[], byte[]>> entry = scanner.next();
         if (entry == null) {
           // No more result, breaking out.
+          scanCompleted = true;
           break;
         }
 
@@ -348,6 +381,7 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
         // If writes later than the reader pointer, abort the loop, as entries that comes later are all uncommitted.
         // this is probably not needed due to the limit of the scan to the stop row, but to be safe...
         if (writePointer > readPointer) {
+          scanCompleted = true;
           break;
         }
         // If the write is in the excluded list, ignore it.
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -305,6 +305,12 @@ public class HBaseQueueClientFactory implements QueueClientFactory, ProgramConte
       return consumers.peek().dequeue(maxBatchSize);
     }
 
+    @Override
+    public boolean mayHaveEntries() throws IOException {
+      // Moving between consumers for different barriers requires transactions
+      return consumers.size() != 1 || consumers.peek().mayHaveEntries();
+    }
+
     @Override
     public void close() throws IOException {
       for (HBaseQueueConsumer consumer : consumers) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -141,6 +141,20 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
     return queueStrategy.createScanner(getConfig(), hTable, scan, numRows);
   }
 
+  @Override
+  protected boolean hasRows(byte[] startRow, byte[] stopRow) throws IOException {
+    if (!canConsume || closed) {
+      return true;
+    }
+    Scan scan = createScan(startRow, getScanStopRow(stopRow), 1, new HashMap<String, byte[]>());
+    QueueScanner scanner = queueStrategy.createScanner(getConfig(), hTable, scan, 1);
+    try {
+      return scanner.next() != null;
+    } finally {
+      scanner.close();
+    }
+  }
+
   @Override
   public void close() throws IOException {
     if (closed) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -91,6 +91,12 @@ public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
     }
   }
 
+  @Override
+  public boolean mayHaveEntries() {
+    // Entries are only removed once consumed by all groups, hence this may be true for entries already consumed
+    return getQueue().getSize() > 0;
+  }
+
   @Override
   public void startTx(Transaction tx) {
     currentTx = tx;
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -143,6 +143,16 @@ public final class LevelDBQueueConsumer extends AbstractQueueConsumer {
     core.undo(changes, KeyValue.LATEST_TIMESTAMP);
   }
 
+  @Override
+  protected boolean hasRows(byte[] startRow, byte[] stopRow) throws IOException {
+    Scanner scanner = core.scan(startRow, stopRow, null, null, Transaction.ALL_VISIBLE_LATEST);
+    try {
+      return scanner.next() != null;
+    } finally {
+      scanner.close();
+    }
+  }
+
   @Override
   protected QueueScanner getScanner(byte[] startRow, byte[] stopRow, int numRows) throws IOException {
     final Scanner scanner = core.scan(startRow, stopRow, null, null, Transaction.ALL_VISIBLE_LATEST);
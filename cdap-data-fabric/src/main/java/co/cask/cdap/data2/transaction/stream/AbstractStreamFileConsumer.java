@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,6 +18,7 @@ package co.cask.cdap.data2.transaction.stream;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data.file.ReadFilters;
@@ -33,6 +34,7 @@ import co.cask.cdap.proto.id.StreamId;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
@@ -57,6 +59,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -94,6 +97,20 @@ import javax.annotation.concurrent.NotThreadSafe;
  *   state = ConsumerEntryState.getState(), either CLAIMED or PROCESSED
  * }</pre>
  *
+ * For FIFO consumer groups with more than one instance, if {@link Constants.Stream#CONSUMER_FIFO_LEASE_SIZE} is
+ * set, instances lease ranges of stream file offsets instead of claiming each event. A range is identified by
+ * the row key of its first offset and the lease is stored in a separate column
+ * ({@link QueueEntryRow#COLUMN_FAMILY}:{@link #LEASE_COLUMN_PREFIX}):
+ *
+ * <pre>{@code
+ *   lease_value = <instance_id> <expire_time> <write_pointer> <processed_offset> <committed_offset>
+ *   instance_id = 4 bytes Instance id of the consumer that owns the range.
+ *   expire_time = 8 bytes timestamp in milliseconds after which the lease can be taken over.
+ *   write_pointer = 8 bytes Transaction write pointer of the consumer who updates the processed offset.
+ *   processed_offset = 8 bytes offset of the last event processed in the range by that transaction.
+ *   committed_offset = 8 bytes offset of the last event processed in the range before that transaction.
+ * }</pre>
+ *
  */
 @NotThreadSafe
 public abstract class AbstractStreamFileConsumer implements StreamConsumer {
@@ -137,7 +154,18 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
       }
     };
 
+  protected static final byte[] LEASE_COLUMN_PREFIX = new byte[] {'l'};
+
+  private static final long DEFAULT_LEASE_TIMEOUT_SECONDS = 60L;
+
+  // Maximum number of range leases to cache in memory
+  private static final int MAX_CACHED_LEASES = 1000;
+
+  // Minimum time in milliseconds before checking again an expired lease that cannot be taken over
+  private static final long LEASE_RECHECK_MILLIS = 1000L;
+
   protected final byte[] stateColumnName;
+  protected final byte[] leaseColumnName;
 
   private final long txTimeoutNano;
   private final StreamId streamId;
@@ -152,6 +180,15 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
   private final Map<byte[], SortedMap<byte[], byte[]>> entryStates;
   private final Set<byte[]> entryStatesScanCompleted;
 
+  // Size of the offset ranges leased by this consumer, or 0 if events are claimed individually
+  private final long leaseSize;
+  private final long leaseTimeoutMillis;
+  private final Map<ByteBuffer, RangeLease> rangeLeases;
+  // Map from row key prefix to the offset this consumer started reading from, for files that were partially read
+  private final Map<byte[], Long> beginOffsets;
+  // Range leases updated in the current transaction, with the value before the update
+  private final Map<RangeLease, byte[]> leaseChanges;
+
   private final StreamConsumerState consumerState;
   private final List<StreamEventOffset> eventCache;
   private Transaction transaction;
@@ -191,10 +228,36 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     this.entryStates = Maps.newTreeMap(ROW_PREFIX_COMPARATOR);
     this.entryStatesScanCompleted = Sets.newTreeSet(ROW_PREFIX_COMPARATOR);
 
+    if (consumerConfig.getDequeueStrategy() == DequeueStrategy.FIFO && consumerConfig.getGroupSize() > 1) {
+      this.leaseSize = cConf.getLong(Constants.Stream.CONSUMER_FIFO_LEASE_SIZE, 0L);
+    } else {
+      this.leaseSize = 0L;
+    }
+    this.leaseTimeoutMillis = TimeUnit.SECONDS.toMillis(cConf.getLong(Constants.Stream.CONSUMER_FIFO_LEASE_TIMEOUT,
+                                                                      DEFAULT_LEASE_TIMEOUT_SECONDS));
+    this.rangeLeases = new LinkedHashMap<ByteBuffer, RangeLease>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ByteBuffer, RangeLease> eldest) {
+        return size() > MAX_CACHED_LEASES;
+      }
+    };
+    this.beginOffsets = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    this.leaseChanges = Maps.newLinkedHashMap();
+
     this.eventCache = Lists.newArrayList();
     this.consumerState = beginConsumerState;
     this.lastPersistedState = new StreamConsumerState(beginConsumerState);
     this.stateColumnName = Bytes.add(QueueEntryRow.STATE_COLUMN_PREFIX, Bytes.toBytes(consumerConfig.getGroupId()));
+    this.leaseColumnName = Bytes.add(LEASE_COLUMN_PREFIX, Bytes.toBytes(consumerConfig.getGroupId()));
+
+    if (leaseSize > 0) {
+      for (StreamFileOffset offset : beginConsumerState.getState()) {
+        if (offset.getOffset() > 0) {
+          byte[] row = encodeRow(offset);
+          beginOffsets.put(Arrays.copyOf(row, row.length - Longs.BYTES), offset.getOffset());
+        }
+      }
+    }
   }
 
   protected void doClose() throws IOException {
@@ -209,6 +272,23 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
 
   protected abstract StateScanner scanStates(byte[] startRow, byte[] endRow) throws IOException;
 
+  /**
+   * Returns the lease value stored in the given row or {@code null} if the row has no lease.
+   */
+  @Nullable
+  protected abstract byte[] getLease(byte[] row) throws IOException;
+
+  /**
+   * Sets the lease value of the given row if the current value is the same as the expected one.
+   *
+   * @param row the row of the lease
+   * @param expected the expected lease value or {@code null} if the row is expected to have no lease
+   * @param value the new lease value
+   * @return {@code true} if the lease is updated, {@code false} otherwise
+   */
+  protected abstract boolean compareAndSetLease(byte[] row, @Nullable byte[] expected,
+                                                byte[] value) throws IOException;
+
   @Override
   public final StreamId getStreamId() {
     return streamId;
@@ -315,6 +395,7 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     } else {
       polledEvents.clear();
     }
+    leaseChanges.clear();
 
     committed = false;
   }
@@ -336,6 +417,11 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
       return true;
     }
 
+    if (leaseSize > 0) {
+      committed = true;
+      return commitLeases();
+    }
+
     // For each polled events, set the state column to PROCESSED
     updateState(Iterables.transform(polledEvents, EVENT_ROW_KEY), polledEvents.size(),
                 encodeStateColumn(ConsumerEntryState.PROCESSED));
@@ -374,6 +460,13 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     // Insert all polled events back to beginning of the eventCache
     eventCache.addAll(0, Lists.transform(polledEvents, CONVERT_STREAM_EVENT_OFFSET));
 
+    if (leaseSize > 0) {
+      if (committed) {
+        rollbackLeases();
+      }
+      return true;
+    }
+
     // Special case for FIFO. On rollback, put the CLAIMED state into the entry states for claim entry to use.
     byte[] fifoState = null;
     if (consumerConfig.getDequeueStrategy() == DequeueStrategy.FIFO && consumerConfig.getGroupSize() > 1) {
@@ -452,11 +545,18 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     int eventsClaimed = 0;
     while (result.size() < maxEvents && iterator.hasNext()) {
       StreamEventOffset event = iterator.next();
-      byte[] stateRow = claimEntry(event.getOffset(), stateContent);
+      RangeLease lease = null;
+      byte[] stateRow;
+      if (leaseSize > 0) {
+        lease = claimLeasedEntry(event.getOffset());
+        stateRow = lease == null ? null : lease.getRow();
+      } else {
+        stateRow = claimEntry(event.getOffset(), stateContent);
+      }
       if (stateRow == null) {
         continue;
       }
-      result.add(new PollStreamEvent(event, stateRow));
+      result.add(new PollStreamEvent(event, stateRow, lease));
       eventsClaimed++;
     }
     return eventsClaimed;
@@ -497,10 +597,7 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
    * @return The row key for writing to the state table if successfully claimed or {@code null} if not claimed.
    */
   private byte[] claimEntry(StreamFileOffset offset, byte[] claimedStateContent) throws IOException {
-    ByteArrayDataOutput out = ByteStreams.newDataOutput(50);
-    out.writeLong(consumerConfig.getGroupId());
-    StreamUtils.encodeOffset(out, offset);
-    byte[] row = out.toByteArray();
+    byte[] row = encodeRow(offset);
 
     SortedMap<byte[], byte[]> rowStates = getInitRowStates(row);
 
@@ -520,6 +617,192 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     return row;
   }
 
+  /**
+   * Returns the state table row key for the given stream file offset.
+   */
+  private byte[] encodeRow(StreamFileOffset offset) {
+    ByteArrayDataOutput out = ByteStreams.newDataOutput(50);
+    out.writeLong(consumerConfig.getGroupId());
+    try {
+      StreamUtils.encodeOffset(out, offset);
+    } catch (IOException e) {
+      // Shouldn't happen as it is writing to memory
+      throw Throwables.propagate(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Try to claim a stream event offset through the lease of the offset range that contains it.
+   *
+   * @return The {@link RangeLease} owned by this consumer if the event is claimed or {@code null} if not claimed.
+   */
+  @Nullable
+  private RangeLease claimLeasedEntry(StreamFileOffset offset) throws IOException {
+    long eventOffset = offset.getOffset();
+    long rangeStart = eventOffset - eventOffset % leaseSize;
+
+    // The lease row is the row key of the first offset in the range
+    byte[] row = encodeRow(offset);
+    Bytes.putLong(row, row.length - Longs.BYTES, rangeStart);
+
+    ByteBuffer key = ByteBuffer.wrap(row);
+    RangeLease lease = rangeLeases.get(key);
+    if (lease == null) {
+      // If this consumer started reading in the middle of the range, it may have missed events of the range
+      Long beginOffset = beginOffsets.get(Arrays.copyOf(row, row.length - Longs.BYTES));
+      long skippedOffset = beginOffset != null && beginOffset > rangeStart ? Long.MAX_VALUE : -1L;
+      lease = new RangeLease(row, getLease(row), skippedOffset);
+      rangeLeases.put(key, lease);
+    }
+
+    if (!acquireLease(lease, System.currentTimeMillis())) {
+      lease.skipped(eventOffset);
+      return null;
+    }
+
+    // Events up to the processed offset were already processed by this or a previous owner of the range
+    Long processedOffset = getProcessedOffset(lease);
+    return processedOffset == null || eventOffset > processedOffset ? lease : null;
+  }
+
+  /**
+   * Makes sure this consumer owns the given lease, by acquiring or renewing it if needed.
+   *
+   * @return {@code true} if this consumer owns the lease, {@code false} otherwise
+   */
+  private boolean acquireLease(RangeLease lease, long now) throws IOException {
+    int instanceId = consumerConfig.getInstanceId();
+    boolean owned = lease.getInstanceId() == instanceId;
+
+    // Use the cached lease if it is not time to renew or check the lease yet
+    if (owned && now < lease.getExpireTime() - leaseTimeoutMillis / 2) {
+      return true;
+    }
+    if (!owned) {
+      if (now < lease.getCheckTime()) {
+        return false;
+      }
+      if (!lease.isFresh()) {
+        lease.setValue(getLease(lease.getRow()));
+      }
+    }
+
+    // Try to acquire and retry once with the latest value on conflict
+    for (int i = 0; i < 2; i++) {
+      if (!canAcquire(lease, now)) {
+        lease.setCheckTime(Math.max(lease.getExpireTime(), now + LEASE_RECHECK_MILLIS));
+        return false;
+      }
+
+      // The processed offset is kept if the lease is renewed. When a lease is acquired, the processed offset is
+      // resolved with the current transaction, so that it doesn't depend on transaction of the previous owner.
+      byte[] value;
+      if (lease.getInstanceId() == instanceId) {
+        value = RangeLease.encode(instanceId, now + leaseTimeoutMillis, lease.getWritePointer(),
+                                  lease.getProcessedOffset(), lease.getCommittedOffset());
+      } else {
+        Long processedOffset = getProcessedOffset(lease);
+        long offset = processedOffset == null ? lease.getCommittedOffset() : processedOffset;
+        value = RangeLease.encode(instanceId, now + leaseTimeoutMillis, 0L, offset, offset);
+      }
+
+      if (compareAndSetLease(lease.getRow(), lease.getValue(), value)) {
+        lease.setValue(value);
+        return true;
+      }
+      lease.setValue(getLease(lease.getRow()));
+    }
+    lease.setCheckTime(now + LEASE_RECHECK_MILLIS);
+    return false;
+  }
+
+  /**
+   * Returns whether this consumer can acquire the given lease.
+   */
+  private boolean canAcquire(RangeLease lease, long now) {
+    int owner = lease.getInstanceId();
+    // Free, owned by itself or owned by an instance that no longer exists
+    if (owner < 0 || owner == consumerConfig.getInstanceId() || owner >= consumerConfig.getGroupSize()) {
+      return true;
+    }
+    if (now < lease.getExpireTime()) {
+      return false;
+    }
+
+    // An expired lease can only be taken over if all the events in the range that this consumer skipped were
+    // processed. Otherwise those events would never be processed.
+    Long processedOffset = getProcessedOffset(lease);
+    return processedOffset != null && processedOffset >= lease.getSkippedOffset();
+  }
+
+  /**
+   * Returns the offset of the last processed event in the range of the given lease, as seen by the current
+   * transaction. Returns {@code null} if it is unknown because the transaction updating it is still in progress.
+   */
+  @Nullable
+  private Long getProcessedOffset(RangeLease lease) {
+    long writePointer = lease.getWritePointer();
+    if (writePointer == transaction.getWritePointer() || transaction.isVisible(writePointer)) {
+      return lease.getProcessedOffset();
+    }
+    // If the transaction failed or if it is from the same instance (which means it is from a previous run),
+    // the processed offset before the transaction can be used.
+    if (Arrays.binarySearch(transaction.getInvalids(), writePointer) >= 0
+      || lease.getInstanceId() == consumerConfig.getInstanceId()
+      || lease.getInstanceId() >= consumerConfig.getGroupSize()) {
+      return lease.getCommittedOffset();
+    }
+    return null;
+  }
+
+  /**
+   * Records the last processed offset of all the leases used by the polled events, which also renews the leases.
+   *
+   * @return {@code true} if all leases are updated, {@code false} if any of the leases was taken over
+   */
+  private boolean commitLeases() throws IOException {
+    Map<RangeLease, Long> processedOffsets = Maps.newLinkedHashMap();
+    for (PollStreamEvent event : polledEvents) {
+      Long offset = processedOffsets.get(event.getLease());
+      long eventOffset = event.getStreamEventOffset().getOffset().getOffset();
+      if (offset == null || eventOffset > offset) {
+        processedOffsets.put(event.getLease(), eventOffset);
+      }
+    }
+
+    long expireTime = System.currentTimeMillis() + leaseTimeoutMillis;
+    for (Map.Entry<RangeLease, Long> entry : processedOffsets.entrySet()) {
+      RangeLease lease = entry.getKey();
+      byte[] oldValue = lease.getValue();
+      byte[] value = RangeLease.encode(consumerConfig.getInstanceId(), expireTime, transaction.getWritePointer(),
+                                       entry.getValue(), lease.getProcessedOffset());
+      if (!compareAndSetLease(lease.getRow(), oldValue, value)) {
+        LOG.debug("Lease of range {} is taken over by another consumer.", Bytes.toStringBinary(lease.getRow()));
+        lease.setValue(getLease(lease.getRow()));
+        return false;
+      }
+      lease.setValue(value);
+      leaseChanges.put(lease, oldValue);
+    }
+    return true;
+  }
+
+  /**
+   * Restores the leases updated by {@link #commitLeases()}.
+   */
+  private void rollbackLeases() throws IOException {
+    for (Map.Entry<RangeLease, byte[]> entry : leaseChanges.entrySet()) {
+      RangeLease lease = entry.getKey();
+      if (compareAndSetLease(lease.getRow(), lease.getValue(), entry.getValue())) {
+        lease.setValue(entry.getValue());
+      } else {
+        lease.setValue(getLease(lease.getRow()));
+      }
+    }
+    leaseChanges.clear();
+  }
+
   /**
    * Returns the initial scanned states for the given entry key.
    *
@@ -580,7 +863,7 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     // Logic is adpated from QueueEntryRow.canConsume(), with modification.
 
     if (stateValue == null) {
-      // State value shouldn't be null, as the row is only written with state value.
+      // State value is null only if the row only contains a range lease.
       return false;
     }
 
@@ -640,11 +923,13 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
 
     private final byte[] stateRow;
     private final StreamEventOffset streamEventOffset;
+    private final RangeLease lease;
 
-    protected PollStreamEvent(StreamEventOffset streamEventOffset, byte[] stateRow) {
+    protected PollStreamEvent(StreamEventOffset streamEventOffset, byte[] stateRow, @Nullable RangeLease lease) {
       super(streamEventOffset);
       this.streamEventOffset = streamEventOffset;
       this.stateRow = stateRow;
+      this.lease = lease;
     }
 
     public StreamEventOffset getStreamEventOffset() {
@@ -661,6 +946,127 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     private byte[] getStateRow() {
       return stateRow;
     }
+
+    @Nullable
+    private RangeLease getLease() {
+      return lease;
+    }
+  }
+
+  /**
+   * Cached lease of a range of stream file offsets.
+   */
+  private static final class RangeLease {
+
+    private static final int VALUE_SIZE = Ints.BYTES + Longs.BYTES * 4;
+
+    private final byte[] row;
+    private byte[] value;
+    private int instanceId;
+    private long expireTime;
+    private long writePointer;
+    private long processedOffset;
+    private long committedOffset;
+    private long skippedOffset;
+    private long checkTime;
+    private boolean fresh;
+
+    static byte[] encode(int instanceId, long expireTime, long writePointer,
+                         long processedOffset, long committedOffset) {
+      byte[] value = new byte[VALUE_SIZE];
+      int offset = Bytes.putInt(value, 0, instanceId);
+      offset = Bytes.putLong(value, offset, expireTime);
+      offset = Bytes.putLong(value, offset, writePointer);
+      offset = Bytes.putLong(value, offset, processedOffset);
+      Bytes.putLong(value, offset, committedOffset);
+      return value;
+    }
+
+    RangeLease(byte[] row, @Nullable byte[] value, long skippedOffset) {
+      this.row = row;
+      this.skippedOffset = skippedOffset;
+      setValue(value);
+    }
+
+    void setValue(@Nullable byte[] value) {
+      this.value = value;
+      this.fresh = true;
+      if (value == null) {
+        instanceId = -1;
+        expireTime = 0L;
+        writePointer = 0L;
+        processedOffset = -1L;
+        committedOffset = -1L;
+        return;
+      }
+      instanceId = Bytes.toInt(value, 0);
+      expireTime = Bytes.toLong(value, Ints.BYTES);
+      writePointer = Bytes.toLong(value, Ints.BYTES + Longs.BYTES);
+      processedOffset = Bytes.toLong(value, Ints.BYTES + Longs.BYTES * 2);
+      committedOffset = Bytes.toLong(value, Ints.BYTES + Longs.BYTES * 3);
+    }
+
+    byte[] getRow() {
+      return row;
+    }
+
+    @Nullable
+    byte[] getValue() {
+      return value;
+    }
+
+    /**
+     * Returns the id of the instance owning this lease, or {@code -1} if the range was never leased.
+     */
+    int getInstanceId() {
+      return instanceId;
+    }
+
+    long getExpireTime() {
+      return expireTime;
+    }
+
+    long getWritePointer() {
+      return writePointer;
+    }
+
+    long getProcessedOffset() {
+      return processedOffset;
+    }
+
+    long getCommittedOffset() {
+      return committedOffset;
+    }
+
+    long getSkippedOffset() {
+      return skippedOffset;
+    }
+
+    /**
+     * Records an event in the range that is skipped since the range is owned by another consumer.
+     */
+    void skipped(long offset) {
+      skippedOffset = Math.max(skippedOffset, offset);
+    }
+
+    long getCheckTime() {
+      return checkTime;
+    }
+
+    /**
+     * Sets the time for checking this lease again. The cached value is considered stale after this call.
+     */
+    void setCheckTime(long checkTime) {
+      this.checkTime = checkTime;
+      this.fresh = false;
+    }
+
+    /**
+     * Returns {@code true} if the cached value was just read or written.
+     */
+    boolean isFresh() {
+      return fresh;
+    }
   }
 
   /**
@@ -30,6 +30,7 @@ import co.cask.cdap.common.security.Impersonator;
 import co.cask.cdap.common.utils.OSDetector;
 import co.cask.cdap.data.stream.CoordinatorStreamProperties;
 import co.cask.cdap.data.stream.StreamCoordinatorClient;
+import co.cask.cdap.data.stream.StreamDataBlockCodec;
 import co.cask.cdap.data.stream.StreamFileOffset;
 import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.service.StreamMetaStore;
@@ -316,7 +317,8 @@ public class FileStreamAdmin implements StreamAdmin {
           }
 
           return new StreamConfig(streamId, config.getPartitionDuration(), config.getIndexInterval(),
-                                  config.getTTL(), getStreamLocation(streamId), config.getFormat(), threshold);
+                                  config.getTTL(), getStreamLocation(streamId), config.getFormat(), threshold,
+                                  config.getCompressionCodec());
         }
       });
     } catch (Exception ex) {
@@ -438,6 +440,8 @@ public class FileStreamAdmin implements StreamAdmin {
             Constants.Stream.TTL, cConf.get(Constants.Stream.TTL)));
           int threshold = Integer.parseInt(properties.getProperty(
             Constants.Stream.NOTIFICATION_THRESHOLD, cConf.get(Constants.Stream.NOTIFICATION_THRESHOLD)));
+          StreamDataBlockCodec codec = StreamDataBlockCodec.fromName(properties.getProperty(
+            Constants.Stream.COMPRESSION_CODEC, cConf.get(Constants.Stream.COMPRESSION_CODEC)));
           String description = properties.getProperty(Constants.Stream.DESCRIPTION);
           FormatSpecification formatSpec = null;
           if (properties.containsKey(Constants.Stream.FORMAT_SPECIFICATION)) {
@@ -446,7 +450,8 @@ public class FileStreamAdmin implements StreamAdmin {
           }
 
           final StreamConfig config = new StreamConfig(streamId, partitionDuration, indexInterval,
-                                                       ttl, streamLocation, formatSpec, threshold);
+                                                       ttl, streamLocation, formatSpec, threshold,
+                                                       codec == null ? null : codec.getName());
           ImpersonationUtils.doAs(ugi, new Callable<Void>() {
             @Override
             public Void call() throws Exception {
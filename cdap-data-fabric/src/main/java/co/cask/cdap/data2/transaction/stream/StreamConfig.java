@@ -23,6 +23,7 @@ import com.google.common.base.Objects;
 import org.apache.twill.filesystem.Location;
 
 import java.util.Collections;
+import javax.annotation.Nullable;
 
 /**
  * Represents the configuration of a stream. This class needs to be GSON serializable.
@@ -41,11 +42,18 @@ public final class StreamConfig {
   private final long ttl;
   private final FormatSpecification format;
   private final int notificationThresholdMB;
+  private final String compressionCodec;
 
   private final transient Location location;
 
   public StreamConfig(StreamId streamId, long partitionDuration, long indexInterval, long ttl,
                       Location location, FormatSpecification format, int notificationThresholdMB) {
+    this(streamId, partitionDuration, indexInterval, ttl, location, format, notificationThresholdMB, null);
+  }
+
+  public StreamConfig(StreamId streamId, long partitionDuration, long indexInterval, long ttl,
+                      Location location, FormatSpecification format, int notificationThresholdMB,
+                      @Nullable String compressionCodec) {
     this.streamId = streamId;
     this.partitionDuration = partitionDuration;
     this.indexInterval = indexInterval;
@@ -53,6 +61,7 @@ public final class StreamConfig {
     this.location = location;
     this.notificationThresholdMB = notificationThresholdMB;
     this.format = format;
+    this.compressionCodec = compressionCodec;
   }
 
   /**
@@ -104,6 +113,15 @@ public final class StreamConfig {
     return notificationThresholdMB;
   }
 
+  /**
+   * @return The name of the codec for compressing data blocks in stream files or {@code null} if stream files
+   *         are not compressed.
+   */
+  @Nullable
+  public String getCompressionCodec() {
+    return compressionCodec;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
@@ -114,6 +132,7 @@ public final class StreamConfig {
       .add("location", location)
       .add("format", format)
       .add("notificationThresholdMB", notificationThresholdMB)
+      .add("compressionCodec", compressionCodec)
       .toString();
   }
 
@@ -152,7 +171,8 @@ public final class StreamConfig {
                               Objects.firstNonNull(ttl, config.getTTL()),
                               config.getLocation(),
                               Objects.firstNonNull(formatSpec, config.getFormat()),
-                              Objects.firstNonNull(notificationThreshold, config.getNotificationThresholdMB()));
+                              Objects.firstNonNull(notificationThreshold, config.getNotificationThresholdMB()),
+                              config.getCompressionCodec());
     }
   }
 }
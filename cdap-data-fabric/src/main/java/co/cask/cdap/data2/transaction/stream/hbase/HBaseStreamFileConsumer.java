@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -33,6 +33,7 @@ import co.cask.cdap.hbase.wd.DistributedScanner;
 import co.cask.cdap.proto.id.StreamId;
 import com.google.common.collect.Lists;
 import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
@@ -90,6 +91,21 @@ public final class HBaseStreamFileConsumer extends AbstractStreamFileConsumer {
     return hTable.checkAndPut(put.getRow(), QueueEntryRow.COLUMN_FAMILY, stateColumnName, oldValue, put);
   }
 
+  @Nullable
+  @Override
+  protected byte[] getLease(byte[] row) throws IOException {
+    Get get = new Get(keyDistributor.getDistributedKey(row));
+    get.addColumn(QueueEntryRow.COLUMN_FAMILY, leaseColumnName);
+    return hTable.get(get).getValue(QueueEntryRow.COLUMN_FAMILY, leaseColumnName);
+  }
+
+  @Override
+  protected boolean compareAndSetLease(byte[] row, @Nullable byte[] expected, byte[] value) throws IOException {
+    Put put = new Put(keyDistributor.getDistributedKey(row));
+    put.add(QueueEntryRow.COLUMN_FAMILY, leaseColumnName, value);
+    return hTable.checkAndPut(put.getRow(), QueueEntryRow.COLUMN_FAMILY, leaseColumnName, expected, put);
+  }
+
   @Override
   protected void updateState(Iterable<byte[]> rows, int size, byte[] value) throws IOException {
     List<Put> puts = Lists.newArrayListWithCapacity(size);
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -90,6 +90,33 @@ public final class LevelDBStreamFileConsumer extends AbstractStreamFileConsumer
     }
   }
 
+  @Nullable
+  @Override
+  protected byte[] getLease(byte[] row) throws IOException {
+    synchronized (dbLock) {
+      return tableCore.getRow(row, new byte[][] { leaseColumnName }, null, null, -1,
+                              Transaction.ALL_VISIBLE_LATEST).get(leaseColumnName);
+    }
+  }
+
+  @Override
+  protected boolean compareAndSetLease(byte[] row, @Nullable byte[] expected, byte[] value) throws IOException {
+    synchronized (dbLock) {
+      Map<byte[], byte[]> values =
+        tableCore.getRow(row, new byte[][] { leaseColumnName }, null, null, -1, Transaction.ALL_VISIBLE_LATEST);
+      if (!Arrays.equals(values.get(leaseColumnName), expected)) {
+        return false;
+      }
+
+      NavigableMap<byte[], NavigableMap<byte[], byte[]>> changes = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      NavigableMap<byte[], byte[]> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      columns.put(leaseColumnName, value);
+      changes.put(row, columns);
+      tableCore.persist(changes, KeyValue.LATEST_TIMESTAMP);
+      return true;
+    }
+  }
+
   @Override
   protected void updateState(Iterable<byte[]> rows, int size, byte[] value) throws IOException {
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> changes = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.cube;
+
+import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.Measurement;
+import co.cask.cdap.data2.dataset2.lib.timeseries.Fact;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link FactAggregator}.
+ */
+public class FactAggregatorTest {
+
+  @Test
+  public void testAggregate() {
+    List<DimensionValue> dims1 = ImmutableList.of(new DimensionValue("app", "a1"), new DimensionValue("flow", "f1"));
+    List<DimensionValue> dims2 = ImmutableList.of(new DimensionValue("app", "a1"), new DimensionValue("flow", null));
+
+    List<Fact> facts = ImmutableList.of(
+      new Fact(1, dims1, ImmutableList.of(new Measurement("count", MeasureType.COUNTER, 1),
+                                          new Measurement("size", MeasureType.GAUGE, 10))),
+      new Fact(2, dims1, ImmutableList.of(new Measurement("count", MeasureType.COUNTER, 2),
+                                          new Measurement("size", MeasureType.GAUGE, 20))),
+      new Fact(2, dims2, new Measurement("count", MeasureType.COUNTER, 4)),
+      new Fact(61, dims1, new Measurement("count", MeasureType.COUNTER, 8)),
+      // Same measure name as a gauge should be kept apart from the counter
+      new Fact(3, dims1, new Measurement("count", MeasureType.GAUGE, 100))
+    );
+
+    // With 1 second resolution, only facts with the same timestamp are merged
+    List<Fact> aggregated = FactAggregator.aggregate(facts, 1);
+    Assert.assertEquals(7, FactAggregator.countMeasurements(facts));
+    Assert.assertEquals(7, FactAggregator.countMeasurements(aggregated));
+
+    // With 60 seconds resolution, facts with timestamp 1, 2 and 3 are merged
+    aggregated = FactAggregator.aggregate(facts, 60);
+    Assert.assertEquals(3, aggregated.size());
+    Assert.assertEquals(5, FactAggregator.countMeasurements(aggregated));
+
+    Map<String, Long> values = getValues(aggregated, 0, dims1);
+    Assert.assertEquals(3L, (long) values.get("count:COUNTER"));
+    Assert.assertEquals(100L, (long) values.get("count:GAUGE"));
+    Assert.assertEquals(20L, (long) values.get("size:GAUGE"));
+    Assert.assertEquals(4L, (long) getValues(aggregated, 0, dims2).get("count:COUNTER"));
+    Assert.assertEquals(8L, (long) getValues(aggregated, 60, dims1).get("count:COUNTER"));
+
+    // Merging already merged facts to a coarser resolution gives the same result as merging the original facts
+    List<Fact> hourly = FactAggregator.aggregate(facts, 3600);
+    Assert.assertEquals(getValues(hourly, 0, dims1), getValues(FactAggregator.aggregate(aggregated, 3600), 0, dims1));
+    Assert.assertEquals(11L, (long) getValues(hourly, 0, dims1).get("count:COUNTER"));
+  }
+
+  private Map<String, Long> getValues(List<Fact> facts, long timestamp, List<DimensionValue> dimensionValues) {
+    Map<String, Long> values = new HashMap<>();
+    for (Fact fact : facts) {
+      if (fact.getTimestamp() == timestamp && fact.getDimensionValues().equals(dimensionValues)) {
+        for (Measurement measurement : fact.getMeasurements()) {
+          Assert.assertNull(values.put(measurement.getName() + ":" + measurement.getType(), measurement.getValue()));
+        }
+      }
+    }
+    return values;
+  }
+}
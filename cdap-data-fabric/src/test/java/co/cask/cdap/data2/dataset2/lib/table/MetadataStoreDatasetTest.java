@@ -20,10 +20,14 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.data2.dataset2.DatasetFrameworkTestUtil;
+import co.cask.cdap.internal.app.store.RunRecordMeta;
+import co.cask.cdap.proto.ProgramRunStatus;
 import co.cask.cdap.proto.id.DatasetId;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.gson.Gson;
 import org.apache.tephra.TransactionAware;
 import org.apache.tephra.TransactionExecutor;
 import org.junit.Assert;
@@ -182,6 +186,89 @@ public class MetadataStoreDatasetTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testBinaryCodec() throws Exception {
+    DatasetId storeTable = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("testBinaryCodec");
+    dsFrameworkUtil.createInstance(Table.class.getName(), storeTable, DatasetProperties.EMPTY);
+
+    Table table = dsFrameworkUtil.getInstance(storeTable);
+    Assert.assertNotNull(table);
+    final MetadataStoreDataset jsonStore = new MetadataStoreDataset(table);
+    final MetadataStoreDataset binaryStore =
+      new MetadataStoreDataset(table, new BinaryMDSValueCodec(new Gson(), RunRecordMeta.class));
+    TransactionExecutor txnl = dsFrameworkUtil.newInMemoryTransactionExecutor((TransactionAware) table);
+
+    final List<RunRecordMeta> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      expected.add(new RunRecordMeta("run" + i, i, i % 2 == 0 ? null : (long) i + 10, ProgramRunStatus.COMPLETED,
+                                     ImmutableMap.of("key", "value" + i), null, "twill" + i));
+    }
+
+    // Write the first half as JSON and the second half as binary
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        for (int i = 0; i < expected.size(); i++) {
+          MetadataStoreDataset store = i < expected.size() / 2 ? jsonStore : binaryStore;
+          store.write(new MDSKey.Builder().add("run").add(i).build(), expected.get(i));
+          // Values of other types stay in JSON
+          binaryStore.write(new MDSKey.Builder().add("int").add(i).build(), i);
+        }
+      }
+    });
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // Binary store reads both encodings
+        Assert.assertEquals(expected,
+                            binaryStore.list(new MDSKey.Builder().add("run").build(), RunRecordMeta.class));
+        Assert.assertEquals(4, (int) jsonStore.get(new MDSKey.Builder().add("int").add(4).build(), Integer.class));
+
+        // Upgrade in batches
+        MDSKey startKey = new MDSKey.Builder().add("run").build();
+        MDSKey stopKey = new MDSKey(Bytes.stopKeyForPrefix(startKey.getKey()));
+        MDSKey nextKey = binaryStore.upgradeValues(startKey, stopKey, RunRecordMeta.class, 3);
+        Assert.assertNotNull(nextKey);
+        while (nextKey != null) {
+          nextKey = binaryStore.upgradeValues(nextKey, stopKey, RunRecordMeta.class, 3);
+        }
+      }
+    });
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Assert.assertEquals(expected,
+                            binaryStore.list(new MDSKey.Builder().add("run").build(), RunRecordMeta.class));
+        // All run records are now binary, which are still readable after binary encoding is turned off
+        Assert.assertEquals(expected,
+                            jsonStore.list(new MDSKey.Builder().add("run").build(), RunRecordMeta.class));
+
+        // Downgrade to JSON
+        MDSKey startKey = new MDSKey.Builder().add("run").build();
+        MDSKey stopKey = new MDSKey(Bytes.stopKeyForPrefix(startKey.getKey()));
+        MDSKey nextKey = jsonStore.upgradeValues(startKey, stopKey, RunRecordMeta.class, 3);
+        while (nextKey != null) {
+          nextKey = jsonStore.upgradeValues(nextKey, stopKey, RunRecordMeta.class, 3);
+        }
+      }
+    });
+
+    final Table rawTable = table;
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Assert.assertEquals(expected,
+                            jsonStore.list(new MDSKey.Builder().add("run").build(), RunRecordMeta.class));
+        for (int i = 0; i < expected.size(); i++) {
+          byte[] value = rawTable.get(new MDSKey.Builder().add("run").add(i).build().getKey(), Bytes.toBytes("c"));
+          Assert.assertFalse(BinaryMDSValueCodec.isBinary(value));
+        }
+      }
+    });
+  }
+
   private static class ScanFunction implements Function<MetadataStoreDataset.KeyValue<Integer>, Boolean> {
     private final List<Integer> values = new ArrayList<>();
     private final int limit;
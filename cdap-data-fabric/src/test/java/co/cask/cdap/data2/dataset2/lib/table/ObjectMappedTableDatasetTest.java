@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -23,7 +23,9 @@ import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.api.dataset.lib.ObjectMappedTable;
 import co.cask.cdap.api.dataset.lib.ObjectMappedTableProperties;
+import co.cask.cdap.api.dataset.table.ColumnValueFilter;
 import co.cask.cdap.api.dataset.table.Scan;
+import co.cask.cdap.api.dataset.table.TableSplit;
 import co.cask.cdap.data2.dataset2.DatasetFrameworkTestUtil;
 import co.cask.cdap.proto.id.DatasetId;
 import com.google.common.collect.Lists;
@@ -252,11 +254,41 @@ public class ObjectMappedTableDatasetTest {
           Assert.assertEquals(record, recordsRead.get(0));
         }
       });
+
+      // splits with a filter only include the matching records
+      txnl.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          Assert.assertEquals(1, readWithFilter(records, ColumnValueFilter.equalTo("stringField", "foobar")));
+          Assert.assertEquals(0, readWithFilter(records, ColumnValueFilter.equalTo("stringField", "other")));
+          Assert.assertEquals(1, readWithFilter(records, ColumnValueFilter.equalTo(Bytes.toBytes("intField"),
+                                                                                   Bytes.toBytes(Integer.MAX_VALUE))));
+        }
+      });
     } finally {
       dsFrameworkUtil.deleteInstance(RECORDS_ID);
     }
   }
 
+  private int readWithFilter(ObjectMappedTableDataset<Record> records,
+                             ColumnValueFilter filter) throws InterruptedException {
+    int count = 0;
+    for (Split split : records.getSplits(1, null, null)) {
+      TableSplit tableSplit = (TableSplit) split;
+      Split filteredSplit = new TableSplit(tableSplit.getStart(), tableSplit.getStop(), filter);
+      SplitReader<byte[], Record> splitReader = records.createSplitReader(filteredSplit);
+      try {
+        splitReader.initialize(filteredSplit);
+        while (splitReader.nextKeyValue()) {
+          count++;
+        }
+      } finally {
+        splitReader.close();
+      }
+    }
+    return count;
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testInvalidTypeFails() throws Exception {
     dsFrameworkUtil.createInstance(ObjectMappedTable.class.getName(),
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.common.utils.ImmutablePair;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Unit test for {@link SplitsUtil}.
+ */
+public class SplitsUtilTest {
+
+  private static final byte[] A = Bytes.toBytes("a");
+  private static final byte[] B = Bytes.toBytes("b");
+  private static final byte[] C = Bytes.toBytes("c");
+
+  @Test
+  public void testSubdivideAndCombine() {
+    List<ImmutablePair<KeyRange, Long>> regions = ImmutableList.of(
+      ImmutablePair.of(new KeyRange(null, A), 10L),
+      ImmutablePair.of(new KeyRange(A, B), 10L),
+      ImmutablePair.of(new KeyRange(B, C), 400L),
+      ImmutablePair.of(new KeyRange(C, null), 10L));
+
+    // the large region is subdivided
+    List<ImmutablePair<KeyRange, Long>> subdivided = SplitsUtil.subdivideRanges(regions, 100L);
+    Assert.assertEquals(7, subdivided.size());
+    Assert.assertEquals(regions.get(0), subdivided.get(0));
+    for (int i = 2; i < 6; i++) {
+      Assert.assertEquals(100L, (long) subdivided.get(i).getSecond());
+    }
+
+    // small regions are combined
+    List<KeyRange> splits = SplitsUtil.combineRanges(-1, subdivided, 100L);
+    Assert.assertEquals(5, splits.size());
+    Assert.assertEquals(new KeyRange(null, splits.get(0).getStop()), splits.get(0));
+    Assert.assertTrue(Bytes.compareTo(B, splits.get(0).getStop()) < 0);
+    verifyContiguous(splits);
+
+    // the number of splits is limited
+    splits = SplitsUtil.combineRanges(2, subdivided, 100L);
+    Assert.assertEquals(2, splits.size());
+    verifyContiguous(splits);
+
+    // without target size, no region is subdivided
+    Assert.assertEquals(regions, SplitsUtil.subdivideRanges(regions, 0L));
+  }
+
+  private void verifyContiguous(List<KeyRange> splits) {
+    Assert.assertNull(splits.get(0).getStart());
+    Assert.assertNull(splits.get(splits.size() - 1).getStop());
+    for (int i = 1; i < splits.size(); i++) {
+      Assert.assertArrayEquals(splits.get(i - 1).getStop(), splits.get(i).getStart());
+      Assert.assertTrue(Bytes.compareTo(splits.get(i).getStart(), splits.get(i).getStop() == null ?
+        new byte[] { (byte) 0xff, (byte) 0xff } : splits.get(i).getStop()) < 0);
+    }
+  }
+}
@@ -21,6 +21,7 @@ import co.cask.cdap.api.dataset.DatasetAdmin;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.metrics.MeteredDataset;
+import co.cask.cdap.api.dataset.table.ColumnValueFilter;
 import co.cask.cdap.api.dataset.table.ConflictDetection;
 import co.cask.cdap.api.dataset.table.Delete;
 import co.cask.cdap.api.dataset.table.Get;
@@ -38,6 +39,7 @@ import co.cask.cdap.data2.dataset2.TableAssert;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -1277,6 +1279,96 @@ public abstract class TableTest<T extends Table> {
     Assert.assertEquals(9, count);
   }
 
+  @Test
+  public void testScanWithColumnValueFilter() throws Exception {
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE);
+    admin.create();
+    try {
+      Transaction tx1 = txClient.startShort();
+      Table table = getTable(CONTEXT1, MY_TABLE);
+      ((TransactionAware) table).startTx(tx1);
+
+      byte[][] rows = { R1, R2, R3, R4, R5 };
+      byte[][] values = { V1, V2, V3, V4, V5 };
+      for (int i = 0; i < rows.length; i++) {
+        table.put(new Put(rows[i]).add(C1, values[i]).add(C2, V1));
+      }
+      table.put(R1, C3, V3);
+
+      // check that filters work against data written in same tx
+      verifyScanWithColumnValueFilter(table);
+
+      Assert.assertTrue(txClient.canCommit(tx1, ((TransactionAware) table).getTxChanges()));
+      Assert.assertTrue(((TransactionAware) table).commitTx());
+      Assert.assertTrue(txClient.commit(tx1));
+      ((TransactionAware) table).postTxCommit();
+
+      // verify against persisted data
+      Transaction tx2 = txClient.startShort();
+      ((TransactionAware) table).startTx(tx2);
+      verifyScanWithColumnValueFilter(table);
+
+      // buffered writes change whether persisted rows match
+      table.put(R3, C1, V2);
+      table.delete(R2, C1);
+      Scan scan = new Scan(null, null, ColumnValueFilter.equalTo(C1, V2), new byte[][] { C2 });
+      Assert.assertEquals(ImmutableMap.of("r3", ImmutableMap.of("c2", "v1")), scanToMap(table, scan));
+
+      Assert.assertTrue(txClient.canCommit(tx2, ((TransactionAware) table).getTxChanges()));
+      Assert.assertTrue(((TransactionAware) table).commitTx());
+      Assert.assertTrue(txClient.commit(tx2));
+      ((TransactionAware) table).postTxCommit();
+
+      Transaction tx3 = txClient.startShort();
+      ((TransactionAware) table).startTx(tx3);
+      Assert.assertEquals(ImmutableMap.of("r3", ImmutableMap.of("c2", "v1")), scanToMap(table, scan));
+    } finally {
+      admin.drop();
+    }
+  }
+
+  private static void verifyScanWithColumnValueFilter(Table table) {
+    // filter on a column that is not returned
+    Assert.assertEquals(ImmutableMap.of("r2", ImmutableMap.of("c2", "v1")),
+                        scanToMap(table, new Scan(null, null, ColumnValueFilter.equalTo(C1, V2), new byte[][] { C2 })));
+    Assert.assertEquals(ImmutableSet.of("r2", "r3"),
+                        scanToMap(table, new Scan(null, null, ColumnValueFilter.range(C1, V2, V4))).keySet());
+    Assert.assertEquals(ImmutableSet.of("r4", "r5"),
+                        scanToMap(table, new Scan(null, null, ColumnValueFilter.range(C1, V4, null))).keySet());
+    Assert.assertEquals(ImmutableSet.of("r1", "r2", "r3", "r4", "r5"),
+                        scanToMap(table, new Scan(R1, null, ColumnValueFilter.prefix("c1", "v"))).keySet());
+    Assert.assertEquals(ImmutableSet.of("r1", "r5"),
+                        scanToMap(table, new Scan(null, null, ColumnValueFilter.or(ColumnValueFilter.equalTo(C1, V1),
+                                                                                   ColumnValueFilter.equalTo(C1, V5))))
+                          .keySet());
+    Assert.assertEquals(ImmutableSet.of("r1"),
+                        scanToMap(table, new Scan(null, null, ColumnValueFilter.and(ColumnValueFilter.prefix(C1, V1),
+                                                                                    ColumnValueFilter.equalTo(C3, V3))))
+                          .keySet());
+    // filter on a missing column
+    Assert.assertTrue(scanToMap(table, new Scan(null, null, ColumnValueFilter.equalTo(C4, V1))).isEmpty());
+
+    // only return the given columns, rows without any of them are skipped
+    Assert.assertEquals(ImmutableMap.of("r1", ImmutableMap.of("c3", "v3")),
+                        scanToMap(table, new Scan(null, null, null, new byte[][] { C3 })));
+    Assert.assertTrue(scanToMap(table, new Scan(null, null, null, new byte[0][])).isEmpty());
+  }
+
+  private static Map<String, Map<String, String>> scanToMap(Table table, Scan scan) {
+    Map<String, Map<String, String>> result = new TreeMap<>();
+    try (Scanner scanner = table.scan(scan)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        Map<String, String> columns = new TreeMap<>();
+        for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
+          columns.put(Bytes.toString(column.getKey()), Bytes.toString(column.getValue()));
+        }
+        result.put(Bytes.toString(row.getRow()), columns);
+      }
+    }
+    return result;
+  }
+
   private static int countRows(Table table) throws Exception {
     Scanner scanner = table.scan(null, null);
     int count = 0;
@@ -0,0 +1,298 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link TableWriteBuffer}.
+ */
+public class TableWriteBufferTest {
+
+  @Test
+  public void testPutAndGet() {
+    TableWriteBuffer buffer = new TableWriteBuffer();
+    Assert.assertTrue(buffer.isEmpty());
+
+    buffer.put(b("r1"), new byte[][] { b("c1"), b("c2") }, new byte[][] { b("v1"), b("v2") });
+    buffer.put(b("r0"), new byte[][] { b("c1") }, new byte[][] { b("v0") });
+    buffer.put(b("r1"), new byte[][] { b("c1"), b("c3") }, new byte[][] { b("v11"), null });
+
+    Assert.assertFalse(buffer.isEmpty());
+    // The second put to r1:c1 replaces the first one
+    Assert.assertEquals(4, buffer.size());
+    Assert.assertArrayEquals(b("v11"), buffer.getUpdate(b("r1"), b("c1")).getBytes());
+    Assert.assertArrayEquals(b("v2"), buffer.getUpdate(b("r1"), b("c2")).getBytes());
+    Assert.assertNull(buffer.getUpdate(b("r1"), b("c3")).getBytes());
+    Assert.assertNull(buffer.getUpdate(b("r1"), b("c4")));
+    Assert.assertNull(buffer.getUpdate(b("r2"), b("c1")));
+
+    Assert.assertTrue(buffer.containsRow(b("r0")));
+    Assert.assertFalse(buffer.containsRow(b("r")));
+
+    NavigableMap<byte[], Update> row = buffer.getRow(b("r1"));
+    Assert.assertNotNull(row);
+    Assert.assertEquals(3, row.size());
+    Assert.assertNull(buffer.getRow(b("r2")));
+
+    Assert.assertEquals(ImmutableList.of("r0", "r1"), toStrings(buffer.getRows()));
+
+    buffer.clear();
+    Assert.assertTrue(buffer.isEmpty());
+    Assert.assertNull(buffer.getRow(b("r1")));
+    Assert.assertTrue(buffer.toMap().isEmpty());
+  }
+
+  @Test
+  public void testIncrement() {
+    TableWriteBuffer buffer = new TableWriteBuffer();
+    buffer.increment(b("r"), new byte[][] { b("c1"), b("c2") }, new long[] { 1L, 2L });
+    buffer.increment(b("r"), new byte[][] { b("c1") }, new long[] { 10L });
+
+    Update update = buffer.getUpdate(b("r"), b("c1"));
+    Assert.assertTrue(update instanceof IncrementValue);
+    Assert.assertEquals(11L, ((IncrementValue) update).getValue().longValue());
+
+    // Increment on top of a put becomes a put
+    buffer.put(b("r"), new byte[][] { b("c2") }, new byte[][] { Bytes.toBytes(5L) });
+    buffer.increment(b("r"), new byte[][] { b("c2") }, new long[] { 3L });
+    update = buffer.getUpdate(b("r"), b("c2"));
+    Assert.assertTrue(update instanceof PutValue);
+    Assert.assertEquals(8L, Bytes.toLong(update.getBytes()));
+  }
+
+  @Test
+  public void testWritesToSameCellAreCoalesced() {
+    TableWriteBuffer buffer = new TableWriteBuffer();
+    for (int i = 0; i < 10000; i++) {
+      buffer.increment(b("r"), new byte[][] { b("c1") }, new long[] { 1L });
+      buffer.put(b("r"), new byte[][] { b("c2") }, new byte[][] { Bytes.toBytes((long) i) });
+    }
+    Assert.assertEquals(2, buffer.size());
+    Assert.assertEquals(10000L, ((IncrementValue) buffer.getUpdate(b("r"), b("c1"))).getValue().longValue());
+    Assert.assertEquals(9999L, Bytes.toLong(buffer.getUpdate(b("r"), b("c2")).getBytes()));
+
+    // A shorter value after a longer one, and a delete
+    buffer.put(b("r"), new byte[][] { b("c3") }, new byte[][] { b("long value") });
+    buffer.put(b("r"), new byte[][] { b("c3") }, new byte[][] { b("v") });
+    Assert.assertArrayEquals(b("v"), buffer.getUpdate(b("r"), b("c3")).getBytes());
+    buffer.put(b("r"), new byte[][] { b("c3") }, new byte[][] { null });
+    Assert.assertNull(buffer.getUpdate(b("r"), b("c3")).getBytes());
+    buffer.put(b("r"), new byte[][] { b("c3") }, new byte[][] { b("value") });
+    Assert.assertArrayEquals(b("value"), buffer.getUpdate(b("r"), b("c3")).getBytes());
+
+    Assert.assertEquals(3, buffer.getRow(b("r")).size());
+    Assert.assertEquals(3, buffer.getCells(new byte[0]).size());
+  }
+
+  @Test
+  public void testEmptyRowAndColumn() {
+    TableWriteBuffer buffer = new TableWriteBuffer();
+    buffer.put(new byte[0], new byte[][] { new byte[0] }, new byte[][] { b("v0") });
+    buffer.put(b("a"), new byte[][] { new byte[0] }, new byte[][] { b("v1") });
+
+    Assert.assertArrayEquals(b("v0"), buffer.getUpdate(new byte[0], new byte[0]).getBytes());
+    Assert.assertArrayEquals(b("v1"), buffer.getUpdate(b("a"), new byte[0]).getBytes());
+    Assert.assertEquals(2, buffer.toMap().size());
+  }
+
+  @Test
+  public void testScan() {
+    TableWriteBuffer buffer = new TableWriteBuffer();
+    for (int i = 9; i >= 0; i--) {
+      buffer.put(b("r" + i), new byte[][] { b("c") }, new byte[][] { b("v" + i) });
+    }
+
+    List<String> rows = Lists.newArrayList();
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = buffer.scan(b("r3"), b("r6"), null);
+    while (iterator.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> entry = iterator.next();
+      rows.add(Bytes.toString(entry.getKey()));
+      Assert.assertArrayEquals(b("v" + Bytes.toString(entry.getKey()).substring(1)),
+                               entry.getValue().get(b("c")).getBytes());
+    }
+    Assert.assertEquals(ImmutableList.of("r3", "r4", "r5"), rows);
+
+    // Writes after the scanner is created are not visible to it
+    iterator = buffer.scan(null, null, null);
+    buffer.put(b("r00"), new byte[][] { b("c") }, new byte[][] { b("v") });
+    int count = 0;
+    while (iterator.hasNext()) {
+      iterator.next();
+      count++;
+    }
+    Assert.assertEquals(10, count);
+  }
+
+  @Test
+  public void testCells() {
+    TableWriteBuffer buffer = new TableWriteBuffer();
+    byte[] prefix = b("t:");
+    buffer.put(b("ab"), new byte[][] { b("cd") }, new byte[][] { b("v") });
+    buffer.put(b("abc"), new byte[][] { b("d") }, new byte[][] { b("v") });
+    buffer.put(b("ab"), new byte[][] { b("cd") }, new byte[][] { b("v2") });
+
+    List<byte[]> cells = buffer.getCells(prefix);
+    Assert.assertEquals(2, cells.size());
+    Assert.assertArrayEquals(Bytes.add(prefix, Bytes.toBytes(2), b("abcd")), cells.get(0));
+    Assert.assertArrayEquals(Bytes.add(prefix, Bytes.add(Bytes.toBytes(3), b("abc")), b("d")), cells.get(1));
+  }
+
+  @Test
+  public void testRandomAgainstSortedMap() {
+    Random random = new Random(0);
+    TableWriteBuffer buffer = new TableWriteBuffer();
+    NavigableMap<byte[], NavigableMap<byte[], Update>> expected = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+
+    for (int i = 0; i < 20000; i++) {
+      byte[] row = b("r" + random.nextInt(200));
+      byte[] column = b("c" + random.nextInt(20));
+      NavigableMap<byte[], Update> columns = expected.get(row);
+      if (columns == null) {
+        columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        expected.put(row, columns);
+      }
+
+      Update existing = columns.get(column);
+      if (random.nextInt(3) == 0 && (existing == null || existing instanceof IncrementValue
+        || existing.getBytes() == null || existing.getBytes().length == Bytes.SIZEOF_LONG)) {
+        long amount = random.nextInt(100);
+        buffer.increment(row, new byte[][] { column }, new long[] { amount });
+        columns.put(column, Updates.mergeUpdates(existing, new IncrementValue(amount)));
+      } else {
+        byte[] value = random.nextInt(10) == 0 ? null : Bytes.toBytes((long) random.nextInt());
+        buffer.put(row, new byte[][] { column }, new byte[][] { value });
+        columns.put(column, new PutValue(value));
+      }
+
+      // Interleave reads to exercise both the sorted index and the unsorted tail
+      if (i % 97 == 0) {
+        byte[] readRow = b("r" + random.nextInt(200));
+        assertRowEquals(expected.get(readRow), buffer.getRow(readRow));
+      }
+    }
+
+    NavigableMap<byte[], NavigableMap<byte[], Update>> actual = buffer.toMap();
+    Assert.assertEquals(expected.size(), actual.size());
+    for (Map.Entry<byte[], NavigableMap<byte[], Update>> entry : expected.entrySet()) {
+      assertRowEquals(entry.getValue(), actual.get(entry.getKey()));
+    }
+  }
+
+  private void assertRowEquals(NavigableMap<byte[], Update> expected, NavigableMap<byte[], Update> actual) {
+    if (expected == null) {
+      Assert.assertNull(actual);
+      return;
+    }
+    Assert.assertNotNull(actual);
+    Assert.assertEquals(expected.size(), actual.size());
+    for (Map.Entry<byte[], Update> entry : expected.entrySet()) {
+      Update update = actual.get(entry.getKey());
+      Assert.assertNotNull(update);
+      Assert.assertEquals(entry.getValue().getClass(), update.getClass());
+      Assert.assertArrayEquals(entry.getValue().getBytes(), update.getBytes());
+    }
+  }
+
+  @Ignore
+  @Test
+  public void testSpeed() {
+    int rows = 100000;
+    int columns = 10;
+    byte[][] columnKeys = new byte[columns][];
+    byte[][] values = new byte[columns][];
+    for (int i = 0; i < columns; i++) {
+      columnKeys[i] = b("column" + i);
+      values[i] = b("value" + i);
+    }
+
+    for (int run = 0; run < 3; run++) {
+      // Put heavy, then read your writes and scan, using the map structure BufferingTable used before
+      long startTime = System.nanoTime();
+      NavigableMap<byte[], NavigableMap<byte[], Update>> map = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      for (int i = 0; i < rows; i++) {
+        byte[] row = Bytes.toBytes(i * 31 % rows);
+        NavigableMap<byte[], Update> colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        for (int j = 0; j < columns; j++) {
+          colVals.put(columnKeys[j].clone(), new PutValue(values[j].clone()));
+        }
+        map.put(row, colVals);
+      }
+      long putTime = System.nanoTime();
+      for (int i = 0; i < rows; i += 100) {
+        map.get(Bytes.toBytes(i));
+      }
+      long readTime = System.nanoTime();
+      int count = 0;
+      for (Map.Entry<byte[], NavigableMap<byte[], Update>> entry : map.entrySet()) {
+        count += entry.getValue().size();
+      }
+      long scanTime = System.nanoTime();
+      System.out.printf("Map:    put %d ms, read %d ms, scan %d ms (%d cells)%n",
+                        TimeUnit.NANOSECONDS.toMillis(putTime - startTime),
+                        TimeUnit.NANOSECONDS.toMillis(readTime - putTime),
+                        TimeUnit.NANOSECONDS.toMillis(scanTime - readTime), count);
+
+      startTime = System.nanoTime();
+      TableWriteBuffer buffer = new TableWriteBuffer();
+      for (int i = 0; i < rows; i++) {
+        buffer.put(Bytes.toBytes(i * 31 % rows), columnKeys, values);
+      }
+      putTime = System.nanoTime();
+      for (int i = 0; i < rows; i += 100) {
+        buffer.getRow(Bytes.toBytes(i));
+      }
+      readTime = System.nanoTime();
+      count = 0;
+      Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = buffer.scan(null, null, null);
+      while (iterator.hasNext()) {
+        count += iterator.next().getValue().size();
+      }
+      scanTime = System.nanoTime();
+      System.out.printf("Buffer: put %d ms, read %d ms, scan %d ms (%d cells)%n",
+                        TimeUnit.NANOSECONDS.toMillis(putTime - startTime),
+                        TimeUnit.NANOSECONDS.toMillis(readTime - putTime),
+                        TimeUnit.NANOSECONDS.toMillis(scanTime - readTime), count);
+    }
+  }
+
+  private static byte[] b(String s) {
+    return Bytes.toBytes(s);
+  }
+
+  private static List<String> toStrings(List<byte[]> bytes) {
+    List<String> result = Lists.newArrayList();
+    for (byte[] b : bytes) {
+      result.add(Bytes.toString(b));
+    }
+    return result;
+  }
+}
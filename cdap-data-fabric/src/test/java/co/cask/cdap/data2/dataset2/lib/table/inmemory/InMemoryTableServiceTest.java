@@ -1,5 +1,5 @@
 /*
- * Copyright 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,17 +19,116 @@ package co.cask.cdap.data2.dataset2.lib.table.inmemory;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.data2.dataset2.lib.table.PutValue;
 import co.cask.cdap.data2.dataset2.lib.table.Update;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.tephra.Transaction;
 import org.junit.Assert;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
  */
 public class InMemoryTableServiceTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryTableServiceTest.class);
+
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    int increments = 10000;
+
+    // N writers on N tables
+    List<String> tables = Lists.newArrayList();
+    for (int i = 0; i < threads; i++) {
+      tables.add("concurrentTable" + i);
+    }
+    long elapsed = runIncrements(tables, increments);
+    LOG.info("{} writers on {} tables: {} increments in {} ms", threads, threads, threads * increments, elapsed);
+    for (String table : tables) {
+      verifyIncrements(table, threads, increments);
+      InMemoryTableService.drop(table);
+    }
+
+    // N writers on one table
+    elapsed = runIncrements(Collections.nCopies(threads, "concurrentTable"), increments);
+    LOG.info("{} writers on one table: {} increments in {} ms", threads, threads * increments, elapsed);
+    verifyIncrements("concurrentTable", threads, threads * increments);
+    InMemoryTableService.drop("concurrentTable");
+  }
+
+  /**
+   * Runs one writer thread for each of the given tables, each increments a row of its own and a row shared by
+   * all writers for the given number of times.
+   *
+   * @return time in milliseconds for all the writers to finish
+   */
+  private long runIncrements(final List<String> tables, final int increments) throws Exception {
+    for (String table : tables) {
+      InMemoryTableService.create(table);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(tables.size());
+    try {
+      final CyclicBarrier barrier = new CyclicBarrier(tables.size());
+      List<Future<?>> futures = Lists.newArrayList();
+      Stopwatch stopwatch = new Stopwatch().start();
+      for (int i = 0; i < tables.size(); i++) {
+        final String table = tables.get(i);
+        final byte[] row = Bytes.toBytes("row" + i);
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            barrier.await();
+            Map<byte[], Long> increment = ImmutableMap.of(Bytes.toBytes("c"), 1L);
+            for (int j = 0; j < increments; j++) {
+              InMemoryTableService.increment(table, row, increment);
+              InMemoryTableService.increment(table, Bytes.toBytes("shared"), increment);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      return stopwatch.elapsedMillis();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Verifies both the sum of the writer rows and the shared row of the given table have the expected count.
+   */
+  private void verifyIncrements(String table, int threads, long expected) {
+    long total = 0;
+    for (int i = 0; i < threads; i++) {
+      NavigableMap<byte[], NavigableMap<Long, byte[]>> row = InMemoryTableService.get(table, Bytes.toBytes("row" + i),
+                                                                                         null);
+      if (row != null && !row.isEmpty()) {
+        total += Bytes.toLong(row.get(Bytes.toBytes("c")).firstEntry().getValue());
+      }
+    }
+    NavigableMap<byte[], NavigableMap<Long, byte[]>> shared = InMemoryTableService.get(table, Bytes.toBytes("shared"),
+                                                                                          null);
+    long sharedCount = Bytes.toLong(shared.get(Bytes.toBytes("c")).firstEntry().getValue());
+    Assert.assertEquals(expected, total);
+    Assert.assertEquals(expected, sharedCount);
+  }
+
   @Test
   public void testInternalsNotLeaking() {
     // Test that there's no way to break the state of InMemoryTableService by changing parameters of update
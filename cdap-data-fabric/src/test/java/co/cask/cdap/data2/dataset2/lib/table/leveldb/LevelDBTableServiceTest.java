@@ -29,6 +29,8 @@ import co.cask.cdap.data2.util.TableId;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
 import co.cask.cdap.security.authorization.AuthorizationTestModule;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.Assert;
@@ -38,7 +40,12 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -112,6 +119,45 @@ public class LevelDBTableServiceTest {
     Assert.assertEquals(table2Size, service.getTableStats().get(tableId2).getDiskSizeBytes());
   }
 
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    final String tableName = "cdap_default.concurrent_increments";
+    service.ensureTableExists(tableName);
+
+    final byte[] row = Bytes.toBytes("row");
+    final byte[] column = Bytes.toBytes("column");
+    final int increments = 200;
+    int threads = 4;
+
+    // Each writer uses its own LevelDBTableCore, same as datasets in different programs do
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = Lists.newArrayList();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+            for (int j = 0; j < increments; j++) {
+              table.increment(row, ImmutableMap.of(column, 1L));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+    byte[] value = table.getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
+    Assert.assertEquals(threads * increments, Bytes.toLong(value));
+    service.dropTable(tableName);
+  }
+
   private void writeSome(String tableName) throws IOException {
     LevelDBTableCore table = new LevelDBTableCore(tableName, service);
     Random r = new Random();
@@ -16,9 +16,13 @@
 
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.batch.Split;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.dataset.table.TableSplit;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.guice.ConfigModule;
@@ -33,6 +37,7 @@ import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
 import co.cask.cdap.security.authorization.AuthorizationTestModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import org.apache.tephra.Transaction;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
@@ -40,6 +45,8 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Random;
 
 /**
  * test for LevelDB tables.
@@ -111,4 +118,60 @@ public class LevelDBTableTest extends BufferingTableTest<LevelDBTable> {
       service.list().contains(tableName);
     }
   }
+
+  @Test
+  public void testSizeBasedSplits() throws Exception {
+    String tableName = "sizeBasedSplits";
+    LevelDBTableAdmin admin = getTableAdmin(CONTEXT1, tableName, DatasetProperties.EMPTY);
+    admin.create();
+    try {
+      CConfiguration splitConf = CConfiguration.copy(cConf);
+      splitConf.setLong(Constants.Dataset.TABLE_SPLIT_SIZE_MB, 1);
+      DatasetSpecification spec = DatasetSpecification.builder(tableName, "table").build();
+      LevelDBTable table = new LevelDBTable(CONTEXT1, tableName, service, splitConf, spec);
+
+      // write enough data for LevelDB to flush it to files. All rows share a common prefix, so that the key space
+      // is heavily skewed.
+      int numRows = 3000;
+      // random values, so that they don't get compressed
+      byte[] value = new byte[4096];
+      new Random(0).nextBytes(value);
+      for (int i = 0; i < numRows; i += 100) {
+        Transaction tx = txClient.startShort();
+        table.startTx(tx);
+        for (int j = i; j < i + 100; j++) {
+          table.put(Bytes.toBytes(String.format("row%05d", j)), Bytes.toBytes("c"), value);
+        }
+        table.commitTx();
+        txClient.commit(tx);
+        table.postTxCommit();
+      }
+
+      Transaction tx = txClient.startShort();
+      table.startTx(tx);
+      List<Split> splits = table.getSplits(4, null, null);
+      Assert.assertEquals(4, splits.size());
+      int totalRows = 0;
+      for (Split split : splits) {
+        TableSplit tableSplit = (TableSplit) split;
+        int rows = 0;
+        try (Scanner scanner = table.scan(tableSplit.getStart(), tableSplit.getStop())) {
+          while (scanner.next() != null) {
+            rows++;
+          }
+        }
+        // every split must cover a part of the data
+        Assert.assertTrue(rows > 0);
+        totalRows += rows;
+      }
+      Assert.assertEquals(numRows, totalRows);
+      txClient.commit(tx);
+
+      // without the number of splits, the splits are about the target split size
+      table.startTx(txClient.startShort());
+      Assert.assertTrue(table.getSplits().size() > 4);
+    } finally {
+      admin.drop();
+    }
+  }
 }
@@ -37,10 +37,14 @@ import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.id.StreamId;
 import co.cask.cdap.proto.metadata.Metadata;
 import co.cask.cdap.proto.metadata.MetadataScope;
+import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
+import co.cask.cdap.proto.metadata.MetadataSearchTargetType;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
 import co.cask.cdap.security.authorization.AuthorizationTestModule;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -313,6 +317,62 @@ public class MetadataStoreTest {
     Assert.assertTrue(actual.containsAll(expected));
   }
 
+  @Test
+  public void testPaginatedSearch() throws Exception {
+    DatasetId dataset1 = new DatasetId("ns2", "ds1");
+    DatasetId dataset2 = new DatasetId("ns2", "ds2");
+    DatasetId dataset3 = new DatasetId("ns2", "ds3");
+    StreamId stream1 = new StreamId("ns2", "s1");
+
+    store.addTags(MetadataScope.USER, dataset1, "tag1");
+    store.addTags(MetadataScope.USER, dataset2, "tag1", "tag2");
+    store.setProperties(MetadataScope.SYSTEM, dataset2, ImmutableMap.of("key", "tag3"));
+    store.addTags(MetadataScope.USER, dataset3, "tag2");
+    store.addTags(MetadataScope.USER, stream1, "tag1", "tag2", "tag3");
+
+    Predicate<NamespacedEntityId> all = Predicates.alwaysTrue();
+
+    // sorted by name
+    MetadataSearchResponse response = store.search("ns2", "tag*", ImmutableSet.<MetadataSearchTargetType>of(),
+                                                   SortInfo.DEFAULT, 0, Integer.MAX_VALUE, all);
+    Assert.assertEquals(4, response.getTotal());
+    Assert.assertEquals(ImmutableList.of(dataset1, dataset2, dataset3, stream1), getEntityIds(response));
+    Assert.assertEquals(ImmutableMap.of(MetadataScope.USER, new Metadata(EMPTY_PROPERTIES, ImmutableSet.of("tag1"))),
+                        response.getResults().iterator().next().getMetadata());
+
+    response = store.search("ns2", "tag*", ImmutableSet.<MetadataSearchTargetType>of(),
+                            new SortInfo(SortInfo.SortBy.NAME, SortInfo.SortOrder.DESC), 1, 2, all);
+    Assert.assertEquals(4, response.getTotal());
+    Assert.assertEquals(ImmutableList.of(dataset3, dataset2), getEntityIds(response));
+
+    // sorted by the number of matched terms across scopes, ties sorted by name
+    SortInfo byRelevance = new SortInfo(SortInfo.SortBy.RELEVANCE, SortInfo.SortOrder.DESC);
+    response = store.search("ns2", "tag1 tag2 tag3", ImmutableSet.<MetadataSearchTargetType>of(),
+                            byRelevance, 0, 3, all);
+    Assert.assertEquals(4, response.getTotal());
+    Assert.assertEquals(ImmutableList.of(dataset2, stream1, dataset1), getEntityIds(response));
+
+    // offset past the end
+    response = store.search("ns2", "tag1 tag2 tag3", ImmutableSet.<MetadataSearchTargetType>of(),
+                            byRelevance, 10, 3, all);
+    Assert.assertEquals(4, response.getTotal());
+    Assert.assertTrue(response.getResults().isEmpty());
+
+    // filtered entities are not part of the total
+    response = store.search("ns2", "tag*", ImmutableSet.of(MetadataSearchTargetType.DATASET), SortInfo.DEFAULT, 0, 10,
+                            Predicates.<NamespacedEntityId>not(Predicates.<NamespacedEntityId>equalTo(dataset2)));
+    Assert.assertEquals(2, response.getTotal());
+    Assert.assertEquals(ImmutableList.of(dataset1, dataset3), getEntityIds(response));
+  }
+
+  private List<NamespacedEntityId> getEntityIds(MetadataSearchResponse response) {
+    List<NamespacedEntityId> entityIds = new ArrayList<>();
+    for (MetadataSearchResultRecord record : response.getResults()) {
+      entityIds.add(record.getEntityId());
+    }
+    return entityIds;
+  }
+
   @AfterClass
   public static void teardown() {
     txManager.stopAndWait();
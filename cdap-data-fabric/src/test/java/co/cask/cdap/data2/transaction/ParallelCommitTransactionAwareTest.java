@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.transaction;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.tephra.Transaction;
+import org.apache.tephra.TransactionAware;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link ParallelCommitTransactionAware}.
+ */
+public class ParallelCommitTransactionAwareTest {
+
+  @Test
+  public void testParallelCommit() throws Exception {
+    // Each member only completes its commit after all members started committing
+    CountDownLatch latch = new CountDownLatch(3);
+    List<RecordingTxAware> members = ImmutableList.of(new RecordingTxAware("a", latch, null),
+                                                      new RecordingTxAware("b", latch, null),
+                                                      new RecordingTxAware("c", latch, null));
+    ParallelCommitTransactionAware txAware = new ParallelCommitTransactionAware(members);
+
+    Assert.assertTrue(txAware.commitTx());
+    for (RecordingTxAware member : members) {
+      Assert.assertTrue(member.committed);
+    }
+    Assert.assertEquals("ParallelCommit(a,b,c)", txAware.getTransactionAwareName());
+  }
+
+  @Test
+  public void testCommitFailure() throws Exception {
+    CountDownLatch latch = new CountDownLatch(0);
+    List<RecordingTxAware> members = ImmutableList.of(new RecordingTxAware("a", latch, null),
+                                                      new RecordingTxAware("b", latch, new IllegalStateException()),
+                                                      new RecordingTxAware("c", latch, null));
+    ParallelCommitTransactionAware txAware = new ParallelCommitTransactionAware(members);
+
+    try {
+      txAware.commitTx();
+      Assert.fail("Expected commit failure");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    // All members should still be committed and rolled back
+    Assert.assertTrue(members.get(0).committed);
+    Assert.assertTrue(members.get(2).committed);
+    Assert.assertTrue(txAware.rollbackTx());
+    for (RecordingTxAware member : members) {
+      Assert.assertTrue(member.rolledBack);
+    }
+  }
+
+  /**
+   * A {@link TransactionAware} that records the calls to commit and rollback.
+   */
+  private static final class RecordingTxAware implements TransactionAware {
+
+    private final String name;
+    private final CountDownLatch latch;
+    private final RuntimeException commitFailure;
+    private volatile boolean committed;
+    private volatile boolean rolledBack;
+
+    RecordingTxAware(String name, CountDownLatch latch, RuntimeException commitFailure) {
+      this.name = name;
+      this.latch = latch;
+      this.commitFailure = commitFailure;
+    }
+
+    @Override
+    public void startTx(Transaction tx) {
+      // no-op
+    }
+
+    @Override
+    public void updateTx(Transaction tx) {
+      // no-op
+    }
+
+    @Override
+    public Collection<byte[]> getTxChanges() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean commitTx() throws Exception {
+      latch.countDown();
+      if (commitFailure != null) {
+        throw commitFailure;
+      }
+      Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+      committed = true;
+      return true;
+    }
+
+    @Override
+    public void postTxCommit() {
+      // no-op
+    }
+
+    @Override
+    public boolean rollbackTx() throws Exception {
+      rolledBack = true;
+      return true;
+    }
+
+    @Override
+    public String getTransactionAwareName() {
+      return name;
+    }
+  }
+}
@@ -339,6 +339,38 @@ public abstract class QueueTest {
     testOneEnqueueDequeue(DequeueStrategy.ROUND_ROBIN);
   }
 
+  @Test
+  public void testMayHaveEntries() throws Exception {
+    QueueName queueName = QueueName.fromFlowlet(NamespaceId.DEFAULT.getEntityName(), "app", "flow", "flowlet",
+                                                "queueprobe");
+    ConsumerConfig consumerConfig = new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null);
+    configureGroups(queueName, ImmutableList.of(new ConsumerGroupConfig(0L, 1, DequeueStrategy.FIFO, null)));
+
+    try (
+      QueueProducer producer = queueClientFactory.createProducer(queueName);
+      QueueConsumer consumer = queueClientFactory.createConsumer(queueName, consumerConfig, 1)
+    ) {
+      TransactionContext consumerTxContext = createTxContext(consumer);
+      consumerTxContext.start();
+      Assert.assertTrue(consumer.dequeue().isEmpty());
+      consumerTxContext.finish();
+
+      // Nothing has been enqueued since the last empty dequeue
+      Assert.assertFalse(consumer.mayHaveEntries());
+
+      TransactionContext producerTxContext = createTxContext(producer);
+      producerTxContext.start();
+      producer.enqueue(new QueueEntry(Bytes.toBytes(55)));
+      producerTxContext.finish();
+
+      Assert.assertTrue(consumer.mayHaveEntries());
+
+      consumerTxContext.start();
+      Assert.assertEquals(55, Bytes.toInt(consumer.dequeue().iterator().next()));
+      consumerTxContext.finish();
+    }
+  }
+
   @Test
   public void testClearAllForFlow() throws Exception {
     testClearOrDropAllForFlow(false);
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,10 +19,12 @@ package co.cask.cdap.hive.datasets;
 import co.cask.cdap.api.data.batch.RecordScannable;
 import co.cask.cdap.api.data.batch.RecordScanner;
 import co.cask.cdap.api.data.batch.Split;
+import co.cask.cdap.api.dataset.DatasetManagementException;
 import com.google.common.base.Throwables;
 import com.google.gson.Gson;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.shims.ShimLoader;
 import org.apache.hadoop.io.ObjectWritable;
 import org.apache.hadoop.io.Text;
@@ -61,7 +63,19 @@ public class DatasetInputFormat implements InputFormat<Void, ObjectWritable> {
         JobContext jobContext = ShimLoader.getHadoopShims().newJobContext(job);
         Path[] tablePaths = FileInputFormat.getInputPaths(jobContext);
 
-        List<Split> dsSplits = recordScannable.getSplits();
+        // Restrict the splits with the predicate pushed down by the DatasetStorageHandler, if any
+        List<Split> dsSplits = null;
+        String pushedPredicate = jobConf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+        if (pushedPredicate != null) {
+          try {
+            dsSplits = PredicatePushdown.getSplits(recordScannable, datasetAccessor.getDatasetSpec(), pushedPredicate);
+          } catch (DatasetManagementException e) {
+            throw new IOException("Could not get dataset specification", e);
+          }
+        }
+        if (dsSplits == null) {
+          dsSplits = recordScannable.getSplits();
+        }
 
         InputSplit[] inputSplits = new InputSplit[dsSplits.size()];
         for (int i = 0; i < dsSplits.size(); i++) {
@@ -19,14 +19,19 @@ package co.cask.cdap.hive.datasets;
 import co.cask.cdap.api.data.batch.RecordWritable;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.UnsupportedTypeException;
 import co.cask.cdap.api.dataset.DatasetManagementException;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.DatasetSpecification;
 import co.cask.cdap.common.DatasetNotFoundException;
 import co.cask.cdap.format.StructuredRecordStringConverter;
+import co.cask.cdap.hive.serde.BinaryRowDecoder;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import co.cask.cdap.internal.io.SchemaGenerator;
 import com.google.gson.Gson;
 import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.OutputFormat;
 import org.apache.hadoop.mapred.RecordWriter;
@@ -40,13 +45,16 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 
 /**
- * Map reduce output format to write to datasets that implement {@link RecordWritable}.
+ * Map reduce output format to write to datasets that implement {@link RecordWritable}. Rows are either
+ * {@link BytesWritable} in the binary format written by the {@link DatasetSerDe}, or JSON text.
  */
-public class DatasetOutputFormat implements OutputFormat<Void, Text> {
+public class DatasetOutputFormat implements OutputFormat<Void, Writable> {
   private static final Logger LOG = LoggerFactory.getLogger(DatasetOutputFormat.class);
+  private static final SchemaGenerator SCHEMA_GENERATOR = new ReflectionSchemaGenerator();
+  private static final Gson GSON = new Gson();
 
   @Override
-  public RecordWriter<Void, Text> getRecordWriter(FileSystem ignored, final JobConf jobConf, String name,
+  public RecordWriter<Void, Writable> getRecordWriter(FileSystem ignored, final JobConf jobConf, String name,
                                                   Progressable progress) throws IOException {
     DatasetAccessor datasetAccessor = new DatasetAccessor(jobConf);
     try {
@@ -81,47 +89,63 @@ public class DatasetOutputFormat implements OutputFormat<Void, Text> {
     }
   }
 
-  private class DatasetRecordWriter implements RecordWriter<Void, Text> {
+  private class DatasetRecordWriter implements RecordWriter<Void, Writable> {
     private final DatasetAccessor datasetAccessor;
     private final RecordWritable recordWritable;
     private final Type recordType;
     private Schema recordSchema;
+    private BinaryRowDecoder binaryDecoder;
 
     DatasetRecordWriter(DatasetAccessor datasetAccessor) {
       this.datasetAccessor = datasetAccessor;
       this.recordWritable = datasetAccessor.getDataset();
       this.recordType = recordWritable.getRecordType();
-      if (recordType == StructuredRecord.class) {
-        try {
-          DatasetSpecification datasetSpec = datasetAccessor.getDatasetSpec();
-          String schemaStr = datasetSpec.getProperty(DatasetProperties.SCHEMA);
-          // should never happen, as this should have been checked at table creation
-          if (schemaStr == null) {
-            throw new IllegalStateException(
-              String.format("Dataset '%s' does not have the schema property.", datasetSpec.getName()));
-          }
+      try {
+        // Look up the schema the same way as the DatasetSerDe, so that binary rows are decoded with the schema
+        // they were encoded with
+        DatasetSpecification datasetSpec = datasetAccessor.getDatasetSpec();
+        String schemaStr = datasetSpec.getProperty(DatasetProperties.SCHEMA);
+        if (schemaStr != null) {
           recordSchema = Schema.parseJson(schemaStr);
-        } catch (IOException | DatasetManagementException e) {
-          try {
-            recordWritable.close();
-          } catch (IOException e1) {
-            LOG.warn("Exception closing dataset {} after failing to look up its schema.",
-                     datasetAccessor.getDatasetId(), e1);
-          }
-          throw new RuntimeException("Unable to look up schema for dataset.", e);
+        } else if (recordType == StructuredRecord.class) {
+          // should never happen, as this should have been checked at table creation
+          throw new IllegalStateException(
+            String.format("Dataset '%s' does not have the schema property.", datasetSpec.getName()));
+        } else {
+          recordSchema = SCHEMA_GENERATOR.generate(recordType);
         }
+        binaryDecoder = new BinaryRowDecoder(recordSchema, recordType);
+      } catch (UnsupportedTypeException e) {
+        // The DatasetSerDe cannot derive a schema either, so rows will only be written in JSON
+        LOG.debug("Unable to generate schema for record type {} of dataset {}.",
+                  recordType, datasetAccessor.getDatasetId(), e);
+      } catch (IOException | DatasetManagementException e) {
+        try {
+          recordWritable.close();
+        } catch (IOException e1) {
+          LOG.warn("Exception closing dataset {} after failing to look up its schema.",
+                   datasetAccessor.getDatasetId(), e1);
+        }
+        throw new RuntimeException("Unable to look up schema for dataset.", e);
       }
     }
 
     @Override
-    public void write(Void key, Text value) throws IOException {
+    public void write(Void key, Writable value) throws IOException {
       if (value == null) {
         throw new IOException("Writable value is null.");
       }
-      if (recordType == StructuredRecord.class) {
+      if (value instanceof BytesWritable) {
+        if (binaryDecoder == null) {
+          throw new IOException("Unable to decode binary row without schema for dataset " +
+                                  datasetAccessor.getDatasetId());
+        }
+        BytesWritable bytes = (BytesWritable) value;
+        recordWritable.write(binaryDecoder.decode(bytes.getBytes(), 0, bytes.getLength()));
+      } else if (recordType == StructuredRecord.class) {
         recordWritable.write(StructuredRecordStringConverter.fromJsonString(value.toString(), recordSchema));
       } else {
-        recordWritable.write(new Gson().fromJson(value.toString(), recordType));
+        recordWritable.write(GSON.fromJson(value.toString(), recordType));
       }
     }
 
@@ -35,13 +35,15 @@ import co.cask.cdap.proto.id.DatasetId;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.SerDeStats;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.ObjectWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +51,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -97,7 +100,9 @@ public class DatasetSerDe implements SerDe {
 
     this.deserializer = new ObjectDeserializer(properties, schema);
     ArrayList<String> columnNames = Lists.newArrayList(StringUtils.split(properties.getProperty("columns"), ","));
-    this.serializer = new ObjectSerializer(columnNames);
+    List<TypeInfo> columnTypes =
+      TypeInfoUtils.getTypeInfosFromTypeString(properties.getProperty(serdeConstants.LIST_COLUMN_TYPES));
+    this.serializer = new ObjectSerializer(columnNames, columnTypes, schema);
     this.objectInspector = deserializer.getInspector();
   }
 
@@ -154,7 +159,8 @@ public class DatasetSerDe implements SerDe {
 
   @Override
   public Class<? extends Writable> getSerializedClass() {
-    return Text.class;
+    // rows are serialized to BytesWritable in binary format if the schema is known, and to Text in JSON otherwise
+    return Writable.class;
   }
 
   @Override
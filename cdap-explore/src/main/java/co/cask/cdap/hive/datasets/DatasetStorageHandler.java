@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,15 +22,25 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.hive.context.CConfCodec;
 import com.google.common.base.Throwables;
 import org.apache.hadoop.hive.ql.metadata.DefaultStorageHandler;
+import org.apache.hadoop.hive.ql.metadata.HiveStoragePredicateHandler;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.serde2.Deserializer;
 import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.OutputFormat;
 import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -40,8 +50,12 @@ import java.util.Map;
  * Referred to by string rather than {@code Class.getName()} in {@code ExploreServiceUtils.traceExploreDependencies()}
  * because this class extends a Hive class, which isn't present in the {@code ExploreServiceUtils} class loader.
  * </p>
+ * <p>
+ * Comparisons between columns and constants in query predicates are pushed down to the {@link DatasetInputFormat},
+ * which uses them to restrict the splits of the dataset. See {@link PredicatePushdown}.
+ * </p>
  */
-public class DatasetStorageHandler extends DefaultStorageHandler {
+public class DatasetStorageHandler extends DefaultStorageHandler implements HiveStoragePredicateHandler {
   private static final Logger LOG = LoggerFactory.getLogger(DatasetStorageHandler.class);
 
   @SuppressWarnings("unchecked")
@@ -91,6 +105,24 @@ public class DatasetStorageHandler extends DefaultStorageHandler {
     LOG.debug("Got dataset {} in namespace {} for external table {}", datasetName, namespce, tableDesc.getTableName());
   }
 
+  @Override
+  public DecomposedPredicate decomposePredicate(JobConf jobConf, Deserializer deserializer, ExprNodeDesc predicate) {
+    try {
+      ObjectInspector inspector = deserializer.getObjectInspector();
+      if (!(inspector instanceof StructObjectInspector)) {
+        return null;
+      }
+      List<String> columnNames = new ArrayList<>();
+      for (StructField field : ((StructObjectInspector) inspector).getAllStructFieldRefs()) {
+        columnNames.add(field.getFieldName());
+      }
+      return PredicatePushdown.decompose(predicate, columnNames);
+    } catch (SerDeException e) {
+      LOG.warn("Unable to get columns of the table. Predicate {} will not be pushed down.", predicate, e);
+      return null;
+    }
+  }
+
   private boolean writesEnabled() {
     try {
       CConfiguration cConf = ConfigurationUtil.get(getConf(), Constants.Explore.CCONF_KEY, CConfCodec.INSTANCE);
@@ -0,0 +1,311 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.hive.datasets;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.batch.RecordScannable;
+import co.cask.cdap.api.data.batch.Split;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
+import co.cask.cdap.api.dataset.lib.ObjectMappedTable;
+import co.cask.cdap.api.dataset.lib.ObjectMappedTableProperties;
+import co.cask.cdap.api.dataset.table.ColumnValueFilter;
+import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.api.dataset.table.TableSplit;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
+import org.apache.hadoop.hive.ql.index.IndexSearchCondition;
+import org.apache.hadoop.hive.ql.metadata.HiveStoragePredicateHandler.DecomposedPredicate;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/**
+ * Pushes Hive predicates down into datasets. Comparisons between a column and a constant are pushed from Hive to
+ * the {@link DatasetInputFormat}, which uses them to restrict the splits of {@link Table}, {@link KeyValueTable}
+ * and {@link ObjectMappedTable} datasets:
+ *
+ * <ul>
+ *   <li>equality on the row key, and ranges on string and binary row keys, restrict the key range of the splits;
+ *   </li>
+ *   <li>equality on other columns of tables with a schema becomes a {@link ColumnValueFilter} on the splits.</li>
+ * </ul>
+ *
+ * Hive still evaluates the whole predicate on the records read, so conditions that a dataset cannot use are simply
+ * ignored.
+ */
+final class PredicatePushdown {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PredicatePushdown.class);
+  private static final String KEY_VALUE_TABLE_KEY_COLUMN = "key";
+
+  private final String rowKeyColumn;
+  private final Schema.Type rowKeyType;
+  // Schema of the columns other than the row key, null if the dataset cannot filter on them
+  private final Schema columnSchema;
+
+  private PredicatePushdown(String rowKeyColumn, Schema.Type rowKeyType, @Nullable Schema columnSchema) {
+    this.rowKeyColumn = rowKeyColumn.toLowerCase(Locale.ENGLISH);
+    this.rowKeyType = rowKeyType;
+    this.columnSchema = columnSchema;
+  }
+
+  /**
+   * Decomposes a predicate into the comparisons that are pushed to the {@link DatasetInputFormat}
+   * and the residual predicate evaluated by Hive.
+   *
+   * @param predicate the predicate to decompose
+   * @param columnNames the names of the columns of the Hive table
+   * @return the decomposed predicate, or {@code null} if nothing can be pushed down
+   */
+  @Nullable
+  static DecomposedPredicate decompose(ExprNodeDesc predicate, List<String> columnNames) {
+    if (!(predicate instanceof ExprNodeGenericFuncDesc)) {
+      return null;
+    }
+    IndexPredicateAnalyzer analyzer = createAnalyzer(columnNames);
+    List<IndexSearchCondition> conditions = new ArrayList<>();
+    analyzer.analyzePredicate(predicate, conditions);
+    if (conditions.isEmpty()) {
+      return null;
+    }
+
+    DecomposedPredicate decomposed = new DecomposedPredicate();
+    decomposed.pushedPredicate = analyzer.translateSearchConditions(conditions);
+    // The dataset may only use some of the pushed conditions, hence Hive evaluates the entire predicate
+    decomposed.residualPredicate = (ExprNodeGenericFuncDesc) predicate;
+    return decomposed;
+  }
+
+  /**
+   * Returns the splits of a dataset that are restricted by the given pushed predicate.
+   *
+   * @param dataset the dataset to get splits for
+   * @param spec the specification of the dataset
+   * @param serializedPredicate the serialized pushed predicate, as set in the job configuration by Hive
+   * @return the restricted splits, or {@code null} if the predicate cannot be pushed down into the dataset
+   */
+  @Nullable
+  static List<Split> getSplits(RecordScannable<?> dataset, DatasetSpecification spec, String serializedPredicate) {
+    PredicatePushdown pushdown = create(dataset, spec);
+    if (pushdown == null) {
+      return null;
+    }
+    ExprNodeGenericFuncDesc predicate = Utilities.deserializeExpression(serializedPredicate);
+    return pushdown.getSplits(dataset, predicate);
+  }
+
+  @Nullable
+  private static PredicatePushdown create(RecordScannable<?> dataset, DatasetSpecification spec) {
+    try {
+      if (dataset instanceof KeyValueTable) {
+        return new PredicatePushdown(KEY_VALUE_TABLE_KEY_COLUMN, Schema.Type.BYTES, null);
+      }
+      if (dataset instanceof ObjectMappedTable) {
+        String rowKeyName = ObjectMappedTableProperties.getRowKeyExploreName(spec.getProperties());
+        if (rowKeyName == null) {
+          return null;
+        }
+        return new PredicatePushdown(rowKeyName,
+                                     ObjectMappedTableProperties.getRowKeyExploreType(spec.getProperties()),
+                                     ObjectMappedTableProperties.getObjectSchema(spec.getProperties()));
+      }
+      if (dataset instanceof Table) {
+        String schemaStr = spec.getProperty(Table.PROPERTY_SCHEMA);
+        String rowField = spec.getProperty(Table.PROPERTY_SCHEMA_ROW_FIELD);
+        if (schemaStr == null || rowField == null) {
+          return null;
+        }
+        Schema schema = Schema.parseJson(schemaStr);
+        Schema.Field field = schema.getField(rowField);
+        if (field == null) {
+          return null;
+        }
+        return new PredicatePushdown(rowField, getType(field.getSchema()), schema);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Unable to determine the row key of dataset {}. Predicates will not be pushed down.",
+               spec.getName(), e);
+    }
+    return null;
+  }
+
+  private List<Split> getSplits(RecordScannable<?> dataset, ExprNodeGenericFuncDesc predicate) {
+    List<String> columnNames = new ArrayList<>();
+    columnNames.add(rowKeyColumn);
+    if (columnSchema != null) {
+      for (Schema.Field field : columnSchema.getFields()) {
+        columnNames.add(field.getName().toLowerCase(Locale.ENGLISH));
+      }
+    }
+    List<IndexSearchCondition> conditions = new ArrayList<>();
+    createAnalyzer(columnNames).analyzePredicate(predicate, conditions);
+
+    byte[] start = null;
+    byte[] stop = null;
+    List<ColumnValueFilter> filters = new ArrayList<>();
+    for (IndexSearchCondition condition : conditions) {
+      String column = condition.getColumnDesc().getColumn();
+      String op = condition.getComparisonOp();
+      Object value = condition.getConstantDesc().getValue();
+
+      if (rowKeyColumn.equals(column)) {
+        byte[] key = toBytes(value, rowKeyType);
+        if (key == null) {
+          continue;
+        }
+        byte[] conditionStart = null;
+        byte[] conditionStop = null;
+        if (GenericUDFOPEqual.class.getName().equals(op)) {
+          conditionStart = key;
+          conditionStop = keyAfter(key);
+        } else if (rowKeyType != Schema.Type.STRING && rowKeyType != Schema.Type.BYTES) {
+          // The byte order of numeric keys does not follow the numeric order of negative numbers
+          continue;
+        } else if (GenericUDFOPGreaterThan.class.getName().equals(op)) {
+          conditionStart = keyAfter(key);
+        } else if (GenericUDFOPEqualOrGreaterThan.class.getName().equals(op)) {
+          conditionStart = key;
+        } else if (GenericUDFOPLessThan.class.getName().equals(op)) {
+          conditionStop = key;
+        } else if (GenericUDFOPEqualOrLessThan.class.getName().equals(op)) {
+          conditionStop = keyAfter(key);
+        }
+        if (conditionStart != null && (start == null || Bytes.compareTo(conditionStart, start) > 0)) {
+          start = conditionStart;
+        }
+        if (conditionStop != null && (stop == null || Bytes.compareTo(conditionStop, stop) < 0)) {
+          stop = conditionStop;
+        }
+      } else if (columnSchema != null && GenericUDFOPEqual.class.getName().equals(op)) {
+        Schema.Field field = getField(columnSchema, column);
+        byte[] columnValue = field == null ? null : toBytes(value, getType(field.getSchema()));
+        if (columnValue != null) {
+          filters.add(ColumnValueFilter.equalTo(Bytes.toBytes(field.getName()), columnValue));
+        }
+      }
+    }
+
+    if (start == null && stop == null && filters.isEmpty()) {
+      return null;
+    }
+    if (start != null && stop != null && Bytes.compareTo(start, stop) >= 0) {
+      return Collections.emptyList();
+    }
+
+    List<Split> splits;
+    if (dataset instanceof KeyValueTable) {
+      splits = ((KeyValueTable) dataset).getSplits(-1, start, stop);
+    } else if (dataset instanceof ObjectMappedTable) {
+      splits = ((ObjectMappedTable<?>) dataset).getSplits(-1, start, stop);
+    } else {
+      splits = ((Table) dataset).getSplits(-1, start, stop);
+    }
+    if (filters.isEmpty()) {
+      return splits;
+    }
+
+    ColumnValueFilter filter = filters.size() == 1
+      ? filters.get(0) : ColumnValueFilter.and(filters.toArray(new ColumnValueFilter[filters.size()]));
+    List<Split> filteredSplits = new ArrayList<>(splits.size());
+    for (Split split : splits) {
+      TableSplit tableSplit = (TableSplit) split;
+      filteredSplits.add(new TableSplit(tableSplit.getStart(), tableSplit.getStop(), filter));
+    }
+    return filteredSplits;
+  }
+
+  private static IndexPredicateAnalyzer createAnalyzer(Iterable<String> columnNames) {
+    IndexPredicateAnalyzer analyzer = new IndexPredicateAnalyzer();
+    analyzer.addComparisonOp(GenericUDFOPEqual.class.getName());
+    analyzer.addComparisonOp(GenericUDFOPGreaterThan.class.getName());
+    analyzer.addComparisonOp(GenericUDFOPEqualOrGreaterThan.class.getName());
+    analyzer.addComparisonOp(GenericUDFOPLessThan.class.getName());
+    analyzer.addComparisonOp(GenericUDFOPEqualOrLessThan.class.getName());
+    for (String columnName : columnNames) {
+      analyzer.allowColumnName(columnName);
+    }
+    return analyzer;
+  }
+
+  @Nullable
+  private static Schema.Field getField(Schema schema, String column) {
+    for (Schema.Field field : schema.getFields()) {
+      if (field.getName().equalsIgnoreCase(column)) {
+        return field;
+      }
+    }
+    return null;
+  }
+
+  private static Schema.Type getType(Schema schema) {
+    return schema.isNullable() ? schema.getNonNullable().getType() : schema.getType();
+  }
+
+  /**
+   * Encodes a constant the same way as values of the given type are stored in a table.
+   *
+   * @return the encoded value, or {@code null} if the constant cannot be encoded for the type
+   */
+  @Nullable
+  private static byte[] toBytes(Object value, Schema.Type type) {
+    boolean integral = value instanceof Integer || value instanceof Long
+      || value instanceof Short || value instanceof Byte;
+    switch (type) {
+      case STRING:
+        return value instanceof String ? Bytes.toBytes((String) value) : null;
+      case BYTES:
+        if (value instanceof byte[]) {
+          return (byte[]) value;
+        }
+        return value instanceof String ? Bytes.toBytes((String) value) : null;
+      case INT:
+        if (!integral) {
+          return null;
+        }
+        long longValue = ((Number) value).longValue();
+        return longValue == (int) longValue ? Bytes.toBytes((int) longValue) : null;
+      case LONG:
+        return integral ? Bytes.toBytes(((Number) value).longValue()) : null;
+      case BOOLEAN:
+        return value instanceof Boolean ? Bytes.toBytes((Boolean) value) : null;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the smallest key that is greater than the given key.
+   */
+  private static byte[] keyAfter(byte[] key) {
+    return Bytes.concat(key, new byte[] { 0 });
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.hive.serde;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.UnsupportedTypeException;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.internal.io.ReflectionDatumReader;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import com.google.common.reflect.TypeToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes rows encoded by the {@link ObjectSerializer} in binary format into objects of the record type of a
+ * dataset. Records of type {@link StructuredRecord} are built from the schema, other records are decoded with a
+ * {@link ReflectionDatumReader}.
+ */
+public final class BinaryRowDecoder {
+
+  private final Schema schema;
+  private final ReflectionDatumReader<Object> datumReader;
+
+  /**
+   * Creates a decoder.
+   *
+   * @param schema the schema that rows were encoded with
+   * @param recordType the type of records to decode into
+   * @throws UnsupportedTypeException if the record type is not supported by the schema generator
+   */
+  @SuppressWarnings("unchecked")
+  public BinaryRowDecoder(Schema schema, Type recordType) throws UnsupportedTypeException {
+    this.schema = schema;
+    if (recordType == StructuredRecord.class) {
+      this.datumReader = null;
+    } else {
+      Schema targetSchema = new ReflectionSchemaGenerator().generate(recordType);
+      this.datumReader = new ReflectionDatumReader<>(targetSchema, (TypeToken<Object>) TypeToken.of(recordType));
+    }
+  }
+
+  /**
+   * Decodes a row.
+   *
+   * @param bytes the buffer containing the encoded row
+   * @param offset the offset of the encoded row in the buffer
+   * @param length the length of the encoded row
+   * @return the decoded record
+   * @throws IOException if failed to decode the row
+   */
+  public Object decode(byte[] bytes, int offset, int length) throws IOException {
+    Decoder decoder = new BinaryDecoder(new ByteArrayInputStream(bytes, offset, length));
+    if (datumReader != null) {
+      return datumReader.read(decoder, schema);
+    }
+    return read(decoder, schema);
+  }
+
+  private Object read(Decoder decoder, Schema schema) throws IOException {
+    switch (schema.getType()) {
+      case NULL:
+        return decoder.readNull();
+      case BOOLEAN:
+        return decoder.readBool();
+      case INT:
+        return decoder.readInt();
+      case LONG:
+        return decoder.readLong();
+      case FLOAT:
+        return decoder.readFloat();
+      case DOUBLE:
+        return decoder.readDouble();
+      case STRING:
+        return decoder.readString();
+      case BYTES:
+        return Bytes.toBytes(decoder.readBytes());
+      case ENUM:
+        return schema.getEnumValue(decoder.readInt());
+      case ARRAY:
+        return readArray(decoder, schema.getComponentSchema());
+      case MAP:
+        return readMap(decoder, schema.getMapSchema());
+      case RECORD:
+        return readRecord(decoder, schema);
+      case UNION:
+        return read(decoder, schema.getUnionSchema(decoder.readInt()));
+    }
+    throw new IOException("Unsupported schema type " + schema.getType());
+  }
+
+  private List<Object> readArray(Decoder decoder, Schema componentSchema) throws IOException {
+    List<Object> array = new ArrayList<>();
+    int size = decoder.readInt();
+    while (size != 0) {
+      for (int i = 0; i < size; i++) {
+        array.add(read(decoder, componentSchema));
+      }
+      size = decoder.readInt();
+    }
+    return array;
+  }
+
+  private Map<Object, Object> readMap(Decoder decoder, Map.Entry<Schema, Schema> mapSchema) throws IOException {
+    Map<Object, Object> map = new HashMap<>();
+    int size = decoder.readInt();
+    while (size != 0) {
+      for (int i = 0; i < size; i++) {
+        Object key = read(decoder, mapSchema.getKey());
+        map.put(key, read(decoder, mapSchema.getValue()));
+      }
+      size = decoder.readInt();
+    }
+    return map;
+  }
+
+  private StructuredRecord readRecord(Decoder decoder, Schema schema) throws IOException {
+    StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+    for (Schema.Field field : schema.getFields()) {
+      builder.set(field.getName(), read(decoder, field.getSchema()));
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.hive.serde;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.Encoder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import org.apache.hadoop.hive.common.type.HiveBaseChar;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes rows produced by the {@link ObjectSerializer} with the binary encoding of a record {@link Schema},
+ * which is the same encoding as the one used by {@link co.cask.cdap.internal.io.ReflectionDatumWriter}.
+ * The encoded row can be decoded with the {@link BinaryRowDecoder}.
+ *
+ * Rows are maps from column name to value. As Hive lower cases column names, record fields are looked up
+ * by their name first and by their lower cased name next. Instances of this class are not thread safe.
+ */
+final class BinaryRowEncoder {
+
+  // Hive primitive types whose values can be written for each primitive schema type
+  private static final Map<Schema.Type, Set<PrimitiveCategory>> PRIMITIVE_CATEGORIES =
+    ImmutableMap.<Schema.Type, Set<PrimitiveCategory>>builder()
+      .put(Schema.Type.BOOLEAN, EnumSet.of(PrimitiveCategory.BOOLEAN))
+      .put(Schema.Type.INT, EnumSet.of(PrimitiveCategory.BYTE, PrimitiveCategory.SHORT, PrimitiveCategory.INT))
+      .put(Schema.Type.LONG, EnumSet.of(PrimitiveCategory.BYTE, PrimitiveCategory.SHORT, PrimitiveCategory.INT,
+                                        PrimitiveCategory.LONG))
+      .put(Schema.Type.FLOAT, EnumSet.of(PrimitiveCategory.BYTE, PrimitiveCategory.SHORT, PrimitiveCategory.INT,
+                                         PrimitiveCategory.LONG, PrimitiveCategory.FLOAT))
+      .put(Schema.Type.DOUBLE, EnumSet.of(PrimitiveCategory.BYTE, PrimitiveCategory.SHORT, PrimitiveCategory.INT,
+                                          PrimitiveCategory.LONG, PrimitiveCategory.FLOAT, PrimitiveCategory.DOUBLE))
+      .put(Schema.Type.STRING, EnumSet.of(PrimitiveCategory.STRING, PrimitiveCategory.CHAR, PrimitiveCategory.VARCHAR))
+      .put(Schema.Type.ENUM, EnumSet.of(PrimitiveCategory.STRING, PrimitiveCategory.CHAR, PrimitiveCategory.VARCHAR))
+      .put(Schema.Type.BYTES, EnumSet.of(PrimitiveCategory.BINARY))
+      .build();
+
+  private static final Set<Schema.Type> NUMERIC_TYPES =
+    Sets.immutableEnumSet(Schema.Type.INT, Schema.Type.LONG, Schema.Type.FLOAT, Schema.Type.DOUBLE);
+
+  private final Schema schema;
+  private final ByteArrayOutputStream output;
+  private final Encoder encoder;
+
+  BinaryRowEncoder(Schema schema) {
+    if (schema.getType() != Schema.Type.RECORD) {
+      throw new IllegalArgumentException("Schema must be a record: " + schema);
+    }
+    this.schema = schema;
+    this.output = new ByteArrayOutputStream();
+    this.encoder = new BinaryEncoder(output);
+  }
+
+  /**
+   * Returns whether rows of the given Hive columns can be encoded with the given record schema. This is the case
+   * if every field of the schema is either nullable or has a column whose type can be written as the field type.
+   * Columns of types that have no counterpart in a schema, such as timestamps, dates and decimals, cannot be
+   * encoded, and neither can Hive unions.
+   *
+   * @param schema the record schema
+   * @param columnNames names of the Hive columns
+   * @param columnTypes types of the Hive columns, in the same order as the names
+   * @return whether rows of the columns can be encoded
+   */
+  static boolean canEncode(Schema schema, List<String> columnNames, List<TypeInfo> columnTypes) {
+    if (schema.getType() != Schema.Type.RECORD || columnNames.size() != columnTypes.size()) {
+      return false;
+    }
+    Map<String, TypeInfo> columns = new HashMap<>();
+    for (int i = 0; i < columnNames.size(); i++) {
+      columns.put(columnNames.get(i).toLowerCase(Locale.ENGLISH), columnTypes.get(i));
+    }
+    return canEncode(schema, columns);
+  }
+
+  private static boolean canEncode(Schema recordSchema, Map<String, TypeInfo> fieldTypes) {
+    for (Schema.Field field : recordSchema.getFields()) {
+      TypeInfo fieldType = fieldTypes.get(field.getName().toLowerCase(Locale.ENGLISH));
+      if (fieldType == null ? !field.getSchema().isNullable() : !canEncode(field.getSchema(), fieldType)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean canEncode(Schema schema, TypeInfo typeInfo) {
+    switch (schema.getType()) {
+      case UNION:
+        for (Schema unionSchema : schema.getUnionSchemas()) {
+          if (unionSchema.getType() != Schema.Type.NULL && canEncode(unionSchema, typeInfo)) {
+            return true;
+          }
+        }
+        return false;
+      case ARRAY:
+        return typeInfo.getCategory() == ObjectInspector.Category.LIST
+          && canEncode(schema.getComponentSchema(), ((ListTypeInfo) typeInfo).getListElementTypeInfo());
+      case MAP:
+        return typeInfo.getCategory() == ObjectInspector.Category.MAP
+          && canEncode(schema.getMapSchema().getKey(), ((MapTypeInfo) typeInfo).getMapKeyTypeInfo())
+          && canEncode(schema.getMapSchema().getValue(), ((MapTypeInfo) typeInfo).getMapValueTypeInfo());
+      case RECORD:
+        if (typeInfo.getCategory() != ObjectInspector.Category.STRUCT) {
+          return false;
+        }
+        StructTypeInfo structTypeInfo = (StructTypeInfo) typeInfo;
+        List<String> names = structTypeInfo.getAllStructFieldNames();
+        List<TypeInfo> types = structTypeInfo.getAllStructFieldTypeInfos();
+        Map<String, TypeInfo> fieldTypes = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+          fieldTypes.put(names.get(i).toLowerCase(Locale.ENGLISH), types.get(i));
+        }
+        return canEncode(schema, fieldTypes);
+      default:
+        Set<PrimitiveCategory> categories = PRIMITIVE_CATEGORIES.get(schema.getType());
+        return categories != null && typeInfo.getCategory() == ObjectInspector.Category.PRIMITIVE
+          && categories.contains(((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory());
+    }
+  }
+
+  /**
+   * Encodes the given row.
+   *
+   * @param row map from column name to value
+   * @return the encoded row
+   * @throws IOException if the row does not match the schema, for example if a non-nullable field is null
+   */
+  byte[] encode(Map<String, Object> row) throws IOException {
+    output.reset();
+    write(row, schema);
+    return output.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void write(Object value, Schema schema) throws IOException {
+    switch (schema.getType()) {
+      case NULL:
+        if (value != null) {
+          throw new IOException("Expected null value, got " + value.getClass());
+        }
+        encoder.writeNull();
+        break;
+      case BOOLEAN:
+        encoder.writeBool(cast(value, Boolean.class));
+        break;
+      case INT:
+        encoder.writeInt(cast(value, Number.class).intValue());
+        break;
+      case LONG:
+        encoder.writeLong(cast(value, Number.class).longValue());
+        break;
+      case FLOAT:
+        encoder.writeFloat(cast(value, Number.class).floatValue());
+        break;
+      case DOUBLE:
+        encoder.writeDouble(cast(value, Number.class).doubleValue());
+        break;
+      case STRING:
+        encoder.writeString(cast(value, Object.class).toString());
+        break;
+      case BYTES:
+        if (value instanceof ByteBuffer) {
+          encoder.writeBytes((ByteBuffer) value);
+        } else {
+          encoder.writeBytes(cast(value, byte[].class));
+        }
+        break;
+      case ENUM:
+        String enumValue = cast(value, Object.class).toString();
+        int idx = schema.getEnumIndex(enumValue);
+        if (idx < 0) {
+          throw new IOException("Invalid enum value " + enumValue);
+        }
+        encoder.writeInt(idx);
+        break;
+      case ARRAY:
+        writeArray(value, schema.getComponentSchema());
+        break;
+      case MAP:
+        writeMap(cast(value, Map.class), schema.getMapSchema());
+        break;
+      case RECORD:
+        writeRecord(cast(value, Map.class), schema);
+        break;
+      case UNION:
+        writeUnion(value, schema);
+        break;
+      default:
+        throw new IOException("Unsupported schema type " + schema.getType());
+    }
+  }
+
+  private void writeArray(Object value, Schema componentSchema) throws IOException {
+    if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      encoder.writeInt(collection.size());
+      for (Object element : collection) {
+        write(element, componentSchema);
+      }
+      if (!collection.isEmpty()) {
+        encoder.writeInt(0);
+      }
+      return;
+    }
+    if (value == null || !value.getClass().isArray()) {
+      throw new IOException("Expected an array or a collection, got " + (value == null ? null : value.getClass()));
+    }
+    int size = Array.getLength(value);
+    encoder.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      write(Array.get(value, i), componentSchema);
+    }
+    if (size > 0) {
+      encoder.writeInt(0);
+    }
+  }
+
+  private void writeMap(Map<?, ?> map, Map.Entry<Schema, Schema> mapSchema) throws IOException {
+    encoder.writeInt(map.size());
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      write(entry.getKey(), mapSchema.getKey());
+      write(entry.getValue(), mapSchema.getValue());
+    }
+    if (!map.isEmpty()) {
+      encoder.writeInt(0);
+    }
+  }
+
+  private void writeRecord(Map<?, ?> record, Schema schema) throws IOException {
+    for (Schema.Field field : schema.getFields()) {
+      String name = field.getName();
+      Object value = record.get(name);
+      if (value == null) {
+        value = record.get(name.toLowerCase(Locale.ENGLISH));
+      }
+      write(value, field.getSchema());
+    }
+  }
+
+  private void writeUnion(Object value, Schema schema) throws IOException {
+    List<Schema> unionSchemas = schema.getUnionSchemas();
+    int index = getUnionIndex(value, unionSchemas);
+    if (index < 0) {
+      throw new IOException("No matching union branch in " + schema + " for value " + value);
+    }
+    encoder.writeInt(index);
+    write(value, unionSchemas.get(index));
+  }
+
+  /**
+   * Returns the index of the first union branch that matches the type of the value. Numbers that no branch
+   * matches go to the first numeric branch, and chars and varchars that no branch matches go to the first
+   * string branch. Returns -1 if no branch can hold the value.
+   */
+  private static int getUnionIndex(Object value, List<Schema> unionSchemas) {
+    for (int i = 0; i < unionSchemas.size(); i++) {
+      if (matches(value, unionSchemas.get(i))) {
+        return i;
+      }
+    }
+    for (int i = 0; i < unionSchemas.size(); i++) {
+      Schema.Type type = unionSchemas.get(i).getType();
+      if ((value instanceof Number && NUMERIC_TYPES.contains(type))
+        || (value instanceof HiveBaseChar && type == Schema.Type.STRING)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean matches(Object value, Schema schema) {
+    switch (schema.getType()) {
+      case NULL:
+        return value == null;
+      case BOOLEAN:
+        return value instanceof Boolean;
+      case INT:
+        return value instanceof Integer || value instanceof Short || value instanceof Byte;
+      case LONG:
+        return value instanceof Long;
+      case FLOAT:
+        return value instanceof Float;
+      case DOUBLE:
+        return value instanceof Double;
+      case STRING:
+        return value instanceof String;
+      case ENUM:
+        return value instanceof String && schema.getEnumIndex((String) value) >= 0;
+      case BYTES:
+        return value instanceof byte[] || value instanceof ByteBuffer;
+      case ARRAY:
+        return value instanceof Collection || value instanceof Object[];
+      case MAP:
+      case RECORD:
+        return value instanceof Map;
+      default:
+        return false;
+    }
+  }
+
+  private static <T> T cast(Object value, Class<T> type) throws IOException {
+    if (!type.isInstance(value)) {
+      throw new IOException("Expected value of type " + type.getName() + ", got " +
+                              (value == null ? null : value.getClass().getName()));
+    }
+    return type.cast(value);
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.hive.serde;
 
+import co.cask.cdap.api.data.schema.Schema;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -47,22 +48,46 @@ import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.ShortWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Used to serialize objects in a SerDe. Objects can come from native Hive tables or they can come from the
  * {@link ObjectDeserializer}.
+ *
+ * If the record schema is known and the column types can be written with it, objects are serialized into a
+ * {@link BytesWritable} in the binary encoding of the schema, which can be decoded with the {@link BinaryRowDecoder}.
+ * Otherwise, or if an object does not match the schema, objects are serialized into a {@link Text} containing JSON.
  */
 public class ObjectSerializer {
+  private static final Logger LOG = LoggerFactory.getLogger(ObjectSerializer.class);
   private static final Gson GSON = new Gson();
   private final ArrayList<String> columnNames;
+  private final BinaryRowEncoder binaryEncoder;
 
   public ObjectSerializer(ArrayList<String> columnNames) {
+    this(columnNames, ImmutableList.<TypeInfo>of(), null);
+  }
+
+  public ObjectSerializer(ArrayList<String> columnNames, List<TypeInfo> columnTypes, @Nullable Schema schema) {
     this.columnNames = columnNames;
+    // decide once whether rows can be encoded in binary, so that rows are not encoded twice
+    if (schema != null && BinaryRowEncoder.canEncode(schema, columnNames, columnTypes)) {
+      this.binaryEncoder = new BinaryRowEncoder(schema);
+    } else {
+      if (schema != null) {
+        LOG.debug("Columns {} of types {} cannot be encoded with schema {}, serializing rows as JSON.",
+                  columnNames, columnTypes, schema);
+      }
+      this.binaryEncoder = null;
+    }
   }
 
   public Writable serialize(Object o, ObjectInspector objectInspector) {
@@ -91,7 +116,13 @@ public class ObjectSerializer {
       }
     }
 
-    // TODO Improve serialization logic - CDAP-11
+    if (binaryEncoder != null) {
+      try {
+        return new BytesWritable(binaryEncoder.encode(recordMap));
+      } catch (IOException e) {
+        LOG.debug("Failed to encode row in binary format, falling back to JSON.", e);
+      }
+    }
     return new Text(GSON.toJson(recordMap));
   }
 
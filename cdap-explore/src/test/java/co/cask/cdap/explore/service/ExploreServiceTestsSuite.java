@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -34,7 +34,8 @@ import org.junit.runners.Suite;
   WritableDatasetTestRun.class,
   HiveExploreObjectMappedTableTestRun.class,
   HiveExploreServiceFileSetTestRun.class,
-  HiveExploreStructuredRecordTestRun.class
+  HiveExploreStructuredRecordTestRun.class,
+  HiveExplorePredicatePushdownTestRun.class
 })
 public class ExploreServiceTestsSuite {
 
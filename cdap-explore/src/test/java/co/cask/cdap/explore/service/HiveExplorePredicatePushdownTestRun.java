@@ -0,0 +1,326 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.explore.service;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.dataset.DatasetDefinition;
+import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.lib.ObjectMappedTable;
+import co.cask.cdap.api.dataset.lib.ObjectMappedTableProperties;
+import co.cask.cdap.api.dataset.table.Put;
+import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.explore.client.ExploreExecutionResult;
+import co.cask.cdap.explore.service.datasets.Record;
+import co.cask.cdap.proto.QueryResult;
+import co.cask.cdap.proto.id.DatasetId;
+import co.cask.cdap.test.SlowTests;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import org.apache.tephra.Transaction;
+import org.apache.tephra.TransactionAware;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+/**
+ * Tests that predicates pushed down into dataset scans return the same rows as an unfiltered scan.
+ */
+@Category(SlowTests.class)
+public class HiveExplorePredicatePushdownTestRun extends BaseHiveExploreServiceTest {
+  @ClassRule
+  public static TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static final DatasetId STRING_KEY_TABLE = NAMESPACE_ID.dataset("stringkeytable");
+  private static final DatasetId INT_KEY_TABLE = NAMESPACE_ID.dataset("intkeytable");
+  private static final DatasetId RECORDS = NAMESPACE_ID.dataset("records");
+
+  private static final String STRING_KEY_COLUMNS = "key, value, category";
+  private static final String INT_KEY_COLUMNS = "id, name";
+  private static final String RECORD_COLUMNS = "row_key, intfield, stringfield";
+
+  private static final Schema STRING_KEY_SCHEMA =
+    Schema.recordOf("stringkeyrecord",
+                    Schema.Field.of("key", Schema.of(Schema.Type.STRING)),
+                    Schema.Field.of("value", Schema.nullableOf(Schema.of(Schema.Type.INT))),
+                    Schema.Field.of("category", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  private static final Schema INT_KEY_SCHEMA =
+    Schema.recordOf("intkeyrecord",
+                    Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+                    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  @BeforeClass
+  public static void start() throws Exception {
+    initialize(tmpFolder);
+
+    datasetFramework.addInstance(Table.class.getName(), STRING_KEY_TABLE, DatasetProperties.builder()
+      .add(Table.PROPERTY_SCHEMA, STRING_KEY_SCHEMA.toString())
+      .add(Table.PROPERTY_SCHEMA_ROW_FIELD, "key")
+      .build());
+    datasetFramework.addInstance(Table.class.getName(), INT_KEY_TABLE, DatasetProperties.builder()
+      .add(Table.PROPERTY_SCHEMA, INT_KEY_SCHEMA.toString())
+      .add(Table.PROPERTY_SCHEMA_ROW_FIELD, "id")
+      .build());
+    datasetFramework.addInstance(ObjectMappedTable.class.getName(), RECORDS, ObjectMappedTableProperties.builder()
+      .setType(Record.class)
+      .setRowKeyExploreName("row_key")
+      .setRowKeyExploreType(Schema.Type.STRING)
+      .build());
+
+    Table stringKeyTable = datasetFramework.getDataset(STRING_KEY_TABLE, DatasetDefinition.NO_ARGUMENTS, null);
+    Assert.assertNotNull(stringKeyTable);
+    Table intKeyTable = datasetFramework.getDataset(INT_KEY_TABLE, DatasetDefinition.NO_ARGUMENTS, null);
+    Assert.assertNotNull(intKeyTable);
+    ObjectMappedTable<Record> records = datasetFramework.getDataset(RECORDS, DatasetDefinition.NO_ARGUMENTS, null);
+    Assert.assertNotNull(records);
+
+    List<TransactionAware> txAwares = Lists.newArrayList((TransactionAware) stringKeyTable,
+                                                         (TransactionAware) intKeyTable,
+                                                         (TransactionAware) records);
+    Transaction tx = transactionManager.startShort(100);
+    for (TransactionAware txAware : txAwares) {
+      txAware.startTx(tx);
+    }
+
+    // keys "a" through "f", with values 0 through 5
+    for (int i = 0; i < 6; i++) {
+      Put put = new Put(Bytes.toBytes(String.valueOf((char) ('a' + i))));
+      put.add("value", i);
+      put.add("category", i % 2 == 0 ? "even" : "odd");
+      stringKeyTable.put(put);
+    }
+
+    // negative ids sort after positive ones in their byte encoding
+    for (int id = -3; id <= 3; id++) {
+      Put put = new Put(Bytes.toBytes(id));
+      put.add("name", "name" + id);
+      intKeyTable.put(put);
+    }
+
+    records.write("k1", new Record(1, 10L, 1.0f, 1.0, "x", new byte[] { 1 }));
+    records.write("k2", new Record(2, 20L, 2.0f, 2.0, "y", new byte[] { 2 }));
+    records.write("k3", new Record(3, 30L, 3.0f, 3.0, "x", new byte[] { 3 }));
+    records.write("k4", new Record(2, 40L, 4.0f, 4.0, "z", new byte[] { 4 }));
+
+    for (TransactionAware txAware : txAwares) {
+      Assert.assertTrue(txAware.commitTx());
+    }
+    for (TransactionAware txAware : txAwares) {
+      transactionManager.canCommit(tx, txAware.getTxChanges());
+    }
+    transactionManager.commit(tx);
+    for (TransactionAware txAware : txAwares) {
+      txAware.postTxCommit();
+    }
+  }
+
+  @AfterClass
+  public static void stop() throws Exception {
+    datasetFramework.deleteInstance(STRING_KEY_TABLE);
+    datasetFramework.deleteInstance(INT_KEY_TABLE);
+    datasetFramework.deleteInstance(RECORDS);
+  }
+
+  @Test
+  public void testRowKeyEquality() throws Exception {
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key = 'c'", 1, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return "c".equals(value);
+      }
+    });
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key = 'cc'", 0, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return "cc".equals(value);
+      }
+    });
+    assertSameRows(RECORDS, RECORD_COLUMNS, "row_key = 'k2'", 1, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return "k2".equals(value);
+      }
+    });
+  }
+
+  @Test
+  public void testStringKeyRanges() throws Exception {
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key > 'b' and key <= 'e'", 3, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return ((String) value).compareTo("b") > 0 && ((String) value).compareTo("e") <= 0;
+      }
+    });
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key >= 'c'", 4, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return ((String) value).compareTo("c") >= 0;
+      }
+    });
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key < 'c'", 2, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return ((String) value).compareTo("c") < 0;
+      }
+    });
+    // a bound that is not itself a row key
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key > 'bb' and key < 'dd'", 2, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return ((String) value).compareTo("bb") > 0 && ((String) value).compareTo("dd") < 0;
+      }
+    });
+    assertSameRows(RECORDS, RECORD_COLUMNS, "row_key >= 'k2' and row_key < 'k4'", 2, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return ((String) value).compareTo("k2") >= 0 && ((String) value).compareTo("k4") < 0;
+      }
+    });
+  }
+
+  @Test
+  public void testContradictoryBounds() throws Exception {
+    ColumnPredicate none = new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return false;
+      }
+    };
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key > 'd' and key < 'b'", 0, none);
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key >= 'c' and key < 'c'", 0, none);
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key = 'a' and key > 'c'", 0, none);
+  }
+
+  @Test
+  public void testNegativeIntKey() throws Exception {
+    assertSameRows(INT_KEY_TABLE, INT_KEY_COLUMNS, "id = -2", 1, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return (Integer) value == -2;
+      }
+    });
+    assertSameRows(INT_KEY_TABLE, INT_KEY_COLUMNS, "id < 0", 3, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return (Integer) value < 0;
+      }
+    });
+    assertSameRows(INT_KEY_TABLE, INT_KEY_COLUMNS, "id >= -1", 5, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return (Integer) value >= -1;
+      }
+    });
+    assertSameRows(INT_KEY_TABLE, INT_KEY_COLUMNS, "id > -3 and id < 2", 4, new ColumnPredicate(0) {
+      @Override
+      boolean matches(Object value) {
+        return (Integer) value > -3 && (Integer) value < 2;
+      }
+    });
+  }
+
+  @Test
+  public void testColumnEquality() throws Exception {
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "category = 'odd'", 3, new ColumnPredicate(2) {
+      @Override
+      boolean matches(Object value) {
+        return "odd".equals(value);
+      }
+    });
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "value = 4", 1, new ColumnPredicate(1) {
+      @Override
+      boolean matches(Object value) {
+        return value != null && (Integer) value == 4;
+      }
+    });
+    assertSameRows(STRING_KEY_TABLE, STRING_KEY_COLUMNS, "key >= 'b' and category = 'even'", 2,
+                   new Predicate<List<Object>>() {
+      @Override
+      public boolean apply(List<Object> row) {
+        return ((String) row.get(0)).compareTo("b") >= 0 && "even".equals(row.get(2));
+      }
+    });
+    assertSameRows(RECORDS, RECORD_COLUMNS, "stringfield = 'x'", 2, new ColumnPredicate(2) {
+      @Override
+      boolean matches(Object value) {
+        return "x".equals(value);
+      }
+    });
+    assertSameRows(RECORDS, RECORD_COLUMNS, "intfield = 2", 2, new ColumnPredicate(1) {
+      @Override
+      boolean matches(Object value) {
+        return (Integer) value == 2;
+      }
+    });
+  }
+
+  /**
+   * Runs the query with the given condition and asserts that it returns exactly the rows of an unfiltered scan
+   * that match the given predicate.
+   */
+  private void assertSameRows(DatasetId datasetId, String columns, String condition, int expectedCount,
+                              Predicate<List<Object>> predicate) throws Exception {
+    String select = "select " + columns + " from " + getDatasetHiveName(datasetId);
+
+    List<List<Object>> expected = Lists.newArrayList();
+    for (List<Object> row : query(select)) {
+      if (predicate.apply(row)) {
+        expected.add(row);
+      }
+    }
+    Assert.assertEquals(condition, expectedCount, expected.size());
+    Assert.assertEquals(condition, expected, query(select + " where " + condition));
+  }
+
+  private List<List<Object>> query(String query) throws Exception {
+    List<List<Object>> rows = Lists.newArrayList();
+    ExploreExecutionResult results = exploreClient.submit(NAMESPACE_ID.toId(), query).get();
+    try {
+      for (QueryResult result : trimColumnValues(results)) {
+        rows.add(result.getColumns());
+      }
+    } finally {
+      results.close();
+    }
+    return rows;
+  }
+
+  /**
+   * A predicate on a single column of a result row.
+   */
+  private abstract static class ColumnPredicate implements Predicate<List<Object>> {
+    private final int column;
+
+    ColumnPredicate(int column) {
+      this.column = column;
+    }
+
+    @Override
+    public boolean apply(List<Object> row) {
+      return matches(row.get(column));
+    }
+
+    abstract boolean matches(Object value);
+  }
+}
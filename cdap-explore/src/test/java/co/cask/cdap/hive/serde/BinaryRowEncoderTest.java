@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.hive.serde;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link BinaryRowEncoder} and {@link BinaryRowDecoder}.
+ */
+public class BinaryRowEncoderTest {
+
+  private static class Record {
+    int intField;
+    long longField;
+    String stringField;
+    Double nullableField;
+    List<String> listField;
+    Map<String, Integer> mapField;
+    Inner innerField;
+  }
+
+  private static class Inner {
+    boolean flag;
+    byte[] bytes;
+  }
+
+  @Test
+  public void testReflectionRecord() throws Exception {
+    Schema schema = new ReflectionSchemaGenerator().generate(Record.class);
+
+    // Hive lower cases column names and uses maps for structs
+    Map<String, Object> row = new HashMap<>();
+    row.put("intfield", 1);
+    row.put("longfield", 2L);
+    row.put("stringfield", "three");
+    row.put("nullablefield", null);
+    row.put("listfield", new Object[] { "a", "b" });
+    row.put("mapfield", ImmutableMap.of("x", 4));
+    row.put("innerfield", ImmutableMap.of("flag", true, "bytes", new byte[] { 5, 6 }));
+
+    byte[] encoded = new BinaryRowEncoder(schema).encode(row);
+    Record record = (Record) new BinaryRowDecoder(schema, Record.class).decode(encoded, 0, encoded.length);
+
+    Assert.assertEquals(1, record.intField);
+    Assert.assertEquals(2L, record.longField);
+    Assert.assertEquals("three", record.stringField);
+    Assert.assertNull(record.nullableField);
+    Assert.assertEquals(ImmutableList.of("a", "b"), record.listField);
+    Assert.assertEquals(ImmutableMap.of("x", 4), record.mapField);
+    Assert.assertTrue(record.innerField.flag);
+    Assert.assertArrayEquals(new byte[] { 5, 6 }, record.innerField.bytes);
+  }
+
+  @Test
+  public void testStructuredRecord() throws Exception {
+    Schema schema = Schema.recordOf(
+      "rec",
+      Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("scores", Schema.arrayOf(Schema.of(Schema.Type.DOUBLE))));
+
+    Map<String, Object> row = new HashMap<>();
+    row.put("id", 7L);
+    row.put("name", "seven");
+    row.put("scores", ImmutableList.of(1.5d, 2.5d));
+
+    byte[] encoded = new BinaryRowEncoder(schema).encode(row);
+    StructuredRecord record = (StructuredRecord) new BinaryRowDecoder(schema, StructuredRecord.class)
+      .decode(encoded, 0, encoded.length);
+
+    Assert.assertEquals(7L, (long) record.get("id"));
+    Assert.assertEquals("seven", record.get("name"));
+    Assert.assertEquals(ImmutableList.of(1.5d, 2.5d), record.get("scores"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testSchemaMismatch() throws Exception {
+    Schema schema = Schema.recordOf("rec", Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+    new BinaryRowEncoder(schema).encode(ImmutableMap.<String, Object>of("id", "not a number"));
+  }
+
+  @Test
+  public void testCanEncode() throws Exception {
+    Schema schema = Schema.recordOf(
+      "rec",
+      Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("scores", Schema.arrayOf(Schema.of(Schema.Type.DOUBLE))));
+    List<String> columns = Arrays.asList("id", "name", "scores");
+
+    Assert.assertTrue(BinaryRowEncoder.canEncode(schema, columns, typeInfos("int,varchar(10),array<float>")));
+    Assert.assertTrue(BinaryRowEncoder.canEncode(schema, Arrays.asList("id", "scores"),
+                                                 typeInfos("bigint,array<double>")));
+
+    // types without a counterpart in the schema
+    Assert.assertFalse(BinaryRowEncoder.canEncode(schema, columns, typeInfos("timestamp,string,array<double>")));
+    Assert.assertFalse(BinaryRowEncoder.canEncode(schema, columns, typeInfos("decimal(10,2),string,array<double>")));
+    Assert.assertFalse(BinaryRowEncoder.canEncode(schema, columns, typeInfos("bigint,date,array<double>")));
+    Assert.assertFalse(BinaryRowEncoder.canEncode(schema, columns, typeInfos("bigint,string,array<string>")));
+    // a missing column for a non-nullable field
+    Assert.assertFalse(BinaryRowEncoder.canEncode(schema, Arrays.asList("name", "scores"),
+                                                  typeInfos("string,array<double>")));
+  }
+
+  @Test
+  public void testUnionBranchByValueType() throws Exception {
+    Schema schema = Schema.recordOf(
+      "rec",
+      Schema.Field.of("value", Schema.unionOf(Schema.of(Schema.Type.NULL), Schema.of(Schema.Type.STRING),
+                                              Schema.of(Schema.Type.LONG), Schema.of(Schema.Type.DOUBLE))));
+    Assert.assertTrue(BinaryRowEncoder.canEncode(schema, Arrays.asList("value"), typeInfos("int")));
+    BinaryRowEncoder encoder = new BinaryRowEncoder(schema);
+    BinaryRowDecoder decoder = new BinaryRowDecoder(schema, StructuredRecord.class);
+
+    Map<String, Object> row = new HashMap<>();
+    row.put("value", "text");
+    Assert.assertEquals("text", decode(decoder, encoder.encode(row)).get("value"));
+    row.put("value", 5L);
+    Assert.assertEquals(Long.valueOf(5L), decode(decoder, encoder.encode(row)).get("value"));
+    row.put("value", 1.5d);
+    Assert.assertEquals(Double.valueOf(1.5d), decode(decoder, encoder.encode(row)).get("value"));
+    // an int goes to the first numeric branch
+    row.put("value", 7);
+    Assert.assertEquals(Long.valueOf(7L), decode(decoder, encoder.encode(row)).get("value"));
+  }
+
+  private static List<TypeInfo> typeInfos(String types) {
+    return TypeInfoUtils.getTypeInfosFromTypeString(types);
+  }
+
+  private static StructuredRecord decode(BinaryRowDecoder decoder, byte[] encoded) throws IOException {
+    return (StructuredRecord) decoder.decode(encoded, 0, encoded.length);
+  }
+}
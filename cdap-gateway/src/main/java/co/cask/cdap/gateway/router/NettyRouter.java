@@ -16,6 +16,7 @@
 
 package co.cask.cdap.gateway.router;
 
+import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.common.ServiceBindException;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
@@ -23,7 +24,9 @@ import co.cask.cdap.common.conf.SConfiguration;
 import co.cask.cdap.gateway.router.handlers.HttpRequestHandler;
 import co.cask.cdap.gateway.router.handlers.HttpStatusRequestHandler;
 import co.cask.cdap.gateway.router.handlers.IdleEventProcessor;
+import co.cask.cdap.gateway.router.handlers.OutboundConnectionPool;
 import co.cask.cdap.gateway.router.handlers.SecurityAuthenticationHttpHandler;
+import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.auth.AccessTokenTransformer;
 import co.cask.cdap.security.auth.TokenValidator;
 import co.cask.cdap.security.tools.SSLHandlerFactory;
@@ -99,11 +102,16 @@ public class NettyRouter extends AbstractIdleService {
   private final boolean sslEnabled;
   private final SSLHandlerFactory sslHandlerFactory;
   private final int connectionTimeout;
+  private final int poolMaxIdlePerDestination;
+  private final int poolMaxConnectionsPerDestination;
+  private final long poolAcquireTimeoutMillis;
 
   private Timer timer;
   private ServerBootstrap serverBootstrap;
   private ClientBootstrap clientBootstrap;
+  private OutboundConnectionPool connectionPool;
   private DiscoveryServiceClient discoveryServiceClient;
+  private MetricsCollectionService metricsCollectionService;
 
   @Inject
   public NettyRouter(CConfiguration cConf, SConfiguration sConf, @Named(Constants.Router.ADDRESS) InetAddress hostname,
@@ -156,9 +164,20 @@ public class NettyRouter extends AbstractIdleService {
     }
     this.connectionTimeout = cConf.getInt(Constants.Router.CONNECTION_TIMEOUT_SECS);
     LOG.info("Using connection timeout: {}", connectionTimeout);
+    this.poolMaxIdlePerDestination = cConf.getInt(Constants.Router.POOL_MAX_IDLE_PER_DESTINATION);
+    this.poolMaxConnectionsPerDestination = cConf.getInt(Constants.Router.POOL_MAX_CONNECTIONS_PER_DESTINATION);
+    this.poolAcquireTimeoutMillis = cConf.getLong(Constants.Router.POOL_ACQUIRE_TIMEOUT_MS);
     LOG.info("Service to Port Mapping - {}", this.serviceToPortMap);
   }
 
+  /**
+   * Sets the {@link MetricsCollectionService} for emitting the outbound connection pool metrics.
+   */
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsCollectionService = metricsCollectionService;
+  }
+
   @Override
   protected void startUp() throws Exception {
     ChannelUpstreamHandler connectionTracker = new SimpleChannelUpstreamHandler() {
@@ -253,13 +272,15 @@ public class NettyRouter extends AbstractIdleService {
           pipeline.addLast("http-response-encoder", new HttpResponseEncoder());
           pipeline.addLast("http-decoder", new HttpRequestDecoder());
           pipeline.addLast("http-status-request-handler", new HttpStatusRequestHandler());
+          // disable the read-specific and write-specific timeouts; we only utilize IdleState#ALL_IDLE
+          pipeline.addLast("idle-event-generator", new IdleStateHandler(timer, 0, 0, connectionTimeout));
           if (securityEnabled) {
             pipeline.addLast("access-token-authenticator", new SecurityAuthenticationHttpHandler(
               realm, tokenValidator, configuration, accessTokenTransformer, discoveryServiceClient));
           }
           // for now there's only one hardcoded rule, but if there will be more, we may want it generic and configurable
           pipeline.addLast("http-request-handler",
-                           new HttpRequestHandler(clientBootstrap, serviceLookup, ImmutableList.<ProxyRule>of()));
+                           new HttpRequestHandler(connectionPool, serviceLookup, ImmutableList.<ProxyRule>of()));
           return pipeline;
         }
       }
@@ -330,6 +351,14 @@ public class NettyRouter extends AbstractIdleService {
     });
 
     clientBootstrap.setOption("bufferFactory", new DirectChannelBufferFactory());
+
+    connectionPool = new OutboundConnectionPool(clientBootstrap, timer, poolMaxIdlePerDestination,
+                                                poolMaxConnectionsPerDestination, poolAcquireTimeoutMillis);
+    if (metricsCollectionService != null) {
+      connectionPool.setMetricsContext(metricsCollectionService.getContext(
+        ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+                        Constants.Metrics.Tag.COMPONENT, Constants.Service.GATEWAY)));
+    }
   }
 
   private boolean isSSLEnabled() {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,29 +16,36 @@
 
 package co.cask.cdap.gateway.router;
 
+import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.common.ServiceBindException;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.guice.ConfigModule;
 import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
 import co.cask.cdap.common.guice.IOModule;
+import co.cask.cdap.common.guice.KafkaClientModule;
 import co.cask.cdap.common.guice.ZKClientModule;
 import co.cask.cdap.common.kerberos.SecurityUtil;
 import co.cask.cdap.common.runtime.DaemonMain;
+import co.cask.cdap.metrics.guice.MetricsClientRuntimeModule;
 import co.cask.cdap.route.store.RouteStore;
 import co.cask.cdap.route.store.ZKRouteStore;
 import co.cask.cdap.security.guice.SecurityModules;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Module;
 import com.google.inject.Scopes;
 import org.apache.twill.internal.Services;
+import org.apache.twill.kafka.client.KafkaClientService;
 import org.apache.twill.zookeeper.ZKClientService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -49,6 +56,9 @@ public class RouterMain extends DaemonMain {
 
   private CConfiguration cConf;
   private ZKClientService zkClientService;
+  // Only used if the router metrics are enabled
+  private KafkaClientService kafkaClientService;
+  private MetricsCollectionService metricsCollectionService;
   private NettyRouter router;
   private RouteStore routeStore;
 
@@ -86,6 +96,10 @@ public class RouterMain extends DaemonMain {
 
       Injector injector = createGuiceInjector(cConf);
       zkClientService = injector.getInstance(ZKClientService.class);
+      if (cConf.getBoolean(Constants.Router.METRICS_ENABLED)) {
+        kafkaClientService = injector.getInstance(KafkaClientService.class);
+        metricsCollectionService = injector.getInstance(MetricsCollectionService.class);
+      }
 
       // Get the Router
       router = injector.getInstance(NettyRouter.class);
@@ -110,6 +124,10 @@ public class RouterMain extends DaemonMain {
                                                                     "ZooKeeper quorum settings are correct in " +
                                                                     "cdap-site.xml. Currently configured as: %s",
                                                                     cConf.get(Constants.Zookeeper.QUORUM)));
+    if (kafkaClientService != null) {
+      kafkaClientService.startAndWait();
+      metricsCollectionService.startAndWait();
+    }
     router.startAndWait();
     LOG.info("Router started.");
   }
@@ -117,7 +135,11 @@ public class RouterMain extends DaemonMain {
   @Override
   public void stop() {
     LOG.info("Stopping Router...");
-    Futures.getUnchecked(Services.chainStop(router, zkClientService));
+    if (kafkaClientService != null) {
+      Futures.getUnchecked(Services.chainStop(router, metricsCollectionService, kafkaClientService, zkClientService));
+    } else {
+      Futures.getUnchecked(Services.chainStop(router, zkClientService));
+    }
     try {
       routeStore.close();
     } catch (Exception ex) {
@@ -132,7 +154,7 @@ public class RouterMain extends DaemonMain {
   }
 
   static Injector createGuiceInjector(CConfiguration cConf) {
-    return Guice.createInjector(
+    List<Module> modules = Lists.newArrayList(
       new ConfigModule(cConf),
       new ZKClientModule(),
       new DiscoveryRuntimeModule().getDistributedModules(),
@@ -146,5 +168,12 @@ public class RouterMain extends DaemonMain {
         }
       }
     );
+
+    // Without the metrics modules, the router is created without MetricsCollectionService and emits no metrics
+    if (cConf.getBoolean(Constants.Router.METRICS_ENABLED)) {
+      modules.add(new KafkaClientModule());
+      modules.add(new MetricsClientRuntimeModule().getDistributedModules());
+    }
+    return Guice.createInjector(modules);
   }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,13 +22,17 @@ import co.cask.cdap.gateway.router.ProxyRule;
 import co.cask.cdap.gateway.router.RouterServiceLookup;
 import com.google.common.collect.Queues;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.twill.discovery.Discoverable;
-import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ExceptionEvent;
@@ -36,10 +40,14 @@ import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.timeout.IdleState;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,18 +58,27 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * Handler that handles HTTP requests and forwards to appropriate services. The service discovery is
  * performed using Discovery service for forwarding.
+ *
+ * Outbound channels are borrowed from the {@link OutboundConnectionPool} when a request is forwarded to a
+ * destination. If pooling is enabled, they are returned to it once all responses from that destination are
+ * completed, so that keep-alive connections to the services are shared across client connections. Otherwise
+ * they stay with the client connection until it is closed. If no outbound channel becomes available within the
+ * acquire timeout of the pool, the request fails with 503 Service Unavailable.
  */
 public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(HttpRequestHandler.class);
 
-  private final ClientBootstrap clientBootstrap;
+  private final OutboundConnectionPool connectionPool;
   private final RouterServiceLookup serviceLookup;
   // Data structure is used to clean up the channel futures on connection close.
   private final Map<WrappedDiscoverable, MessageSender> discoveryLookup;
@@ -71,15 +88,24 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
   private MessageSender chunkSender;
   private volatile boolean channelClosed;
 
-  public HttpRequestHandler(ClientBootstrap clientBootstrap,
+  public HttpRequestHandler(OutboundConnectionPool connectionPool,
                             RouterServiceLookup serviceLookup,
                             List<ProxyRule> proxyRules) {
-    this.clientBootstrap = clientBootstrap;
+    this.connectionPool = connectionPool;
     this.serviceLookup = serviceLookup;
     this.discoveryLookup = new HashMap<>();
     this.proxyRules = proxyRules;
   }
 
+  @Override
+  public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
+    if (e instanceof IdleStateEvent) {
+      channelIdle(ctx, (IdleStateEvent) e);
+      return;
+    }
+    super.handleUpstream(ctx, e);
+  }
+
   @Override
   public void messageReceived(final ChannelHandlerContext ctx,
                               MessageEvent event) throws Exception {
@@ -108,41 +134,15 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
       WrappedDiscoverable discoverable = getDiscoverable(request,
                                                          (InetSocketAddress) inboundChannel.getLocalAddress());
 
-      // If no event sender, make new connection, otherwise reuse existing one.
-      MessageSender sender =  discoveryLookup.get(discoverable);
-      if (sender == null || !sender.isConnected()) {
-        InetSocketAddress address = discoverable.getSocketAddress();
-
-        ChannelFuture future = clientBootstrap.connect(address);
-        final Channel outboundChannel = future.getChannel();
-        outboundChannel.getPipeline().addAfter("request-encoder",
-                                               "outbound-handler", new OutboundHandler(inboundChannel));
-        sender = new MessageSender(inboundChannel, future);
+      // Reuse the outbound channel if it is still leased for this connection, otherwise borrow one from the pool.
+      MessageSender sender = discoveryLookup.get(discoverable);
+      if (sender == null || !sender.startRequest(request)) {
+        sender = new MessageSender(inboundChannel, connectionPool, connectionPool.acquire(discoverable));
+        sender.startRequest(request);
         discoveryLookup.put(discoverable, sender);
-
-        // Remember the in-flight outbound channel
-        inboundChannel.setAttachment(outboundChannel);
-        outboundChannel.getCloseFuture().addListener(new ChannelFutureListener() {
-          @Override
-          public void operationComplete(ChannelFuture future) throws Exception {
-            inboundChannel.getPipeline().execute(new Runnable() {
-              @Override
-              public void run() {
-                // When the outbound channel closed,
-                // close the inbound channel as well if it carries the in-flight request
-                if (outboundChannel.equals(inboundChannel.getAttachment())) {
-                  closeOnFlush(inboundChannel);
-                }
-              }
-            });
-          }
-        });
       } else {
-        Channel outboundChannel = (Channel) inboundChannel.getAttachment();
-        if (outboundChannel != null) {
-          // Set outbound channel to be readable in case previous request has set it as non-readable
-          outboundChannel.setReadable(true);
-        }
+        // Set outbound channel to be readable in case previous request has set it as non-readable
+        sender.setOutboundReadable(true);
       }
 
       // Send the message.
@@ -169,24 +169,33 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
   @Override
   public void channelInterestChanged(ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
-    final Channel outboundChannel = (Channel) e.getChannel().getAttachment();
-    if (outboundChannel != null) {
-      outboundChannel.getPipeline().execute(new Runnable() {
-        @Override
-        public void run() {
-          // If inboundChannel is not saturated anymore, continue accepting
-          // the outbound traffic from the outboundChannel.
-          if (e.getChannel().isWritable()) {
-            LOG.trace("Setting outboundChannel readable.");
-            outboundChannel.setReadable(true);
-          } else {
-            // If inboundChannel is saturated, do not read outboundChannel
-            LOG.trace("Setting outboundChannel non-readable.");
-            outboundChannel.setReadable(false);
-          }
-        }
-      });
+    Object attachment = e.getChannel().getAttachment();
+    if (attachment instanceof MessageSender) {
+      // If inboundChannel is saturated, do not read outboundChannel, otherwise continue accepting
+      // the outbound traffic from the outboundChannel.
+      ((MessageSender) attachment).setOutboundReadable(e.getChannel().isWritable());
+    }
+  }
+
+  /**
+   * Closes the inbound channel when there was no traffic for the idle timeout and no request is in progress.
+   * Outbound channels that are not in use have been returned to the pool already.
+   */
+  private void channelIdle(ChannelHandlerContext ctx, IdleStateEvent e) {
+    if (e.getState() != IdleState.ALL_IDLE) {
+      return;
     }
+    for (MessageSender sender : discoveryLookup.values()) {
+      if (sender.isRequestInProgress()) {
+        LOG.trace("Request is in progress, so not closing channel.");
+        return;
+      }
+    }
+    Channel channel = ctx.getChannel();
+    LOG.trace("No data has been sent or received for channel '{}' for more than the configured idle timeout. " +
+                "Closing the channel. Local Address: {}, Remote Address: {}",
+              channel, channel.getLocalAddress(), channel.getRemoteAddress());
+    channel.close();
   }
 
   @Override
@@ -266,44 +275,223 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
    * It uses a lock-free algorithm similar to the one
    * in {@link co.cask.cdap.data.stream.service.ConcurrentStreamWriter} to do the write through the
    * channel callback.
+   *
+   * A sender holds the lease of an outbound channel from the {@link OutboundConnectionPool}. It counts the
+   * requests sent and the responses completed, and returns the channel to the pool, if pooling is enabled,
+   * when there is no request in progress and both sides agreed to keep the connection alive.
+   *
+   * After a server error response, the channel is closed instead of being reused. The netty-http request router of
+   * the services stops handling requests on a connection once it caught an exception, after answering it with a
+   * 500 response without closing the connection, so a later request on that connection would never be answered.
    */
   private static final class MessageSender implements Closeable {
     private final Channel inBoundChannel;
-    private final ChannelFuture channelFuture;
+    private final OutboundConnectionPool connectionPool;
+    private final ListenableFuture<Channel> channelFuture;
     private final Queue<OutboundMessage> messages;
     private final AtomicBoolean writer;
-
-    private MessageSender(Channel inBoundChannel, ChannelFuture channelFuture) {
+    private final AtomicBoolean leased;
+    private final AtomicBoolean timedOut;
+
+    // Guarded by this
+    private int pendingResponses;
+    private boolean chunkedRequestInProgress;
+    private boolean reusable = true;
+    private boolean discard;
+    private boolean released;
+
+    private MessageSender(Channel inBoundChannel, OutboundConnectionPool connectionPool,
+                          ListenableFuture<Channel> channelFuture) {
       this.inBoundChannel = inBoundChannel;
+      this.connectionPool = connectionPool;
       this.channelFuture = channelFuture;
       this.messages = Queues.newConcurrentLinkedQueue();
       this.writer = new AtomicBoolean(false);
+      this.leased = new AtomicBoolean(false);
+      this.timedOut = new AtomicBoolean(false);
+    }
+
+    /**
+     * Registers a new request to be sent through this sender.
+     *
+     * @return {@code false} if the outbound channel is no longer usable by this sender
+     */
+    private synchronized boolean startRequest(HttpRequest request) {
+      if (released) {
+        return false;
+      }
+      Channel channel = getChannel();
+      if (channelFuture.isDone() && (channel == null || !channel.isConnected())) {
+        return false;
+      }
+      pendingResponses++;
+      chunkedRequestInProgress = request.isChunked();
+      // The response of a HEAD request cannot be delimited by the response decoder, hence never reuse the channel
+      if (!HttpHeaders.isKeepAlive(request) || HttpMethod.HEAD.equals(request.getMethod())) {
+        reusable = false;
+      }
+      return true;
     }
 
-    private boolean isConnected() {
-      return channelFuture.getChannel().isConnected();
+    private synchronized boolean isRequestInProgress() {
+      return !released && (pendingResponses > 0 || chunkedRequestInProgress);
     }
 
     private void send(Object msg) {
-      // Attach the outbound channel to the inbound to indicate the in-flight request outbound.
-      inBoundChannel.setAttachment(channelFuture.getChannel());
+      // Attach the sender to the inbound to indicate the in-flight request outbound.
+      inBoundChannel.setAttachment(this);
 
       final OutboundMessage message = new OutboundMessage(msg);
       messages.add(message);
-      if (channelFuture.isSuccess()) {
-        flushUntilCompleted(channelFuture.getChannel(), message);
+      if (channelFuture.isDone()) {
+        write(message);
       } else {
-        channelFuture.addListener(new ChannelFutureListener() {
+        channelFuture.addListener(new Runnable() {
           @Override
-          public void operationComplete(ChannelFuture future) throws Exception {
-            if (!future.isSuccess()) {
-              closeOnFlush(inBoundChannel);
-              return;
-            }
+          public void run() {
+            write(message);
+          }
+        }, MoreExecutors.sameThreadExecutor());
+      }
+    }
 
-            flushUntilCompleted(future.getChannel(), message);
+    private void write(OutboundMessage message) {
+      Channel channel = getChannel();
+      if (channel == null) {
+        if (isAcquireTimedOut()) {
+          // Let the exception handler of the inbound pipeline respond, once
+          if (timedOut.compareAndSet(false, true)) {
+            Channels.fireExceptionCaughtLater(inBoundChannel, new HandlerException(
+              HttpResponseStatus.SERVICE_UNAVAILABLE, "No connection to the service is available"));
           }
-        });
+        } else {
+          closeOnFlush(inBoundChannel);
+        }
+        return;
+      }
+      lease(channel);
+      flushUntilCompleted(channel, message);
+
+      if (message.isLastChunk()) {
+        boolean release;
+        synchronized (this) {
+          chunkedRequestInProgress = false;
+          release = shouldRelease();
+        }
+        if (release) {
+          connectionPool.release(channel);
+        }
+      }
+    }
+
+    /**
+     * Prepares the outbound channel for this sender the first time it is used.
+     */
+    private void lease(Channel channel) {
+      if (!leased.compareAndSet(false, true)) {
+        return;
+      }
+      ChannelPipeline pipeline = channel.getPipeline();
+      setHandler(pipeline, "outbound-handler", new OutboundHandler(inBoundChannel), "request-encoder");
+      setHandler(pipeline, "response-tracker", new ResponseTracker(), null);
+      // The previous holder might have set the channel as non-readable
+      channel.setReadable(true);
+    }
+
+    private void setHandler(ChannelPipeline pipeline, String name, ChannelHandler handler, @Nullable String after) {
+      if (pipeline.get(name) != null) {
+        pipeline.replace(name, name, handler);
+      } else if (after != null) {
+        pipeline.addAfter(after, name, handler);
+      } else {
+        pipeline.addLast(name, handler);
+      }
+    }
+
+    private void setOutboundReadable(final boolean readable) {
+      final Channel channel = getChannel();
+      if (channel == null) {
+        return;
+      }
+      channel.getPipeline().execute(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (MessageSender.this) {
+            // Don't touch the channel once it is returned to the pool
+            if (!released) {
+              LOG.trace("Setting outboundChannel readable to {}.", readable);
+              channel.setReadable(readable);
+            }
+          }
+        }
+      });
+    }
+
+    /**
+     * Called when a response is completed on the outbound channel.
+     *
+     * @param keepAlive {@code true} if the response allows to keep the connection alive
+     * @param serverError {@code true} if the response has a server error status
+     */
+    private void responseCompleted(Channel channel, boolean keepAlive, boolean serverError) {
+      boolean release;
+      boolean close = false;
+      synchronized (this) {
+        pendingResponses--;
+        if (!keepAlive) {
+          reusable = false;
+        } else if (serverError && reusable) {
+          // Close the channel ourselves, as the service might not answer on it anymore
+          reusable = false;
+          discard = true;
+        }
+        release = shouldRelease();
+        if (discard && !released && pendingResponses == 0 && !chunkedRequestInProgress) {
+          // The next request of the client connection gets another channel
+          released = true;
+          close = true;
+        }
+      }
+      if (release) {
+        connectionPool.release(channel);
+      } else if (close) {
+        channel.close();
+      }
+    }
+
+    /**
+     * Marks this sender as released if the channel can be returned to the pool.
+     */
+    private boolean shouldRelease() {
+      if (released || !reusable || pendingResponses > 0 || chunkedRequestInProgress
+        || !connectionPool.isPoolingEnabled()) {
+        return false;
+      }
+      released = true;
+      return true;
+    }
+
+    private boolean isAcquireTimedOut() {
+      if (!channelFuture.isDone() || channelFuture.isCancelled()) {
+        return false;
+      }
+      try {
+        Uninterruptibles.getUninterruptibly(channelFuture);
+        return false;
+      } catch (ExecutionException e) {
+        return e.getCause() instanceof TimeoutException;
+      }
+    }
+
+    @Nullable
+    private Channel getChannel() {
+      if (!channelFuture.isDone() || channelFuture.isCancelled()) {
+        return null;
+      }
+      try {
+        return Uninterruptibles.getUninterruptibly(channelFuture);
+      } catch (ExecutionException e) {
+        return null;
       }
     }
 
@@ -336,7 +524,72 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
     @Override
     public void close() throws IOException {
-      closeOnFlush(channelFuture.getChannel());
+      synchronized (this) {
+        if (released) {
+          return;
+        }
+        released = true;
+      }
+      // Give up waiting for a channel, or close the one with the unfinished exchange
+      if (channelFuture.cancel(false)) {
+        return;
+      }
+      Channel channel = getChannel();
+      if (channel != null) {
+        closeOnFlush(channel);
+      }
+    }
+
+    /**
+     * Tracks the responses received on the outbound channel while it is leased by this sender.
+     */
+    private final class ResponseTracker extends SimpleChannelUpstreamHandler {
+
+      private boolean keepAlive;
+      private boolean serverError;
+
+      @Override
+      public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        Object message = e.getMessage();
+        if (message instanceof HttpResponse) {
+          HttpResponse response = (HttpResponse) message;
+          int status = response.getStatus().getCode();
+          if (status == HttpResponseStatus.SWITCHING_PROTOCOLS.getCode()) {
+            // The connection is no longer speaking HTTP
+            synchronized (MessageSender.this) {
+              reusable = false;
+            }
+          } else if (status >= 200) {
+            // Informational responses are followed by the final response
+            keepAlive = HttpHeaders.isKeepAlive(response);
+            serverError = status >= HttpResponseStatus.INTERNAL_SERVER_ERROR.getCode();
+            if (!response.isChunked()) {
+              responseCompleted(ctx.getChannel(), keepAlive, serverError);
+            }
+          }
+        } else if (message instanceof HttpChunk && ((HttpChunk) message).isLast()) {
+          responseCompleted(ctx.getChannel(), keepAlive, serverError);
+        }
+        super.messageReceived(ctx, e);
+      }
+
+      @Override
+      public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        inBoundChannel.getPipeline().execute(new Runnable() {
+          @Override
+          public void run() {
+            // When the outbound channel closed,
+            // close the inbound channel as well if it carries the in-flight request
+            synchronized (MessageSender.this) {
+              if (released || inBoundChannel.getAttachment() != MessageSender.this) {
+                return;
+              }
+            }
+            closeOnFlush(inBoundChannel);
+          }
+        });
+        super.channelClosed(ctx, e);
+      }
     }
   }
 
@@ -357,9 +610,12 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
       completed = true;
     }
 
+    private boolean isLastChunk() {
+      return message instanceof HttpChunk && ((HttpChunk) message).isLast();
+    }
+
     private void write(Channel channel) {
       channel.write(message);
     }
   }
 }
-
@@ -0,0 +1,424 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router.handlers;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.Constants;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.ConnectException;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * A pool of keep-alive outbound channels, shared by all inbound connections of the router. Channels are pooled
+ * per {@link WrappedDiscoverable}. An inbound handler acquires a channel before forwarding a request to a
+ * destination and releases it once the response is completed, so that the next request to the same destination,
+ * from any client, can reuse the connection.
+ *
+ * For each destination, at most {@code maxIdlePerDestination} channels are kept idle, and at most
+ * {@code maxConnectionsPerDestination} channels are leased or being connected at the same time. Requests over the
+ * limit wait until a channel is released or closed, and fail with a {@link TimeoutException} if none becomes
+ * available within the acquire timeout. Closed channels are evicted from the pool, and idle channels
+ * get closed by the idle handler of the client pipeline after the router connection idle timeout.
+ *
+ * If {@code maxIdlePerDestination} is zero, pooling is disabled and channels are only reused by the client
+ * connection that acquired them. In that case there is no connection limit, since a channel stays leased for as long
+ * as the client connection is open and a limit would cap the number of client connections instead.
+ */
+public final class OutboundConnectionPool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OutboundConnectionPool.class);
+
+  private final ClientBootstrap clientBootstrap;
+  private final Timer timer;
+  private final int maxIdlePerDestination;
+  private final int maxConnectionsPerDestination;
+  private final long acquireTimeoutMillis;
+  private final ConcurrentMap<WrappedDiscoverable, Destination> destinations;
+  private final ChannelFutureListener closeListener;
+  private final AtomicInteger idleCount;
+  private final AtomicInteger leasedCount;
+  private final AtomicInteger waitingCount;
+  private volatile MetricsContext metricsContext;
+
+  /**
+   * Creates a pool.
+   *
+   * @param clientBootstrap the bootstrap for creating new outbound channels
+   * @param timer the timer for expiring requests that wait for a channel
+   * @param maxIdlePerDestination maximum number of idle channels kept per destination; zero disables pooling
+   * @param maxConnectionsPerDestination maximum number of channels in use per destination if pooling is enabled;
+   *                                     a non-positive value means no limit
+   * @param acquireTimeoutMillis maximum time in milliseconds that a request waits for a channel when the
+   *                             connection limit is reached; a non-positive value means no timeout
+   */
+  public OutboundConnectionPool(ClientBootstrap clientBootstrap, Timer timer, int maxIdlePerDestination,
+                                int maxConnectionsPerDestination, long acquireTimeoutMillis) {
+    this.clientBootstrap = clientBootstrap;
+    this.timer = timer;
+    this.maxIdlePerDestination = maxIdlePerDestination;
+    this.maxConnectionsPerDestination = maxIdlePerDestination > 0 ? maxConnectionsPerDestination : 0;
+    this.acquireTimeoutMillis = acquireTimeoutMillis;
+    this.destinations = new ConcurrentHashMap<>();
+    this.closeListener = new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture future) throws Exception {
+        evict(future.getChannel());
+      }
+    };
+    this.idleCount = new AtomicInteger();
+    this.leasedCount = new AtomicInteger();
+    this.waitingCount = new AtomicInteger();
+  }
+
+  /**
+   * Sets the {@link MetricsContext} for emitting pool utilization metrics.
+   */
+  public void setMetricsContext(@Nullable MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
+  }
+
+  /**
+   * Returns {@code true} if channels are kept for reuse by other requests once released. Otherwise, a channel
+   * should stay with the client connection that acquired it, as releasing it closes the channel.
+   */
+  public boolean isPoolingEnabled() {
+    return maxIdlePerDestination > 0;
+  }
+
+  /**
+   * Acquires a channel connected to the given destination. The returned future completes when an idle channel
+   * is available or a new one got connected. It fails if failed to connect, or with a {@link TimeoutException} if
+   * no channel became available within the acquire timeout. The caller must
+   * {@link #release(Channel) release} the channel when it is done with it, or close it if the channel
+   * cannot be reused. Cancelling the future before it completes gives up the request.
+   */
+  public ListenableFuture<Channel> acquire(WrappedDiscoverable discoverable) {
+    SettableFuture<Channel> result = SettableFuture.create();
+    Channel channel = null;
+    boolean connect = false;
+    boolean wait = false;
+
+    while (true) {
+      Destination destination = getDestination(discoverable);
+      synchronized (destination) {
+        if (destination.removed) {
+          continue;
+        }
+        channel = destination.pollIdle();
+        if (channel != null) {
+          destination.leased.add(channel);
+          leasedCount.incrementAndGet();
+        } else if (maxConnectionsPerDestination > 0
+          && destination.leased.size() + destination.connecting >= maxConnectionsPerDestination) {
+          destination.waiters.add(result);
+          waitingCount.incrementAndGet();
+          wait = true;
+        } else {
+          destination.connecting++;
+          connect = true;
+        }
+      }
+
+      if (channel != null) {
+        increment(Constants.Metrics.Name.Router.POOL_CONNECTIONS_REUSED);
+        handOver(destination, channel, result);
+      } else if (connect) {
+        connect(destination, result);
+      } else if (wait) {
+        LOG.trace("Connection limit reached for {}, waiting for a channel to be released", discoverable);
+        expireWaiter(destination, result);
+      }
+      break;
+    }
+
+    emitGauges();
+    return result;
+  }
+
+  /**
+   * Releases a channel that was acquired from this pool. The channel is handed over to a request waiting for
+   * the same destination, kept idle, or closed if there are already enough idle channels.
+   */
+  public void release(Channel channel) {
+    Destination destination = (Destination) channel.getAttachment();
+    if (destination == null) {
+      return;
+    }
+
+    SettableFuture<Channel> waiter = null;
+    boolean connected = channel.isConnected();
+    boolean keep = false;
+    synchronized (destination) {
+      if (!destination.leased.remove(channel)) {
+        return;
+      }
+      waiter = destination.pollWaiter();
+      if (connected) {
+        if (waiter != null) {
+          destination.leased.add(channel);
+        } else if (destination.idle.size() < maxIdlePerDestination) {
+          destination.idle.addLast(channel);
+          idleCount.incrementAndGet();
+          keep = true;
+        }
+      } else {
+        if (waiter != null) {
+          destination.connecting++;
+        }
+        destination.removeIfUnused();
+      }
+      if (waiter == null || !connected) {
+        leasedCount.decrementAndGet();
+      }
+    }
+
+    if (waiter != null && connected) {
+      // The channel goes straight to the waiting request
+      handOver(destination, channel, waiter);
+    } else {
+      if (!keep) {
+        channel.close();
+      }
+      if (waiter != null) {
+        connect(destination, waiter);
+      }
+    }
+    emitGauges();
+  }
+
+  /**
+   * Removes a closed channel from the pool and lets a waiting request, if any, connect in its place.
+   */
+  private void evict(Channel channel) {
+    Destination destination = (Destination) channel.getAttachment();
+    if (destination == null) {
+      return;
+    }
+
+    SettableFuture<Channel> waiter = null;
+    synchronized (destination) {
+      if (destination.idle.remove(channel)) {
+        idleCount.decrementAndGet();
+      } else if (destination.leased.remove(channel)) {
+        leasedCount.decrementAndGet();
+        waiter = destination.pollWaiter();
+        if (waiter != null) {
+          destination.connecting++;
+        }
+      }
+      destination.removeIfUnused();
+    }
+
+    if (waiter != null) {
+      connect(destination, waiter);
+    }
+    emitGauges();
+  }
+
+  /**
+   * Fails the given waiting request with a {@link TimeoutException} if it did not get a channel within the
+   * acquire timeout.
+   */
+  private void expireWaiter(final Destination destination, final SettableFuture<Channel> waiter) {
+    if (acquireTimeoutMillis <= 0) {
+      return;
+    }
+    final Timeout timeout = timer.newTimeout(new TimerTask() {
+      @Override
+      public void run(Timeout timeout) throws Exception {
+        synchronized (destination) {
+          // The waiter is no longer queued if it got a channel or a connection slot in the meantime
+          if (!destination.waiters.remove(waiter)) {
+            return;
+          }
+          waitingCount.decrementAndGet();
+          destination.removeIfUnused();
+        }
+        waiter.setException(new TimeoutException(
+          String.format("Timed out after %d ms waiting for a connection to %s",
+                        acquireTimeoutMillis, destination.discoverable.getSocketAddress())));
+        emitGauges();
+      }
+    }, acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+
+    waiter.addListener(new Runnable() {
+      @Override
+      public void run() {
+        timeout.cancel();
+      }
+    }, MoreExecutors.sameThreadExecutor());
+  }
+
+  private void connect(final Destination destination, final SettableFuture<Channel> result) {
+    ChannelFuture connectFuture = clientBootstrap.connect(destination.discoverable.getSocketAddress());
+    final Channel channel = connectFuture.getChannel();
+    channel.setAttachment(destination);
+    connectFuture.addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture future) throws Exception {
+        SettableFuture<Channel> waiter = null;
+        synchronized (destination) {
+          destination.connecting--;
+          if (future.isSuccess()) {
+            destination.leased.add(channel);
+            leasedCount.incrementAndGet();
+          } else {
+            // The connection slot is free again
+            waiter = destination.pollWaiter();
+            if (waiter != null) {
+              destination.connecting++;
+            }
+            destination.removeIfUnused();
+          }
+        }
+
+        if (future.isSuccess()) {
+          increment(Constants.Metrics.Name.Router.POOL_CONNECTIONS_OPENED);
+          channel.getCloseFuture().addListener(closeListener);
+          handOver(destination, channel, result);
+        } else {
+          Throwable cause = future.getCause();
+          result.setException(cause == null
+                                ? new ConnectException("Failed to connect to " + destination.discoverable)
+                                : cause);
+          if (waiter != null) {
+            connect(destination, waiter);
+          }
+        }
+        emitGauges();
+      }
+    });
+  }
+
+  /**
+   * Completes the given future with a leased channel. If the future was cancelled, the channel is released.
+   */
+  private void handOver(Destination destination, Channel channel, SettableFuture<Channel> result) {
+    if (!result.set(channel)) {
+      LOG.trace("Request for {} was cancelled, releasing channel {}", destination.discoverable, channel);
+      release(channel);
+    }
+  }
+
+  private Destination getDestination(WrappedDiscoverable discoverable) {
+    Destination destination = destinations.get(discoverable);
+    if (destination == null) {
+      destination = new Destination(discoverable);
+      Destination existing = destinations.putIfAbsent(discoverable, destination);
+      if (existing != null) {
+        destination = existing;
+      }
+    }
+    return destination;
+  }
+
+  private void increment(String metricName) {
+    MetricsContext context = metricsContext;
+    if (context != null) {
+      context.increment(metricName, 1);
+    }
+  }
+
+  private void emitGauges() {
+    MetricsContext context = metricsContext;
+    if (context != null) {
+      context.gauge(Constants.Metrics.Name.Router.POOL_CONNECTIONS_IDLE, idleCount.get());
+      context.gauge(Constants.Metrics.Name.Router.POOL_CONNECTIONS_LEASED, leasedCount.get());
+      context.gauge(Constants.Metrics.Name.Router.POOL_REQUESTS_WAITING, waitingCount.get());
+    }
+  }
+
+  /**
+   * Pool state of a single destination. All fields are guarded by the instance lock.
+   */
+  private final class Destination {
+    private final WrappedDiscoverable discoverable;
+    private final LinkedList<Channel> idle = new LinkedList<>();
+    private final Set<Channel> leased = new HashSet<>();
+    private final LinkedList<SettableFuture<Channel>> waiters = new LinkedList<>();
+    private int connecting;
+    private boolean removed;
+
+    private Destination(WrappedDiscoverable discoverable) {
+      this.discoverable = discoverable;
+    }
+
+    /**
+     * Returns the most recently released idle channel that is still connected, or {@code null} if there is none.
+     * Using the most recent one lets the older channels reach the idle timeout when the load goes down.
+     */
+    @Nullable
+    private Channel pollIdle() {
+      Channel channel = idle.pollLast();
+      while (channel != null) {
+        idleCount.decrementAndGet();
+        if (channel.isConnected()) {
+          return channel;
+        }
+        channel = idle.pollLast();
+      }
+      return null;
+    }
+
+    /**
+     * Returns the first waiting request that is not cancelled, or {@code null} if there is none.
+     */
+    @Nullable
+    private SettableFuture<Channel> pollWaiter() {
+      SettableFuture<Channel> waiter = waiters.poll();
+      while (waiter != null) {
+        waitingCount.decrementAndGet();
+        if (!waiter.isDone()) {
+          return waiter;
+        }
+        waiter = waiters.poll();
+      }
+      return null;
+    }
+
+    /**
+     * Removes this destination from the pool if it has no channels or waiting requests, so that the pool
+     * does not accumulate destinations of endpoints that went away.
+     */
+    private void removeIfUnused() {
+      if (idle.isEmpty() && leased.isEmpty() && waiters.isEmpty() && connecting == 0) {
+        removed = true;
+        destinations.remove(discoverable, this);
+      }
+    }
+  }
+}
@@ -20,10 +20,15 @@ import co.cask.cdap.api.data.format.FormatSpecification;
 import co.cask.cdap.api.data.format.Formats;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.api.stream.StreamEventData;
 import co.cask.cdap.common.NamespaceNotFoundException;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.Tasks;
+import co.cask.cdap.data.stream.service.StreamFetchHandler;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import co.cask.cdap.format.TextRecordFormat;
 import co.cask.cdap.gateway.GatewayFastTestsSuite;
@@ -38,6 +43,7 @@ import co.cask.cdap.proto.id.StreamId;
 import co.cask.common.http.HttpRequest;
 import co.cask.common.http.HttpRequests;
 import co.cask.common.http.HttpResponse;
+import co.cask.common.io.ByteBufferInputStream;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -56,10 +62,12 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
@@ -207,6 +215,105 @@ public class StreamHandlerTest extends GatewayTestBase {
     urlConn.disconnect();
   }
 
+  @Test
+  public void testBinaryFetchWithCursor() throws Exception {
+    HttpURLConnection urlConn = openURL(createURL("streams/test_stream_binary_fetch"), HttpMethod.PUT);
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    urlConn.disconnect();
+
+    for (int i = 0; i < 10; ++i) {
+      urlConn = openURL(createURL("streams/test_stream_binary_fetch"), HttpMethod.POST);
+      urlConn.setDoOutput(true);
+      urlConn.addRequestProperty("test_stream_binary_fetch.header1", Integer.toString(i));
+      urlConn.getOutputStream().write(Integer.toString(i).getBytes(Charsets.UTF_8));
+      Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+      urlConn.disconnect();
+    }
+
+    // Fetch the first 4 events in binary format
+    urlConn = openURL(createURL("streams/test_stream_binary_fetch/events?limit=4"), HttpMethod.GET);
+    urlConn.setRequestProperty("Accept", "avro/binary");
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    Assert.assertEquals("avro/binary", urlConn.getContentType());
+    List<StreamEvent> events = Lists.newArrayList();
+    String cursor = decodeBinaryEvents(urlConn.getInputStream(), events);
+    urlConn.disconnect();
+
+    Assert.assertEquals(4, events.size());
+    for (int i = 0; i < 4; i++) {
+      Assert.assertEquals(i, Integer.parseInt(Charsets.UTF_8.decode(events.get(i).getBody()).toString()));
+      Assert.assertEquals(Integer.toString(i), events.get(i).getHeaders().get("header1"));
+    }
+
+    // Resume from the cursor to fetch the remaining events
+    urlConn = openURL(createURL("streams/test_stream_binary_fetch/events?cursor=" + cursor), HttpMethod.GET);
+    urlConn.setRequestProperty("Accept", "avro/binary");
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    events.clear();
+    decodeBinaryEvents(urlConn.getInputStream(), events);
+    urlConn.disconnect();
+
+    Assert.assertEquals(6, events.size());
+    for (int i = 0; i < 6; i++) {
+      Assert.assertEquals(i + 4, Integer.parseInt(Charsets.UTF_8.decode(events.get(i).getBody()).toString()));
+    }
+
+    // Invalid cursor
+    urlConn = openURL(createURL("streams/test_stream_binary_fetch/events?cursor=invalid"), HttpMethod.GET);
+    Assert.assertEquals(HttpResponseStatus.BAD_REQUEST.getCode(), urlConn.getResponseCode());
+    urlConn.disconnect();
+  }
+
+  @Test
+  public void testJsonFetchWithCursor() throws Exception {
+    HttpURLConnection urlConn = openURL(createURL("streams/test_stream_json_fetch"), HttpMethod.PUT);
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    urlConn.disconnect();
+
+    for (int i = 0; i < 10; ++i) {
+      urlConn = openURL(createURL("streams/test_stream_json_fetch"), HttpMethod.POST);
+      urlConn.setDoOutput(true);
+      urlConn.getOutputStream().write(Integer.toString(i).getBytes(Charsets.UTF_8));
+      Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+      urlConn.disconnect();
+      // Gives each event a distinct timestamp
+      TimeUnit.MILLISECONDS.sleep(2);
+    }
+
+    // Without the cursor parameter, no cursor is returned
+    urlConn = openURL(createURL("streams/test_stream_json_fetch/events"), HttpMethod.GET);
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    Assert.assertNull(urlConn.getHeaderField(StreamFetchHandler.CURSOR_HEADER));
+    List<StreamEvent> allEvents = decodeJsonEvents(urlConn);
+    Assert.assertEquals(10, allEvents.size());
+
+    // Fetch the first 4 events with an empty cursor to get the cursor back
+    urlConn = openURL(createURL("streams/test_stream_json_fetch/events?limit=4&cursor="), HttpMethod.GET);
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    String cursor = urlConn.getHeaderField(StreamFetchHandler.CURSOR_HEADER);
+    Assert.assertNotNull(cursor);
+    assertEventBodies(decodeJsonEvents(urlConn), 0, 4);
+
+    // Resume with an end time, such that events after the end time are read from the stream but not returned
+    long endTime = allEvents.get(6).getTimestamp();
+    urlConn = openURL(createURL("streams/test_stream_json_fetch/events?end=" + endTime + "&cursor=" + cursor),
+                      HttpMethod.GET);
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    cursor = urlConn.getHeaderField(StreamFetchHandler.CURSOR_HEADER);
+    assertEventBodies(decodeJsonEvents(urlConn), 4, 2);
+
+    // Resuming again should not skip the events that were not returned
+    urlConn = openURL(createURL("streams/test_stream_json_fetch/events?cursor=" + cursor), HttpMethod.GET);
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    cursor = urlConn.getHeaderField(StreamFetchHandler.CURSOR_HEADER);
+    assertEventBodies(decodeJsonEvents(urlConn), 6, 4);
+
+    // Nothing more to fetch
+    urlConn = openURL(createURL("streams/test_stream_json_fetch/events?cursor=" + cursor), HttpMethod.GET);
+    Assert.assertEquals(HttpResponseStatus.NO_CONTENT.getCode(), urlConn.getResponseCode());
+    urlConn.disconnect();
+  }
+
   @Test
   public void testListStreams() throws Exception {
     List<StreamDetail> specs = listStreams(NamespaceId.DEFAULT);
@@ -462,6 +569,47 @@ public class StreamHandlerTest extends GatewayTestBase {
     return events;
   }
 
+  /**
+   * Decodes the JSON fetch response from the given connection and disconnects it.
+   */
+  private List<StreamEvent> decodeJsonEvents(HttpURLConnection urlConn) throws IOException {
+    try {
+      return GSON.fromJson(new String(ByteStreams.toByteArray(urlConn.getInputStream()), Charsets.UTF_8),
+                           new TypeToken<List<StreamEvent>>() { }.getType());
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+
+  /**
+   * Asserts the given events have bodies of consecutive integers, starting from the given one.
+   */
+  private void assertEventBodies(List<StreamEvent> events, int start, int count) {
+    Assert.assertEquals(count, events.size());
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(start + i, Integer.parseInt(Charsets.UTF_8.decode(events.get(i).getBody()).toString()));
+    }
+  }
+
+  /**
+   * Decodes the binary fetch response into the given list and returns the cursor.
+   */
+  private String decodeBinaryEvents(InputStream input, List<StreamEvent> events) throws IOException {
+    try {
+      Decoder decoder = new BinaryDecoder(input);
+      ByteBuffer eventBytes = decoder.readBytes();
+      while (eventBytes.hasRemaining()) {
+        Decoder eventDecoder = new BinaryDecoder(new ByteBufferInputStream(eventBytes));
+        StreamEventData data = StreamEventDataCodec.decode(eventDecoder);
+        events.add(new StreamEvent(data, eventDecoder.readLong()));
+        eventBytes = decoder.readBytes();
+      }
+      return decoder.readString();
+    } finally {
+      input.close();
+    }
+  }
+
   private void checkEventsProcessed(final StreamId streamId, long expectedCount, int retries) throws Exception {
     Tasks.waitFor(expectedCount, new Callable<Long>() {
       @Override
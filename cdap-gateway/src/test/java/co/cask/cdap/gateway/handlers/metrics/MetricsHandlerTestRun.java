@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -30,6 +30,8 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 import org.apache.http.HttpResponse;
 import org.apache.http.util.EntityUtils;
@@ -279,6 +281,27 @@ public class MetricsHandlerTestRun extends MetricsSuiteTestBase {
     );
 
     batchTest(ImmutableMap.of("testQuery3", query3, "testQuery4", query4), expected);
+
+    // test batching of queries with the same tags and time range, which are executed as a single scan;
+    // each query should only get the metrics it asked for
+    QueryRequestFormat query5 = new QueryRequestFormat(ImmutableMap.of("namespace", "myspace", "app", "WordCount1",
+                                                                       "flow", "WordCounter", "flowlet", "splitter"),
+                                           ImmutableList.of("system.writes"),
+                                           ImmutableList.<String>of(),
+                                           ImmutableMap.of("aggregate", "true"));
+
+    expected = ImmutableMap.of("testQuery4",
+                               new QueryResult(ImmutableList.of(
+                                 new TimeSeriesSummary(ImmutableMap.<String, String>of(), "system.reads", 1, 2),
+                                 new TimeSeriesSummary(ImmutableMap.<String, String>of(),
+                                                       "system.writes", 1, 2)), resolution),
+                               "testQuery5",
+                               new QueryResult(ImmutableList.of(
+                                 new TimeSeriesSummary(ImmutableMap.<String, String>of(), "system.writes", 1, 2)),
+                                               resolution)
+    );
+
+    batchTest(ImmutableMap.of("testQuery4", query4, "testQuery5", query5), expected);
   }
 
   @Test
@@ -295,6 +318,26 @@ public class MetricsHandlerTestRun extends MetricsSuiteTestBase {
     response = doPost("/v3/metrics/query", GSON.toJson(ImmutableMap.of("invalid", invalidQuery)));
     Assert.assertEquals(400, response.getStatusLine().getStatusCode());
 
+    // batch query with a query the metric store cannot answer only fails that query
+    QueryRequestFormat validQuery = new QueryRequestFormat(
+      ImmutableMap.of("namespace", "myspace", "app", "WordCount1", "flow", "WordCounter", "flowlet", "splitter"),
+      ImmutableList.of("system.reads"), ImmutableList.<String>of(), ImmutableMap.of("aggregate", "true"));
+    QueryRequestFormat unknownTagQuery = new QueryRequestFormat(
+      ImmutableMap.of("namespace", "myspace", "unknowntag", "value"),
+      ImmutableList.of("system.reads"), ImmutableList.<String>of(), ImmutableMap.of("aggregate", "true"));
+
+    response = doPost("/v3/metrics/query",
+                      GSON.toJson(ImmutableMap.of("valid", validQuery, "unknownTag", unknownTagQuery)));
+    Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+    JsonObject results = new JsonParser().parse(EntityUtils.toString(response.getEntity(), Charsets.UTF_8))
+      .getAsJsonObject();
+    Assert.assertTrue(results.getAsJsonObject("valid").has("series"));
+    Assert.assertTrue(results.getAsJsonObject("unknownTag").has("error"));
+
+    // if all queries are rejected, the whole request is a bad request
+    response = doPost("/v3/metrics/query", GSON.toJson(ImmutableMap.of("unknownTag", unknownTagQuery)));
+    Assert.assertEquals(400, response.getStatusLine().getStatusCode());
+
     // test invalid request - query without any metric Params
     response = doPost("/v3/metrics/query?context=namespace.default", null);
     Assert.assertEquals(400, response.getStatusLine().getStatusCode());
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -37,7 +37,7 @@ import java.util.Map;
 import javax.net.SocketFactory;
 
 /**
- * Tests Netty Router running on HTTP.
+ * Tests Netty Router running on HTTP, with outbound connection pooling disabled.
  */
 public class NettyRouterHttpTest extends NettyRouterTestBase {
 
@@ -48,7 +48,9 @@ public class NettyRouterHttpTest extends NettyRouterTestBase {
 
   @Override
   protected RouterService createRouterService() {
-    return new HttpRouterService(HOSTNAME, DISCOVERY_SERVICE);
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(Constants.Router.POOL_MAX_IDLE_PER_DESTINATION, 0);
+    return new HttpRouterService(HOSTNAME, DISCOVERY_SERVICE, cConf);
   }
 
   @Override
@@ -66,21 +68,25 @@ public class NettyRouterHttpTest extends NettyRouterTestBase {
     return new DefaultSocketFactory();
   }
 
-  private static class HttpRouterService extends RouterService {
+  /**
+   * A {@link RouterService} that runs the router on HTTP with the given configuration.
+   */
+  static class HttpRouterService extends RouterService {
     private final String hostname;
     private final DiscoveryService discoveryService;
+    private final CConfiguration cConf;
     private final Map<String, Integer> serviceMap = Maps.newHashMap();
 
     private NettyRouter router;
 
-    private HttpRouterService(String hostname, DiscoveryService discoveryService) {
+    HttpRouterService(String hostname, DiscoveryService discoveryService, CConfiguration cConf) {
       this.hostname = hostname;
       this.discoveryService = discoveryService;
+      this.cConf = cConf;
     }
 
     @Override
     protected void startUp() {
-      CConfiguration cConf = CConfiguration.create();
       SConfiguration sConfiguration = SConfiguration.create();
       Injector injector = Guice.createInjector(new SecurityModules().getInMemoryModules(),
                                                new DiscoveryRuntimeModule().getInMemoryModules(),
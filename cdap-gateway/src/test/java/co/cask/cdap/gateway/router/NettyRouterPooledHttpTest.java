@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests Netty Router running on HTTP with outbound connection pooling enabled.
+ */
+public class NettyRouterPooledHttpTest extends NettyRouterHttpTest {
+
+  private static final int POOL_MAX_IDLE_PER_DESTINATION = 4;
+  private static final int POOL_MAX_CONNECTIONS_PER_DESTINATION = 16;
+
+  @Override
+  protected RouterService createRouterService() {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(Constants.Router.POOL_MAX_IDLE_PER_DESTINATION, POOL_MAX_IDLE_PER_DESTINATION);
+    cConf.setInt(Constants.Router.POOL_MAX_CONNECTIONS_PER_DESTINATION, POOL_MAX_CONNECTIONS_PER_DESTINATION);
+    return new HttpRouterService(HOSTNAME, DISCOVERY_SERVICE, cConf);
+  }
+
+  @Test(timeout = 10000)
+  public void testConnectionPooling() throws Exception {
+    String path = "/v2/ping";
+    URI uri = new URI(resolveURI(Constants.Router.GATEWAY_DISCOVERY_NAME, path));
+
+    // Make requests from different client connections; the router should reuse the same backend connection
+    int times = 5;
+    for (int i = 0; i < times; i++) {
+      Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort());
+      try {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        String firstLine = makeRequest(uri, out, socket.getInputStream());
+        Assert.assertEquals("HTTP/1.1 200 OK\r", firstLine);
+      } finally {
+        socket.close();
+      }
+      // The router forwards the response bytes before decoding them to release the backend connection,
+      // so give it a moment to return the connection to the pool before the next client connects.
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+
+    // At most one connection per backend server should have been opened
+    Assert.assertEquals(times, defaultServer1.getNumRequests() + defaultServer2.getNumRequests());
+    Assert.assertTrue(defaultServer1.getNumConnectionsOpened() <= 1);
+    Assert.assertTrue(defaultServer2.getNumConnectionsOpened() <= 1);
+    Assert.assertEquals(0, defaultServer1.getNumConnectionsClosed() + defaultServer2.getNumConnectionsClosed());
+  }
+
+  @Test(timeout = 10000)
+  public void testServerErrorNotReused() throws Exception {
+    defaultServer2.cancelRegistration();
+
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, getResponseCode("/v2/ping"));
+    TimeUnit.MILLISECONDS.sleep(100);
+    Assert.assertEquals(HttpURLConnection.HTTP_INTERNAL_ERROR, getResponseCode("/v2/error"));
+    TimeUnit.MILLISECONDS.sleep(100);
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, getResponseCode("/v2/ping"));
+
+    // The connection that returned the error is closed, and the next request gets a new one
+    Assert.assertEquals(3, defaultServer1.getNumRequests());
+    Assert.assertEquals(2, defaultServer1.getNumConnectionsOpened());
+    for (int i = 0; i < 50 && defaultServer1.getNumConnectionsClosed() == 0; i++) {
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+    Assert.assertEquals(1, defaultServer1.getNumConnectionsClosed());
+  }
+
+  @Test(timeout = 20000)
+  public void testAcquireTimeout() throws Exception {
+    defaultServer2.cancelRegistration();
+
+    // A router that allows a single connection to a service, and waits for it for half a second at most
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(Constants.Router.POOL_MAX_IDLE_PER_DESTINATION, 1);
+    cConf.setInt(Constants.Router.POOL_MAX_CONNECTIONS_PER_DESTINATION, 1);
+    cConf.setLong(Constants.Router.POOL_ACQUIRE_TIMEOUT_MS, 500);
+    RouterService router = new HttpRouterService(HOSTNAME, DISCOVERY_SERVICE, cConf);
+    router.startAndWait();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final String baseURL = String.format("http://%s:%d", HOSTNAME,
+                                           router.lookupService(Constants.Router.GATEWAY_DISCOVERY_NAME));
+      // Hold the only connection with a slow request
+      Future<Integer> slowResponse = executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          HttpURLConnection urlConn = openURL(new URL(baseURL + "/v1/timeout/3000"));
+          try {
+            return urlConn.getResponseCode();
+          } finally {
+            urlConn.disconnect();
+          }
+        }
+      });
+      for (int i = 0; i < 50 && defaultServer1.getNumRequests() == 0; i++) {
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+      Assert.assertEquals(1, defaultServer1.getNumRequests());
+
+      HttpURLConnection urlConn = openURL(new URL(baseURL + "/v2/ping"));
+      try {
+        Assert.assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, urlConn.getResponseCode());
+      } finally {
+        urlConn.disconnect();
+      }
+      Assert.assertEquals(HttpURLConnection.HTTP_OK, slowResponse.get().intValue());
+      Assert.assertEquals(1, defaultServer1.getNumRequests());
+    } finally {
+      executor.shutdownNow();
+      router.stopAndWait();
+    }
+  }
+
+  private int getResponseCode(String path) throws Exception {
+    HttpURLConnection urlConn = openURL(new URL(resolveURI(Constants.Router.GATEWAY_DISCOVERY_NAME, path)));
+    try {
+      return urlConn.getResponseCode();
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -170,7 +170,7 @@ public abstract class NettyRouterTestBase {
     return routerService.lookupService(serviceName);
   }
 
-  private String resolveURI(String serviceName, String path) throws URISyntaxException {
+  protected String resolveURI(String serviceName, String path) throws URISyntaxException {
     return getBaseURI(serviceName).resolve(path).toASCIIString();
   }
 
@@ -433,7 +433,7 @@ public abstract class NettyRouterTestBase {
     Assert.assertEquals(1, defaultServer1.getNumConnectionsClosed() + defaultServer2.getNumConnectionsClosed());
   }
 
-  private String makeRequest(URI uri, PrintWriter out, InputStream inputStream) throws IOException {
+  protected String makeRequest(URI uri, PrintWriter out, InputStream inputStream) throws IOException {
 
     //Send request
     out.print("GET " + uri.getPath() + " HTTP/1.1\r\n" +
@@ -719,6 +719,13 @@ public abstract class NettyRouterTestBase {
         responder.sendString(HttpResponseStatus.OK, serviceNameSupplier.get());
       }
 
+      @GET
+      @Path("/v2/error")
+      public void error(HttpRequest request, HttpResponder responder) {
+        numRequests.incrementAndGet();
+        responder.sendStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+      }
+
       @GET
       @Path("/abc/v1/status")
       public void abcStatus(HttpRequest request, HttpResponder responder) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,7 +16,9 @@
 
 package co.cask.cdap.gateway.router;
 
+import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import com.google.inject.Injector;
 import org.junit.Assert;
 import org.junit.Test;
@@ -36,4 +38,14 @@ public class RouterMainTest {
     NettyRouter router = injector.getInstance(NettyRouter.class);
     Assert.assertNotNull(router);
   }
+
+  @Test
+  public void testGuiceInjectionWithMetrics() throws Exception {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setBoolean(Constants.Router.METRICS_ENABLED, true);
+
+    Injector injector = RouterMain.createGuiceInjector(cConf);
+    Assert.assertNotNull(injector.getInstance(MetricsCollectionService.class));
+    Assert.assertNotNull(injector.getInstance(NettyRouter.class));
+  }
 }
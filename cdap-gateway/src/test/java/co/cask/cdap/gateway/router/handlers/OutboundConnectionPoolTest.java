@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router.handlers;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.discovery.Discoverable;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Unit tests for {@link OutboundConnectionPool}.
+ */
+public class OutboundConnectionPoolTest {
+
+  private ClientBootstrap clientBootstrap;
+  private HashedWheelTimer timer;
+  private ServerSocket serverSocket;
+  private List<Socket> acceptedSockets;
+  private WrappedDiscoverable discoverable;
+
+  @Before
+  public void init() throws IOException {
+    clientBootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
+                                                                            Executors.newCachedThreadPool()));
+    timer = new HashedWheelTimer();
+    clientBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+      @Override
+      public ChannelPipeline getPipeline() throws Exception {
+        return Channels.pipeline();
+      }
+    });
+
+    // A server that accepts connections and keeps them open
+    serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    acceptedSockets = new CopyOnWriteArrayList<>();
+    Thread acceptThread = new Thread("accept") {
+      @Override
+      public void run() {
+        try {
+          while (!serverSocket.isClosed()) {
+            acceptedSockets.add(serverSocket.accept());
+          }
+        } catch (IOException e) {
+          // Server socket closed
+        }
+      }
+    };
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+
+    discoverable = new WrappedDiscoverable(
+      new Discoverable("test", new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())));
+  }
+
+  @After
+  public void finish() throws IOException {
+    serverSocket.close();
+    for (Socket socket : acceptedSockets) {
+      socket.close();
+    }
+    clientBootstrap.releaseExternalResources();
+    timer.stop();
+  }
+
+  @Test(timeout = 10000)
+  public void testReuse() throws Exception {
+    OutboundConnectionPool pool = new OutboundConnectionPool(clientBootstrap, timer, 2, 0, 0);
+    Assert.assertTrue(pool.isPoolingEnabled());
+
+    Channel channel = pool.acquire(discoverable).get();
+    Assert.assertTrue(channel.isConnected());
+    pool.release(channel);
+    Assert.assertTrue(channel.isConnected());
+
+    // The released channel is reused
+    Assert.assertSame(channel, pool.acquire(discoverable).get());
+
+    // A closed idle channel is not reused
+    pool.release(channel);
+    channel.close().await();
+    Channel newChannel = pool.acquire(discoverable).get();
+    Assert.assertNotSame(channel, newChannel);
+    Assert.assertTrue(newChannel.isConnected());
+    pool.release(newChannel);
+  }
+
+  @Test(timeout = 10000)
+  public void testMaxIdle() throws Exception {
+    OutboundConnectionPool pool = new OutboundConnectionPool(clientBootstrap, timer, 1, 0, 0);
+
+    Channel channel1 = pool.acquire(discoverable).get();
+    Channel channel2 = pool.acquire(discoverable).get();
+    Assert.assertNotSame(channel1, channel2);
+
+    // Only one channel is kept idle, the other one gets closed
+    pool.release(channel1);
+    pool.release(channel2);
+    channel2.getCloseFuture().await();
+    Assert.assertTrue(channel1.isConnected());
+    Assert.assertSame(channel1, pool.acquire(discoverable).get());
+  }
+
+  @Test(timeout = 10000)
+  public void testPoolingDisabled() throws Exception {
+    OutboundConnectionPool pool = new OutboundConnectionPool(clientBootstrap, timer, 0, 1, 0);
+    Assert.assertFalse(pool.isPoolingEnabled());
+
+    // Released channels are closed instead of being kept
+    Channel channel = pool.acquire(discoverable).get();
+    pool.release(channel);
+    channel.getCloseFuture().await();
+
+    // The connection limit does not apply without pooling
+    Channel newChannel = pool.acquire(discoverable).get();
+    Channel otherChannel = pool.acquire(discoverable).get(5, TimeUnit.SECONDS);
+    Assert.assertNotSame(channel, newChannel);
+    Assert.assertNotSame(newChannel, otherChannel);
+    pool.release(newChannel);
+    pool.release(otherChannel);
+  }
+
+  @Test(timeout = 10000)
+  public void testMaxConnections() throws Exception {
+    OutboundConnectionPool pool = new OutboundConnectionPool(clientBootstrap, timer, 1, 1, 0);
+
+    Channel channel = pool.acquire(discoverable).get();
+
+    // Over the limit, the request waits until the channel is released
+    ListenableFuture<Channel> waiting = pool.acquire(discoverable);
+    TimeUnit.MILLISECONDS.sleep(200);
+    Assert.assertFalse(waiting.isDone());
+    pool.release(channel);
+    Assert.assertSame(channel, waiting.get());
+
+    // A cancelled request gives up its turn
+    ListenableFuture<Channel> cancelled = pool.acquire(discoverable);
+    ListenableFuture<Channel> next = pool.acquire(discoverable);
+    Assert.assertTrue(cancelled.cancel(true));
+    pool.release(channel);
+    Assert.assertSame(channel, next.get());
+
+    // Closing the leased channel lets the waiting request connect a new one
+    waiting = pool.acquire(discoverable);
+    channel.close().await();
+    Channel newChannel = waiting.get();
+    Assert.assertNotSame(channel, newChannel);
+    Assert.assertTrue(newChannel.isConnected());
+    pool.release(newChannel);
+  }
+
+  @Test(timeout = 10000)
+  public void testAcquireTimeout() throws Exception {
+    OutboundConnectionPool pool = new OutboundConnectionPool(clientBootstrap, timer, 1, 1, 200);
+
+    Channel channel = pool.acquire(discoverable).get();
+
+    // A request that does not get a channel within the timeout fails
+    ListenableFuture<Channel> waiting = pool.acquire(discoverable);
+    try {
+      waiting.get();
+      Assert.fail("Expected acquire timeout");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+
+    // The timed out request does not take the released channel
+    waiting = pool.acquire(discoverable);
+    pool.release(channel);
+    Assert.assertSame(channel, waiting.get());
+    pool.release(channel);
+  }
+
+  @Test(timeout = 10000)
+  public void testConnectFailure() throws Exception {
+    OutboundConnectionPool pool = new OutboundConnectionPool(clientBootstrap, timer, 1, 1, 0);
+
+    // Nothing listens on the port of a closed server socket
+    ServerSocket closedSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    closedSocket.close();
+    WrappedDiscoverable unavailable = new WrappedDiscoverable(
+      new Discoverable("test", new InetSocketAddress(InetAddress.getLoopbackAddress(), closedSocket.getLocalPort())));
+
+    try {
+      pool.acquire(unavailable).get();
+      Assert.fail("Expected connection failure");
+    } catch (ExecutionException e) {
+      // Expected
+    }
+
+    // A failed connection does not count against the limit
+    try {
+      pool.acquire(unavailable).get();
+      Assert.fail("Expected connection failure");
+    } catch (ExecutionException e) {
+      // Expected
+    }
+  }
+}
@@ -73,6 +73,7 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -790,6 +791,34 @@ public abstract class HBaseTableUtil {
     return datasetStat;
   }
 
+  /**
+   * Collects the sizes of the regions of a table, as reported by the region servers. Regions that are not
+   * currently reported by any live region server are absent from the returned map.
+   *
+   * @param admin instance of {@link HBaseAdmin} to communicate with HBase
+   * @param tableId the table to collect the region sizes for
+   * @return map from region name to the size of the region in bytes
+   * @throws IOException
+   */
+  public Map<byte[], Long> getRegionSizes(HBaseAdmin admin, TableId tableId) throws IOException {
+    Map<byte[], Long> regionSizes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    ClusterStatus clusterStatus = admin.getClusterStatus();
+
+    TableName tableName = getHTableNameConverter().toTableName(tablePrefix, tableId);
+    for (ServerName serverName : clusterStatus.getServers()) {
+      Map<byte[], RegionLoad> regionsLoad = clusterStatus.getLoad(serverName).getRegionsLoad();
+
+      for (RegionLoad regionLoad : regionsLoad.values()) {
+        if (!tableName.equals(HRegionInfo.getTable(regionLoad.getName()))) {
+          continue;
+        }
+        long sizeMB = regionLoad.getStorefileSizeMB() + regionLoad.getMemStoreSizeMB();
+        regionSizes.put(regionLoad.getName(), sizeMB * 1024 * 1024);
+      }
+    }
+    return regionSizes;
+  }
+
   /**
    * Carries information about table stats
    */
@@ -407,6 +407,9 @@ public class UpgradeTool {
     LOG.info("Upgrading AppMetadatastore...");
     store.upgradeAppVersion();
 
+    LOG.info("Upgrading run record encoding in AppMetadatastore...");
+    store.upgradeRunRecordEncoding();
+
     LOG.info("Upgrading Dataset Specification...");
     dsSpecUpgrader.upgrade();
 
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -29,7 +29,9 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
@@ -53,6 +55,8 @@ public abstract class AbstractKeyManager extends AbstractIdleService implements
    */
   protected long keyExpirationPeriod = 0;
 
+  private final List<KeyRemovalListener> keyRemovalListeners = new CopyOnWriteArrayList<>();
+
 
   /**
    * An AbstractKeyManager that has common functionality of all keymanagers.
@@ -107,6 +111,24 @@ public abstract class AbstractKeyManager extends AbstractIdleService implements
    */
   protected abstract void addKey(KeyIdentifier key);
 
+  @Override
+  public final void addKeyRemovalListener(KeyRemovalListener listener) {
+    keyRemovalListeners.add(listener);
+  }
+
+  /**
+   * Notifies all registered {@link KeyRemovalListener}s that the key with the given ID was removed.
+   */
+  protected final void notifyKeyRemoved(int keyId) {
+    for (KeyRemovalListener listener : keyRemovalListeners) {
+      try {
+        listener.onKeyRemoved(keyId);
+      } catch (Throwable t) {
+        LOG.warn("Exception raised from key removal listener {}", listener, t);
+      }
+    }
+  }
+
   /**
    * Generates a new KeyIdentifier and sets that to be the current key being used.
    * @return A new KeyIdentifier.
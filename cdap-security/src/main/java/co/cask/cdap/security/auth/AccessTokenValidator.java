@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,7 +16,15 @@
 
 package co.cask.cdap.security.auth;
 
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Codec;
+import co.cask.cdap.proto.id.NamespaceId;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.inject.Inject;
 import org.apache.commons.codec.binary.Base64;
@@ -24,20 +32,57 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class validates the accessToken and returns the different states
  * of accessToken validation.
+ *
+ * Tokens that passed validation are kept in a bounded cache, keyed by the encoded token, so that repeated requests
+ * with the same token skip the decoding and digest verification. A cached token is never considered valid beyond
+ * its own expiration, and cached tokens signed with a secret key are discarded when that key is removed.
  */
 public class AccessTokenValidator extends AbstractIdleService implements TokenValidator {
   private static final Logger LOG = LoggerFactory.getLogger(AccessTokenValidator.class);
   private final TokenManager tokenManager;
   private final Codec<AccessToken> accessTokenCodec;
+  private final Cache<String, VerifiedToken> tokenCache;
+  private final AtomicInteger keyRemovals;
+  private volatile MetricsContext metricsContext;
 
   @Inject
-  public AccessTokenValidator(TokenManager tokenManager, Codec<AccessToken> accessTokenCodec) {
+  public AccessTokenValidator(CConfiguration cConf, TokenManager tokenManager, Codec<AccessToken> accessTokenCodec) {
     this.tokenManager = tokenManager;
     this.accessTokenCodec = accessTokenCodec;
+    this.keyRemovals = new AtomicInteger();
+
+    long cacheSize = cConf.getLong(Constants.Security.TOKEN_CACHE_MAX_SIZE);
+    if (cacheSize > 0) {
+      this.tokenCache = CacheBuilder.newBuilder()
+        .maximumSize(cacheSize)
+        .expireAfterWrite(cConf.getLong(Constants.Security.TOKEN_CACHE_EXPIRATION), TimeUnit.MILLISECONDS)
+        .build();
+      tokenManager.addKeyRemovalListener(new KeyManager.KeyRemovalListener() {
+        @Override
+        public void onKeyRemoved(int keyId) {
+          invalidateTokens(keyId);
+        }
+      });
+    } else {
+      this.tokenCache = null;
+    }
+  }
+
+  /**
+   * Sets the {@link MetricsCollectionService} for emitting the token cache hits and the validation time.
+   */
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsContext = metricsCollectionService.getContext(
+      ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+                      Constants.Metrics.Tag.COMPONENT, Constants.Service.GATEWAY));
   }
 
   @Override
@@ -52,17 +97,44 @@ public class AccessTokenValidator extends AbstractIdleService implements TokenVa
 
   @Override
   public TokenState validate(String token) {
-    AccessToken accessToken;
-    TokenState state = TokenState.VALID;
     if (token == null) {
       LOG.debug("Token is missing");
       return TokenState.MISSING;
     }
+
+    long startTime = System.nanoTime();
+    VerifiedToken verifiedToken = tokenCache == null ? null : tokenCache.getIfPresent(token);
+    if (verifiedToken != null) {
+      if (verifiedToken.getExpireTimestamp() >= System.currentTimeMillis()) {
+        emitMetrics(Constants.Metrics.Name.Router.AUTH_TOKEN_CACHE_HITS, startTime);
+        return TokenState.VALID;
+      }
+      // The token expired after it was cached. Validate it again to report the expiry.
+      tokenCache.invalidate(token);
+    }
+
+    TokenState state = validateToken(token);
+    emitMetrics(Constants.Metrics.Name.Router.AUTH_TOKEN_CACHE_MISSES, startTime);
+    return state;
+  }
+
+  private TokenState validateToken(String token) {
+    AccessToken accessToken;
+    TokenState state = TokenState.VALID;
     byte[] decodedToken = Base64.decodeBase64(token);
 
     try {
+      int removals = keyRemovals.get();
       accessToken = accessTokenCodec.decode(decodedToken);
       tokenManager.validateSecret(accessToken);
+      if (tokenCache != null) {
+        tokenCache.put(token, new VerifiedToken(accessToken.getKeyId(),
+                                                accessToken.getIdentifier().getExpireTimestamp()));
+        // A key removed during the validation may have missed the token just cached
+        if (removals != keyRemovals.get()) {
+          tokenCache.invalidate(token);
+        }
+      }
     } catch (IOException ioe) {
       state = TokenState.INVALID;
       LOG.debug("Unknown Schema version for Access Token. {}", ioe);
@@ -72,4 +144,55 @@ public class AccessTokenValidator extends AbstractIdleService implements TokenVa
     }
     return state;
   }
+
+  /**
+   * Removes all cached tokens signed with the given key.
+   */
+  private void invalidateTokens(int keyId) {
+    keyRemovals.incrementAndGet();
+    Iterator<VerifiedToken> iterator = tokenCache.asMap().values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().getKeyId() == keyId) {
+        iterator.remove();
+      }
+    }
+    LOG.debug("Invalidated cached tokens for removed key {}", keyId);
+  }
+
+  private void emitMetrics(String cacheMetric, long startTime) {
+    MetricsContext context = metricsContext;
+    if (context != null) {
+      context.increment(cacheMetric, 1);
+      context.increment(Constants.Metrics.Name.Router.AUTH_TOKEN_VALIDATION_TIME_US,
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+    }
+  }
+
+  /**
+   * Number of tokens currently in the cache of verified tokens. Used for testing.
+   */
+  long getCachedTokenCount() {
+    return tokenCache == null ? 0 : tokenCache.size();
+  }
+
+  /**
+   * The parts of a verified token needed to serve it from the cache.
+   */
+  private static final class VerifiedToken {
+    private final int keyId;
+    private final long expireTimestamp;
+
+    private VerifiedToken(int keyId, long expireTimestamp) {
+      this.keyId = keyId;
+      this.expireTimestamp = expireTimestamp;
+    }
+
+    int getKeyId() {
+      return keyId;
+    }
+
+    long getExpireTimestamp() {
+      return expireTimestamp;
+    }
+  }
 }
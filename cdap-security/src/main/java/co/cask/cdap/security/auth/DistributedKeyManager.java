@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -189,6 +189,11 @@ public class DistributedKeyManager extends AbstractKeyManager implements Resourc
   @Override
   public void onResourceDelete(String name) {
     LOG.info("Removed key: leader={}, key={}", leader, name);
+    try {
+      notifyKeyRemoved(Integer.parseInt(name));
+    } catch (NumberFormatException e) {
+      LOG.warn("Ignoring removal of unknown key resource {}", name);
+    }
   }
 
   @Override
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -64,4 +64,22 @@ public interface KeyManager extends Service {
   <T> void validateMAC(Codec<T> codec, Signed<T> signedMessage)
     throws InvalidDigestException, InvalidKeyException;
 
+  /**
+   * Registers a listener to be notified when a secret key is removed, so that any state derived from digests
+   * computed with that key can be discarded.
+   * @param listener The listener to be invoked.
+   */
+  void addKeyRemovalListener(KeyRemovalListener listener);
+
+  /**
+   * Listener for the removal of secret keys.
+   */
+  interface KeyRemovalListener {
+
+    /**
+     * Invoked when the secret key with the given ID is removed and can no longer be used to validate digests.
+     */
+    void onKeyRemoved(int keyId);
+  }
+
 }
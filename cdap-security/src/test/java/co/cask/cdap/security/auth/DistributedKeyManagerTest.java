@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -32,6 +32,7 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
+import org.apache.commons.codec.binary.Base64;
 import org.apache.hadoop.hbase.HBaseTestingUtility;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.zookeeper.MiniZooKeeperCluster;
@@ -115,6 +116,45 @@ public class DistributedKeyManagerTest extends TestTokenManager {
     tokenManager2.stopAndWait();
   }
 
+  @Test
+  public void testTokenCacheInvalidation() throws Exception {
+    DistributedKeyManager keyManager = getKeyManager(injector1, true);
+    TestingTokenManager tokenManager =
+      new TestingTokenManager(keyManager, injector1.getInstance(AccessTokenIdentifierCodec.class));
+    AccessTokenCodec tokenCodec = injector1.getInstance(AccessTokenCodec.class);
+    AccessTokenValidator validator =
+      new AccessTokenValidator(injector1.getInstance(CConfiguration.class), tokenManager, tokenCodec);
+    validator.startAndWait();
+    tokenManager.waitForCurrentKey(2000, TimeUnit.MILLISECONDS);
+
+    long now = System.currentTimeMillis();
+    AccessToken token = tokenManager.signIdentifier(
+      new AccessTokenIdentifier("testuser", Lists.newArrayList("users"), now, now + 60 * 60 * 1000));
+    String encodedToken = Base64.encodeBase64String(tokenCodec.encode(token));
+    Assert.assertEquals(TokenState.VALID, validator.validate(encodedToken));
+    Assert.assertEquals(TokenState.VALID, validator.validate(encodedToken));
+    Assert.assertEquals(1, validator.getCachedTokenCount());
+
+    // A cached token is not valid beyond its own expiration
+    AccessToken shortToken = tokenManager.signIdentifier(
+      new AccessTokenIdentifier("testuser", Lists.newArrayList("users"), now, System.currentTimeMillis() + 500));
+    String encodedShortToken = Base64.encodeBase64String(tokenCodec.encode(shortToken));
+    Assert.assertEquals(TokenState.VALID, validator.validate(encodedShortToken));
+    TimeUnit.MILLISECONDS.sleep(1000);
+    Assert.assertEquals(TokenState.EXPIRED, validator.validate(encodedShortToken));
+
+    // Removing the signing key invalidates the cached tokens
+    injector1.getInstance(ZKClientService.class).delete("/keys/" + token.getKeyId()).get();
+    Stopwatch timer = new Stopwatch().start();
+    while (validator.getCachedTokenCount() > 0 && timer.elapsedTime(TimeUnit.SECONDS) < 5) {
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+    Assert.assertEquals(0, validator.getCachedTokenCount());
+    Assert.assertNotEquals(TokenState.VALID, validator.validate(encodedToken));
+
+    validator.stopAndWait();
+  }
+
   @Test
   public void testGetACLs() throws Exception {
     CConfiguration kerbConf = CConfiguration.create();
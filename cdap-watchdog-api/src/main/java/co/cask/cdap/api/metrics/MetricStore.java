@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Cask Data, Inc.
+ * Copyright 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -17,6 +17,7 @@
 package co.cask.cdap.api.metrics;
 
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * Stores and provides access to metrics data.
@@ -50,6 +51,14 @@ public interface MetricStore {
    */
   Collection<MetricTimeSeries> query(MetricDataQuery query);
 
+  /**
+   * Queries metrics data for multiple named queries. Queries that only differ in the metrics they select
+   * may be executed as a single scan.
+   * @param queries queries to execute, by name
+   * @return time series that satisfy each query, by the query name
+   */
+  Map<String, Collection<MetricTimeSeries>> query(Map<String, MetricDataQuery> queries);
+
   /**
    * Deletes all metric data before given timestamp. Used for applying TTL policy.
    * @param timestamp time up to which to delete metrics data, in ms since epoch
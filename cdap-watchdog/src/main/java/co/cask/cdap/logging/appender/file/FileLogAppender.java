@@ -68,6 +68,7 @@ public class FileLogAppender extends LogAppender {
   private final NamespaceQueryAdmin namespaceQueryAdmin;
   private final String logBaseDir;
   private final int syncIntervalBytes;
+  private final long indexIntervalBytes;
   private final long retentionDurationMs;
   private final long maxLogFileSizeBytes;
   private final long maxFileLifetimeMs;
@@ -103,6 +104,8 @@ public class FileLogAppender extends LogAppender {
     this.syncIntervalBytes = cConfig.getInt(LoggingConfiguration.LOG_FILE_SYNC_INTERVAL_BYTES, 2 * 1024 * 1024);
     Preconditions.checkArgument(this.syncIntervalBytes > 0,
                                 "Log file sync interval is invalid: %s", this.syncIntervalBytes);
+    this.indexIntervalBytes = cConfig.getLong(LoggingConfiguration.LOG_FILE_INDEX_INTERVAL_BYTES,
+                                              LoggingConfiguration.DEFAULT_LOG_FILE_INDEX_INTERVAL_BYTES);
 
     long retentionDurationDays = cConfig.getLong(LoggingConfiguration.LOG_RETENTION_DURATION_DAYS, -1);
     Preconditions.checkArgument(retentionDurationDays > 0,
@@ -150,7 +153,7 @@ public class FileLogAppender extends LogAppender {
 
       AvroFileWriter avroFileWriter = new AvroFileWriter(fileMetaDataManager, namespacedLocationFactory, logBaseDir,
                                                          logSchema, maxLogFileSizeBytes, syncIntervalBytes,
-                                                         maxFileLifetimeMs, impersonator);
+                                                         indexIntervalBytes, maxFileLifetimeMs, impersonator);
       logFileWriter = new SimpleLogFileWriter(avroFileWriter, checkpointIntervalMs);
 
       LogCleanup logCleanup = new LogCleanup(fileMetaDataManager, rootLocationFactory, namespaceQueryAdmin,
@@ -94,6 +94,9 @@ public final class FilterParser {
     } else if (key.equals("loglevel")) {
       // Log level
       return new LogLevelExpression(value);
+    } else if (key.equals("loggername")) {
+      // Logger name
+      return new LoggerNameExpression(value);
     } else {
       throw new IllegalArgumentException(String.format("Unknown expression of type %s", key));
     }
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.filter;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.google.common.base.Objects;
+
+/**
+ * Represents an expression that matches the logger name of a log event.
+ */
+public class LoggerNameExpression implements Filter {
+  private final String loggerName;
+
+  public LoggerNameExpression(String loggerName) {
+    this.loggerName = loggerName;
+  }
+
+  @Override
+  public boolean match(ILoggingEvent event) {
+    return loggerName.equals(event.getLoggerName());
+  }
+
+  public String getLoggerName() {
+    return loggerName;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("loggerName", loggerName)
+      .toString();
+  }
+}
@@ -18,12 +18,15 @@ package co.cask.cdap.logging.gateway.handlers.store;
 
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.app.RunIds;
+import co.cask.cdap.data2.dataset2.lib.table.BinaryMDSValueCodec;
 import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
+import co.cask.cdap.data2.dataset2.lib.table.MDSValueCodec;
 import co.cask.cdap.data2.dataset2.lib.table.MetadataStoreDataset;
 import co.cask.cdap.internal.app.store.RunRecordMeta;
 import co.cask.cdap.proto.id.ProgramId;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.gson.Gson;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -38,8 +41,11 @@ public class AppMetadataStore extends MetadataStoreDataset {
   public static final String TYPE_RUN_RECORD_COMPLETED = "runRecordCompleted";
   public static final String TYPE_RUN_RECORD_SUSPENDED = "runRecordSuspended";
 
+  // Must be able to decode run records written by the app-fabric AppMetadataStore
+  private static final MDSValueCodec CODEC = new BinaryMDSValueCodec(new Gson(), RunRecordMeta.class);
+
   public AppMetadataStore(Table table) {
-    super(table);
+    super(table, CODEC);
   }
 
   // TODO: getRun is duplicated from cdap-app-fabric AppMetadataStore class.
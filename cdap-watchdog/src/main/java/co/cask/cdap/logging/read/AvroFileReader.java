@@ -23,6 +23,8 @@ import co.cask.cdap.common.io.SeekableInputStream;
 import co.cask.cdap.common.security.Impersonator;
 import co.cask.cdap.logging.filter.Filter;
 import co.cask.cdap.logging.serialize.LoggingEvent;
+import co.cask.cdap.logging.write.FileMetaDataManager;
+import co.cask.cdap.logging.write.LogFileIndex;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
@@ -38,11 +40,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /**
  * Reads log events from an Avro file.
@@ -67,6 +71,9 @@ public class AvroFileReader {
     private final long maxEvents;
 
     private DataFileReader<GenericRecord> dataFileReader;
+    private LogFileIndex index;
+    private boolean[] skippableSegments;
+    private int segment;
 
     private ILoggingEvent loggingEvent;
     private GenericRecord datum;
@@ -88,7 +95,17 @@ public class AvroFileReader {
 
       try {
         dataFileReader = createReader(file, namespaceId, impersonator);
-        if (dataFileReader.hasNext()) {
+        index = readIndex(file, namespaceId, impersonator);
+        if (index != null) {
+          skippableSegments = LogSegmentFilters.getSkippableSegments(logFilter, index);
+          // Seek to the last indexed segment that starts before fromTimeMs. All events before it are older.
+          int idx = index.lowerEntry(fromTimeMs);
+          if (idx >= 0) {
+            LOG.trace("Seeking to pos {} using index", index.getPosition(idx));
+            dataFileReader.seek(index.getPosition(idx));
+            segment = idx;
+          }
+        } else if (dataFileReader.hasNext()) {
           datum = dataFileReader.next();
           loggingEvent = LoggingEvent.decode(datum);
           long prevPrevSyncPos = 0;
@@ -125,8 +142,14 @@ public class AvroFileReader {
       try {
         // read events from file
         while (next == null && dataFileReader.hasNext()) {
-          loggingEvent = LoggingEvent.decode(dataFileReader.next(datum));
+          if (skipSegment()) {
+            continue;
+          }
+          datum = dataFileReader.next(datum);
+          // Match the filter with only the needed fields decoded, before decoding the full event
+          loggingEvent = LoggingEvent.decodeFilterFields(datum);
           if (loggingEvent.getTimeStamp() >= fromTimeMs && logFilter.match(loggingEvent)) {
+            loggingEvent = LoggingEvent.decode(datum);
             ++count;
             if ((count > maxEvents || loggingEvent.getTimeStamp() >= toTimeMs)
               && loggingEvent.getTimeStamp() != prevTimestamp) {
@@ -145,6 +168,32 @@ public class AvroFileReader {
       }
     }
 
+    /**
+     * Seeks to the end of the current segment if the index shows that it has no event to return.
+     *
+     * @return {@code true} if the current segment is skipped
+     */
+    private boolean skipSegment() throws IOException {
+      if (index == null) {
+        return false;
+      }
+      // Find the segment of the current block
+      long blockPosition = dataFileReader.previousSync();
+      while (segment < index.size() && index.getEndPosition(segment) <= blockPosition) {
+        segment++;
+      }
+      if (segment >= index.size() || index.getPosition(segment) > blockPosition) {
+        return false;
+      }
+      if (!skippableSegments[segment] && index.getMaxTimestamp(segment) >= fromTimeMs) {
+        return false;
+      }
+      LOG.trace("Skipping segment from pos {} to {} using index", blockPosition, index.getEndPosition(segment));
+      dataFileReader.seek(index.getEndPosition(segment));
+      segment++;
+      return true;
+    }
+
     @Override
     public void close() {
       try {
@@ -199,10 +248,17 @@ public class AvroFileReader {
     DataFileReader<GenericRecord> dataFileReader = createReader(file, namespaceId, impersonator);
 
     try {
+      // Position of the first block, before reading anything
+      long firstBlockPosition = dataFileReader.previousSync();
       if (!dataFileReader.hasNext()) {
         return ImmutableList.of();
       }
 
+      LogFileIndex index = readIndex(file, namespaceId, impersonator);
+      if (index != null) {
+        return readLogPrev(dataFileReader, index, firstBlockPosition, logFilter, fromTimeMs, maxEvents);
+      }
+
       List<List<LogEvent>> logSegments = Lists.newArrayList();
       List<LogEvent> logSegment;
       int count = 0;
@@ -257,6 +313,57 @@ public class AvroFileReader {
     }
   }
 
+  /**
+   * Reads events backward from fromTimeMs using the index to find the segments to read, skipping segments
+   * that cannot have any event matching the filter.
+   */
+  private Collection<LogEvent> readLogPrev(DataFileReader<GenericRecord> dataFileReader, LogFileIndex index,
+                                           long firstBlockPosition, Filter logFilter,
+                                           long fromTimeMs, int maxEvents) throws IOException {
+    List<List<LogEvent>> logSegments = Lists.newArrayList();
+    int count = 0;
+
+    // Segments after the last entry not newer than fromTimeMs only contain newer events
+    int idx = index.floorEntry(fromTimeMs);
+    if (idx == index.size() - 1) {
+      // Events after the last segment are not summarized, and need to be read till the end of the file
+      long tailPosition = index.size() == 0 ? firstBlockPosition : index.getEndPosition(idx);
+      dataFileReader.seek(tailPosition);
+      List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, -1);
+      if (!logSegment.isEmpty()) {
+        logSegments.add(logSegment);
+        count += logSegment.size();
+      }
+      LOG.trace("Read logevents {} from position {} using index", count, tailPosition);
+    }
+
+    boolean[] skippableSegments = LogSegmentFilters.getSkippableSegments(logFilter, index);
+    // Read the indexed segments backward, with the part before the first index entry starting at the first block
+    for (; idx >= -1 && count < maxEvents; idx--) {
+      if (idx >= 0 && skippableSegments[idx]) {
+        continue;
+      }
+      long startPosition = idx >= 0 ? index.getPosition(idx) : firstBlockPosition;
+      // Without any entry, everything was read as the tail already
+      long endPosition = idx >= 0 ? index.getEndPosition(idx)
+        : (index.size() == 0 ? firstBlockPosition : index.getPosition(0));
+      if (startPosition >= endPosition) {
+        continue;
+      }
+      dataFileReader.seek(startPosition);
+      List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, endPosition);
+      if (!logSegment.isEmpty()) {
+        logSegments.add(logSegment);
+        count += logSegment.size();
+      }
+      LOG.trace("Read logevents {} from position {} to endPosition {} using index",
+                count, startPosition, endPosition);
+    }
+
+    int skip = count >= maxEvents ? count - maxEvents : 0;
+    return Lists.newArrayList(Iterables.skip(Iterables.concat(Lists.reverse(logSegments)), skip));
+  }
+
   /**
    *  Read current block in Avro file from current block sync marker to next block sync marker
    */
@@ -270,7 +377,8 @@ public class AvroFileReader {
     // or read until endSyncPosition has reached
     while (dataFileReader.hasNext() && (endSyncPosition == -1 || (currentSyncPosition < endSyncPosition))) {
       datum = dataFileReader.next(datum);
-      ILoggingEvent loggingEvent = LoggingEvent.decode(datum);
+      // Match the filter with only the needed fields decoded, before decoding the full event
+      ILoggingEvent loggingEvent = LoggingEvent.decodeFilterFields(datum);
 
       // Stop when reached fromTimeMs
       if (loggingEvent.getTimeStamp() > fromTimeMs) {
@@ -278,6 +386,7 @@ public class AvroFileReader {
       }
 
       if (logFilter.match(loggingEvent)) {
+        loggingEvent = LoggingEvent.decode(datum);
         logSegment.add(new LogEvent(loggingEvent,
                                     new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, loggingEvent.getTimeStamp())));
       }
@@ -303,6 +412,32 @@ public class AvroFileReader {
     return startPosition;
   }
 
+  /**
+   * Reads the {@link LogFileIndex} of the given log file.
+   *
+   * @return the index or {@code null} if the log file has no valid index
+   */
+  @Nullable
+  private LogFileIndex readIndex(final Location file, NamespaceId namespaceId, Impersonator impersonator) {
+    try {
+      return impersonator.doAs(namespaceId, new Callable<LogFileIndex>() {
+        @Override
+        public LogFileIndex call() throws Exception {
+          Location indexLocation = FileMetaDataManager.getIndexLocation(file);
+          if (!indexLocation.exists()) {
+            return null;
+          }
+          try (InputStream is = indexLocation.getInputStream()) {
+            return LogFileIndex.read(is, file.length());
+          }
+        }
+      });
+    } catch (Exception e) {
+      LOG.debug("Failed to read index of log file {}. Reading without index.", file, e);
+      return null;
+    }
+  }
+
   private DataFileReader<GenericRecord> createReader(Location location, NamespaceId namespaceId,
                                                      Impersonator impersonator) throws IOException {
     return new DataFileReader<>(new LocationSeekableInput(location, namespaceId, impersonator),
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.read;
+
+import co.cask.cdap.logging.filter.AndFilter;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import co.cask.cdap.logging.filter.LoggerNameExpression;
+import co.cask.cdap.logging.filter.MdcExpression;
+import co.cask.cdap.logging.filter.OrFilter;
+import co.cask.cdap.logging.write.LogFileIndex;
+
+/**
+ * Evaluates {@link Filter}s against the segment summaries of a {@link LogFileIndex}, to find out segments of
+ * a log file that contain no matching event.
+ */
+final class LogSegmentFilters {
+
+  /**
+   * Returns an array of the same size as the index, with {@code true} for segments that cannot have any
+   * event matching the given filter.
+   */
+  static boolean[] getSkippableSegments(Filter filter, LogFileIndex index) {
+    boolean[] skippable = new boolean[index.size()];
+    for (int i = 0; i < skippable.length; i++) {
+      skippable[i] = !mayMatch(filter, index, i);
+    }
+    return skippable;
+  }
+
+  /**
+   * Returns {@code false} if no event in the segment of the given index entry can match the given filter.
+   * Filters that cannot be evaluated against the summary are assumed to match.
+   */
+  static boolean mayMatch(Filter filter, LogFileIndex index, int idx) {
+    if (filter instanceof AndFilter) {
+      for (Filter expression : ((AndFilter) filter).getExpressions()) {
+        if (!mayMatch(expression, index, idx)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (filter instanceof OrFilter) {
+      for (Filter expression : ((OrFilter) filter).getExpressions()) {
+        if (mayMatch(expression, index, idx)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (filter instanceof LogLevelExpression) {
+      return index.mayContainLevel(idx, ((LogLevelExpression) filter).getLevel());
+    }
+    if (filter instanceof LoggerNameExpression) {
+      return index.mayContainLogger(idx, ((LoggerNameExpression) filter).getLoggerName());
+    }
+    if (filter instanceof MdcExpression) {
+      MdcExpression expression = (MdcExpression) filter;
+      return index.mayContainMdc(idx, expression.getKey(), expression.getValue());
+    }
+    return true;
+  }
+
+  private LogSegmentFilters() {
+  }
+}
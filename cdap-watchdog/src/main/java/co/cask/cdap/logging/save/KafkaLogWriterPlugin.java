@@ -104,6 +104,8 @@ public class KafkaLogWriterPlugin extends AbstractKafkaLogProcessor {
     int syncIntervalBytes = cConf.getInt(LoggingConfiguration.LOG_FILE_SYNC_INTERVAL_BYTES, 10 * 1000 * 1000);
     Preconditions.checkArgument(syncIntervalBytes > 0,
                                 "Log file sync interval is invalid: %s", syncIntervalBytes);
+    long indexIntervalBytes = cConf.getLong(LoggingConfiguration.LOG_FILE_INDEX_INTERVAL_BYTES,
+                                            LoggingConfiguration.DEFAULT_LOG_FILE_INDEX_INTERVAL_BYTES);
 
     long checkpointIntervalMs = cConf.getLong(LoggingConfiguration.LOG_SAVER_CHECKPOINT_INTERVAL_MS,
                                                 LoggingConfiguration.DEFAULT_LOG_SAVER_CHECKPOINT_INTERVAL_MS);
@@ -145,7 +147,8 @@ public class KafkaLogWriterPlugin extends AbstractKafkaLogProcessor {
 
     AvroFileWriter avroFileWriter = new AvroFileWriter(fileMetaDataManager, namespacedLocationFactory, logBaseDir,
                                                        serializer.getAvroSchema(), maxLogFileSizeBytes,
-                                                       syncIntervalBytes, maxFileLifetimeMs, impersonator);
+                                                       syncIntervalBytes, indexIntervalBytes, maxFileLifetimeMs,
+                                                       impersonator);
 
     checkpointManager = checkpointManagerFactory.create(cConf.get(Constants.Logging.KAFKA_TOPIC),
                                                         CHECKPOINT_ROW_KEY_PREFIX);
@@ -55,6 +55,7 @@ public final class AvroFileWriter implements Closeable, Flushable {
   private final String logBaseDir;
   private final Schema schema;
   private final int syncIntervalBytes;
+  private final long indexIntervalBytes;
   private final Map<String, AvroFile> fileMap;
   private final long maxFileSize;
   private final long maxFileLifetimeMs;
@@ -70,16 +71,19 @@ public final class AvroFileWriter implements Closeable, Flushable {
    * @param schema schema of the Avro data to be written.
    * @param maxFileSize Avro files greater than maxFileSize will get rotated.
    * @param syncIntervalBytes the approximate number of uncompressed bytes to write in each block.
+   * @param indexIntervalBytes the approximate number of bytes between entries in the {@link LogFileIndex}
+   *                           written for each file. No index is written if it is not positive.
    * @param maxFileLifetimeMs files that are older than maxFileLifetimeMs will be closed.
    */
   public AvroFileWriter(FileMetaDataManager fileMetaDataManager, NamespacedLocationFactory namespacedLocationFactory,
                         String logBaseDir, Schema schema, long maxFileSize, int syncIntervalBytes,
-                        long maxFileLifetimeMs, Impersonator impersonator) {
+                        long indexIntervalBytes, long maxFileLifetimeMs, Impersonator impersonator) {
     this.fileMetaDataManager = fileMetaDataManager;
     this.namespacedLocationFactory = namespacedLocationFactory;
     this.logBaseDir = logBaseDir;
     this.schema = schema;
     this.syncIntervalBytes = syncIntervalBytes;
+    this.indexIntervalBytes = indexIntervalBytes;
     this.fileMap = Maps.newHashMap();
     this.maxFileSize = maxFileSize;
     this.maxFileLifetimeMs = maxFileLifetimeMs;
@@ -254,6 +258,10 @@ public final class AvroFileWriter implements Closeable, Flushable {
         if (avroFile.getLocation().exists()) {
           avroFile.getLocation().delete();
         }
+        Location indexLocation = FileMetaDataManager.getIndexLocation(avroFile.getLocation());
+        if (indexLocation.exists()) {
+          indexLocation.delete();
+        }
       }
     } catch (IOException e) {
       LOG.error("Error while closing and deleting file {}", avroFile.getLocation(), e);
@@ -270,6 +278,9 @@ public final class AvroFileWriter implements Closeable, Flushable {
     private final Location location;
     private FSDataOutputStream outputStream;
     private DataFileWriter<GenericRecord> dataFileWriter;
+    private LogFileIndex.Writer indexWriter;
+    private LogFileIndex.Summary segmentSummary;
+    private long segmentStartPos;
     private long createTime;
     private boolean isOpen = false;
 
@@ -297,6 +308,25 @@ public final class AvroFileWriter implements Closeable, Flushable {
         throw new IOException("Exception while creating file " + location, e);
       }
       this.isOpen = true;
+      openIndex();
+    }
+
+    /**
+     * Opens the index file. Failure to write the index doesn't fail the log file, as readers can read
+     * log files without index.
+     */
+    private void openIndex() {
+      if (indexIntervalBytes <= 0) {
+        return;
+      }
+      try {
+        indexWriter = new LogFileIndex.Writer(FileMetaDataManager.getIndexLocation(location));
+        segmentSummary = new LogFileIndex.Summary();
+        segmentStartPos = outputStream.getPos();
+      } catch (Exception e) {
+        LOG.warn("Failed to create index for log file {}. Log file will not be indexed.", location, e);
+        indexWriter = null;
+      }
     }
 
     public boolean isOpen() {
@@ -309,7 +339,17 @@ public final class AvroFileWriter implements Closeable, Flushable {
 
     public void append(LogWriteEvent event) throws IOException {
       try {
-        dataFileWriter.append(event.getGenericRecord());
+        if (indexWriter != null && outputStream.getPos() - segmentStartPos >= indexIntervalBytes) {
+          // Force a sync marker, so that the event starts a block that readers can seek to
+          endSegment(dataFileWriter.sync());
+        }
+        GenericRecord record = event.getGenericRecord();
+        dataFileWriter.append(record);
+        if (indexWriter != null) {
+          segmentSummary.add((Long) record.get("timestamp"), (Integer) record.get("level"),
+                             record.get("loggerName") == null ? null : record.get("loggerName").toString(),
+                             (Map<?, ?>) record.get("mdc"));
+        }
       } catch (Exception e) {
         close();
         throw new IOException("Exception while appending to file " + location, e);
@@ -329,6 +369,51 @@ public final class AvroFileWriter implements Closeable, Flushable {
       return createTime;
     }
 
+    /**
+     * Ends the current segment at the given sync position and writes its summary to the index.
+     */
+    private void endSegment(long syncPos) {
+      if (indexWriter == null) {
+        return;
+      }
+      if (segmentSummary.isEmpty()) {
+        segmentStartPos = syncPos;
+        return;
+      }
+      try {
+        indexWriter.append(segmentStartPos, syncPos, segmentSummary);
+        segmentSummary.reset();
+        segmentStartPos = syncPos;
+      } catch (IOException e) {
+        LOG.warn("Failed to write index for log file {}. Log file will not be indexed further.", location, e);
+        closeIndex();
+      }
+    }
+
+    private void flushIndex() {
+      if (indexWriter == null) {
+        return;
+      }
+      try {
+        indexWriter.flush();
+      } catch (IOException e) {
+        LOG.warn("Failed to flush index for log file {}. Log file will not be indexed further.", location, e);
+        closeIndex();
+      }
+    }
+
+    private void closeIndex() {
+      if (indexWriter == null) {
+        return;
+      }
+      try {
+        indexWriter.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close index for log file {}", location, e);
+      }
+      indexWriter = null;
+    }
+
     public void flush() throws IOException {
       try {
         dataFileWriter.flush();
@@ -337,6 +422,10 @@ public final class AvroFileWriter implements Closeable, Flushable {
         close();
         throw new IOException("Exception while flushing file " + location, e);
       }
+      // Flushing the Avro writer always ends a block, hence also ends the segment
+      endSegment(getPos());
+      // Index is flushed after the log file, so that it never refers to data not yet visible in the log file
+      flushIndex();
     }
 
     public void sync() throws IOException {
@@ -347,6 +436,8 @@ public final class AvroFileWriter implements Closeable, Flushable {
         close();
         throw new IOException("Exception while syncing file " + location, e);
       }
+      endSegment(getPos());
+      flushIndex();
     }
 
     @Override
@@ -358,6 +449,16 @@ public final class AvroFileWriter implements Closeable, Flushable {
       LOG.trace("Closing file {}", location);
       isOpen = false;
 
+      if (indexWriter != null) {
+        // Summarize the last segment before closing the index
+        try {
+          dataFileWriter.flush();
+          endSegment(outputStream.getPos());
+        } catch (Exception e) {
+          LOG.warn("Failed to write index for the last segment of log file {}", location, e);
+        }
+      }
+      closeIndex();
       try {
         if (dataFileWriter != null) {
           dataFileWriter.close();
@@ -21,6 +21,7 @@ import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.io.Processor;
 import co.cask.cdap.common.io.RootLocationFactory;
 import co.cask.cdap.common.logging.LoggingContext;
@@ -42,6 +43,7 @@ import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -60,6 +62,7 @@ public final class FileMetaDataManager {
   private static final byte[] ROW_KEY_PREFIX = Bytes.toBytes(200);
   private static final byte[] ROW_KEY_PREFIX_END = Bytes.toBytes(201);
   private static final NavigableMap<?, ?> EMPTY_MAP = Maps.unmodifiableNavigableMap(new TreeMap());
+  private static final String INDEX_FILE_SUFFIX = ".idx";
 
   private final RootLocationFactory rootLocationFactory;
   private final NamespacedLocationFactory namespacedLocationFactory;
@@ -120,6 +123,19 @@ public final class FileMetaDataManager {
     });
   }
 
+  /**
+   * Returns the location of the {@link LogFileIndex} of a log file. The index is stored next to the log file and
+   * shares its life cycle, hence it is not recorded separately in the meta data table.
+   *
+   * @param logFile location of the log file
+   * @return location of the index file
+   */
+  public static Location getIndexLocation(Location logFile) throws IOException {
+    Location parent = Locations.getParent(logFile);
+    Preconditions.checkArgument(parent != null, "Log file %s has no parent location", logFile);
+    return parent.append(logFile.getName() + INDEX_FILE_SUFFIX);
+  }
+
   /**
    * Returns a list of log files for a logging context.
    * @param loggingContext logging context.
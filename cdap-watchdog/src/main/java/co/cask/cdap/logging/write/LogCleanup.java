@@ -311,6 +311,11 @@ public final class LogCleanup implements Runnable {
           location.delete();
           parentDirs.put(namespacedBaseDir, getParent(location));
         }
+        Location indexLocation = FileMetaDataManager.getIndexLocation(location);
+        if (indexLocation.exists()) {
+          LOG.debug("Deleting log index file {}", indexLocation);
+          indexLocation.delete();
+        }
         return null;
       }
     });
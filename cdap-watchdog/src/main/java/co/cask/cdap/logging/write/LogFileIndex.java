@@ -0,0 +1,356 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.write;
+
+import ch.qos.logback.classic.Level;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.twill.filesystem.Location;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A sidecar index of a log file, summarizing the segments of the log file. A segment is a sequence of Avro blocks,
+ * starting and ending at sync positions. For each segment, the index records the timestamp of the first and last
+ * event, the log levels present, and bloom filters of the logger names and MDC entries of the events, so that
+ * readers can seek to a segment close to a given time and skip segments that cannot match a filter, instead of
+ * scanning the log file. Log events in a file are assumed to be in time order, which is also what the reader relies
+ * on when no index is available.
+ *
+ * The index file consists of a header, followed by fixed size entries of
+ * (timestamp, max timestamp, start position, end position, level mask, logger bloom, MDC bloom).
+ * An entry is only written after the segment has ended, hence events written after the end position of the last
+ * entry are not summarized.
+ */
+public final class LogFileIndex {
+
+  private static final byte[] MAGIC = {'C', 'L', 'I', 'X'};
+  private static final byte VERSION = 2;
+  private static final int ENTRY_SIZE = 6 * (Long.SIZE / Byte.SIZE) + Integer.SIZE / Byte.SIZE;
+
+  // Levels in increasing order, with each level represented by the bit of its array index in the level mask.
+  // Levels not in the array are represented by the bit after the last one.
+  private static final int[] LEVELS = {
+    Level.TRACE_INT, Level.DEBUG_INT, Level.INFO_INT, Level.WARN_INT, Level.ERROR_INT
+  };
+  private static final int OTHER_LEVEL_BIT = 1 << LEVELS.length;
+  private static final int BLOOM_HASHES = 3;
+
+  private final long[] timestamps;
+  private final long[] maxTimestamps;
+  private final long[] positions;
+  private final long[] endPositions;
+  private final int[] levelMasks;
+  private final long[] loggerBlooms;
+  private final long[] mdcBlooms;
+
+  private LogFileIndex(int size) {
+    this.timestamps = new long[size];
+    this.maxTimestamps = new long[size];
+    this.positions = new long[size];
+    this.endPositions = new long[size];
+    this.levelMasks = new int[size];
+    this.loggerBlooms = new long[size];
+    this.mdcBlooms = new long[size];
+  }
+
+  /**
+   * Reads the index from the given input. Entries for segments ending beyond the given file length are dropped,
+   * as they may refer to data that is not yet readable from the log file.
+   *
+   * @param input input stream of the index file. It will not be closed by this method.
+   * @param fileLength length of the log file that the index is for
+   * @return the {@link LogFileIndex} or {@code null} if the input is not a valid index
+   */
+  @Nullable
+  public static LogFileIndex read(InputStream input, long fileLength) throws IOException {
+    DataInputStream dataInput = new DataInputStream(input);
+    byte[] header = new byte[MAGIC.length + 1];
+    try {
+      dataInput.readFully(header);
+    } catch (EOFException e) {
+      return null;
+    }
+    if (!Arrays.equals(MAGIC, Arrays.copyOf(header, MAGIC.length)) || header[MAGIC.length] != VERSION) {
+      return null;
+    }
+
+    byte[] entries = ByteStreams.toByteArray(dataInput);
+    DataInputStream entryInput = new DataInputStream(new ByteArrayInputStream(entries));
+
+    // Ignore the last entry if it was partially written
+    int size = entries.length / ENTRY_SIZE;
+    LogFileIndex index = new LogFileIndex(size);
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      index.timestamps[i] = entryInput.readLong();
+      index.maxTimestamps[i] = entryInput.readLong();
+      index.positions[i] = entryInput.readLong();
+      index.endPositions[i] = entryInput.readLong();
+      index.levelMasks[i] = entryInput.readInt();
+      index.loggerBlooms[i] = entryInput.readLong();
+      index.mdcBlooms[i] = entryInput.readLong();
+      if (index.endPositions[i] > fileLength) {
+        break;
+      }
+      count++;
+    }
+    return count == size ? index : index.truncate(count);
+  }
+
+  private LogFileIndex truncate(int size) {
+    LogFileIndex index = new LogFileIndex(size);
+    System.arraycopy(timestamps, 0, index.timestamps, 0, size);
+    System.arraycopy(maxTimestamps, 0, index.maxTimestamps, 0, size);
+    System.arraycopy(positions, 0, index.positions, 0, size);
+    System.arraycopy(endPositions, 0, index.endPositions, 0, size);
+    System.arraycopy(levelMasks, 0, index.levelMasks, 0, size);
+    System.arraycopy(loggerBlooms, 0, index.loggerBlooms, 0, size);
+    System.arraycopy(mdcBlooms, 0, index.mdcBlooms, 0, size);
+    return index;
+  }
+
+  /**
+   * Returns the number of entries in the index.
+   */
+  public int size() {
+    return timestamps.length;
+  }
+
+  /**
+   * Returns the timestamp of the first event in the segment of the given entry.
+   */
+  public long getTimestamp(int idx) {
+    return timestamps[idx];
+  }
+
+  /**
+   * Returns the largest timestamp of the events in the segment of the given entry.
+   */
+  public long getMaxTimestamp(int idx) {
+    return maxTimestamps[idx];
+  }
+
+  /**
+   * Returns the sync position that the segment of the given entry starts at, which can be used to seek the
+   * Avro reader.
+   */
+  public long getPosition(int idx) {
+    return positions[idx];
+  }
+
+  /**
+   * Returns the sync position that the segment of the given entry ends at.
+   */
+  public long getEndPosition(int idx) {
+    return endPositions[idx];
+  }
+
+  /**
+   * Returns {@code false} if the segment of the given entry has no event of the given level or above.
+   */
+  public boolean mayContainLevel(int idx, Level level) {
+    int mask = OTHER_LEVEL_BIT;
+    for (int i = LEVELS.length - 1; i >= 0 && LEVELS[i] >= level.toInt(); i--) {
+      mask |= 1 << i;
+    }
+    return (levelMasks[idx] & mask) != 0;
+  }
+
+  /**
+   * Returns {@code false} if the segment of the given entry has no event from the given logger.
+   */
+  public boolean mayContainLogger(int idx, String loggerName) {
+    return bloomMayContain(loggerBlooms[idx], loggerName);
+  }
+
+  /**
+   * Returns {@code false} if the segment of the given entry has no event with the given MDC entry.
+   */
+  public boolean mayContainMdc(int idx, String key, String value) {
+    return bloomMayContain(mdcBlooms[idx], key + '=' + value);
+  }
+
+  /**
+   * Returns the index of the last entry with timestamp smaller than the given time,
+   * or {@code -1} if there is no such entry.
+   */
+  public int lowerEntry(long timeMs) {
+    int idx = Arrays.binarySearch(timestamps, timeMs);
+    if (idx < 0) {
+      return -idx - 2;
+    }
+    // Move to the first entry with the same timestamp, since the events of that time can start
+    // in the segment before
+    while (idx >= 0 && timestamps[idx] == timeMs) {
+      idx--;
+    }
+    return idx;
+  }
+
+  /**
+   * Returns the index of the last entry with timestamp smaller than or equal to the given time,
+   * or {@code -1} if there is no such entry.
+   */
+  public int floorEntry(long timeMs) {
+    int idx = Arrays.binarySearch(timestamps, timeMs);
+    if (idx < 0) {
+      return -idx - 2;
+    }
+    while (idx + 1 < timestamps.length && timestamps[idx + 1] == timeMs) {
+      idx++;
+    }
+    return idx;
+  }
+
+  private static int levelBit(int level) {
+    int idx = Arrays.binarySearch(LEVELS, level);
+    return idx < 0 ? OTHER_LEVEL_BIT : 1 << idx;
+  }
+
+  private static long bloomBits(String value) {
+    long hash = Hashing.murmur3_128().hashString(value, Charsets.UTF_8).asLong();
+    long bits = 0L;
+    for (int i = 0; i < BLOOM_HASHES; i++) {
+      bits |= 1L << (hash & 0x3f);
+      hash >>>= 6;
+    }
+    return bits;
+  }
+
+  private static boolean bloomMayContain(long bloom, String value) {
+    long bits = bloomBits(value);
+    return (bloom & bits) == bits;
+  }
+
+  /**
+   * Summary of the events written to a segment.
+   */
+  public static final class Summary {
+
+    private long timestamp;
+    private long maxTimestamp;
+    private int levelMask;
+    private long loggerBloom;
+    private long mdcBloom;
+    private boolean empty = true;
+
+    /**
+     * Adds an event to the summary.
+     *
+     * @param timestamp timestamp of the event
+     * @param level level of the event as returned by {@link Level#toInt()}
+     * @param loggerName name of the logger of the event
+     * @param mdc the MDC of the event
+     */
+    public void add(long timestamp, int level, @Nullable String loggerName, @Nullable Map<?, ?> mdc) {
+      if (empty) {
+        this.timestamp = timestamp;
+        this.maxTimestamp = timestamp;
+        empty = false;
+      }
+      maxTimestamp = Math.max(maxTimestamp, timestamp);
+      levelMask |= levelBit(level);
+      loggerBloom |= bloomBits(String.valueOf(loggerName));
+      if (mdc != null) {
+        for (Map.Entry<?, ?> entry : mdc.entrySet()) {
+          mdcBloom |= bloomBits(String.valueOf(entry.getKey()) + '=' + String.valueOf(entry.getValue()));
+        }
+      }
+    }
+
+    public boolean isEmpty() {
+      return empty;
+    }
+
+    /**
+     * Clears the summary for the next segment.
+     */
+    public void reset() {
+      timestamp = 0L;
+      maxTimestamp = 0L;
+      levelMask = 0;
+      loggerBloom = 0L;
+      mdcBloom = 0L;
+      empty = true;
+    }
+  }
+
+  /**
+   * Writer for appending entries to a log file index.
+   */
+  public static final class Writer implements Closeable {
+
+    private final FSDataOutputStream output;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /**
+     * Creates a new index file at the given location.
+     */
+    public Writer(Location location) throws IOException {
+      this.output = new FSDataOutputStream(location.getOutputStream(), null);
+      try {
+        output.write(MAGIC);
+        output.write(VERSION);
+      } catch (IOException e) {
+        output.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Appends an index entry for a segment. Timestamps are kept non-decreasing so that the index can be
+     * binary searched.
+     *
+     * @param startPosition the sync position in the log file that the segment starts at
+     * @param endPosition the sync position in the log file that the segment ends at
+     * @param summary summary of the events in the segment
+     */
+    public void append(long startPosition, long endPosition, Summary summary) throws IOException {
+      lastTimestamp = Math.max(lastTimestamp, summary.timestamp);
+      output.writeLong(lastTimestamp);
+      output.writeLong(Math.max(lastTimestamp, summary.maxTimestamp));
+      output.writeLong(startPosition);
+      output.writeLong(endPosition);
+      output.writeInt(summary.levelMask);
+      output.writeLong(summary.loggerBloom);
+      output.writeLong(summary.mdcBloom);
+    }
+
+    /**
+     * Flushes the index so that it is visible to readers.
+     */
+    public void flush() throws IOException {
+      output.hflush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      output.close();
+    }
+  }
+}
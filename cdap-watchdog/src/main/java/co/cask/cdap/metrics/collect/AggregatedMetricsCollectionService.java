@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -33,16 +33,21 @@ import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Base class for {@link MetricsCollectionService} which collect metrics through a set of cached
- * {@link AggregatedMetricsEmitter}.
+ * {@link AggregatedMetricsEmitter}. Each {@link MetricsContext} holds the emitters of its own metrics, so that
+ * updating a metric only needs a lookup by metric name, or no lookup at all through a {@link BoundMetric}.
  */
 public abstract class AggregatedMetricsCollectionService extends AbstractScheduledService
                                                          implements MetricsCollectionService {
@@ -50,34 +55,20 @@ public abstract class AggregatedMetricsCollectionService extends AbstractSchedul
   private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsCollectionService.class);
   private static final long CACHE_EXPIRE_MINUTES = 1;
 
-  private final LoadingCache<Map<String, String>, MetricsContext> collectors;
-  private final LoadingCache<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> emitters;
+  private final LoadingCache<Map<String, String>, AggregatedMetricsContext> collectors;
+  // Contexts that have metrics to emit. A context that has no update for a while is removed from this set,
+  // and it adds itself back on the next update.
+  private final Set<AggregatedMetricsContext> activeContexts;
 
   private ScheduledExecutorService executorService;
 
   public AggregatedMetricsCollectionService() {
+    // NOTE : contexts evicted from this cache can still be used by whoever holds them,
+    // as emitting metrics only goes through the activeContexts.
     this.collectors = CacheBuilder.newBuilder()
       .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
       .build(createCollectorLoader());
-
-    this.emitters = CacheBuilder.newBuilder()
-      // NOTE : we don't need to have removalListener to  emit metrics, as we have expireAfterAccess set for a minute,
-      // emitters.get() is used to increment/gauge and that would reset the access time,
-      // and since runOneIteration() emits all the metrics for the scheduled duration (every 1 second)
-      // there wont be any loss of emitter entries.
-      .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
-      .build(new CacheLoader<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>() {
-        @Override
-        public LoadingCache<String, AggregatedMetricsEmitter> load(Map<String, String> tags) throws Exception {
-          return CacheBuilder.newBuilder().expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES).
-            build(new CacheLoader<String, AggregatedMetricsEmitter>() {
-              @Override
-              public AggregatedMetricsEmitter load(String metricName) throws Exception {
-                return new AggregatedMetricsEmitter(metricName);
-              }
-            });
-        }
-      });
+    this.activeContexts = Collections.newSetFromMap(new ConcurrentHashMap<AggregatedMetricsContext, Boolean>());
   }
 
   /**
@@ -145,68 +136,94 @@ public abstract class AggregatedMetricsCollectionService extends AbstractSchedul
   }
 
   private Iterator<MetricValues> getMetrics(final long timestamp) {
-    // NOTE : emitters.asMap does not reset the access time in cache,
-    // so it's the preferred way to access the cache entries. as we access and emit metrics every second.
-    final Iterator<Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>> iterator =
-      emitters.asMap().entrySet().iterator();
+    final Iterator<AggregatedMetricsContext> iterator = activeContexts.iterator();
     return new AbstractIterator<MetricValues>() {
       @Override
       protected MetricValues computeNext() {
         while (iterator.hasNext()) {
-          Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> entry = iterator.next();
-          Map<String, AggregatedMetricsEmitter> metricEmitters = entry.getValue().asMap();
-          // +1 because we add extra metric about how many metric values did we emit in this context (see below)
-          List<MetricValue> metricValues = Lists.newArrayListWithCapacity(metricEmitters.size() + 1);
-          for (Map.Entry<String, AggregatedMetricsEmitter> emitterEntry : metricEmitters.entrySet()) {
-            MetricValue metricValue = emitterEntry.getValue().emit();
-            // skip increment by 0
-            if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
-              continue;
-            }
-            metricValues.add(metricValue);
-          }
+          AggregatedMetricsContext context = iterator.next();
+          List<MetricValue> metricValues = context.emit();
 
           if (metricValues.isEmpty()) {
-            // skip if there are no metric values to send
-            continue;
+            if (timestamp - context.lastEmitTimestamp < TimeUnit.MINUTES.toSeconds(CACHE_EXPIRE_MINUTES)) {
+              // skip if there are no metric values to send
+              continue;
+            }
+            // Stop emitting for the idle context, and emit whatever updated before it stopped
+            context.deactivate();
+            metricValues = context.emit();
+            if (metricValues.isEmpty()) {
+              continue;
+            }
           }
+          context.lastEmitTimestamp = timestamp;
 
           // number of emitted metrics
           metricValues.add(new MetricValue("metrics.emitted.count", MetricType.COUNTER, metricValues.size() + 1));
 
           LOG.trace("Emit metric {}", metricValues);
-          return new MetricValues(entry.getKey(), timestamp, metricValues);
+          return new MetricValues(context.getTags(), timestamp, metricValues);
         }
         return endOfData();
       }
     };
   }
 
-  private CacheLoader<Map<String, String>, MetricsContext> createCollectorLoader() {
-    return new CacheLoader<Map<String, String>, MetricsContext>() {
+  private CacheLoader<Map<String, String>, AggregatedMetricsContext> createCollectorLoader() {
+    return new CacheLoader<Map<String, String>, AggregatedMetricsContext>() {
       @Override
-      public MetricsContext load(final Map<String, String> collectorKey) throws Exception {
-        return new MetricsContextImpl(collectorKey);
+      public AggregatedMetricsContext load(final Map<String, String> collectorKey) throws Exception {
+        return new AggregatedMetricsContext(collectorKey);
       }
     };
   }
 
-  private final class MetricsContextImpl implements MetricsContext {
+  /**
+   * {@link MetricsContext} that aggregates metrics in its own set of {@link AggregatedMetricsEmitter}.
+   */
+  final class AggregatedMetricsContext implements MetricsContext {
 
     private final Map<String, String> tags;
+    private final ConcurrentMap<String, AggregatedMetricsEmitter> emitters;
+    private volatile boolean active;
+    // Only accessed by the thread emitting metrics
+    private long lastEmitTimestamp;
 
-    private MetricsContextImpl(final Map<String, String> tags) {
+    private AggregatedMetricsContext(final Map<String, String> tags) {
       this.tags = ImmutableMap.copyOf(tags);
+      this.emitters = new ConcurrentHashMap<>();
     }
 
     @Override
     public void increment(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).increment(value);
+      getEmitter(metricName).increment(value);
+      activate();
     }
 
     @Override
     public void gauge(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).gauge(value);
+      getEmitter(metricName).gauge(value);
+      activate();
+    }
+
+    /**
+     * Returns a {@link BoundMetric} that updates the emitter of the given metric directly.
+     */
+    BoundMetric bind(String metricName) {
+      final AggregatedMetricsEmitter emitter = getEmitter(metricName);
+      return new BoundMetric() {
+        @Override
+        public void increment(long value) {
+          emitter.increment(value);
+          activate();
+        }
+
+        @Override
+        public void gauge(long value) {
+          emitter.gauge(value);
+          activate();
+        }
+      };
     }
 
     @Override
@@ -232,5 +249,50 @@ public abstract class AggregatedMetricsCollectionService extends AbstractSchedul
       allTags.putAll(tags);
       return collectors.getUnchecked(allTags);
     }
+
+    private AggregatedMetricsEmitter getEmitter(String metricName) {
+      AggregatedMetricsEmitter emitter = emitters.get(metricName);
+      if (emitter != null) {
+        return emitter;
+      }
+      emitter = new AggregatedMetricsEmitter(metricName);
+      AggregatedMetricsEmitter existing = emitters.putIfAbsent(metricName, emitter);
+      return existing == null ? emitter : existing;
+    }
+
+    /**
+     * Adds this context to the set of contexts to emit metrics from. It must be called after each update,
+     * so that an update either gets emitted before the context is deactivated, or it activates the context again.
+     */
+    private void activate() {
+      if (active) {
+        return;
+      }
+      synchronized (this) {
+        if (!active) {
+          active = true;
+          activeContexts.add(this);
+        }
+      }
+    }
+
+    private synchronized void deactivate() {
+      activeContexts.remove(this);
+      active = false;
+    }
+
+    private List<MetricValue> emit() {
+      // +1 because we add extra metric about how many metric values did we emit in this context
+      List<MetricValue> metricValues = Lists.newArrayListWithCapacity(emitters.size() + 1);
+      for (AggregatedMetricsEmitter emitter : emitters.values()) {
+        MetricValue metricValue = emitter.emit();
+        // skip increment by 0
+        if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
+          continue;
+        }
+        metricValues.add(metricValue);
+      }
+      return metricValues;
+    }
   }
 }
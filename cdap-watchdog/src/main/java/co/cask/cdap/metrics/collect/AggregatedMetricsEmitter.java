@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -14,7 +14,6 @@
  * the License.
  */
 package co.cask.cdap.metrics.collect;
-
 import co.cask.cdap.api.metrics.MetricType;
 import co.cask.cdap.api.metrics.MetricValue;
 import org.slf4j.Logger;
@@ -22,17 +21,26 @@ import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * {@link MetricsEmitter} that aggregates  values for a metric
  * during collection and emit the aggregated value when emit.
+ *
+ * Increments are done on a single value until contention is detected, after which they are spread over
+ * a set of cells, selected by the calling thread, to avoid contended updates on a single value.
  */
 final class AggregatedMetricsEmitter implements MetricsEmitter {
   private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsEmitter.class);
 
+  // Number of longs between two cells, so that each cell is on a different cache line
+  private static final int CELL_PADDING = 8;
+  private static final int NUM_CELLS = cellsFor(Runtime.getRuntime().availableProcessors());
+
   private final String name;
-  // metric value
+  // metric value, cells are only created when there are contended updates
   private final AtomicLong value;
+  private volatile AtomicLongArray cells;
   // specifies if the metric type is gauge or counter
   private final AtomicBoolean gaugeUsed;
 
@@ -47,20 +55,67 @@ final class AggregatedMetricsEmitter implements MetricsEmitter {
   }
 
   void increment(long value) {
-    this.value.addAndGet(value);
+    AtomicLongArray cells = this.cells;
+    if (cells == null) {
+      long current = this.value.get();
+      if (this.value.compareAndSet(current, current + value)) {
+        return;
+      }
+      cells = createCells();
+    }
+    cells.addAndGet(cellIndex(), value);
   }
 
-
   @Override
   public MetricValue emit() {
     // todo CDAP-2195 - potential race condition , reseting value and type has to be done together
     long value = this.value.getAndSet(0);
+    AtomicLongArray cells = this.cells;
+    if (cells != null) {
+      for (int i = 0; i < cells.length(); i += CELL_PADDING) {
+        value += cells.getAndSet(i, 0);
+      }
+    }
     MetricType type = gaugeUsed.getAndSet(false) ? MetricType.GAUGE : MetricType.COUNTER;
     return new MetricValue(name, type, value);
   }
 
   public void gauge(long value) {
+    AtomicLongArray cells = this.cells;
+    if (cells != null) {
+      for (int i = 0; i < cells.length(); i += CELL_PADDING) {
+        cells.set(i, 0);
+      }
+    }
     this.value.set(value);
     this.gaugeUsed.set(true);
   }
+
+  private synchronized AtomicLongArray createCells() {
+    if (cells == null) {
+      cells = new AtomicLongArray(NUM_CELLS * CELL_PADDING);
+    }
+    return cells;
+  }
+
+  /**
+   * Returns the index in the cells array for the current thread.
+   */
+  private static int cellIndex() {
+    long id = Thread.currentThread().getId();
+    int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return ((hash ^ (hash >>> 16)) & (NUM_CELLS - 1)) * CELL_PADDING;
+  }
+
+  /**
+   * Returns the number of cells to use, which is the smallest power of two not less than the number of processors,
+   * capped at 64.
+   */
+  private static int cellsFor(int processors) {
+    int cells = 1;
+    while (cells < processors && cells < 64) {
+      cells <<= 1;
+    }
+    return cells;
+  }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.collect;
+import co.cask.cdap.api.metrics.MetricsContext;
+
+/**
+ * A metric of a {@link MetricsContext} that is resolved once, for updating the metric repeatedly without
+ * looking it up by name on each update.
+ */
+public abstract class BoundMetric {
+
+  /**
+   * Returns a {@link BoundMetric} for the given metric in the given {@link MetricsContext}. If the context is
+   * created by {@link AggregatedMetricsCollectionService}, updates go directly to the aggregated value of the
+   * metric, otherwise they are delegated to the context.
+   */
+  public static BoundMetric bind(final MetricsContext context, final String metricName) {
+    if (context instanceof AggregatedMetricsCollectionService.AggregatedMetricsContext) {
+      return ((AggregatedMetricsCollectionService.AggregatedMetricsContext) context).bind(metricName);
+    }
+    return new BoundMetric() {
+      @Override
+      public void increment(long value) {
+        context.increment(metricName, value);
+      }
+
+      @Override
+      public void gauge(long value) {
+        context.gauge(metricName, value);
+      }
+    };
+  }
+
+  /**
+   * Increments the metric by the given value.
+   */
+  public abstract void increment(long value);
+
+  /**
+   * Sets the metric to the given value.
+   */
+  public abstract void gauge(long value);
+}
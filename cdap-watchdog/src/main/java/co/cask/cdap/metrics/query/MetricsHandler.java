@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -25,12 +25,14 @@ import co.cask.cdap.api.metrics.MetricSearchQuery;
 import co.cask.cdap.api.metrics.MetricStore;
 import co.cask.cdap.api.metrics.MetricTimeSeries;
 import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.utils.TimeMathParser;
 import co.cask.cdap.proto.MetricQueryRequest;
 import co.cask.cdap.proto.MetricQueryResult;
 import co.cask.cdap.proto.MetricTagValue;
 import co.cask.http.AbstractHttpHandler;
+import co.cask.http.HandlerContext;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
@@ -44,6 +46,7 @@ import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
@@ -54,6 +57,14 @@ import org.slf4j.LoggerFactory;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.ws.rs.POST;
@@ -83,6 +94,9 @@ public class MetricsHandler extends AbstractHttpHandler {
   public static final String ANY_TAG_VALUE = "*";
 
   private final MetricStore metricStore;
+  private final int batchQueryThreads;
+  private final long batchQueryTimeoutMs;
+  private ExecutorService batchQueryExecutor;
 
   private static final Map<String, String> tagNameToHuman;
   private static final Map<String, String> humanToTagName;
@@ -127,8 +141,26 @@ public class MetricsHandler extends AbstractHttpHandler {
   }
 
   @Inject
-  public MetricsHandler(MetricStore metricStore) {
+  public MetricsHandler(CConfiguration cConf, MetricStore metricStore) {
     this.metricStore = metricStore;
+    this.batchQueryThreads = cConf.getInt(Constants.Metrics.QUERY_BATCH_THREADS);
+    this.batchQueryTimeoutMs = cConf.getLong(Constants.Metrics.QUERY_BATCH_TIMEOUT_MS);
+  }
+
+  @Override
+  public void init(HandlerContext context) {
+    super.init(context);
+    // Bounded thread pool shared by all batch requests, which shrinks when there are no queries
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(batchQueryThreads, batchQueryThreads, 60, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>(),
+                                                         Threads.createDaemonThreadFactory("metrics-query-%d"));
+    executor.allowCoreThreadTimeOut(true);
+    batchQueryExecutor = executor;
+  }
+
+  @Override
+  public void destroy(HandlerContext context) {
+    batchQueryExecutor.shutdownNow();
   }
 
   @POST
@@ -200,12 +232,59 @@ public class MetricsHandler extends AbstractHttpHandler {
 
         LOG.trace("Received Queries {}", queries);
 
-        Map<String, MetricQueryResult> queryFinalResponse = Maps.newHashMap();
-        for (Map.Entry<String, QueryRequestFormat> query : queries.entrySet()) {
-          MetricQueryRequest queryRequest = getQueryRequestFromFormat(query.getValue());
-          queryFinalResponse.put(query.getKey(), executeQuery(queryRequest));
+        // Queries with the same tags, group by tags and time range are executed together, so that the metric store
+        // can answer them with a single scan. The different groups are executed concurrently.
+        List<Callable<Map<String, MetricQueryResult>>> tasks = Lists.newArrayList();
+        List<Set<String>> taskQueryNames = Lists.newArrayList();
+        for (Map<String, QueryRequestFormat> group : groupQueries(queries).values()) {
+          tasks.add(createBatchQueryTask(group));
+          taskQueryNames.add(group.keySet());
+        }
+        List<Future<Map<String, MetricQueryResult>>> futures =
+          batchQueryExecutor.invokeAll(tasks, batchQueryTimeoutMs, TimeUnit.MILLISECONDS);
+
+        // Failed queries are reported with an error, without failing the queries that succeeded
+        Map<String, Object> queryFinalResponse = Maps.newHashMap();
+        int failures = 0;
+        int invalidQueries = 0;
+        String invalidError = null;
+        for (int i = 0; i < futures.size(); i++) {
+          Set<String> queryNames = taskQueryNames.get(i);
+          String error;
+          try {
+            queryFinalResponse.putAll(futures.get(i).get());
+            continue;
+          } catch (CancellationException e) {
+            LOG.warn("Queries {} timed out after {} ms", queryNames, batchQueryTimeoutMs);
+            error = "Query timed out after " + batchQueryTimeoutMs + " ms";
+          } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+              LOG.warn("Invalid queries {}", queryNames, e.getCause());
+              error = e.getCause().getMessage();
+              invalidError = error;
+              invalidQueries += queryNames.size();
+            } else {
+              LOG.error("Exception querying metrics for queries {}", queryNames, e.getCause());
+              error = "Internal error while querying for metrics";
+            }
+          }
+          for (String queryName : queryNames) {
+            queryFinalResponse.put(queryName, new QueryError(error));
+          }
+          failures += queryNames.size();
+        }
+
+        if (failures > 0 && failures == queries.size()) {
+          // Only if every query failed, the whole request fails, as a bad request if all of them were invalid
+          if (failures == invalidQueries) {
+            responder.sendString(HttpResponseStatus.BAD_REQUEST, invalidError);
+          } else {
+            responder.sendString(HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                                 "Internal error while querying for metrics");
+          }
+        } else {
+          responder.sendJson(HttpResponseStatus.OK, queryFinalResponse);
         }
-        responder.sendJson(HttpResponseStatus.OK, queryFinalResponse);
       } catch (IllegalArgumentException e) {
         LOG.warn("Invalid request", e);
         responder.sendString(HttpResponseStatus.BAD_REQUEST, e.getMessage());
@@ -218,6 +297,62 @@ public class MetricsHandler extends AbstractHttpHandler {
     }
   }
 
+  /**
+   * Groups the given queries by their tags, group by tags and time range.
+   */
+  private Map<List<Object>, Map<String, QueryRequestFormat>> groupQueries(Map<String, QueryRequestFormat> queries) {
+    Map<List<Object>, Map<String, QueryRequestFormat>> groups = Maps.newLinkedHashMap();
+    for (Map.Entry<String, QueryRequestFormat> query : queries.entrySet()) {
+      QueryRequestFormat format = query.getValue();
+      List<Object> key = ImmutableList.<Object>of(format.getTags(), format.getGroupBy(), format.getTimeRange());
+      Map<String, QueryRequestFormat> group = groups.get(key);
+      if (group == null) {
+        group = Maps.newLinkedHashMap();
+        groups.put(key, group);
+      }
+      group.put(query.getKey(), format);
+    }
+    return groups;
+  }
+
+  /**
+   * Creates a task that executes a group of queries with the same tags, group by tags and time range. The requests
+   * are validated before the task is created, and share the parsed time range, so that relative times such as
+   * 'now-1h' resolve to the same timestamps for all of them.
+   */
+  private Callable<Map<String, MetricQueryResult>> createBatchQueryTask(Map<String, QueryRequestFormat> group) {
+    final Map<String, MetricQueryRequest> queryRequests = Maps.newLinkedHashMap();
+    final Map<String, MetricDataQuery> dataQueries = Maps.newLinkedHashMap();
+    MetricQueryRequest.TimeRange timeRange = null;
+    for (Map.Entry<String, QueryRequestFormat> query : group.entrySet()) {
+      MetricQueryRequest queryRequest;
+      if (timeRange == null) {
+        queryRequest = getQueryRequestFromFormat(query.getValue());
+        timeRange = queryRequest.getTimeRange();
+      } else {
+        queryRequest = new MetricQueryRequest(query.getValue().getTags(), query.getValue().getMetrics(),
+                                              query.getValue().getGroupBy());
+        queryRequest.setTimeRange(timeRange.getStart(), timeRange.getEnd(), timeRange.getCount(),
+                                  timeRange.getResolutionInSeconds(), timeRange.getInterpolate());
+      }
+      queryRequests.put(query.getKey(), queryRequest);
+      dataQueries.put(query.getKey(), toMetricDataQuery(queryRequest));
+    }
+
+    return new Callable<Map<String, MetricQueryResult>>() {
+      @Override
+      public Map<String, MetricQueryResult> call() throws Exception {
+        Map<String, Collection<MetricTimeSeries>> queryResults = metricStore.query(dataQueries);
+        Map<String, MetricQueryResult> result = Maps.newHashMap();
+        for (Map.Entry<String, MetricQueryRequest> queryRequest : queryRequests.entrySet()) {
+          result.put(queryRequest.getKey(), decorate(queryResults.get(queryRequest.getKey()),
+                                                     queryRequest.getValue().getTimeRange()));
+        }
+        return result;
+      }
+    };
+  }
+
   private MetricQueryRequest getQueryRequestFromFormat(QueryRequestFormat queryRequestFormat) {
     Map<String, List<String>> queryParams = Maps.newHashMap();
 
@@ -326,7 +461,12 @@ public class MetricsHandler extends AbstractHttpHandler {
   }
 
   private MetricQueryResult executeQuery(MetricQueryRequest queryRequest) throws Exception {
-    if (queryRequest.getMetrics().size() == 0) {
+    Collection<MetricTimeSeries> queryResult = metricStore.query(toMetricDataQuery(queryRequest));
+    return decorate(queryResult, queryRequest.getTimeRange());
+  }
+
+  private MetricDataQuery toMetricDataQuery(MetricQueryRequest queryRequest) {
+    if (queryRequest.getMetrics() == null || queryRequest.getMetrics().size() == 0) {
       throw new IllegalArgumentException("Missing metrics parameter in the query");
     }
 
@@ -334,13 +474,14 @@ public class MetricsHandler extends AbstractHttpHandler {
 
     MetricQueryRequest.TimeRange timeRange = queryRequest.getTimeRange();
 
-    MetricDataQuery query = new MetricDataQuery(timeRange.getStart(), timeRange.getEnd(),
-                                                timeRange.getResolutionInSeconds(),
-                                                timeRange.getCount(), toMetrics(queryRequest.getMetrics()),
-                                                tagsSliceBy, transformGroupByTags(queryRequest.getGroupBy()),
-                                                timeRange.getInterpolate());
-    Collection<MetricTimeSeries> queryResult = metricStore.query(query);
+    return new MetricDataQuery(timeRange.getStart(), timeRange.getEnd(),
+                               timeRange.getResolutionInSeconds(),
+                               timeRange.getCount(), toMetrics(queryRequest.getMetrics()),
+                               tagsSliceBy, transformGroupByTags(queryRequest.getGroupBy()),
+                               timeRange.getInterpolate());
+  }
 
+  private MetricQueryResult decorate(Collection<MetricTimeSeries> queryResult, MetricQueryRequest.TimeRange timeRange) {
     long endTime = timeRange.getEnd();
     if (timeRange.getResolutionInSeconds() == Integer.MAX_VALUE && endTime == 0) {
       // for aggregate query, we set the end time to be query time (current time)
@@ -495,6 +636,17 @@ public class MetricsHandler extends AbstractHttpHandler {
     return timeValues;
   }
 
+  /**
+   * Result of a query of a batch request that failed.
+   */
+  private static final class QueryError {
+    private final String error;
+
+    private QueryError(String error) {
+      this.error = error;
+    }
+  }
+
   /**
    * Helper class to Deserialize Query requests and based on this
    * {@link MetricQueryRequest} will be constructed
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Cask Data, Inc.
+ * Copyright 2015-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,12 +16,14 @@
 
 package co.cask.cdap.metrics.store;
 
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
 import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
 import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
+import co.cask.cdap.api.dataset.lib.cube.Interpolator;
 import co.cask.cdap.api.dataset.lib.cube.MeasureType;
 import co.cask.cdap.api.dataset.lib.cube.Measurement;
 import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
@@ -43,6 +45,7 @@ import co.cask.cdap.data2.dataset2.lib.cube.DefaultCube;
 import co.cask.cdap.data2.dataset2.lib.cube.FactTableSupplier;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
@@ -265,6 +268,51 @@ public class DefaultMetricStore implements MetricStore {
     return result;
   }
 
+  @Override
+  public Map<String, Collection<MetricTimeSeries>> query(Map<String, MetricDataQuery> queries) {
+    // Queries that scan the same time range, resolution and tags are merged into a single cube query with
+    // the metrics of all of them. A query is only kept apart if it aggregates a metric with a different function.
+    Map<ScanKey, List<ScanGroup>> scanGroups = Maps.newLinkedHashMap();
+    for (Map.Entry<String, MetricDataQuery> entry : queries.entrySet()) {
+      ScanKey key = new ScanKey(entry.getValue());
+      List<ScanGroup> groups = scanGroups.get(key);
+      if (groups == null) {
+        groups = Lists.newArrayList();
+        scanGroups.put(key, groups);
+      }
+      ScanGroup group = null;
+      for (ScanGroup candidate : groups) {
+        if (candidate.canAdd(entry.getValue())) {
+          group = candidate;
+          break;
+        }
+      }
+      if (group == null) {
+        group = new ScanGroup(entry.getValue());
+        groups.add(group);
+      }
+      group.add(entry.getKey(), entry.getValue());
+    }
+
+    Map<String, Collection<MetricTimeSeries>> result = Maps.newHashMap();
+    for (List<ScanGroup> groups : scanGroups.values()) {
+      for (ScanGroup group : groups) {
+        Collection<MetricTimeSeries> groupResult = query(group.getQuery());
+        // Each query gets the time series of the metrics it selected
+        for (Map.Entry<String, MetricDataQuery> entry : group.queries.entrySet()) {
+          List<MetricTimeSeries> timeSeries = Lists.newArrayList();
+          for (MetricTimeSeries series : groupResult) {
+            if (entry.getValue().getMetrics().containsKey(series.getMetricName())) {
+              timeSeries.add(series);
+            }
+          }
+          result.put(entry.getKey(), timeSeries);
+        }
+      }
+    }
+    return result;
+  }
+
   private CubeQuery buildCubeQuery(MetricDataQuery query) {
     String aggregation = getAggregation(query);
     return new CubeQuery(aggregation, query.getStartTs(), query.getEndTs(),
@@ -355,4 +403,87 @@ public class DefaultMetricStore implements MetricStore {
       }
     });
   }
+
+  /**
+   * The parameters of a {@link MetricDataQuery} that determine the scan, i.e. everything but the metrics.
+   * Interpolators are compared by identity.
+   */
+  private static final class ScanKey {
+    private final long startTs;
+    private final long endTs;
+    private final int resolution;
+    private final int limit;
+    private final Map<String, String> sliceByTags;
+    private final List<String> groupByTags;
+    private final Interpolator interpolator;
+
+    private ScanKey(MetricDataQuery query) {
+      this.startTs = query.getStartTs();
+      this.endTs = query.getEndTs();
+      this.resolution = query.getResolution();
+      this.limit = query.getLimit();
+      this.sliceByTags = query.getSliceByTags();
+      this.groupByTags = query.getGroupByTags();
+      this.interpolator = query.getInterpolator();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ScanKey other = (ScanKey) o;
+      return startTs == other.startTs
+        && endTs == other.endTs
+        && resolution == other.resolution
+        && limit == other.limit
+        && interpolator == other.interpolator
+        && sliceByTags.equals(other.sliceByTags)
+        && groupByTags.equals(other.groupByTags);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(startTs, endTs, resolution, limit, sliceByTags, groupByTags);
+    }
+  }
+
+  /**
+   * Queries with the same {@link ScanKey} that are executed as one query.
+   */
+  private static final class ScanGroup {
+    private final MetricDataQuery first;
+    private final Map<String, AggregationFunction> metrics = Maps.newLinkedHashMap();
+    private final Map<String, MetricDataQuery> queries = Maps.newLinkedHashMap();
+
+    private ScanGroup(MetricDataQuery first) {
+      this.first = first;
+    }
+
+    private boolean canAdd(MetricDataQuery query) {
+      for (Map.Entry<String, AggregationFunction> metric : query.getMetrics().entrySet()) {
+        AggregationFunction function = metrics.get(metric.getKey());
+        if (function != null && function != metric.getValue()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void add(String name, MetricDataQuery query) {
+      metrics.putAll(query.getMetrics());
+      queries.put(name, query);
+    }
+
+    private MetricDataQuery getQuery() {
+      if (queries.size() == 1) {
+        return first;
+      }
+      return new MetricDataQuery(first.getStartTs(), first.getEndTs(), first.getResolution(), first.getLimit(),
+                                 metrics, first.getSliceByTags(), first.getGroupByTags(), first.getInterpolator());
+    }
+  }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.write;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.logging.ApplicationLoggingContext;
+import co.cask.cdap.common.logging.LoggingContext;
+import co.cask.cdap.common.logging.logback.TestLoggingContext;
+import co.cask.cdap.common.security.DefaultImpersonator;
+import co.cask.cdap.common.security.Impersonator;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.FilterParser;
+import co.cask.cdap.logging.read.AvroFileReader;
+import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.serialize.LogSchema;
+import co.cask.cdap.proto.id.NamespaceId;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.apache.avro.Schema;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link LogFileIndex} and reading log files with it.
+ */
+public class LogFileIndexTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final int NUM_EVENTS = 1000;
+  private static final long START_TIME = 1000L;
+
+  @Test
+  public void testIndexedRead() throws Exception {
+    Schema schema = new LogSchema().getAvroSchema();
+    Location location = new LocalLocationFactory(tempFolder.newFolder()).create("1000.avro");
+    LoggingContext loggingContext = new TestLoggingContext("default", "app", "run", "instance");
+
+    // Write events with a small index interval, so that there are many index entries
+    AvroFileWriter writer = new AvroFileWriter(null, null, null, schema, Long.MAX_VALUE, 4096, 1024,
+                                               Long.MAX_VALUE, null);
+    AvroFileWriter.AvroFile avroFile = writer.new AvroFile(location);
+    avroFile.open();
+    try {
+      for (int i = 0; i < NUM_EVENTS; i++) {
+        LoggingEvent event = new LoggingEvent();
+        event.setThreadName("thread");
+        event.setLevel(getLevel(i));
+        event.setLoggerName(getLoggerName(i));
+        event.setMessage("Test log message " + i);
+        event.setTimeStamp(getTimestamp(i));
+        event.setCallerData(new StackTraceElement[0]);
+        avroFile.append(new LogWriteEvent(co.cask.cdap.logging.serialize.LoggingEvent.encode(schema, event,
+                                                                                           loggingContext),
+                                          event, loggingContext));
+        if (i % 100 == 0) {
+          avroFile.flush();
+        }
+      }
+    } finally {
+      avroFile.close();
+    }
+
+    Location indexLocation = FileMetaDataManager.getIndexLocation(location);
+    Assert.assertTrue(indexLocation.exists());
+    try (InputStream is = indexLocation.getInputStream()) {
+      LogFileIndex index = LogFileIndex.read(is, location.length());
+      Assert.assertNotNull(index);
+      Assert.assertTrue(index.size() > 10);
+      // Entries are in time order
+      for (int i = 1; i < index.size(); i++) {
+        Assert.assertTrue(index.getTimestamp(i - 1) <= index.getTimestamp(i));
+        Assert.assertTrue(index.getPosition(i - 1) < index.getPosition(i));
+        Assert.assertEquals(index.getEndPosition(i - 1), index.getPosition(i));
+      }
+      // Segments are summarized
+      int noLoggerSegments = 0;
+      for (int i = 0; i < index.size(); i++) {
+        Assert.assertTrue(index.getTimestamp(i) <= index.getMaxTimestamp(i));
+        Assert.assertTrue(index.mayContainLevel(i, Level.INFO));
+        Assert.assertTrue(index.mayContainMdc(i, ApplicationLoggingContext.TAG_APPLICATION_ID, "app"));
+        if (!index.mayContainLogger(i, getLoggerName(0))) {
+          noLoggerSegments++;
+        }
+      }
+      Assert.assertTrue(noLoggerSegments > 0);
+    }
+
+    // Entries beyond the file length are ignored
+    try (InputStream is = indexLocation.getInputStream()) {
+      LogFileIndex index = LogFileIndex.read(is, location.length() / 2);
+      Assert.assertNotNull(index);
+      for (int i = 0; i < index.size(); i++) {
+        Assert.assertTrue(index.getPosition(i) < location.length() / 2);
+      }
+    }
+
+    // Reads with the index and without the index should be the same as expected
+    Impersonator impersonator = new DefaultImpersonator(CConfiguration.create(), null, null);
+    AvroFileReader reader = new AvroFileReader(schema);
+    long[] times = { 0L, START_TIME, getTimestamp(1), getTimestamp(333) + 5, getTimestamp(500),
+      getTimestamp(NUM_EVENTS - 1), getTimestamp(NUM_EVENTS) };
+
+    Map<String, Predicate<Integer>> filters = ImmutableMap.of(
+      "", Predicates.<Integer>alwaysTrue(),
+      "loglevel=WARN", new Predicate<Integer>() {
+        @Override
+        public boolean apply(Integer idx) {
+          return getLevel(idx) == Level.WARN;
+        }
+      },
+      "loggername=" + getLoggerName(0), new Predicate<Integer>() {
+        @Override
+        public boolean apply(Integer idx) {
+          return getLoggerName(idx).equals(getLoggerName(0));
+        }
+      },
+      "loglevel=WARN OR loggername=" + getLoggerName(NUM_EVENTS - 1), new Predicate<Integer>() {
+        @Override
+        public boolean apply(Integer idx) {
+          return getLevel(idx) == Level.WARN || getLoggerName(idx).equals(getLoggerName(NUM_EVENTS - 1));
+        }
+      });
+
+    for (int pass = 0; pass < 2; pass++) {
+      for (Map.Entry<String, Predicate<Integer>> entry : filters.entrySet()) {
+        Filter filter = FilterParser.parse(entry.getKey());
+        Predicate<Integer> predicate = entry.getValue();
+        for (long time : times) {
+          Assert.assertEquals(getExpectedNext(time, 20, predicate),
+                              readNext(reader, location, filter, time, 20, impersonator));
+          Assert.assertEquals(getExpectedPrev(time, 20, predicate),
+                              readPrev(reader, location, filter, time, 20, impersonator));
+        }
+        // Reads all events
+        Assert.assertEquals(getExpectedPrev(getTimestamp(NUM_EVENTS), NUM_EVENTS, predicate),
+                            readPrev(reader, location, filter, getTimestamp(NUM_EVENTS), NUM_EVENTS, impersonator));
+      }
+
+      // Second pass reads without index
+      indexLocation.delete();
+    }
+  }
+
+  private long getTimestamp(int idx) {
+    return START_TIME + idx * 10L;
+  }
+
+  private Level getLevel(int idx) {
+    return idx % 10 == 0 ? Level.WARN : Level.INFO;
+  }
+
+  private String getLoggerName(int idx) {
+    return "logger" + (idx / 250);
+  }
+
+  private List<Long> getExpectedNext(long fromTimeMs, int maxEvents, Predicate<Integer> predicate) {
+    List<Long> result = new ArrayList<>();
+    for (int i = 0; i < NUM_EVENTS && result.size() < maxEvents; i++) {
+      if (getTimestamp(i) >= fromTimeMs && predicate.apply(i)) {
+        result.add(getTimestamp(i));
+      }
+    }
+    return result;
+  }
+
+  private List<Long> getExpectedPrev(long fromTimeMs, int maxEvents, Predicate<Integer> predicate) {
+    List<Long> result = new ArrayList<>();
+    for (int i = NUM_EVENTS - 1; i >= 0 && result.size() < maxEvents; i--) {
+      if (getTimestamp(i) <= fromTimeMs && predicate.apply(i)) {
+        result.add(getTimestamp(i));
+      }
+    }
+    return Lists.reverse(result);
+  }
+
+  private List<Long> readNext(AvroFileReader reader, Location location, Filter filter, long fromTimeMs,
+                              int maxEvents, Impersonator impersonator) {
+    List<Long> result = new ArrayList<>();
+    try (CloseableIterator<LogEvent> iterator = reader.readLog(location, filter, fromTimeMs,
+                                                                 Long.MAX_VALUE, maxEvents,
+                                                                 NamespaceId.DEFAULT, impersonator)) {
+      while (iterator.hasNext()) {
+        result.add(iterator.next().getLoggingEvent().getTimeStamp());
+      }
+    }
+    return result;
+  }
+
+  private List<Long> readPrev(AvroFileReader reader, Location location, Filter filter, long fromTimeMs,
+                              int maxEvents, Impersonator impersonator) throws Exception {
+    List<Long> result = new ArrayList<>();
+    for (LogEvent event : reader.readLogPrev(location, filter, fromTimeMs, maxEvents,
+                                             NamespaceId.DEFAULT, impersonator)) {
+      result.add(event.getLoggingEvent().getTimeStamp());
+    }
+    return result;
+  }
+}
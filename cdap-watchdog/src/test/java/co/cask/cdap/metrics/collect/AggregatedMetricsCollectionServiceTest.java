@@ -18,11 +18,13 @@ package co.cask.cdap.metrics.collect;
 import co.cask.cdap.api.metrics.MetricValue;
 import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.test.SlowTests;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
@@ -31,8 +33,12 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Testing the basic properties of the {@link AggregatedMetricsCollectionService}.
@@ -155,6 +161,101 @@ public class AggregatedMetricsCollectionServiceTest {
     }
   }
 
+  @Test
+  public void testConcurrentIncrement() throws Exception {
+    final AtomicLong total = new AtomicLong();
+    AggregatedMetricsCollectionService service = new AggregatedMetricsCollectionService() {
+      @Override
+      protected void publish(Iterator<MetricValues> metrics) {
+        while (metrics.hasNext()) {
+          total.addAndGet(getMetricValue(metrics.next().getMetrics(), METRIC));
+        }
+      }
+    };
+
+    final MetricsContext context = service.getContext(EMPTY_TAGS);
+    final BoundMetric metric = BoundMetric.bind(context, METRIC);
+    Assert.assertNotEquals(BoundMetric.bind(new NoopMetricsContext(), METRIC).getClass(), metric.getClass());
+
+    int threads = 8;
+    final int increments = 100000;
+    final CountDownLatch doneLatch = new CountDownLatch(threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (int i = 0; i < threads; i++) {
+        final boolean bound = i % 2 == 0;
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            for (int j = 0; j < increments; j++) {
+              if (bound) {
+                metric.increment(1);
+              } else {
+                context.increment(METRIC, 1);
+              }
+            }
+            doneLatch.countDown();
+          }
+        });
+      }
+      // Emit metrics while they are being incremented, nothing should be lost
+      while (!doneLatch.await(10, TimeUnit.MILLISECONDS)) {
+        service.runOneIteration();
+      }
+      service.runOneIteration();
+      Assert.assertEquals((long) threads * increments, total.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Ignore
+  @Test
+  public void testContendedThroughput() throws Exception {
+    AggregatedMetricsCollectionService service = new AggregatedMetricsCollectionService() {
+      @Override
+      protected void publish(Iterator<MetricValues> metrics) {
+        // no-op
+      }
+    };
+
+    final MetricsContext context = service.getContext(ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NAMESPACE,
+                                                                      Constants.Metrics.Tag.APP, APP));
+    final BoundMetric metric = BoundMetric.bind(context, METRIC);
+    final int threads = Runtime.getRuntime().availableProcessors();
+    final int increments = 10000000;
+
+    // Run twice to have both ways warmed up
+    for (int round = 0; round < 2; round++) {
+      for (final boolean bound : new boolean[] { false, true }) {
+        final CountDownLatch doneLatch = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              for (int j = 0; j < increments; j++) {
+                if (bound) {
+                  metric.increment(1);
+                } else {
+                  context.increment(METRIC, 1);
+                }
+              }
+              doneLatch.countDown();
+            }
+          });
+        }
+        doneLatch.await();
+        long endTime = System.nanoTime();
+        executor.shutdown();
+        service.runOneIteration();
+        System.out.println((bound ? "BoundMetric" : "MetricsContext") + " with " + threads + " threads, time spent: "
+                             + TimeUnit.MILLISECONDS.convert(endTime - startTime, TimeUnit.NANOSECONDS));
+      }
+    }
+  }
+
   private void verifyCounterMetricsValue(MetricValues metricValues) {
     Assert.assertNotNull(metricValues);
     Map<String, String> tags = metricValues.getTags();